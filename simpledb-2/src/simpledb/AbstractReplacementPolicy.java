@@ -0,0 +1,57 @@
+package simpledb;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Helper for implementing ReplacementPolicies. Keeps the hit and miss counters; subclasses only need to implement the
+ * bookkeeping in {@link #hit} and {@link #miss} along with the remaining ReplacementPolicy methods.
+ */
+public abstract class AbstractReplacementPolicy implements ReplacementPolicy {
+
+	private final AtomicLong hits = new AtomicLong();
+
+	private final AtomicLong misses = new AtomicLong();
+
+	public void recordHit(PageId pid) {
+		hits.incrementAndGet();
+		hit(pid);
+	}
+
+	public void recordMiss(PageId pid) {
+		misses.incrementAndGet();
+		miss(pid);
+	}
+
+	/**
+	 * Updates the replacement state for a hit on the specified page.
+	 */
+	protected abstract void hit(PageId pid);
+
+	/**
+	 * Updates the replacement state for a miss on the specified page. Does nothing by default.
+	 */
+	protected void miss(PageId pid) {
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public double getHitRatio() {
+		long h = hits.get();
+		long total = h + misses.get();
+		return total == 0 ? 0 : (double) h / total;
+	}
+
+	/**
+	 * Returns a string describing this policy and its hit ratio.
+	 */
+	public String toString() {
+		return getClass().getSimpleName() + "(hits=" + getHits() + ", misses=" + getMisses() + ", hit ratio="
+				+ String.format("%.3f", getHitRatio()) + ")";
+	}
+}
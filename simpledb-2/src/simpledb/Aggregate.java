@@ -52,6 +52,15 @@ public class Aggregate extends AbstractDbIterator {
 		{
 			gfieldType = child.getTupleDesc().getType(gfield);
 		}
+		// a scan below only needs to decode the aggregated and grouping fields
+		ArrayList<Integer> needed = new ArrayList<Integer>();
+		needed.add(afield);
+		if (gfield != Aggregator.NO_GROUPING)
+			needed.add(gfield);
+		if (child instanceof SeqScan)
+			((SeqScan) child).needFields(needed);
+		else if (child instanceof Filter)
+			((Filter) child).needFields(needed);
 		
 		switch(afieldType)
 		{
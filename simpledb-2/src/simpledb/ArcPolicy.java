@@ -0,0 +1,106 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * ArcPolicy implements Adaptive Replacement Cache (Megiddo and Modha, FAST 2003). Resident pages are split between
+ * T1, pages requested once recently, and T2, pages requested at least twice. The ghost lists B1 and B2 remember the IDs
+ * of pages recently evicted from T1 and T2. A miss that hits a ghost list shifts the target size p of T1 towards the
+ * list that would have kept the page, so the policy adapts between recency and frequency as the workload changes.
+ */
+public class ArcPolicy extends AbstractReplacementPolicy {
+
+	/**
+	 * The number of pages in the buffer pool.
+	 */
+	private final int capacity;
+
+	/**
+	 * The target size of T1.
+	 */
+	private int p = 0;
+
+	/**
+	 * Resident pages seen once, ordered from least to most recently used.
+	 */
+	private final LinkedHashMap<PageId, Boolean> t1 = new LinkedHashMap<PageId, Boolean>();
+
+	/**
+	 * Resident pages seen at least twice, ordered from least to most recently used.
+	 */
+	private final LinkedHashMap<PageId, Boolean> t2 = new LinkedHashMap<PageId, Boolean>(16, 0.75f, true);
+
+	/**
+	 * IDs of pages recently evicted from T1.
+	 */
+	private final LinkedHashMap<PageId, Boolean> b1 = new LinkedHashMap<PageId, Boolean>();
+
+	/**
+	 * IDs of pages recently evicted from T2.
+	 */
+	private final LinkedHashMap<PageId, Boolean> b2 = new LinkedHashMap<PageId, Boolean>();
+
+	/**
+	 * The page whose miss is currently being served, if any.
+	 */
+	private PageId incoming;
+
+	/**
+	 * Creates an ArcPolicy for a buffer pool of the specified size.
+	 * 
+	 * @param capacity
+	 *            the number of pages in the buffer pool
+	 */
+	public ArcPolicy(int capacity) {
+		this.capacity = capacity;
+	}
+
+	protected synchronized void hit(PageId pid) {
+		if (t1.remove(pid) != null)
+			t2.put(pid, Boolean.TRUE);
+		else
+			t2.get(pid);
+	}
+
+	protected synchronized void miss(PageId pid) {
+		incoming = pid;
+		if (b1.containsKey(pid))
+			p = Math.min(capacity, p + Math.max(b2.size() / b1.size(), 1));
+		else if (b2.containsKey(pid))
+			p = Math.max(0, p - Math.max(b1.size() / b2.size(), 1));
+	}
+
+	public synchronized void pageAdded(PageId pid) {
+		if (b1.remove(pid) != null || b2.remove(pid) != null)
+			t2.put(pid, Boolean.TRUE);
+		else if (!t2.containsKey(pid))
+			t1.put(pid, Boolean.TRUE);
+		if (pid.equals(incoming))
+			incoming = null;
+
+		// bound the directory: |T1| + |B1| <= c and |T1| + |T2| + |B1| + |B2| <= 2c
+		while (t1.size() + b1.size() > capacity && !b1.isEmpty())
+			TwoQPolicy.removeFirst(b1);
+		while (t1.size() + t2.size() + b1.size() + b2.size() > 2 * capacity && !b2.isEmpty())
+			TwoQPolicy.removeFirst(b2);
+	}
+
+	public synchronized void pageRemoved(PageId pid) {
+		t1.remove(pid);
+		t2.remove(pid);
+	}
+
+	public synchronized PageId chooseVictim() {
+		boolean preferT1 = t1.size() > p || (t1.size() == p && incoming != null && b2.containsKey(incoming));
+		if (!t1.isEmpty() && (preferT1 || t2.isEmpty())) {
+			PageId victim = TwoQPolicy.removeFirst(t1);
+			b1.put(victim, Boolean.TRUE);
+			return victim;
+		}
+		if (t2.isEmpty())
+			return null;
+		PageId victim = TwoQPolicy.removeFirst(t2);
+		b2.put(victim, Boolean.TRUE);
+		return victim;
+	}
+}
@@ -0,0 +1,764 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+/**
+ * BTreeFile is a DbFile that stores its tuples in a B+ tree sorted on one key field, an int or a string field. The
+ * tuples are kept in {@link BTreeLeafPage}s linked in key order, and {@link BTreeInternalPage}s above them lead a
+ * search to the first leaf that can hold a key, so a point lookup or a range of keys reads a few pages instead of the
+ * whole table. The pages are read and cached through the BufferPool like those of a HeapFile; SeqScan returns the
+ * tuples in key order, and {@link IndexScan} returns those in a range of keys.
+ * <p>
+ * The root is always page 0: when the root splits, its halves move to two new pages and page 0 becomes their parent,
+ * and when it is left with a single child, the child moves up into page 0. A full leaf or internal page splits in two,
+ * and a page left less than half full takes entries from a sibling, or is merged into it if both fit on one page.
+ * Pages freed by merges are chained from the root and reused before the file grows.
+ * <p>
+ * Every page that an insert or a delete changes, including the pages of a split or a merge, the list of free pages on
+ * the root and the links between leaves, is read with READ_WRITE permission and changed in place in the BufferPool,
+ * where it is marked dirty; addTuple returns all of them. A page whose type changes keeps its cached object, whose
+ * content is replaced (see {@link BTreePage}). The only writes that bypass the BufferPool are the empty pages that
+ * extend the file, like a new page of a HeapFile: nothing points to such a page until a dirty page that does is
+ * flushed. Inserts and deletes are serialized on the file.
+ *
+ * @see BTreePage
+ * @see IndexScan
+ */
+public class BTreeFile implements SortedFile {
+
+	/**
+	 * The File associated with this BTreeFile.
+	 */
+	private final File file;
+
+	/**
+	 * The TupleDesc associated with this BTreeFile.
+	 */
+	private final TupleDesc td;
+
+	/**
+	 * The index of the field that the tuples are sorted on.
+	 */
+	private final int keyField;
+
+	/**
+	 * The channel used for all reads and writes of this BTreeFile, opened on first use.
+	 */
+	private FileChannel channel;
+
+	/**
+	 * Constructs a BTreeFile backed by the specified file. An empty file is an empty tree.
+	 *
+	 * @param f
+	 *            the file that stores the pages, as written by {@link #convert} or by earlier inserts.
+	 * @param keyField
+	 *            the index of the int or string field that the tuples are sorted on.
+	 */
+	public BTreeFile(File f, TupleDesc td, int keyField) {
+		this.file = f;
+		this.td = td;
+		this.keyField = keyField;
+	}
+
+	/**
+	 * Returns the File backing this BTreeFile on disk.
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Returns the index of the field that the tuples are sorted on.
+	 */
+	public int keyField() {
+		return keyField;
+	}
+
+	// see DbFile.java for javadocs
+	public int getId() {
+		return file.getAbsoluteFile().hashCode();
+	}
+
+	// see DbFile.java for javadocs
+	public TupleDesc getTupleDesc() {
+		return td;
+	}
+
+	/**
+	 * Returns the number of pages in this BTreeFile, including the free ones.
+	 */
+	public int numPages() {
+		return (int) (file.length() / BufferPool.PAGE_SIZE);
+	}
+
+	// see DbFile.java for javadocs
+	public Page readPage(PageId pid) {
+		if (getId() != pid.getTableId())
+			throw new IllegalArgumentException("page " + pid.pageno() + " does not belong to this file");
+		byte[] data = new byte[BufferPool.PAGE_SIZE];
+		try {
+			ByteBuffer buf = ByteBuffer.wrap(data);
+			long position = (long) pid.pageno() * BufferPool.PAGE_SIZE;
+			FileChannel ch = channel();
+			while (buf.hasRemaining())
+				if (ch.read(buf, position + buf.position()) < 0)
+					throw new IllegalArgumentException("page " + pid.pageno() + " does not exist in this file");
+		} catch (IOException e) {
+			throw new RuntimeException("failed to read page " + pid.pageno(), e);
+		}
+		return BTreePage.create((HeapPageId) pid, data);
+	}
+
+	// see DbFile.java for javadocs
+	public void writePage(Page page) throws IOException {
+		write(page.getId().pageno(), page.getPageData());
+	}
+
+	/**
+	 * Writes the specified content to the specified page on disk.
+	 */
+	private void write(int pageNo, byte[] data) throws IOException {
+		ByteBuffer buf = ByteBuffer.wrap(data);
+		long position = (long) pageNo * BufferPool.PAGE_SIZE;
+		FileChannel ch = channel();
+		while (buf.hasRemaining())
+			ch.write(buf, position + buf.position());
+	}
+
+	/**
+	 * Returns the channel of this BTreeFile, opening it if it is not open.
+	 */
+	private synchronized FileChannel channel() throws IOException {
+		if (channel == null || !channel.isOpen())
+			channel = new RandomAccessFile(file, "rw").getChannel();
+		return channel;
+	}
+
+	/**
+	 * Closes the channel of this BTreeFile. The channel is reopened if the BTreeFile is used again.
+	 */
+	public synchronized void close() throws IOException {
+		if (channel != null)
+			channel.close();
+		channel = null;
+	}
+
+	/**
+	 * The pages that the insert or delete in progress has dirtied, in the order they were first dirtied.
+	 */
+	private final ArrayList<Page> dirtied = new ArrayList<Page>();
+
+	/**
+	 * Writes an empty leaf as the root if the file is empty.
+	 */
+	private synchronized void ensureRoot() throws IOException {
+		if (numPages() == 0)
+			write(0, BTreePage.emptyPage(BTreePage.LEAF, -1, -1));
+	}
+
+	/**
+	 * Returns the specified page of this BTreeFile through the BufferPool, as the BufferPool caches it.
+	 */
+	private BTreePage page(TransactionId tid, int pageNo, Permissions perm) throws DbException,
+			TransactionAbortedException {
+		return (BTreePage) Database.getBufferPool().getPage(tid, new HeapPageId(getId(), pageNo), perm);
+	}
+
+	/**
+	 * Returns the specified leaf through the BufferPool.
+	 */
+	private BTreeLeafPage leaf(TransactionId tid, int pageNo, Permissions perm) throws DbException,
+			TransactionAbortedException {
+		BTreePage page = page(tid, pageNo, perm);
+		return page instanceof BTreeLeafPage ? (BTreeLeafPage) page : new BTreeLeafPage(page);
+	}
+
+	/**
+	 * Returns the specified internal page through the BufferPool.
+	 */
+	private BTreeInternalPage internal(TransactionId tid, int pageNo, Permissions perm) throws DbException,
+			TransactionAbortedException {
+		BTreePage page = page(tid, pageNo, perm);
+		return page instanceof BTreeInternalPage ? (BTreeInternalPage) page : new BTreeInternalPage(page);
+	}
+
+	/**
+	 * Marks the specified page dirty and adds it to the pages dirtied by the insert or delete in progress.
+	 */
+	private void dirty(TransactionId tid, BTreePage page) {
+		page.owner.markDirty(true, tid);
+		if (!dirtied.contains(page.owner))
+			dirtied.add(page.owner);
+	}
+
+	/**
+	 * Replaces the content of the specified page in the BufferPool, and marks it dirty. The list of free pages of the
+	 * root is carried over to a new root.
+	 */
+	private void rewrite(TransactionId tid, int pageNo, byte[] content) throws DbException,
+			TransactionAbortedException {
+		BTreePage page = page(tid, pageNo, Permissions.READ_WRITE);
+		int freeList = page.getFreeList();
+		page.setContent(content);
+		if (pageNo == 0)
+			page.setFreeList(freeList);
+		dirty(tid, page);
+	}
+
+	/**
+	 * Returns the number of a page that can be rewritten with new content: the first free page, taken off the list of
+	 * the root, or a new empty page at the end of the file.
+	 */
+	private int allocate(TransactionId tid) throws DbException, IOException, TransactionAbortedException {
+		int free = page(tid, 0, Permissions.READ_ONLY).getFreeList();
+		if (free < 0) {
+			int pageNo = numPages();
+			write(pageNo, BTreePage.emptyPage(BTreePage.FREE, -1, -1));
+			return pageNo;
+		}
+		int next = page(tid, free, Permissions.READ_ONLY).getNext();
+		// reading the free page may have evicted the root, so the root is fetched again before it is changed
+		BTreePage root = page(tid, 0, Permissions.READ_WRITE);
+		root.setFreeList(next);
+		dirty(tid, root);
+		return free;
+	}
+
+	/**
+	 * Adds the specified page to the free pages.
+	 */
+	private void free(TransactionId tid, int pageNo) throws DbException, TransactionAbortedException {
+		int head = page(tid, 0, Permissions.READ_ONLY).getFreeList();
+		rewrite(tid, pageNo, BTreePage.emptyPage(BTreePage.FREE, -1, head));
+		// rewriting the freed page may have evicted the root, so the root is fetched again before it is changed
+		BTreePage root = page(tid, 0, Permissions.READ_WRITE);
+		root.setFreeList(pageNo);
+		dirty(tid, root);
+	}
+
+	/**
+	 * Sets the previous leaf of the specified leaf, if there is one.
+	 */
+	private void setPrev(TransactionId tid, int pageNo, int prev) throws DbException, TransactionAbortedException {
+		if (pageNo < 0)
+			return;
+		BTreePage page = page(tid, pageNo, Permissions.READ_WRITE);
+		page.setPrev(prev);
+		dirty(tid, page);
+	}
+
+	/**
+	 * Returns the page numbers on the path from the root to the leftmost leaf that can hold the specified key, or to
+	 * the first leaf if the key is null.
+	 */
+	private ArrayList<Integer> pathTo(TransactionId tid, Field key) throws DbException, TransactionAbortedException {
+		ArrayList<Integer> path = new ArrayList<Integer>();
+		int pageNo = 0;
+		while (true) {
+			path.add(pageNo);
+			if (page(tid, pageNo, Permissions.READ_ONLY).getType() != BTreePage.INTERNAL)
+				return path;
+			BTreeInternalPage internal = internal(tid, pageNo, Permissions.READ_ONLY);
+			pageNo = internal.getChild(key == null ? 0 : internal.lowerBound(key));
+		}
+	}
+
+	/**
+	 * Returns the page numbers on the path from the root to the specified leaf, which holds the specified key, or null
+	 * if the leaf cannot be reached with that key. With repeated keys, every child that can hold the key is tried.
+	 */
+	private ArrayList<Integer> pathTo(TransactionId tid, Field key, int leafNo) throws DbException,
+			TransactionAbortedException {
+		ArrayList<Integer> path = new ArrayList<Integer>();
+		return findPath(tid, 0, key, leafNo, path) ? path : null;
+	}
+
+	private boolean findPath(TransactionId tid, int pageNo, Field key, int leafNo, ArrayList<Integer> path)
+			throws DbException, TransactionAbortedException {
+		path.add(pageNo);
+		if (pageNo == leafNo)
+			return true;
+		if (page(tid, pageNo, Permissions.READ_ONLY).getType() == BTreePage.INTERNAL) {
+			BTreeInternalPage internal = internal(tid, pageNo, Permissions.READ_ONLY);
+			for (int i = internal.lowerBound(key), last = internal.upperBound(key); i <= last; i++)
+				if (findPath(tid, internal.getChild(i), key, leafNo, path))
+					return true;
+		}
+		path.remove(path.size() - 1);
+		return false;
+	}
+
+	// see DbFile.java for javadocs
+	public synchronized ArrayList<Page> addTuple(TransactionId tid, Tuple t) throws DbException, IOException,
+			TransactionAbortedException {
+		if (!td.equals(t.getTupleDesc()))
+			throw new DbException("the tuple does not match the TupleDesc of this file");
+		ensureRoot();
+		ArrayList<Integer> path = pathTo(tid, t.getField(keyField));
+		BTreeLeafPage leaf = leaf(tid, path.get(path.size() - 1), Permissions.READ_WRITE);
+		dirtied.clear();
+		try {
+			if (leaf.getCount() < leaf.capacity()) {
+				leaf.addTuple(t);
+				dirty(tid, leaf);
+			} else
+				splitLeaf(tid, path, leaf, t);
+			return new ArrayList<Page>(dirtied);
+		} finally {
+			dirtied.clear();
+		}
+	}
+
+	/**
+	 * Splits a full leaf in two and adds the specified tuple to the half where its key belongs. The first key of the
+	 * right half becomes the separator of the halves in the parent.
+	 */
+	private void splitLeaf(TransactionId tid, ArrayList<Integer> path, BTreeLeafPage leaf, Tuple t)
+			throws DbException, IOException, TransactionAbortedException {
+		ArrayList<Tuple> tuples = leaf.tuples();
+		tuples.add(leaf.upperBound(t.getField(keyField)), t);
+		int leafNo = leaf.getId().pageno();
+		int prev = leaf.getPrev(), next = leaf.getNext();
+		int half = tuples.size() / 2;
+		List<Tuple> left = tuples.subList(0, half), right = tuples.subList(half, tuples.size());
+		Field separator = right.get(0).getField(keyField);
+		if (leafNo == 0) {
+			// the root is the only leaf: move both halves to new pages below it
+			int a = allocate(tid), b = allocate(tid);
+			rewrite(tid, a, BTreeLeafPage.leafData(left, -1, b));
+			rewrite(tid, b, BTreeLeafPage.leafData(right, a, -1));
+			setRecordId(t, a, left, b, right);
+			rewrite(tid, 0, BTreeInternalPage.internalData(td.getType(keyField), Arrays.asList(separator), Arrays
+					.asList(a, b)));
+			return;
+		}
+		int n = allocate(tid);
+		rewrite(tid, leafNo, BTreeLeafPage.leafData(left, prev, n));
+		rewrite(tid, n, BTreeLeafPage.leafData(right, leafNo, next));
+		setPrev(tid, next, n);
+		setRecordId(t, leafNo, left, n, right);
+		insertIntoParent(tid, path, path.size() - 2, leafNo, separator, n);
+	}
+
+	/**
+	 * Sets the RecordId of a tuple that was written to one of two new leaves.
+	 */
+	private void setRecordId(Tuple t, int leftNo, List<Tuple> left, int rightNo, List<Tuple> right) {
+		for (int i = 0; i < left.size(); i++)
+			if (left.get(i) == t)
+				t.setRecordId(new RecordId(new HeapPageId(getId(), leftNo), i));
+		for (int i = 0; i < right.size(); i++)
+			if (right.get(i) == t)
+				t.setRecordId(new RecordId(new HeapPageId(getId(), rightNo), i));
+	}
+
+	/**
+	 * Adds a separator and the new child to its right to the internal page at the specified level of a path, after
+	 * the child that was split, splitting that page in turn if it is full: the middle key of a split internal page
+	 * moves up to its parent.
+	 */
+	private void insertIntoParent(TransactionId tid, ArrayList<Integer> path, int level, int leftChild, Field key,
+			int rightChild) throws DbException, IOException, TransactionAbortedException {
+		int pageNo = path.get(level);
+		BTreeInternalPage page = internal(tid, pageNo, Permissions.READ_ONLY);
+		ArrayList<Field> keys = page.keys();
+		ArrayList<Integer> children = page.children();
+		int i = children.indexOf(leftChild);
+		keys.add(i, key);
+		children.add(i + 1, rightChild);
+		Type keyType = td.getType(keyField);
+		if (keys.size() <= page.maxKeys()) {
+			rewrite(tid, pageNo, BTreeInternalPage.internalData(keyType, keys, children));
+			return;
+		}
+		int mid = keys.size() / 2;
+		Field up = keys.get(mid);
+		List<Field> leftKeys = keys.subList(0, mid), rightKeys = keys.subList(mid + 1, keys.size());
+		List<Integer> leftChildren = children.subList(0, mid + 1);
+		List<Integer> rightChildren = children.subList(mid + 1, children.size());
+		if (pageNo == 0) {
+			int a = allocate(tid), b = allocate(tid);
+			rewrite(tid, a, BTreeInternalPage.internalData(keyType, leftKeys, leftChildren));
+			rewrite(tid, b, BTreeInternalPage.internalData(keyType, rightKeys, rightChildren));
+			rewrite(tid, 0, BTreeInternalPage.internalData(keyType, Arrays.asList(up), Arrays.asList(a, b)));
+			return;
+		}
+		int n = allocate(tid);
+		rewrite(tid, pageNo, BTreeInternalPage.internalData(keyType, leftKeys, leftChildren));
+		rewrite(tid, n, BTreeInternalPage.internalData(keyType, rightKeys, rightChildren));
+		insertIntoParent(tid, path, level - 1, pageNo, up, n);
+	}
+
+	// see DbFile.java for javadocs
+	public synchronized Page deleteTuple(TransactionId tid, Tuple t) throws DbException, TransactionAbortedException {
+		RecordId rid = t.getRecordId();
+		if (rid == null || rid.getPageId().getTableId() != getId())
+			throw new DbException("the tuple is not stored in this file");
+		Field key = t.getField(keyField);
+		BTreeLeafPage leaf = null;
+		int slot = -1;
+		if (rid.getPageId().pageno() < numPages()) {
+			if (page(tid, rid.getPageId().pageno(), Permissions.READ_WRITE).getType() == BTreePage.LEAF) {
+				leaf = leaf(tid, rid.getPageId().pageno(), Permissions.READ_WRITE);
+				slot = leaf.find(t);
+			}
+		}
+		if (slot < 0) {
+			// a split or a merge has moved the tuple since it was read: look for it from the first leaf of its key
+			ArrayList<Integer> path = pathTo(tid, key);
+			for (int pageNo = path.get(path.size() - 1); pageNo >= 0 && slot < 0; pageNo = leaf.getNext()) {
+				leaf = leaf(tid, pageNo, Permissions.READ_WRITE);
+				slot = leaf.find(t);
+				if (leaf.getCount() > 0 && BTreePage.compare(leaf.getKey(leaf.getCount() - 1), key) > 0)
+					break;
+			}
+			if (slot < 0)
+				throw new DbException("the tuple is not stored in this file");
+		}
+		leaf.deleteTuple(slot);
+		leaf.markDirty(true, tid);
+		t.setRecordId(null);
+		int leafNo = leaf.getId().pageno();
+		if (leafNo != 0 && leaf.getCount() < leaf.capacity() / 2) {
+			ArrayList<Integer> path = pathTo(tid, key, leafNo);
+			if (path == null)
+				throw new DbException("the tree of " + file.getName() + " is inconsistent: leaf " + leafNo
+						+ " cannot be reached with the key of the deleted tuple");
+			// the pages of the merge are marked dirty here, as deleteTuple can only return the leaf
+			try {
+				rebalanceLeaf(tid, path);
+			} finally {
+				dirtied.clear();
+			}
+		}
+		return leaf.owner;
+	}
+
+	/**
+	 * Refills the leaf at the end of a path, which is less than half full, from its right sibling, or its left one if
+	 * it is the last child of its parent: the tuples of both are merged into the left one if they fit, and otherwise
+	 * shared evenly between them.
+	 */
+	private void rebalanceLeaf(TransactionId tid, ArrayList<Integer> path) throws DbException,
+			TransactionAbortedException {
+		int parentNo = path.get(path.size() - 2);
+		BTreeInternalPage parent = internal(tid, parentNo, Permissions.READ_ONLY);
+		ArrayList<Field> keys = parent.keys();
+		ArrayList<Integer> children = parent.children();
+		int i = children.indexOf(path.get(path.size() - 1));
+		if (i == keys.size())
+			i--;
+		int leftNo = children.get(i), rightNo = children.get(i + 1);
+		BTreeLeafPage left = leaf(tid, leftNo, Permissions.READ_ONLY);
+		int prev = left.getPrev(), capacity = left.capacity();
+		ArrayList<Tuple> tuples = left.tuples();
+		BTreeLeafPage right = leaf(tid, rightNo, Permissions.READ_ONLY);
+		int next = right.getNext();
+		tuples.addAll(right.tuples());
+		if (tuples.size() <= capacity) {
+			rewrite(tid, leftNo, BTreeLeafPage.leafData(tuples, prev, next));
+			setPrev(tid, next, leftNo);
+			free(tid, rightNo);
+			keys.remove(i);
+			children.remove(i + 1);
+			updateInternal(tid, path, path.size() - 2, keys, children);
+			return;
+		}
+		int half = tuples.size() / 2;
+		rewrite(tid, leftNo, BTreeLeafPage.leafData(tuples.subList(0, half), prev, rightNo));
+		rewrite(tid, rightNo, BTreeLeafPage.leafData(tuples.subList(half, tuples.size()), leftNo, next));
+		keys.set(i, tuples.get(half).getField(keyField));
+		rewrite(tid, parentNo, BTreeInternalPage.internalData(td.getType(keyField), keys, children));
+	}
+
+	/**
+	 * Writes the specified keys and children, which have lost an entry to a merge, to the internal page at the
+	 * specified level of a path. An internal page left less than half full is refilled from a sibling like a leaf, and
+	 * a root left with one child is replaced by that child.
+	 */
+	private void updateInternal(TransactionId tid, ArrayList<Integer> path, int level, List<Field> keys,
+			List<Integer> children) throws DbException, TransactionAbortedException {
+		int pageNo = path.get(level);
+		Type keyType = td.getType(keyField);
+		int maxKeys = BTreeInternalPage.maxKeys(keyType);
+		if (pageNo == 0 && keys.isEmpty()) {
+			int child = children.get(0);
+			byte[] content = page(tid, child, Permissions.READ_ONLY).getPageData().clone();
+			free(tid, child);
+			rewrite(tid, 0, content);
+			return;
+		}
+		if (pageNo == 0 || keys.size() >= maxKeys / 2) {
+			rewrite(tid, pageNo, BTreeInternalPage.internalData(keyType, keys, children));
+			return;
+		}
+		int parentNo = path.get(level - 1);
+		BTreeInternalPage parent = internal(tid, parentNo, Permissions.READ_ONLY);
+		ArrayList<Field> parentKeys = parent.keys();
+		ArrayList<Integer> parentChildren = parent.children();
+		int i = parentChildren.indexOf(pageNo);
+		if (i == parentKeys.size())
+			i--;
+		int leftNo = parentChildren.get(i), rightNo = parentChildren.get(i + 1);
+		// the page being updated is not rewritten yet, so its entries come from the arguments
+		ArrayList<Field> allKeys = new ArrayList<Field>();
+		ArrayList<Integer> allChildren = new ArrayList<Integer>();
+		for (int side : new int[] { leftNo, rightNo }) {
+			if (side == rightNo)
+				allKeys.add(parentKeys.get(i));
+			if (side == pageNo) {
+				allKeys.addAll(keys);
+				allChildren.addAll(children);
+			} else {
+				BTreeInternalPage sibling = internal(tid, side, Permissions.READ_ONLY);
+				allKeys.addAll(sibling.keys());
+				allChildren.addAll(sibling.children());
+			}
+		}
+		if (allKeys.size() <= maxKeys) {
+			rewrite(tid, leftNo, BTreeInternalPage.internalData(keyType, allKeys, allChildren));
+			free(tid, rightNo);
+			parentKeys.remove(i);
+			parentChildren.remove(i + 1);
+			updateInternal(tid, path, level - 1, parentKeys, parentChildren);
+			return;
+		}
+		int mid = allKeys.size() / 2;
+		rewrite(tid, leftNo, BTreeInternalPage.internalData(keyType, allKeys.subList(0, mid), allChildren.subList(0,
+				mid + 1)));
+		rewrite(tid, rightNo, BTreeInternalPage.internalData(keyType, allKeys.subList(mid + 1, allKeys.size()),
+				allChildren.subList(mid + 1, allChildren.size())));
+		parentKeys.set(i, allKeys.get(mid));
+		rewrite(tid, parentNo, BTreeInternalPage.internalData(keyType, parentKeys, parentChildren));
+	}
+
+	// see DbFile.java for javadocs
+	public DbFileIterator iterator(TransactionId tid) {
+		return new BTreeFileIterator(tid, null, false, null, false);
+	}
+
+	/**
+	 * Returns an iterator over the tuples whose keys satisfy a comparison with the specified key, in key order.
+	 *
+	 * @param op
+	 *            EQUALS, GREATER_THAN, GREATER_THAN_OR_EQ, LESS_THAN or LESS_THAN_OR_EQ.
+	 * @param key
+	 *            the key to compare the keys of the tuples with.
+	 * @throws IllegalArgumentException
+	 *             if op is LIKE or NOT_EQUALS, which do not select a range of keys.
+	 */
+	public DbFileIterator indexIterator(TransactionId tid, Predicate.Op op, Field key) {
+		switch (op) {
+		case EQUALS:
+			return rangeIterator(tid, key, true, key, true);
+		case GREATER_THAN:
+			return rangeIterator(tid, key, false, null, false);
+		case GREATER_THAN_OR_EQ:
+			return rangeIterator(tid, key, true, null, false);
+		case LESS_THAN:
+			return rangeIterator(tid, null, false, key, false);
+		case LESS_THAN_OR_EQ:
+			return rangeIterator(tid, null, false, key, true);
+		default:
+			throw new IllegalArgumentException(op + " does not select a range of keys");
+		}
+	}
+
+	/**
+	 * Returns an iterator over the tuples whose keys are in the specified range, in key order.
+	 *
+	 * @param low
+	 *            the lowest key, or null for no lower bound.
+	 * @param lowInclusive
+	 *            whether tuples with the lowest key are returned.
+	 * @param high
+	 *            the highest key, or null for no upper bound.
+	 * @param highInclusive
+	 *            whether tuples with the highest key are returned.
+	 */
+	public DbFileIterator rangeIterator(TransactionId tid, Field low, boolean lowInclusive, Field high,
+			boolean highInclusive) {
+		return new BTreeFileIterator(tid, low, lowInclusive, high, highInclusive);
+	}
+
+	/**
+	 * Iterates over the tuples of a range of keys, from the first leaf that can hold the lowest key and along the
+	 * leaves after it. The tuples of a leaf are read when the iterator reaches it, so changes to a leaf that is being
+	 * read are not seen.
+	 */
+	class BTreeFileIterator extends AbstractDbFileIterator {
+
+		final TransactionId tid;
+		final Field low, high;
+		final boolean lowInclusive, highInclusive;
+
+		/**
+		 * The tuples of the current leaf, or null if this iterator is not open.
+		 */
+		ArrayList<Tuple> tuples;
+
+		/**
+		 * The index in tuples of the next tuple.
+		 */
+		int position;
+
+		/**
+		 * The page number of the leaf after the current one, or -1 if there is none.
+		 */
+		int next;
+
+		BTreeFileIterator(TransactionId tid, Field low, boolean lowInclusive, Field high, boolean highInclusive) {
+			this.tid = tid;
+			this.low = low;
+			this.lowInclusive = lowInclusive;
+			this.high = high;
+			this.highInclusive = highInclusive;
+		}
+
+		public void open() throws DbException, TransactionAbortedException {
+			tuples = new ArrayList<Tuple>();
+			position = 0;
+			next = -1;
+			if (numPages() > 0) {
+				ArrayList<Integer> path = pathTo(tid, low);
+				next = path.get(path.size() - 1);
+			}
+		}
+
+		protected Tuple readNext() throws DbException, TransactionAbortedException {
+			if (tuples == null)
+				return null;
+			while (true) {
+				while (position == tuples.size()) {
+					if (next < 0)
+						return null;
+					BTreeLeafPage leaf = leaf(tid, next, Permissions.READ_ONLY);
+					tuples = leaf.tuples();
+					position = 0;
+					next = leaf.getNext();
+				}
+				Tuple t = tuples.get(position++);
+				Field key = t.getField(keyField);
+				if (high != null) {
+					int cmp = BTreePage.compare(key, high);
+					if (cmp > 0 || (cmp == 0 && !highInclusive)) {
+						next = -1;
+						position = tuples.size();
+						return null;
+					}
+				}
+				if (low != null) {
+					int cmp = BTreePage.compare(key, low);
+					if (cmp < 0 || (cmp == 0 && !lowInclusive))
+						continue;
+				}
+				return t;
+			}
+		}
+
+		public void rewind() throws DbException, TransactionAbortedException {
+			close();
+			open();
+		}
+
+		public void close() {
+			super.close();
+			tuples = null;
+		}
+	}
+
+	/**
+	 * Converts the specified comma delimited text file into a BTreeFile sorted on the specified field, in the format
+	 * that HeapFileEncoder reads: one tuple per line, with the fields in order. The leaves are filled completely and
+	 * the internal pages are built above them level by level.
+	 *
+	 * @param inFile
+	 *            the input file to read data from.
+	 * @param outFile
+	 *            the output file to write pages to.
+	 * @param typeAr
+	 *            the type of each field.
+	 * @param keyField
+	 *            the index of the field to sort the tuples on.
+	 * @throws IOException
+	 *             if the input or output file can't be opened.
+	 */
+	public static void convert(File inFile, File outFile, Type[] typeAr, final int keyField) throws IOException {
+		TupleDesc td = new TupleDesc(typeAr);
+		ArrayList<Tuple> tuples = new ArrayList<Tuple>();
+		BufferedReader in = new BufferedReader(new FileReader(inFile));
+		try {
+			String line;
+			while ((line = in.readLine()) != null) {
+				if (line.trim().length() == 0)
+					continue;
+				String[] values = line.split(",");
+				Tuple t = new Tuple(td);
+				for (int j = 0; j < typeAr.length; j++) {
+					String s = values[j].trim();
+					t.setField(j, typeAr[j] == Type.INT_TYPE ? new IntField(Integer.parseInt(s)) : new StringField(s,
+							Type.STRING_LEN));
+				}
+				tuples.add(t);
+			}
+		} finally {
+			in.close();
+		}
+		Collections.sort(tuples, new Comparator<Tuple>() {
+			public int compare(Tuple a, Tuple b) {
+				return BTreePage.compare(a.getField(keyField), b.getField(keyField));
+			}
+		});
+
+		int capacity = BTreeLeafPage.capacity(td);
+		int leaves = Math.max(1, (tuples.size() + capacity - 1) / capacity);
+		ArrayList<byte[]> pages = new ArrayList<byte[]>();
+		if (leaves == 1) {
+			pages.add(BTreeLeafPage.leafData(tuples, -1, -1));
+		} else {
+			// the leaves are pages 1 to leaves, the levels above follow, and the single page of the top level is
+			// moved to page 0
+			pages.add(null);
+			ArrayList<Integer> level = new ArrayList<Integer>();
+			ArrayList<Field> firstKeys = new ArrayList<Field>();
+			for (int i = 0; i < leaves; i++) {
+				List<Tuple> leaf = tuples.subList(i * capacity, Math.min(tuples.size(), (i + 1) * capacity));
+				pages.add(BTreeLeafPage.leafData(leaf, i == 0 ? -1 : i, i == leaves - 1 ? -1 : i + 2));
+				level.add(i + 1);
+				firstKeys.add(leaf.get(0).getField(keyField));
+			}
+			Type keyType = typeAr[keyField];
+			int fanout = BTreeInternalPage.maxKeys(keyType) + 1;
+			while (level.size() > 1) {
+				int nodes = (level.size() + fanout - 1) / fanout;
+				ArrayList<Integer> upper = new ArrayList<Integer>();
+				ArrayList<Field> upperKeys = new ArrayList<Field>();
+				for (int n = 0, start = 0; n < nodes; n++) {
+					// share the children evenly between the pages of the level
+					int end = start + (level.size() - start) / (nodes - n);
+					byte[] page = BTreeInternalPage.internalData(keyType, firstKeys.subList(start + 1, end), level
+							.subList(start, end));
+					upper.add(nodes == 1 ? 0 : pages.size());
+					upperKeys.add(firstKeys.get(start));
+					if (nodes == 1)
+						pages.set(0, page);
+					else
+						pages.add(page);
+					start = end;
+				}
+				level = upper;
+				firstKeys = upperKeys;
+			}
+		}
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(outFile));
+		try {
+			for (byte[] page : pages)
+				out.write(page);
+		} finally {
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,161 @@
+package simpledb;
+
+import java.nio.ByteBuffer;
+import java.text.ParseException;
+import java.util.*;
+
+/**
+ * A {@code BTreeInternalPage} directs a search in a {@code BTreeFile}: it holds n keys in order and the page numbers
+ * of the n + 1 children between them. Every key in child i is at most key i, and every key in child i + 1 is at least
+ * key i; keys may repeat, so a key equal to key i can be in either child.
+ * <p>
+ * After the header described in {@link BTreePage}, the page stores the page numbers of the children, with room for
+ * one more than the most keys the page can hold, followed by the keys, each taking {@link Type#getLen} bytes.
+ *
+ * @see BTreeFile
+ */
+public class BTreeInternalPage extends BTreePage {
+
+	/**
+	 * The type of the keys.
+	 */
+	private final Type keyType;
+
+	/**
+	 * The most keys that this page can hold.
+	 */
+	private final int maxKeys;
+
+	/**
+	 * Creates a {@code BTreeInternalPage} from a byte array storing data read from disk.
+	 *
+	 * @param id
+	 *            the ID of the page.
+	 * @param data
+	 *            a byte array of {@link BufferPool#PAGE_SIZE} bytes.
+	 */
+	public BTreeInternalPage(HeapPageId id, byte[] data) {
+		super(id, data);
+		this.keyType = td.getType(keyField);
+		this.maxKeys = maxKeys(keyType);
+	}
+
+	/**
+	 * Creates a view of the specified page as an internal page, which shares its content and state.
+	 */
+	BTreeInternalPage(BTreePage page) {
+		super(page);
+		this.keyType = td.getType(keyField);
+		this.maxKeys = maxKeys(keyType);
+	}
+
+	/**
+	 * Returns the most keys of the specified type that an internal page can hold.
+	 */
+	static int maxKeys(Type keyType) {
+		return (BufferPool.PAGE_SIZE - HEADER_SIZE - 4) / (keyType.getLen() + 4);
+	}
+
+	/**
+	 * Returns an internal page holding the specified keys and children, which must have one more entry.
+	 */
+	static byte[] internalData(Type keyType, List<Field> keys, List<Integer> children) {
+		byte[] data = emptyPage(INTERNAL, -1, -1);
+		ByteBuffer b = ByteBuffer.wrap(data);
+		int max = maxKeys(keyType);
+		b.putInt(COUNT, keys.size());
+		for (int i = 0; i < children.size(); i++)
+			b.putInt(HEADER_SIZE + 4 * i, children.get(i));
+		for (int i = 0; i < keys.size(); i++)
+			writeKey(b, HEADER_SIZE + 4 * (max + 1) + i * keyType.getLen(), keys.get(i));
+		return data;
+	}
+
+	/**
+	 * Returns the most keys that this page can hold.
+	 */
+	public int maxKeys() {
+		return maxKeys;
+	}
+
+	/**
+	 * Returns the key at the specified index.
+	 */
+	public Field getKey(int i) {
+		try {
+			return keyType.parse(buffer, HEADER_SIZE + 4 * (maxKeys + 1) + i * keyType.getLen());
+		} catch (ParseException e) {
+			e.printStackTrace();
+			throw new NoSuchElementException("parsing error!");
+		}
+	}
+
+	/**
+	 * Returns the page number of the child at the specified index.
+	 */
+	public int getChild(int i) {
+		return buffer.getInt(HEADER_SIZE + 4 * i);
+	}
+
+	/**
+	 * Returns the index of the first key that is at least the specified key, or the number of keys if there is none:
+	 * the child at that index is the leftmost one that can hold the key.
+	 */
+	public int lowerBound(Field key) {
+		int lo = 0, hi = getCount();
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (compare(getKey(mid), key) < 0)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+
+	/**
+	 * Returns the index of the first key that is greater than the specified key, or the number of keys if there is
+	 * none: the child at that index is the rightmost one that can hold the key.
+	 */
+	public int upperBound(Field key) {
+		int lo = 0, hi = getCount();
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (compare(getKey(mid), key) <= 0)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+
+	/**
+	 * Returns the index of the specified child, or -1 if it is not a child of this page.
+	 */
+	public int indexOf(int child) {
+		for (int i = 0; i <= getCount(); i++)
+			if (getChild(i) == child)
+				return i;
+		return -1;
+	}
+
+	/**
+	 * Returns the keys of this page, in order.
+	 */
+	public ArrayList<Field> keys() {
+		ArrayList<Field> keys = new ArrayList<Field>();
+		for (int i = 0; i < getCount(); i++)
+			keys.add(getKey(i));
+		return keys;
+	}
+
+	/**
+	 * Returns the children of this page, in order.
+	 */
+	public ArrayList<Integer> children() {
+		ArrayList<Integer> children = new ArrayList<Integer>();
+		for (int i = 0; i <= getCount(); i++)
+			children.add(getChild(i));
+		return children;
+	}
+}
@@ -0,0 +1,235 @@
+package simpledb;
+
+import java.nio.ByteBuffer;
+import java.text.ParseException;
+import java.util.*;
+
+/**
+ * A {@code BTreeLeafPage} holds tuples of a {@code BTreeFile} sorted on its key field, and links to the leaves before
+ * and after it, so that a range of keys is read by following the leaves from the first one that holds the range.
+ * <p>
+ * After the header described in {@link BTreePage}, the tuples are stored one after the other, in key order, with
+ * every field taking {@link Type#getLen} bytes. The slot of a tuple is its position in that order and its tuple number
+ * in its {@code RecordId}; adding or deleting a tuple moves the tuples after it, and a split or a merge moves tuples to
+ * another page.
+ *
+ * @see BTreeFile
+ */
+public class BTreeLeafPage extends BTreePage {
+
+	/**
+	 * The number of bytes of each tuple.
+	 */
+	final int recordLength;
+
+	/**
+	 * The offset of the key field from the start of a tuple.
+	 */
+	private final int keyOffset;
+
+	/**
+	 * Creates a {@code BTreeLeafPage} from a byte array storing data read from disk.
+	 *
+	 * @param id
+	 *            the ID of the page.
+	 * @param data
+	 *            a byte array of {@link BufferPool#PAGE_SIZE} bytes.
+	 */
+	public BTreeLeafPage(HeapPageId id, byte[] data) {
+		super(id, data);
+		this.recordLength = recordLength(td);
+		this.keyOffset = keyOffset(td, keyField);
+	}
+
+	/**
+	 * Creates a view of the specified page as a leaf, which shares its content and state.
+	 */
+	BTreeLeafPage(BTreePage page) {
+		super(page);
+		this.recordLength = recordLength(td);
+		this.keyOffset = keyOffset(td, keyField);
+	}
+
+	private static int keyOffset(TupleDesc td, int keyField) {
+		int offset = 0;
+		for (int j = 0; j < keyField; j++)
+			offset += td.getType(j).getLen();
+		return offset;
+	}
+
+	/**
+	 * Returns the number of bytes of a tuple of the specified TupleDesc on a leaf.
+	 */
+	static int recordLength(TupleDesc td) {
+		int length = 0;
+		for (int j = 0; j < td.numFields(); j++)
+			length += td.getType(j).getLen();
+		return length;
+	}
+
+	/**
+	 * Returns the number of tuples of the specified TupleDesc that fit on a leaf.
+	 */
+	static int capacity(TupleDesc td) {
+		return (BufferPool.PAGE_SIZE - HEADER_SIZE) / recordLength(td);
+	}
+
+	/**
+	 * Returns a leaf holding the specified tuples, in order, with the specified neighbours.
+	 */
+	static byte[] leafData(List<Tuple> tuples, int prev, int next) {
+		byte[] data = emptyPage(LEAF, prev, next);
+		ByteBuffer b = ByteBuffer.wrap(data);
+		b.putInt(COUNT, tuples.size());
+		int location = HEADER_SIZE;
+		for (Tuple t : tuples)
+			location = writeTuple(b, location, t);
+		return data;
+	}
+
+	/**
+	 * Writes the fields of a tuple at the specified location and returns the location after them.
+	 */
+	private static int writeTuple(ByteBuffer content, int location, Tuple t) {
+		TupleDesc td = t.getTupleDesc();
+		for (int j = 0; j < td.numFields(); j++) {
+			writeKey(content, location, t.getField(j));
+			location += td.getType(j).getLen();
+		}
+		return location;
+	}
+
+	/**
+	 * Returns the number of tuples that this leaf has room for.
+	 */
+	public int capacity() {
+		return (BufferPool.PAGE_SIZE - HEADER_SIZE) / recordLength;
+	}
+
+	/**
+	 * Returns the key of the tuple in the specified slot.
+	 */
+	public Field getKey(int slot) {
+		try {
+			return td.getType(keyField).parse(buffer, HEADER_SIZE + slot * recordLength + keyOffset);
+		} catch (ParseException e) {
+			e.printStackTrace();
+			throw new NoSuchElementException("parsing error!");
+		}
+	}
+
+	/**
+	 * Returns the first slot whose key is at least the specified key, or the number of tuples if there is none.
+	 */
+	public int lowerBound(Field key) {
+		int lo = 0, hi = getCount();
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (compare(getKey(mid), key) < 0)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+
+	/**
+	 * Returns the first slot whose key is greater than the specified key, or the number of tuples if there is none.
+	 */
+	public int upperBound(Field key) {
+		int lo = 0, hi = getCount();
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (compare(getKey(mid), key) <= 0)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+
+	/**
+	 * Reads the tuple in the specified slot.
+	 */
+	public Tuple getTuple(int slot) {
+		Tuple t = new Tuple(td);
+		try {
+			for (int j = 0, location = HEADER_SIZE + slot * recordLength; j < td.numFields(); j++) {
+				t.setField(j, td.getType(j).parse(buffer, location));
+				location += td.getType(j).getLen();
+			}
+		} catch (ParseException e) {
+			e.printStackTrace();
+			throw new NoSuchElementException("parsing error!");
+		}
+		t.setRecordId(new RecordId(pid, slot));
+		return t;
+	}
+
+	/**
+	 * Returns all the tuples of this leaf, in key order.
+	 */
+	public ArrayList<Tuple> tuples() {
+		int n = getCount();
+		ArrayList<Tuple> tuples = new ArrayList<Tuple>(n);
+		for (int slot = 0; slot < n; slot++)
+			tuples.add(getTuple(slot));
+		return tuples;
+	}
+
+	/**
+	 * Adds the specified tuple after the tuples whose keys are not greater than its key, and updates its
+	 * {@code RecordId}.
+	 *
+	 * @throws DbException
+	 *             if this leaf is full or the tuple does not match its {@code TupleDesc}.
+	 */
+	public void addTuple(Tuple t) throws DbException {
+		if (!td.equals(t.getTupleDesc()))
+			throw new DbException("the tuple does not match the TupleDesc of this page");
+		int n = getCount();
+		if (n == capacity())
+			throw new DbException("the page is full");
+		int slot = upperBound(t.getField(keyField));
+		copyBeforeImage();
+		int location = HEADER_SIZE + slot * recordLength;
+		System.arraycopy(data, location, data, location + recordLength, (n - slot) * recordLength);
+		writeTuple(buffer, location, t);
+		buffer.putInt(COUNT, n + 1);
+		t.setRecordId(new RecordId(pid, slot));
+	}
+
+	/**
+	 * Returns the slot of a tuple of this leaf with the same fields as the specified tuple, trying the slot of its
+	 * {@code RecordId} first, or -1 if there is none.
+	 */
+	public int find(Tuple t) {
+		RecordId rid = t.getRecordId();
+		if (rid != null && pid.equals(rid.getPageId()) && rid.tupleno() < getCount()
+				&& sameFields(getTuple(rid.tupleno()), t))
+			return rid.tupleno();
+		Field key = t.getField(keyField);
+		for (int slot = lowerBound(key); slot < getCount() && compare(getKey(slot), key) == 0; slot++)
+			if (sameFields(getTuple(slot), t))
+				return slot;
+		return -1;
+	}
+
+	private static boolean sameFields(Tuple a, Tuple b) {
+		for (int j = 0; j < a.getTupleDesc().numFields(); j++)
+			if (!a.getField(j).equals(b.getField(j)))
+				return false;
+		return true;
+	}
+
+	/**
+	 * Deletes the tuple in the specified slot, moving the tuples after it.
+	 */
+	public void deleteTuple(int slot) {
+		int n = getCount();
+		copyBeforeImage();
+		int location = HEADER_SIZE + slot * recordLength;
+		System.arraycopy(data, location + recordLength, data, location, (n - slot - 1) * recordLength);
+		buffer.putInt(COUNT, n - 1);
+	}
+}
@@ -0,0 +1,257 @@
+package simpledb;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A {@code BTreePage} is a page of a {@code BTreeFile}: either a {@link BTreeLeafPage}, which holds tuples sorted on
+ * the key field of the file, or a {@link BTreeInternalPage}, which holds keys and the page numbers of the children
+ * between them. A page that has been freed by a merge keeps the leaf format with the type {@link #FREE} until it is
+ * reused.
+ * <p>
+ * Every page starts with a header of five 4-byte integers: (1) its type, (2) the number of tuples of a leaf or of keys
+ * of an internal page, (3) and (4) the page numbers of the previous and next leaves, or -1, which a free page uses to
+ * chain the free pages, and (5) the first free page, or -1, which is only kept up to date on the root, page 0.
+ * <p>
+ * The type of a page is the one in its header, not the class of the object that the BufferPool caches: a split, a
+ * merge or the reuse of a free page rewrites the content of the cached page in place with {@link #setContent}, and
+ * the BTreeFile reads it through a {@link BTreeLeafPage} or {@link BTreeInternalPage} view of the type in its header.
+ * A view shares the content, the before image and the dirty state of the cached page.
+ *
+ * @see BTreeFile
+ */
+public abstract class BTreePage implements Page {
+
+	public static final int LEAF = 1;
+	public static final int INTERNAL = 2;
+	public static final int FREE = 3;
+
+	/**
+	 * The number of bytes of the header of every page.
+	 */
+	static final int HEADER_SIZE = 20;
+
+	static final int TYPE = 0;
+	static final int COUNT = 4;
+	static final int PREV = 8;
+	static final int NEXT = 12;
+	static final int FREE_LIST = 16;
+
+	/**
+	 * The ID of this {@code BTreePage}.
+	 */
+	final HeapPageId pid;
+
+	/**
+	 * The {@code TupleDesc} of the {@code BTreeFile} that this page belongs to.
+	 */
+	final TupleDesc td;
+
+	/**
+	 * The index of the key field of the {@code BTreeFile}.
+	 */
+	final int keyField;
+
+	/**
+	 * The content of this {@code BTreePage}.
+	 */
+	final byte[] data;
+
+	/**
+	 * A buffer that wraps {@code data}.
+	 */
+	final ByteBuffer buffer;
+
+	/**
+	 * The page whose content this {@code BTreePage} shares: itself, unless it is a view of another page.
+	 */
+	final BTreePage owner;
+
+	/**
+	 * The previous image of this {@code BTreePage}, or {@code null} if this {@code BTreePage} has not been modified
+	 * since its before image was last set.
+	 */
+	private volatile byte[] oldData;
+
+	/**
+	 * The transaction that last dirtied this {@code BTreePage}, or {@code null} if this {@code BTreePage} is clean.
+	 */
+	private TransactionId dirtier;
+
+	/**
+	 * Whether this {@code BTreePage} has been modified since it was last written to disk.
+	 */
+	private boolean dirty;
+
+	BTreePage(HeapPageId id, byte[] data) {
+		this.pid = id;
+		this.td = Database.getCatalog().getTupleDesc(id.getTableId());
+		DbFile file = Database.getCatalog().getDbFile(id.getTableId());
+		this.keyField = ((BTreeFile) file).keyField();
+		this.data = data;
+		this.buffer = ByteBuffer.wrap(data);
+		this.owner = this;
+	}
+
+	/**
+	 * Creates a view of the specified page, which shares its content and state.
+	 */
+	BTreePage(BTreePage page) {
+		this.pid = page.pid;
+		this.td = page.td;
+		this.keyField = page.keyField;
+		this.data = page.data;
+		this.buffer = page.buffer;
+		this.owner = page.owner;
+	}
+
+	/**
+	 * Returns a page of the type in the header of the specified content.
+	 */
+	static BTreePage create(HeapPageId id, byte[] data) {
+		if (ByteBuffer.wrap(data).getInt(TYPE) == INTERNAL)
+			return new BTreeInternalPage(id, data);
+		return new BTreeLeafPage(id, data);
+	}
+
+	/**
+	 * Returns an empty page of the specified type with the specified header.
+	 */
+	static byte[] emptyPage(int type, int prev, int next) {
+		ByteBuffer b = ByteBuffer.allocate(BufferPool.PAGE_SIZE);
+		b.putInt(TYPE, type);
+		b.putInt(COUNT, 0);
+		b.putInt(PREV, prev);
+		b.putInt(NEXT, next);
+		b.putInt(FREE_LIST, -1);
+		return b.array();
+	}
+
+	/**
+	 * Compares two keys of the same type, as Field.compare would.
+	 *
+	 * @return a negative integer, zero, or a positive integer as a is less than, equal to, or greater than b.
+	 */
+	static int compare(Field a, Field b) {
+		if (a instanceof IntField) {
+			int x = ((IntField) a).getValue(), y = ((IntField) b).getValue();
+			return x < y ? -1 : (x == y ? 0 : 1);
+		}
+		return ((StringField) a).getValue().compareTo(((StringField) b).getValue());
+	}
+
+	/**
+	 * Writes the specified key at the specified location of a page, in Type.getLen bytes.
+	 */
+	static void writeKey(ByteBuffer content, int location, Field f) {
+		PaxPage.writeField(content, location, f);
+	}
+
+	/**
+	 * @return the ID of this {@code BTreePage}.
+	 */
+	public HeapPageId getId() {
+		return pid;
+	}
+
+	/**
+	 * Returns the type of this page, {@link #LEAF}, {@link #INTERNAL} or {@link #FREE}.
+	 */
+	public int getType() {
+		return buffer.getInt(TYPE);
+	}
+
+	/**
+	 * Returns the number of tuples of a leaf or of keys of an internal page.
+	 */
+	public int getCount() {
+		return buffer.getInt(COUNT);
+	}
+
+	/**
+	 * Returns the first free page of the file, or -1 if there is none; only kept on the root.
+	 */
+	int getFreeList() {
+		return buffer.getInt(FREE_LIST);
+	}
+
+	/**
+	 * Sets the first free page of the file; only called on the root.
+	 */
+	void setFreeList(int pageNo) {
+		copyBeforeImage();
+		buffer.putInt(FREE_LIST, pageNo);
+	}
+
+	/**
+	 * Returns the next page of a leaf or a free page, or -1 if there is none.
+	 */
+	public int getNext() {
+		return buffer.getInt(NEXT);
+	}
+
+	/**
+	 * Returns the previous page of a leaf, or -1 if there is none.
+	 */
+	public int getPrev() {
+		return buffer.getInt(PREV);
+	}
+
+	void setPrev(int pageNo) {
+		copyBeforeImage();
+		buffer.putInt(PREV, pageNo);
+	}
+
+	/**
+	 * Replaces the content of this {@code BTreePage}, which may change its type, after saving its before image.
+	 */
+	void setContent(byte[] content) {
+		copyBeforeImage();
+		System.arraycopy(content, 0, data, 0, data.length);
+	}
+
+	public void markDirty(boolean dirty, TransactionId tid) {
+		if (owner != this) {
+			owner.markDirty(dirty, tid);
+			return;
+		}
+		this.dirty = dirty;
+		this.dirtier = dirty ? tid : null;
+	}
+
+	public TransactionId isDirty() {
+		if (owner != this)
+			return owner.isDirty();
+		return dirty ? dirtier : null;
+	}
+
+	public byte[] getPageData() {
+		return data;
+	}
+
+	/**
+	 * Returns the bytes of the before image of this {@code BTreePage}.
+	 */
+	byte[] beforeImageData() {
+		byte[] before = owner.oldData;
+		return before != null ? before : data.clone();
+	}
+
+	public BTreePage getBeforeImage() {
+		return create(pid, beforeImageData());
+	}
+
+	public void setBeforeImage() {
+		owner.oldData = null;
+	}
+
+	/**
+	 * Saves the before image of this {@code BTreePage}, if it has not been saved since it was last set, before the
+	 * first write to this {@code BTreePage}.
+	 */
+	void copyBeforeImage() {
+		synchronized (owner) {
+			if (owner.oldData == null)
+				owner.oldData = data.clone();
+		}
+	}
+}
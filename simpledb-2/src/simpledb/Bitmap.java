@@ -0,0 +1,509 @@
+package simpledb;
+
+import java.io.*;
+
+/**
+ * Bitmap is a compressed set of non-negative ints in the style of a roaring bitmap: the ints are split by their high
+ * 16 bits into containers, each holding the low 16 bits of its ints either as a sorted array, while it has at most
+ * {@link #ARRAY_MAX} of them, or as a bitmap of 2^16 bits. Sparse containers thus take 2 bytes per int and dense ones
+ * at most 8 KB, and intersections and unions work a container at a time.
+ * <p>
+ * {@link #and} and {@link #or} return new bitmaps that share nothing with their operands.
+ *
+ * @see BitmapIndex
+ */
+public class Bitmap {
+
+	/**
+	 * The most ints that a container holds as a sorted array.
+	 */
+	static final int ARRAY_MAX = 4096;
+
+	/**
+	 * The ints of one value of their high 16 bits: in values, sorted, if bits is null, and otherwise in bits.
+	 */
+	private static final class Container {
+		char[] values;
+		long[] bits;
+		int cardinality;
+
+		Container(char[] values, int cardinality) {
+			this.values = values;
+			this.cardinality = cardinality;
+		}
+
+		Container(long[] bits, int cardinality) {
+			this.bits = bits;
+			this.cardinality = cardinality;
+		}
+
+		boolean contains(char low) {
+			if (bits != null)
+				return (bits[low >>> 6] & (1L << low)) != 0;
+			return search(low) >= 0;
+		}
+
+		/**
+		 * Returns the index of the specified value in values, or -(insertion point) - 1 if it is not there.
+		 */
+		int search(char low) {
+			int lo = 0, hi = cardinality - 1;
+			while (lo <= hi) {
+				int mid = (lo + hi) >>> 1;
+				if (values[mid] < low)
+					lo = mid + 1;
+				else if (values[mid] > low)
+					hi = mid - 1;
+				else
+					return mid;
+			}
+			return -(lo + 1);
+		}
+
+		/**
+		 * Adds the specified value and returns whether it was not there.
+		 */
+		boolean add(char low) {
+			if (bits != null) {
+				long bit = 1L << low;
+				if ((bits[low >>> 6] & bit) != 0)
+					return false;
+				bits[low >>> 6] |= bit;
+				cardinality++;
+				return true;
+			}
+			int i = search(low);
+			if (i >= 0)
+				return false;
+			i = -i - 1;
+			if (cardinality == ARRAY_MAX) {
+				toBits();
+				return add(low);
+			}
+			if (cardinality == values.length) {
+				char[] grown = new char[Math.min(ARRAY_MAX, Math.max(4, 2 * cardinality))];
+				System.arraycopy(values, 0, grown, 0, cardinality);
+				values = grown;
+			}
+			System.arraycopy(values, i, values, i + 1, cardinality - i);
+			values[i] = low;
+			cardinality++;
+			return true;
+		}
+
+		/**
+		 * Removes the specified value and returns whether it was there.
+		 */
+		boolean remove(char low) {
+			if (bits != null) {
+				long bit = 1L << low;
+				if ((bits[low >>> 6] & bit) == 0)
+					return false;
+				bits[low >>> 6] &= ~bit;
+				if (--cardinality <= ARRAY_MAX)
+					toValues();
+				return true;
+			}
+			int i = search(low);
+			if (i < 0)
+				return false;
+			System.arraycopy(values, i + 1, values, i, cardinality - i - 1);
+			cardinality--;
+			return true;
+		}
+
+		void toBits() {
+			long[] b = new long[1024];
+			for (int i = 0; i < cardinality; i++)
+				b[values[i] >>> 6] |= 1L << values[i];
+			bits = b;
+			values = null;
+		}
+
+		void toValues() {
+			char[] v = new char[cardinality];
+			int n = 0;
+			for (int w = 0; w < bits.length; w++)
+				for (long word = bits[w]; word != 0; word &= word - 1)
+					v[n++] = (char) ((w << 6) + Long.numberOfTrailingZeros(word));
+			values = v;
+			bits = null;
+		}
+
+		Container copy() {
+			if (bits != null)
+				return new Container(bits.clone(), cardinality);
+			char[] v = new char[cardinality];
+			System.arraycopy(values, 0, v, 0, cardinality);
+			return new Container(v, cardinality);
+		}
+
+		/**
+		 * Returns the values of both containers, or null if there are none.
+		 */
+		Container and(Container o) {
+			if (bits != null && o.bits != null) {
+				long[] b = new long[1024];
+				int n = 0;
+				for (int w = 0; w < b.length; w++) {
+					b[w] = bits[w] & o.bits[w];
+					n += Long.bitCount(b[w]);
+				}
+				if (n == 0)
+					return null;
+				Container c = new Container(b, n);
+				if (n <= ARRAY_MAX)
+					c.toValues();
+				return c;
+			}
+			if (bits != null)
+				return o.and(this);
+			char[] v = new char[cardinality];
+			int n = 0;
+			if (o.bits != null) {
+				for (int i = 0; i < cardinality; i++)
+					if (o.contains(values[i]))
+						v[n++] = values[i];
+			} else {
+				for (int i = 0, j = 0; i < cardinality && j < o.cardinality;) {
+					if (values[i] < o.values[j])
+						i++;
+					else if (values[i] > o.values[j])
+						j++;
+					else {
+						v[n++] = values[i];
+						i++;
+						j++;
+					}
+				}
+			}
+			return n == 0 ? null : new Container(v, n);
+		}
+
+		/**
+		 * Returns the number of values of both containers.
+		 */
+		int andCardinality(Container o) {
+			int n = 0;
+			if (bits != null && o.bits != null) {
+				for (int w = 0; w < bits.length; w++)
+					n += Long.bitCount(bits[w] & o.bits[w]);
+			} else if (bits != null) {
+				return o.andCardinality(this);
+			} else if (o.bits != null) {
+				for (int i = 0; i < cardinality; i++)
+					if (o.contains(values[i]))
+						n++;
+			} else {
+				for (int i = 0, j = 0; i < cardinality && j < o.cardinality;) {
+					if (values[i] < o.values[j])
+						i++;
+					else if (values[i] > o.values[j])
+						j++;
+					else {
+						n++;
+						i++;
+						j++;
+					}
+				}
+			}
+			return n;
+		}
+
+		/**
+		 * Returns the values of either container.
+		 */
+		Container or(Container o) {
+			if (bits == null && o.bits == null && cardinality + o.cardinality <= ARRAY_MAX) {
+				char[] v = new char[cardinality + o.cardinality];
+				int n = 0, i = 0, j = 0;
+				while (i < cardinality && j < o.cardinality) {
+					if (values[i] < o.values[j])
+						v[n++] = values[i++];
+					else if (values[i] > o.values[j])
+						v[n++] = o.values[j++];
+					else {
+						v[n++] = values[i++];
+						j++;
+					}
+				}
+				while (i < cardinality)
+					v[n++] = values[i++];
+				while (j < o.cardinality)
+					v[n++] = o.values[j++];
+				return new Container(v, n);
+			}
+			long[] b = new long[1024];
+			for (Container c : new Container[] { this, o }) {
+				if (c.bits != null) {
+					for (int w = 0; w < b.length; w++)
+						b[w] |= c.bits[w];
+				} else {
+					for (int i = 0; i < c.cardinality; i++)
+						b[c.values[i] >>> 6] |= 1L << c.values[i];
+				}
+			}
+			int n = 0;
+			for (int w = 0; w < b.length; w++)
+				n += Long.bitCount(b[w]);
+			Container c = new Container(b, n);
+			if (n <= ARRAY_MAX)
+				c.toValues();
+			return c;
+		}
+	}
+
+	/**
+	 * The high 16 bits of the ints of each container, in increasing order.
+	 */
+	private int[] keys = new int[4];
+
+	private Container[] containers = new Container[4];
+
+	/**
+	 * The number of containers.
+	 */
+	private int size;
+
+	/**
+	 * Creates an empty bitmap.
+	 */
+	public Bitmap() {
+	}
+
+	/**
+	 * Returns the index of the container of the specified high bits, or -(insertion point) - 1 if there is none.
+	 */
+	private int find(int key) {
+		int lo = 0, hi = size - 1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			if (keys[mid] < key)
+				lo = mid + 1;
+			else if (keys[mid] > key)
+				hi = mid - 1;
+			else
+				return mid;
+		}
+		return -(lo + 1);
+	}
+
+	/**
+	 * Appends a container, whose key must be greater than those of all containers.
+	 */
+	private void append(int key, Container c) {
+		if (size == keys.length) {
+			int[] k = new int[2 * size];
+			Container[] cs = new Container[2 * size];
+			System.arraycopy(keys, 0, k, 0, size);
+			System.arraycopy(containers, 0, cs, 0, size);
+			keys = k;
+			containers = cs;
+		}
+		keys[size] = key;
+		containers[size++] = c;
+	}
+
+	/**
+	 * Adds the specified int, which must not be negative.
+	 *
+	 * @return true if it was not in this bitmap.
+	 */
+	public boolean add(int x) {
+		int key = x >>> 16;
+		int i = find(key);
+		if (i < 0) {
+			i = -i - 1;
+			append(0, null);
+			System.arraycopy(keys, i, keys, i + 1, size - 1 - i);
+			System.arraycopy(containers, i, containers, i + 1, size - 1 - i);
+			keys[i] = key;
+			containers[i] = new Container(new char[4], 0);
+		}
+		return containers[i].add((char) x);
+	}
+
+	/**
+	 * Removes the specified int.
+	 *
+	 * @return true if it was in this bitmap.
+	 */
+	public boolean remove(int x) {
+		int i = find(x >>> 16);
+		if (i < 0 || !containers[i].remove((char) x))
+			return false;
+		if (containers[i].cardinality == 0) {
+			System.arraycopy(keys, i + 1, keys, i, size - 1 - i);
+			System.arraycopy(containers, i + 1, containers, i, size - 1 - i);
+			containers[--size] = null;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns whether the specified int is in this bitmap.
+	 */
+	public boolean contains(int x) {
+		int i = find(x >>> 16);
+		return i >= 0 && containers[i].contains((char) x);
+	}
+
+	/**
+	 * Returns the number of ints in this bitmap.
+	 */
+	public int cardinality() {
+		int n = 0;
+		for (int i = 0; i < size; i++)
+			n += containers[i].cardinality;
+		return n;
+	}
+
+	/**
+	 * Returns the ints that are in both this bitmap and the specified one.
+	 */
+	public Bitmap and(Bitmap o) {
+		Bitmap result = new Bitmap();
+		for (int i = 0, j = 0; i < size && j < o.size;) {
+			if (keys[i] < o.keys[j])
+				i++;
+			else if (keys[i] > o.keys[j])
+				j++;
+			else {
+				Container c = containers[i].and(o.containers[j]);
+				if (c != null)
+					result.append(keys[i], c);
+				i++;
+				j++;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the number of ints that are in both this bitmap and the specified one, without building their
+	 * intersection.
+	 */
+	public int andCardinality(Bitmap o) {
+		int n = 0;
+		for (int i = 0, j = 0; i < size && j < o.size;) {
+			if (keys[i] < o.keys[j])
+				i++;
+			else if (keys[i] > o.keys[j])
+				j++;
+			else
+				n += containers[i++].andCardinality(o.containers[j++]);
+		}
+		return n;
+	}
+
+	/**
+	 * Returns the ints that are in this bitmap or in the specified one.
+	 */
+	public Bitmap or(Bitmap o) {
+		Bitmap result = new Bitmap();
+		int i = 0, j = 0;
+		while (i < size || j < o.size) {
+			if (j == o.size || (i < size && keys[i] < o.keys[j])) {
+				result.append(keys[i], containers[i].copy());
+				i++;
+			} else if (i == size || keys[i] > o.keys[j]) {
+				result.append(o.keys[j], o.containers[j].copy());
+				j++;
+			} else {
+				result.append(keys[i], containers[i].or(o.containers[j]));
+				i++;
+				j++;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns a cursor over the ints of this bitmap in increasing order. The bitmap must not change while the cursor
+	 * is used.
+	 */
+	public Cursor cursor() {
+		return new Cursor();
+	}
+
+	/**
+	 * A Cursor returns the ints of a bitmap one at a time, in increasing order.
+	 */
+	public class Cursor {
+
+		/**
+		 * The index of the current container, and the index in it of the next value: a position in the values of an
+		 * array container, or the next bit of a bitmap container.
+		 */
+		private int container, position;
+
+		/**
+		 * Returns the next int, or -1 if there is none.
+		 */
+		public int next() {
+			while (container < size) {
+				Container c = containers[container];
+				int high = keys[container] << 16;
+				if (c.bits == null) {
+					if (position < c.cardinality)
+						return high | c.values[position++];
+				} else {
+					for (int w = position >>> 6; w < c.bits.length; w++) {
+						long word = w == position >>> 6 ? c.bits[w] & (-1L << position) : c.bits[w];
+						if (word != 0) {
+							int low = (w << 6) + Long.numberOfTrailingZeros(word);
+							position = low + 1;
+							return high | low;
+						}
+					}
+				}
+				container++;
+				position = 0;
+			}
+			return -1;
+		}
+	}
+
+	/**
+	 * Writes this bitmap to the specified stream, in a form that {@link #read} reads back.
+	 */
+	public void write(DataOutputStream out) throws IOException {
+		out.writeInt(size);
+		for (int i = 0; i < size; i++) {
+			Container c = containers[i];
+			out.writeInt(keys[i]);
+			out.writeInt(c.cardinality);
+			if (c.bits != null) {
+				for (long word : c.bits)
+					out.writeLong(word);
+			} else {
+				for (int j = 0; j < c.cardinality; j++)
+					out.writeChar(c.values[j]);
+			}
+		}
+	}
+
+	/**
+	 * Reads a bitmap written by {@link #write}.
+	 */
+	public static Bitmap read(DataInputStream in) throws IOException {
+		Bitmap b = new Bitmap();
+		int n = in.readInt();
+		for (int i = 0; i < n; i++) {
+			int key = in.readInt();
+			int cardinality = in.readInt();
+			if (cardinality > ARRAY_MAX) {
+				long[] bits = new long[1024];
+				for (int w = 0; w < bits.length; w++)
+					bits[w] = in.readLong();
+				b.append(key, new Container(bits, cardinality));
+			} else {
+				char[] values = new char[cardinality];
+				for (int j = 0; j < cardinality; j++)
+					values[j] = in.readChar();
+				b.append(key, new Container(values, cardinality));
+			}
+		}
+		return b;
+	}
+}
@@ -0,0 +1,97 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * BitmapCount computes a COUNT aggregate from bitmap indexes, without
+ * reading the tuples: the count is the cardinality of the bitmap of a
+ * {@link BitmapScan}, and the count of a group is the cardinality of its
+ * intersection with the bitmap of the group value in a {@link BitmapIndex}
+ * on the grouping field. It returns the same tuples as an Aggregate that
+ * counts over the scan, with the groups in no particular order.
+ */
+public class BitmapCount extends AbstractDbIterator {
+
+    private final BitmapScan child;
+
+    private final int gfield;
+
+    private final TupleDesc td;
+
+    /** The results, computed when this operator is opened. */
+    private Iterator<Tuple> results;
+
+    /**
+     * Constructor.
+     *
+     * @param child the scan whose tuples are counted
+     * @param afield the counted field
+     * @param gfield the field to group by, which must have a bitmap index,
+     *   or Aggregator.NO_GROUPING
+     * @throws IllegalArgumentException if the grouping field has no bitmap
+     *   index.
+     */
+    public BitmapCount(BitmapScan child, int afield, int gfield) {
+        if (!canGroup(child, gfield))
+            throw new IllegalArgumentException("field " + gfield + " has no bitmap index");
+        this.child = child;
+        this.gfield = gfield;
+        TupleDesc ctd = child.getTupleDesc();
+        if (gfield == Aggregator.NO_GROUPING)
+            td = new TupleDesc(new Type[] { Type.INT_TYPE }, new String[] { ctd.getFieldName(afield) });
+        else
+            td = new TupleDesc(new Type[] { ctd.getType(gfield), Type.INT_TYPE }, new String[] {
+                    ctd.getFieldName(gfield), ctd.getFieldName(afield) });
+    }
+
+    /**
+     * Returns whether the tuples of the specified scan can be counted in
+     * groups of the specified field: if there is no grouping, or the field
+     * has a bitmap index.
+     */
+    public static boolean canGroup(BitmapScan child, int gfield) {
+        return gfield == Aggregator.NO_GROUPING
+                || Database.getCatalog().getBitmapIndex(child.tableid, gfield) != null;
+    }
+
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    public void open()
+        throws DbException, NoSuchElementException, TransactionAbortedException {
+        Bitmap rows = child.getRows();
+        ArrayList<Tuple> counts = new ArrayList<Tuple>();
+        if (gfield == Aggregator.NO_GROUPING) {
+            Tuple t = new Tuple(td);
+            t.setField(0, new IntField(rows.cardinality()));
+            counts.add(t);
+        } else {
+            BitmapIndex index = Database.getCatalog().getBitmapIndex(child.tableid, gfield);
+            for (Field value : index.values()) {
+                int n = index.count(value, rows);
+                if (n > 0) {
+                    Tuple t = new Tuple(td);
+                    t.setField(0, value);
+                    t.setField(1, new IntField(n));
+                    counts.add(t);
+                }
+            }
+        }
+        results = counts.iterator();
+    }
+
+    protected Tuple readNext() throws DbException, TransactionAbortedException {
+        return results != null && results.hasNext() ? results.next() : null;
+    }
+
+    public void close() {
+        super.close();
+        results = null;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        close();
+        open();
+    }
+}
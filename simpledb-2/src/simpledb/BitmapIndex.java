@@ -0,0 +1,286 @@
+package simpledb;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * BitmapIndex is a secondary index on a field of a HeapFile with few distinct values: for every value, a
+ * {@link Bitmap} of the ordinals of the tuples that hold it. The ordinal of a tuple is its page number shifted left
+ * by enough bits for the tuple numbers of a page of the table, or-ed with its tuple number, so it maps back to its
+ * {@code RecordId} and the ordinals of the tuples of a page are adjacent. A predicate on the field is answered by the
+ * union of the bitmaps of the values that satisfy it, conjunctions and disjunctions of predicates by intersecting and
+ * uniting those, and counts by the cardinalities of the results, without reading the table.
+ * <p>
+ * The bitmaps are kept in memory, and saved next to the data file by {@link #close} together with the length and
+ * modification time of the data file, like a {@link ZoneMap}; an index whose saved copy is missing or does not match
+ * the data file is rebuilt from the table when it is loaded. The saved copy is deleted as soon as the index changes.
+ * <p>
+ * An index is registered with {@link Catalog#addBitmapIndex} and kept up to date by {@link BufferPool#insertTuple} and
+ * {@link BufferPool#deleteTuple}.
+ *
+ * @see BitmapScan
+ * @see BitmapCount
+ */
+public class BitmapIndex {
+
+	/**
+	 * The file that the index is saved to.
+	 */
+	private final File file;
+
+	/**
+	 * The indexed table.
+	 */
+	private final HeapFile table;
+
+	/**
+	 * The index of the indexed field.
+	 */
+	private final int keyField;
+
+	/**
+	 * The number of low bits of an ordinal that hold the tuple number.
+	 */
+	private final int slotBits;
+
+	/**
+	 * The ordinals of the tuples holding each value, or null if the index has not been loaded.
+	 */
+	private HashMap<Field, Bitmap> bitmaps;
+
+	/**
+	 * Whether the saved copy matches the bitmaps.
+	 */
+	private boolean saved;
+
+	/**
+	 * Constructs a BitmapIndex saved to the specified file; it is read or built by {@link #load}.
+	 *
+	 * @param f
+	 *            the file that the index is saved to.
+	 * @param table
+	 *            the indexed table.
+	 * @param keyField
+	 *            the index of the indexed field.
+	 */
+	public BitmapIndex(File f, HeapFile table, int keyField) {
+		this.file = f;
+		this.table = table;
+		this.keyField = keyField;
+		this.slotBits = slotBitsFor(table.getPageSize());
+	}
+
+	/**
+	 * Returns the file that this index is saved to.
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Returns the ID of the indexed table.
+	 */
+	public int getTableId() {
+		return table.getId();
+	}
+
+	/**
+	 * Returns the index of the indexed field.
+	 */
+	public int keyField() {
+		return keyField;
+	}
+
+	/**
+	 * Returns the number of low bits of an ordinal that hold the tuple number in a table with the specified page size:
+	 * enough for the entries of a page, which take at least 8 bytes each.
+	 */
+	static int slotBitsFor(int pageSize) {
+		return 32 - Integer.numberOfLeadingZeros(pageSize / 8);
+	}
+
+	/**
+	 * Returns the number of low bits of an ordinal that hold the tuple number in the specified table.
+	 */
+	static int slotBits(int tableId) {
+		DbFile file = Database.getCatalog().getDbFile(tableId);
+		return slotBitsFor(file instanceof HeapFile ? ((HeapFile) file).getPageSize() : BufferPool.PAGE_SIZE);
+	}
+
+	/**
+	 * Returns the ordinal of the tuple at the specified {@code RecordId}.
+	 */
+	public static int ordinal(RecordId rid) {
+		return ordinal(rid, slotBits(rid.getPageId().getTableId()));
+	}
+
+	private static int ordinal(RecordId rid, int slotBits) {
+		return (rid.getPageId().pageno() << slotBits) | rid.tupleno();
+	}
+
+	/**
+	 * Returns the {@code RecordId} of the tuple of the specified table with the specified ordinal.
+	 */
+	public static RecordId recordId(int tableId, int ordinal) {
+		return recordId(tableId, ordinal, slotBits(tableId));
+	}
+
+	/**
+	 * Returns the {@code RecordId} of the tuple of the specified table with the specified ordinal, given the number of
+	 * low bits of the ordinal that hold the tuple number, as returned by {@link #slotBits}.
+	 */
+	static RecordId recordId(int tableId, int ordinal, int slotBits) {
+		return new RecordId(new HeapPageId(tableId, ordinal >>> slotBits), ordinal & ((1 << slotBits) - 1));
+	}
+
+	/**
+	 * Reads this index from its file or, if the saved copy does not match the data file of the table, builds it from
+	 * the tuples of the table and saves it.
+	 */
+	public synchronized void load(TransactionId tid) throws DbException, IOException, TransactionAbortedException {
+		bitmaps = read();
+		if (bitmaps != null) {
+			saved = true;
+			return;
+		}
+		bitmaps = new HashMap<Field, Bitmap>();
+		DbFileIterator it = table.iterator(tid);
+		it.open();
+		try {
+			while (it.hasNext()) {
+				Tuple t = it.next();
+				insert(t.getField(keyField), t.getRecordId());
+			}
+		} finally {
+			it.close();
+		}
+		close();
+	}
+
+	/**
+	 * Reads the saved copy of this index, or returns null if it does not exist or does not match the data file.
+	 */
+	private HashMap<Field, Bitmap> read() throws IOException {
+		if (!file.exists())
+			return null;
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			File dataFile = table.getFile();
+			if (in.readInt() != keyField || in.readLong() != dataFile.length()
+					|| in.readLong() != dataFile.lastModified())
+				return null;
+			Type type = table.getTupleDesc().getType(keyField);
+			HashMap<Field, Bitmap> result = new HashMap<Field, Bitmap>();
+			for (int i = in.readInt(); i > 0; i--) {
+				Field value = type == Type.INT_TYPE ? new IntField(in.readInt()) : new StringField(in.readUTF(),
+						Type.STRING_LEN);
+				result.put(value, Bitmap.read(in));
+			}
+			return result;
+		} catch (EOFException e) {
+			return null;
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Saves this index to its file, if it has changed since it was last saved.
+	 */
+	public synchronized void close() throws IOException {
+		if (bitmaps == null || saved)
+			return;
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try {
+			out.writeInt(keyField);
+			out.writeLong(table.getFile().length());
+			out.writeLong(table.getFile().lastModified());
+			out.writeInt(bitmaps.size());
+			for (Map.Entry<Field, Bitmap> e : bitmaps.entrySet()) {
+				if (e.getKey() instanceof IntField)
+					out.writeInt(((IntField) e.getKey()).getValue());
+				else
+					out.writeUTF(((StringField) e.getKey()).getValue());
+				e.getValue().write(out);
+			}
+		} finally {
+			out.close();
+		}
+		saved = true;
+	}
+
+	/**
+	 * Deletes the saved copy of this index, which no longer matches it.
+	 */
+	private void changed() {
+		if (saved) {
+			file.delete();
+			saved = false;
+		}
+	}
+
+	/**
+	 * Adds the tuple at the specified {@code RecordId} to the bitmap of the specified value.
+	 */
+	public synchronized void insert(Field value, RecordId rid) {
+		changed();
+		Bitmap b = bitmaps.get(value);
+		if (b == null) {
+			b = new Bitmap();
+			bitmaps.put(value, b);
+		}
+		b.add(ordinal(rid, slotBits));
+	}
+
+	/**
+	 * Removes the tuple at the specified {@code RecordId} from the bitmap of the specified value; a value left with no
+	 * tuples is dropped.
+	 */
+	public synchronized void delete(Field value, RecordId rid) {
+		Bitmap b = bitmaps.get(value);
+		if (b == null || !b.remove(ordinal(rid, slotBits)))
+			return;
+		changed();
+		if (b.cardinality() == 0)
+			bitmaps.remove(value);
+	}
+
+	/**
+	 * Returns the distinct values of the indexed field.
+	 */
+	public synchronized Set<Field> values() {
+		return new HashSet<Field>(bitmaps.keySet());
+	}
+
+	/**
+	 * Returns the ordinals of the tuples whose indexed field satisfies the specified predicate on it.
+	 */
+	public synchronized Bitmap select(Predicate p) {
+		Bitmap result = new Bitmap();
+		for (Map.Entry<Field, Bitmap> e : bitmaps.entrySet())
+			if (e.getKey().compare(p.op, p.operand))
+				result = result.or(e.getValue());
+		return result;
+	}
+
+	/**
+	 * Returns the ordinals of all the tuples of the table.
+	 */
+	public synchronized Bitmap all() {
+		Bitmap result = new Bitmap();
+		for (Bitmap b : bitmaps.values())
+			result = result.or(b);
+		return result;
+	}
+
+	/**
+	 * Returns the number of the specified tuples whose indexed field holds the specified value.
+	 *
+	 * @param rows
+	 *            the ordinals of the tuples to count.
+	 */
+	public synchronized int count(Field value, Bitmap rows) {
+		Bitmap b = bitmaps.get(value);
+		return b == null ? 0 : b.andCardinality(rows);
+	}
+}
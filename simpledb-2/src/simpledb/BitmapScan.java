@@ -0,0 +1,172 @@
+package simpledb;
+import java.util.*;
+
+/**
+ * BitmapScan is an access method that reads the tuples of a table selected
+ * by predicates on fields with a {@link BitmapIndex}: the predicates are
+ * evaluated by intersecting and uniting the bitmaps of the indexes, and only
+ * the pages that hold a selected tuple are read, in page order. It returns
+ * the same tuples as the corresponding Filters over a SeqScan, in the same
+ * order.
+ */
+public class BitmapScan extends AbstractDbIterator {
+
+    final TransactionId tid;
+
+    final int tableid;
+
+    final TupleDesc td;
+
+    /** The number of low bits of an ordinal that hold the tuple number. */
+    final int slotBits;
+
+    /** The ordinals of the selected tuples. */
+    Bitmap rows;
+
+    /** The cursor over rows, or null if this scan is not open. */
+    Bitmap.Cursor cursor;
+
+    /** The page that holds the last tuple returned, or null. */
+    HeapPage page;
+
+    /**
+     * Creates a scan of the tuples of the specified table that satisfy the
+     * specified predicate.
+     *
+     * @param tid The transaction this scan is running as a part of.
+     * @param tableid the table to scan.
+     * @param tableAlias the alias of this table (needed by the parser).
+     * @param p a predicate for which {@link #canAnswer} is true.
+     * @throws IllegalArgumentException if the predicate cannot be answered
+     *   by a bitmap index of the table.
+     */
+    public BitmapScan(TransactionId tid, int tableid, String tableAlias, Predicate p) {
+        this(tid, tableid, select(tableid, p));
+    }
+
+    /**
+     * Creates a scan of all the tuples of the specified table, which must
+     * have a bitmap index on some field.
+     *
+     * @param tid The transaction this scan is running as a part of.
+     * @param tableid the table to scan.
+     * @param tableAlias the alias of this table (needed by the parser).
+     * @throws IllegalArgumentException if the table has no bitmap index.
+     */
+    public BitmapScan(TransactionId tid, int tableid, String tableAlias) {
+        this(tid, tableid, all(tableid));
+    }
+
+    private BitmapScan(TransactionId tid, int tableid, Bitmap rows) {
+        this.tid = tid;
+        this.tableid = tableid;
+        this.td = Database.getCatalog().getTupleDesc(tableid);
+        this.slotBits = BitmapIndex.slotBits(tableid);
+        this.rows = rows;
+    }
+
+    private static Bitmap select(int tableid, Predicate p) {
+        BitmapIndex index = Database.getCatalog().getBitmapIndex(tableid, p.field);
+        if (index == null)
+            throw new IllegalArgumentException("field " + p.field + " of table " + tableid + " has no bitmap index");
+        return index.select(p);
+    }
+
+    private static Bitmap all(int tableid) {
+        List<BitmapIndex> indexes = Database.getCatalog().getBitmapIndexes(tableid);
+        if (indexes.isEmpty())
+            throw new IllegalArgumentException("table " + tableid + " has no bitmap index");
+        return indexes.get(0).all();
+    }
+
+    /**
+     * Returns whether the specified table has a bitmap index on the field of
+     * the specified predicate.
+     *
+     * @param tableid the table to scan.
+     * @param p a predicate on the tuples of the table.
+     */
+    public static boolean canAnswer(int tableid, Predicate p) {
+        return Database.getCatalog().getBitmapIndex(tableid, p.field) != null;
+    }
+
+    /**
+     * Narrows this scan to the tuples that also satisfy the specified
+     * predicate, if {@link #canAnswer} is true for it; otherwise the caller
+     * must still apply it. Must be called before open.
+     *
+     * @param p a predicate on the tuples of this scan
+     * @return true if this scan now only returns tuples that satisfy p.
+     */
+    public boolean and(Predicate p) {
+        if (!canAnswer(tableid, p))
+            return false;
+        rows = rows.and(select(tableid, p));
+        return true;
+    }
+
+    /**
+     * Narrows this scan to the tuples that are also returned by the
+     * specified scan of the same table. Must be called before open.
+     */
+    public void and(BitmapScan other) {
+        rows = rows.and(other.rows);
+    }
+
+    /**
+     * Widens this scan to the tuples that satisfy the specified predicate,
+     * which must be one for which {@link #canAnswer} is true. Must be called
+     * before open.
+     *
+     * @param p a predicate on the tuples of this scan
+     */
+    public void or(Predicate p) {
+        rows = rows.or(select(tableid, p));
+    }
+
+    /**
+     * Returns the ordinals of the tuples that this scan returns.
+     *
+     * @see BitmapIndex#ordinal
+     */
+    public Bitmap getRows() {
+        return rows;
+    }
+
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    public void open()
+        throws DbException, TransactionAbortedException {
+        cursor = rows.cursor();
+        page = null;
+    }
+
+    protected Tuple readNext() throws DbException, TransactionAbortedException {
+        if (cursor == null)
+            return null;
+        int ordinal;
+        while ((ordinal = cursor.next()) >= 0) {
+            RecordId rid = BitmapIndex.recordId(tableid, ordinal, slotBits);
+            if (page == null || !page.getId().equals(rid.getPageId()))
+                page = (HeapPage) Database.getBufferPool().getPage(tid, rid.getPageId(), Permissions.READ_ONLY);
+            Tuple t = page.getTuple(rid.tupleno());
+            if (t != null)
+                return t;
+        }
+        return null;
+    }
+
+    public void close() {
+        super.close();
+        cursor = null;
+        page = null;
+    }
+
+    public void rewind()
+        throws DbException, TransactionAbortedException {
+        close();
+        open();
+    }
+}
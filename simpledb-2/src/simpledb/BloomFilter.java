@@ -0,0 +1,92 @@
+package simpledb;
+
+import java.io.*;
+
+/**
+ * BloomFilter is a compact summary of a set of fields that answers whether a field may be in the set: it never misses
+ * a field that was added, and wrongly answers yes for about 1% of the others when it has {@link #BITS_PER_KEY} bits per
+ * added field. Each field sets {@link #HASHES} bits, chosen by double hashing of its hash code.
+ *
+ * @see LsmRun
+ */
+public class BloomFilter {
+
+	/**
+	 * The number of bits per field that the filter is sized for.
+	 */
+	public static final int BITS_PER_KEY = 10;
+
+	/**
+	 * The number of bits that each field sets.
+	 */
+	public static final int HASHES = 7;
+
+	private final long[] bits;
+
+	/**
+	 * Creates an empty filter for the specified number of fields.
+	 */
+	public BloomFilter(int keys) {
+		this(new long[Math.max(1, (keys * BITS_PER_KEY + 63) / 64)]);
+	}
+
+	private BloomFilter(long[] bits) {
+		this.bits = bits;
+	}
+
+	/**
+	 * Returns the hash of a field that the bits are chosen from: its hash code, mixed so that consecutive ints are
+	 * spread over the filter.
+	 */
+	private static int hash(Field f) {
+		int h = f.hashCode() * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * Adds the specified field to the set.
+	 */
+	public void add(Field f) {
+		int h = hash(f);
+		int delta = (h >>> 17) | (h << 15);
+		long n = bits.length * 64L;
+		for (int i = 0; i < HASHES; i++, h += delta) {
+			int bit = (int) ((h & 0xffffffffL) % n);
+			bits[bit >>> 6] |= 1L << bit;
+		}
+	}
+
+	/**
+	 * Returns false if the specified field was not added to the set; true if it may have been.
+	 */
+	public boolean mightContain(Field f) {
+		int h = hash(f);
+		int delta = (h >>> 17) | (h << 15);
+		long n = bits.length * 64L;
+		for (int i = 0; i < HASHES; i++, h += delta) {
+			int bit = (int) ((h & 0xffffffffL) % n);
+			if ((bits[bit >>> 6] & (1L << bit)) == 0)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Writes this filter to the specified stream.
+	 */
+	public void write(DataOutputStream out) throws IOException {
+		out.writeInt(bits.length);
+		for (long word : bits)
+			out.writeLong(word);
+	}
+
+	/**
+	 * Reads a filter written by {@link #write}.
+	 */
+	public static BloomFilter read(DataInputStream in) throws IOException {
+		long[] bits = new long[in.readInt()];
+		for (int i = 0; i < bits.length; i++)
+			bits[i] = in.readLong();
+		return new BloomFilter(bits);
+	}
+}
@@ -2,6 +2,7 @@ package simpledb;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * BufferPool manages the reading and writing of pages into memory from disk. Access methods call into it to retrieve
@@ -15,6 +16,12 @@ public class BufferPool {
 	/** Bytes per page, including header. */
 	public static final int PAGE_SIZE = 4096;
 
+	/**
+	 * The largest page size of a HeapFile. Tables may use any power of two from PAGE_SIZE to MAX_PAGE_SIZE; the free
+	 * space of a page is recorded in a char, so larger pages would need a wider FreeSpaceMap.
+	 */
+	public static final int MAX_PAGE_SIZE = 65536;
+
 	/**
 	 * Default number of pages passed to the constructor. This is used by other classes. BufferPool should use the
 	 * numPages argument to the constructor instead.
@@ -22,24 +29,184 @@ public class BufferPool {
 	public static final int DEFAULT_PAGES = 50;
 
 	/**
-	 * The maximum number of pages in this buffer pool.
+	 * Default size, as a fraction of the pool, above which a table is scanned through a private {@link ScanRing}. A
+	 * table larger than the whole pool cannot stay cached anyway, so scanning it through the shared pool would only
+	 * evict other pages.
+	 */
+	public static final double DEFAULT_SCAN_THRESHOLD = 1.0;
+
+	/**
+	 * Default number of frames in a {@link ScanRing}.
+	 */
+	public static final int DEFAULT_RING_PAGES = 8;
+
+	/**
+	 * The number of frames that an off-heap buffer pool allocates beyond numPages, for pages that are read while the
+	 * pool is full and have not yet replaced an evicted page.
+	 */
+	public static final int SPARE_FRAMES = 16;
+
+	/**
+	 * The maximum number of pages in this buffer pool, counted in PAGE_SIZE units: a page of 64 KB takes the room of
+	 * 16 pages of 4 KB.
 	 */
 	protected int numPages;
 
 	/**
-	 * A Hashtable that associates PageIds with Pages.
+	 * The room taken by the cached pages, in PAGE_SIZE units.
+	 */
+	protected int usedFrames;
+
+	/**
+	 * A concurrent map that associates PageIds with Pages. Lookups on this map take no global lock, so cache hits from
+	 * different threads proceed in parallel.
+	 */
+	protected ConcurrentHashMap<PageId, Page> pages;
+
+	/**
+	 * Pages that are currently being read from disk. The first thread that misses on a page installs a task here;
+	 * concurrent requests for the same page wait on that task instead of issuing a second read.
+	 */
+	protected ConcurrentHashMap<PageId, FutureTask<Page>> loading;
+
+	/**
+	 * The policy that chooses which page to evict when this buffer pool is full.
+	 */
+	protected ReplacementPolicy policy;
+
+	/**
+	 * Tables with more pages than this fraction of numPages are scanned through a private ScanRing.
+	 */
+	protected double scanThreshold = DEFAULT_SCAN_THRESHOLD;
+
+	/**
+	 * The number of frames in each ScanRing.
+	 */
+	protected int ringPages = DEFAULT_RING_PAGES;
+
+	/**
+	 * The largest read-ahead window of a sequential scan, in pages, or 0 if scans do not prefetch.
+	 */
+	protected int readAheadPages = 0;
+
+	/**
+	 * Issues prefetch reads and counts prefetch hits and wasted prefetches.
 	 */
-	protected Hashtable<PageId, Page> pages;
+	protected Prefetcher prefetcher = new Prefetcher();
 
 	/**
-	 * Creates a BufferPool that caches up to numPages pages.
+	 * Pages that were prefetched into this buffer pool and have not been requested yet.
+	 */
+	protected ConcurrentHashMap<PageId, Boolean> prefetched = new ConcurrentHashMap<PageId, Boolean>();
+
+	/**
+	 * The off-heap frames that pages are read into, or null if pages are read into byte arrays on the heap.
+	 */
+	protected volatile FrameArena arena;
+
+	/**
+	 * The off-heap arenas for pages larger than PAGE_SIZE, by page size, created when the first such page is read.
+	 */
+	protected ConcurrentHashMap<Integer, FrameArena> largeArenas = new ConcurrentHashMap<Integer, FrameArena>();
+
+	/**
+	 * The frames of the arena that hold pages, by the ID of the page.
+	 */
+	protected ConcurrentHashMap<PageId, Integer> frames = new ConcurrentHashMap<PageId, Integer>();
+
+	/**
+	 * Creates a BufferPool that caches up to numPages pages and evicts pages with the CLOCK algorithm, which keeps cache
+	 * hits free of locking.
 	 * 
 	 * @param numPages
 	 *            maximum number of pages in this buffer pool.
 	 */
 	public BufferPool(int numPages) {
+		this(numPages, new ClockPolicy());
+	}
+
+	/**
+	 * Creates a BufferPool that caches up to numPages pages and evicts pages as chosen by the specified policy.
+	 * 
+	 * @param numPages
+	 *            maximum number of pages in this buffer pool.
+	 * @param policy
+	 *            the replacement policy of this buffer pool; it must not be shared with another buffer pool.
+	 */
+	public BufferPool(int numPages, ReplacementPolicy policy) {
 		this.numPages = numPages;
-		pages = new Hashtable<PageId, Page>();
+		this.policy = policy;
+		pages = new ConcurrentHashMap<PageId, Page>();
+		loading = new ConcurrentHashMap<PageId, FutureTask<Page>>();
+	}
+
+	/**
+	 * Makes this buffer pool read HeapFile pages into a preallocated arena of off-heap frames instead of byte arrays,
+	 * so that cached pages add almost nothing to the Java heap. A page is copied onto the heap only when it is modified
+	 * or evicted. Pages that are already cached are not moved. Pages are read into heap arrays as before if every
+	 * frame is in use, which only happens when more than SPARE_FRAMES misses are in progress at once.
+	 * <p>
+	 * Tables with larger pages get an arena of their own per page size, with as many frames as fit in the room of the
+	 * pool, so the pool never needs more frames of one size than its capacity allows.
+	 * 
+	 * @see FrameArena
+	 */
+	public synchronized void enableOffHeapFrames() {
+		if (arena == null)
+			arena = new FrameArena(numPages + SPARE_FRAMES);
+	}
+
+	/**
+	 * @return the frame arena of this buffer pool, or null if pages are kept on the heap
+	 */
+	public FrameArena getFrameArena() {
+		return arena;
+	}
+
+	/**
+	 * Returns the frame arena of this buffer pool for pages of the specified size, allocating it if needed.
+	 * 
+	 * @param pageSize
+	 *            a page size from PAGE_SIZE to MAX_PAGE_SIZE
+	 * @return the arena, or null if pages are kept on the heap
+	 */
+	public FrameArena getFrameArena(int pageSize) {
+		FrameArena a = arena;
+		if (a == null || pageSize == PAGE_SIZE)
+			return a;
+		FrameArena large = largeArenas.get(pageSize);
+		if (large == null) {
+			large = new FrameArena(numPages / (pageSize / PAGE_SIZE) + SPARE_FRAMES, pageSize);
+			FrameArena existing = largeArenas.putIfAbsent(pageSize, large);
+			if (existing != null)
+				large = existing;
+		}
+		return large;
+	}
+
+	/**
+	 * Returns whether HeapFiles may use pages of the specified size.
+	 * 
+	 * @param pageSize
+	 *            a size in bytes
+	 * @return true if pageSize is a power of two from PAGE_SIZE to MAX_PAGE_SIZE
+	 */
+	public static boolean isValidPageSize(int pageSize) {
+		return pageSize >= PAGE_SIZE && pageSize <= MAX_PAGE_SIZE && Integer.bitCount(pageSize) == 1;
+	}
+
+	/**
+	 * Returns the room that the specified page takes in this buffer pool, in PAGE_SIZE units.
+	 */
+	private static int framesOf(Page page) {
+		return page instanceof HeapPage ? Math.max(1, ((HeapPage) page).pageSize() / PAGE_SIZE) : 1;
+	}
+
+	/**
+	 * Returns the replacement policy of this buffer pool, which also reports its hit and miss counts.
+	 */
+	public ReplacementPolicy getReplacementPolicy() {
+		return policy;
 	}
 
 	/**
@@ -59,18 +226,297 @@ public class BufferPool {
 	 */
 	public Page getPage(TransactionId tid, PageId pid, Permissions perm) throws TransactionAbortedException,
 			DbException {
-		// some code goes here
-		if(pages.containsKey(pid)) return pages.get(pid);
-		else{
-			DbFile dbfile = Database.getCatalog().getDbFile(pid.getTableId());
-			Page page = dbfile.readPage(pid);
-			if(pages.size()<numPages){
-				pages.put(pid, page);
+		Page page = pages.get(pid);
+		if (page != null) {
+			recordHit(pid);
+			return page;
+		}
+		return loadPage(pid);
+	}
+
+	/**
+	 * Records a hit on a cached page, counting it as a prefetch hit if the page was prefetched.
+	 */
+	private void recordHit(PageId pid) {
+		if (!prefetched.isEmpty() && prefetched.remove(pid) != null)
+			prefetcher.recordHit();
+		else
+			policy.recordHit(pid);
+	}
+
+	/**
+	 * Retrieve the specified page on behalf of a sequential scan that uses the specified ring. If the page is cached in
+	 * this buffer pool, the cached page is returned. Otherwise a read-only request is served from the ring, reading the
+	 * page into the ring if needed, and the page is not added to this buffer pool.
+	 * 
+	 * @param tid
+	 *            the ID of the transaction requesting the page
+	 * @param pid
+	 *            the ID of the requested page
+	 * @param perm
+	 *            the requested permissions on the page
+	 * @param ring
+	 *            the ring of the scan, or null to use this buffer pool only
+	 * @see #scanRingFor
+	 */
+	public Page getPage(TransactionId tid, PageId pid, Permissions perm, ScanRing ring)
+			throws TransactionAbortedException, DbException {
+		if (ring == null || perm != Permissions.READ_ONLY)
+			return getPage(tid, pid, perm);
+		Page page = pages.get(pid);
+		if (page != null) {
+			recordHit(pid);
+			return page;
+		}
+		page = ring.get(pid);
+		if (page == null) {
+			page = Database.getCatalog().getDbFile(pid.getTableId()).readPage(pid);
+			ring.add(page);
+		}
+		return page;
+	}
+
+	/**
+	 * Returns a new ScanRing for a sequential scan over a table with the specified number of pages, or null if the
+	 * table is small enough to be scanned through this buffer pool.
+	 * 
+	 * @param tablePages
+	 *            the number of pages in the scanned table
+	 */
+	public ScanRing scanRingFor(int tablePages) {
+		if (tablePages <= scanThreshold * numPages)
+			return null;
+		return new ScanRing(Math.max(1, ringPages));
+	}
+
+	/**
+	 * Sets when sequential scans use a private ScanRing instead of this buffer pool.
+	 * 
+	 * @param threshold
+	 *            tables with more pages than this fraction of the pool size are scanned through a ring
+	 * @param ringPages
+	 *            the number of frames in each ring
+	 */
+	public void setScanStrategy(double threshold, int ringPages) {
+		this.scanThreshold = threshold;
+		this.ringPages = ringPages;
+	}
+
+	/**
+	 * Sets the size, as a fraction of the pool size, above which a table is scanned through a private ScanRing.
+	 * 
+	 * @param threshold
+	 *            the fraction, or Double.MAX_VALUE to scan every table through this buffer pool and its replacement
+	 *            policy
+	 */
+	public void setScanThreshold(double threshold) {
+		this.scanThreshold = threshold;
+	}
+
+	/**
+	 * @return the size, as a fraction of the pool size, above which a table is scanned through a private ScanRing
+	 */
+	public double getScanThreshold() {
+		return scanThreshold;
+	}
+
+	/**
+	 * Sets how far ahead sequential scans prefetch pages.
+	 * 
+	 * @param maxPages
+	 *            the largest read-ahead window, in pages, or 0 to disable prefetching
+	 */
+	public void setReadAhead(int maxPages) {
+		this.readAheadPages = maxPages;
+	}
+
+	/**
+	 * Returns a new ReadAhead for a sequential scan, or null if prefetching is disabled. The window is bounded so that
+	 * prefetched pages fit in the ring of the scan, or in a quarter of this buffer pool.
+	 * 
+	 * @param ring
+	 *            the ring of the scan, or null if the scan reads through this buffer pool
+	 */
+	public ReadAhead readAheadFor(ScanRing ring) {
+		if (readAheadPages <= 0)
+			return null;
+		int bound = ring != null ? ring.size() : Math.max(1, numPages / 4);
+		return new ReadAhead(Math.min(readAheadPages, bound));
+	}
+
+	/**
+	 * @return the Prefetcher of this buffer pool, which reports prefetch hits and wasted prefetches
+	 */
+	public Prefetcher getPrefetcher() {
+		return prefetcher;
+	}
+
+	/**
+	 * Starts reading the specified page into this buffer pool in the background, unless it is already cached or being
+	 * read. A request for the page made while it is being prefetched waits for the prefetch instead of reading it
+	 * again.
+	 * 
+	 * @param pid
+	 *            the ID of the page to prefetch
+	 */
+	public void prefetchPage(final PageId pid) {
+		if (pages.containsKey(pid) || loading.containsKey(pid))
+			return;
+		final FutureTask<Page> task = new FutureTask<Page>(new Callable<Page>() {
+			public Page call() throws Exception {
+				try {
+					Page page = readPage(pid);
+					addPage(page);
+					return page;
+				} catch (Exception e) {
+					prefetched.remove(pid);
+					throw e;
+				}
+			}
+		});
+		if (loading.putIfAbsent(pid, task) != null)
+			return;
+		if (pages.containsKey(pid)) {
+			loading.remove(pid, task);
+			return;
+		}
+		prefetched.put(pid, Boolean.TRUE);
+		policy.recordMiss(pid);
+		prefetcher.execute(new Runnable() {
+			public void run() {
+				try {
+					task.run();
+				} finally {
+					loading.remove(pid, task);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Reads the specified page into this buffer pool. If several threads miss on the same page at the same time, only
+	 * one of them reads it from disk and the others wait for that read to complete.
+	 * 
+	 * @param pid
+	 *            the ID of the requested page
+	 * @return the requested page
+	 * @throws DbException
+	 *             if the page cannot be read or no page can be evicted to make room for it
+	 */
+	protected Page loadPage(final PageId pid) throws DbException {
+		FutureTask<Page> task = new FutureTask<Page>(new Callable<Page>() {
+			public Page call() throws Exception {
+				return readPage(pid);
+			}
+		});
+		FutureTask<Page> existing = loading.putIfAbsent(pid, task);
+		if (existing == null) {
+			// this thread won the race; re-check the cache in case another thread finished loading in between
+			Page page = pages.get(pid);
+			if (page != null) {
+				loading.remove(pid, task);
 				return page;
 			}
-			else throw new DbException("Request exceeds the limitation.");
+			try {
+				policy.recordMiss(pid);
+				task.run();
+				page = waitFor(task);
+				addPage(page);
+				return page;
+			} finally {
+				loading.remove(pid, task);
+				// wake up any waiters if this thread gave up before reading the page
+				if (!task.isDone())
+					task.cancel(false);
+			}
+		}
+		Page page = waitFor(existing);
+		if (prefetched.remove(pid) != null)
+			prefetcher.recordHit();
+		return page;
+	}
+
+	/**
+	 * Reads the specified page from its DbFile, into a free frame of the arena if this buffer pool has one.
+	 */
+	private Page readPage(PageId pid) {
+		DbFile dbfile = Database.getCatalog().getDbFile(pid.getTableId());
+		FrameArena a = dbfile instanceof HeapFile ? getFrameArena(((HeapFile) dbfile).getPageSize()) : null;
+		int frame = a != null ? a.allocate() : -1;
+		if (frame < 0)
+			return dbfile.readPage(pid);
+		Page page;
+		try {
+			page = ((HeapFile) dbfile).readPage(pid, a.frame(frame));
+		} catch (RuntimeException e) {
+			a.release(frame);
+			throw e;
+		}
+		if (((HeapPage) page).view == a.frame(frame))
+			frames.put(pid, frame);
+		else
+			a.release(frame);
+		return page;
+	}
+
+	/**
+	 * Returns the frame of the specified page, if it has one, to the arena of its size. The page is first detached from the frame,
+	 * so that threads still holding the page read it again instead of whatever page is read into the frame next; if
+	 * the page is pinned, the frame is returned when the last pin is released.
+	 * This must be called before the page is removed from pages, so that a new copy of the page cannot be read into
+	 * another frame in the meantime.
+	 */
+	private void releaseFrame(Page page) {
+		Integer frame = frames.remove(page.getId());
+		if (frame != null)
+			((HeapPage) page).detach(getFrameArena(((HeapPage) page).pageSize()), frame);
+	}
+
+	/**
+	 * Adds the specified page to this buffer pool, evicting pages as needed to make room for it. A page larger than
+	 * PAGE_SIZE evicts as many pages as it needs, and is cached alone if it is larger than the whole pool.
+	 */
+	private synchronized void addPage(Page page) throws DbException {
+		int need = framesOf(page);
+		try {
+			while (!pages.isEmpty() && usedFrames + need > numPages)
+				evictPage();
+		} catch (DbException e) {
+			releaseFrame(page);
+			throw e;
+		}
+		Page old = pages.put(page.getId(), page);
+		if (old != null)
+			usedFrames -= framesOf(old);
+		usedFrames += need;
+		policy.pageAdded(page.getId());
+	}
+
+	/**
+	 * Waits for the specified load task to complete and returns the page it read.
+	 */
+	private Page waitFor(FutureTask<Page> task) throws DbException {
+		boolean interrupted = false;
+		try {
+			while (true) {
+				try {
+					return task.get();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				} catch (CancellationException e) {
+					throw new DbException("page load was abandoned");
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof DbException)
+						throw (DbException) e.getCause();
+					DbException dbe = new DbException("failed to read page: " + e.getCause());
+					dbe.initCause(e.getCause());
+					throw dbe;
+				}
+			}
+		} finally {
+			if (interrupted)
+				Thread.currentThread().interrupt();
 		}
-        //throw new UnsupportedOperationException("Implement this");
 	}
 
 	/**
@@ -123,7 +569,8 @@ public class BufferPool {
 	 * added to(Lock acquisition is not needed for assignment2). May block if the lock cannot be acquired.
 	 * 
 	 * Marks any pages that were dirtied by the operation as dirty by calling their markDirty bit, and updates cached
-	 * versions of any pages that have been dirtied so that future requests see up-to-date pages.
+	 * versions of any pages that have been dirtied so that future requests see up-to-date pages. The hash and bitmap
+	 * indexes of the table get an entry for the tuple.
 	 * 
 	 * @param tid
 	 *            the transaction adding the tuple
@@ -134,8 +581,12 @@ public class BufferPool {
 	 */
 	public void insertTuple(TransactionId tid, int tableId, Tuple t) throws DbException, IOException,
 			TransactionAbortedException {
-		// some code goes here
-		// not necessary for assignment1
+		for (Page page : Database.getCatalog().getDbFile(tableId).addTuple(tid, t))
+			page.markDirty(true, tid);
+		for (HashIndex index : Database.getCatalog().getIndexes(tableId))
+			index.insert(tid, t.getField(index.keyField()), t.getRecordId());
+		for (BitmapIndex index : Database.getCatalog().getBitmapIndexes(tableId))
+			index.insert(t.getField(index.keyField()), t.getRecordId());
 	}
 
 	/**
@@ -144,7 +595,8 @@ public class BufferPool {
 	 * 
 	 * Marks any pages that were dirtied by the operation as dirty by calling their markDirty bit. Does not need to
 	 * update cached versions of any pages that have been dirtied, as it is not possible that a new page was created
-	 * during the deletion (note difference from addTuple).
+	 * during the deletion (note difference from addTuple). The entries of the tuple are deleted from the hash and
+	 * bitmap indexes of its table.
 	 * 
 	 * @param tid
 	 *            the transaction adding the tuple.
@@ -152,8 +604,17 @@ public class BufferPool {
 	 *            the tuple to add
 	 */
 	public void deleteTuple(TransactionId tid, Tuple t) throws DbException, TransactionAbortedException {
-		// some code goes here
-		// not necessary for assignment1
+		if (t.getRecordId() == null)
+			throw new DbException("the tuple is not stored in any table");
+		RecordId rid = t.getRecordId();
+		int tableId = rid.getPageId().getTableId();
+		Page modified = Database.getCatalog().getDbFile(tableId).deleteTuple(tid, t);
+		if (modified != null)
+			modified.markDirty(true, tid);
+		for (HashIndex index : Database.getCatalog().getIndexes(tableId))
+			index.delete(tid, t.getField(index.keyField()), rid);
+		for (BitmapIndex index : Database.getCatalog().getBitmapIndexes(tableId))
+			index.delete(t.getField(index.keyField()), rid);
 	}
 
 	/**
@@ -161,9 +622,8 @@ public class BufferPool {
 	 * simpledb if running in NO STEAL mode.
 	 */
 	public synchronized void flushAllPages() throws IOException {
-		// some code goes here
-		// not necessary for assignment1
-
+		for (PageId pid : pages.keySet())
+			flushPage(pid);
 	}
 
 	/**
@@ -171,8 +631,14 @@ public class BufferPool {
 	 * doesn't keep a rolled back page in its cache.
 	 */
 	public synchronized void discardPage(PageId pid) {
-		// some code goes here
-		// only necessary for assignment5
+		Page page = pages.get(pid);
+		if (page != null) {
+			releaseFrame(page);
+			pages.remove(pid);
+			usedFrames -= framesOf(page);
+			policy.pageRemoved(pid);
+		}
+		prefetched.remove(pid);
 	}
 
 	/**
@@ -182,24 +648,46 @@ public class BufferPool {
 	 *            an ID indicating the page to flush
 	 */
 	private synchronized void flushPage(PageId pid) throws IOException {
-		// some code goes here
-		// not necessary for assignment1
+		Page page = pages.get(pid);
+		if (page == null || page.isDirty() == null)
+			return;
+		Database.getCatalog().getDbFile(pid.getTableId()).writePage(page);
+		page.markDirty(false, null);
 	}
 
 	/**
 	 * Write all pages of the specified transaction to disk.
 	 */
 	public synchronized void flushPages(TransactionId tid) throws IOException {
-		// some code goes here
-		// not necessary for assignment1|assignment2|assignment3
+		for (Page page : pages.values()) {
+			TransactionId dirtier = page.isDirty();
+			if (dirtier != null && dirtier.equals(tid))
+				flushPage(page.getId());
+		}
 	}
 
 	/**
 	 * Discards a page from the buffer pool. Flushes the page to disk to ensure dirty pages are updated on disk.
 	 */
 	private synchronized void evictPage() throws DbException {
-		// some code goes here
-		// not necessary for assignment1
+		PageId victim = policy.chooseVictim();
+		if (victim == null)
+			throw new DbException("no page to evict");
+		try {
+			flushPage(victim);
+		} catch (IOException e) {
+			DbException dbe = new DbException("failed to flush evicted page " + victim.pageno());
+			dbe.initCause(e);
+			throw dbe;
+		}
+		Page page = pages.get(victim);
+		if (page != null) {
+			releaseFrame(page);
+			usedFrames -= framesOf(page);
+		}
+		pages.remove(victim);
+		if (prefetched.remove(victim) != null)
+			prefetcher.recordWaste();
 	}
 
 }
@@ -29,6 +29,16 @@ public class Catalog {
 	 */
 	HashMap<Integer, DbFile> tableID2dbFile = new HashMap<Integer, DbFile>();
 
+	/**
+	 * A map that associates the ID of each table with the hash indexes on its fields.
+	 */
+	HashMap<Integer, ArrayList<HashIndex>> tableID2indexes = new HashMap<Integer, ArrayList<HashIndex>>();
+
+	/**
+	 * A map that associates the ID of each table with the bitmap indexes on its fields.
+	 */
+	HashMap<Integer, ArrayList<BitmapIndex>> tableID2bitmaps = new HashMap<Integer, ArrayList<BitmapIndex>>();
+
 	/**
 	 * Constructor. Creates a new, empty catalog.
 	 */
@@ -52,6 +62,12 @@ public class Catalog {
 		name2tableID.put(name, tableID);
 		tableID2desc.put(tableID, file.getTupleDesc());
 		tableID2dbFile.put(tableID, file);
+		if (file instanceof ClusteredFile) {
+			// the pages of the delta of a clustered table are read and written through the table
+			int deltaID = ((ClusteredFile) file).deltaId();
+			tableID2desc.put(deltaID, file.getTupleDesc());
+			tableID2dbFile.put(deltaID, file);
+		}
 	}
 
 	/**
@@ -68,6 +84,98 @@ public class Catalog {
 		addTable(file, name, "");
 	}
 
+	/**
+	 * Add a hash index on a field of a table that is already in the catalog. The index is registered under its own ID,
+	 * so that its pages can be read through the BufferPool, and from then on BufferPool.insertTuple and deleteTuple
+	 * keep it up to date. An index whose file is empty is first filled from the tuples of the table.
+	 * 
+	 * @param index
+	 *            the index to add
+	 * @throws IllegalArgumentException
+	 *             if the table is stored in a ClusteredFile
+	 */
+	public void addIndex(HashIndex index) {
+		if (tableID2dbFile.get(index.getTableId()) instanceof ClusteredFile)
+			throw new IllegalArgumentException("the tuples of a clustered table move when it is merged");
+		tableID2desc.put(index.getId(), index.getTupleDesc());
+		tableID2dbFile.put(index.getId(), index);
+		ArrayList<HashIndex> indexes = tableID2indexes.get(index.getTableId());
+		if (indexes == null) {
+			indexes = new ArrayList<HashIndex>();
+			tableID2indexes.put(index.getTableId(), indexes);
+		}
+		indexes.add(index);
+		if (index.numPages() == 0) {
+			try {
+				index.build(new TransactionId());
+			} catch (Exception e) {
+				throw new RuntimeException("failed to build the index " + index.getFile().getName(), e);
+			}
+		}
+	}
+
+	/**
+	 * Returns the hash indexes on the fields of the specified table, which may be empty.
+	 */
+	public List<HashIndex> getIndexes(int tableid) {
+		ArrayList<HashIndex> indexes = tableID2indexes.get(tableid);
+		return indexes != null ? indexes : Collections.<HashIndex> emptyList();
+	}
+
+	/**
+	 * Returns the hash index on the specified field of the specified table, or null if there is none.
+	 */
+	public HashIndex getIndex(int tableid, int field) {
+		for (HashIndex index : getIndexes(tableid))
+			if (index.keyField() == field)
+				return index;
+		return null;
+	}
+
+	/**
+	 * Add a bitmap index on a field of a table that is already in the catalog. From then on BufferPool.insertTuple and
+	 * deleteTuple keep it up to date. The index is loaded from its file, or built from the tuples of the table if the
+	 * file does not match the table.
+	 * 
+	 * @param index
+	 *            the index to add
+	 * @throws IllegalArgumentException
+	 *             if the table is stored in a ClusteredFile
+	 */
+	public void addBitmapIndex(BitmapIndex index) {
+		if (tableID2dbFile.get(index.getTableId()) instanceof ClusteredFile)
+			throw new IllegalArgumentException("the tuples of a clustered table move when it is merged");
+		try {
+			index.load(new TransactionId());
+		} catch (Exception e) {
+			throw new RuntimeException("failed to load the index " + index.getFile().getName(), e);
+		}
+		ArrayList<BitmapIndex> indexes = tableID2bitmaps.get(index.getTableId());
+		if (indexes == null) {
+			indexes = new ArrayList<BitmapIndex>();
+			tableID2bitmaps.put(index.getTableId(), indexes);
+		}
+		indexes.add(index);
+	}
+
+	/**
+	 * Returns the bitmap indexes on the fields of the specified table, which may be empty.
+	 */
+	public List<BitmapIndex> getBitmapIndexes(int tableid) {
+		ArrayList<BitmapIndex> indexes = tableID2bitmaps.get(tableid);
+		return indexes != null ? indexes : Collections.<BitmapIndex> emptyList();
+	}
+
+	/**
+	 * Returns the bitmap index on the specified field of the specified table, or null if there is none.
+	 */
+	public BitmapIndex getBitmapIndex(int tableid, int field) {
+		for (BitmapIndex index : getBitmapIndexes(tableid))
+			if (index.keyField() == field)
+				return index;
+		return null;
+	}
+
 	/**
 	 * Return the id of the table with a specified name,
 	 * 
@@ -125,6 +233,8 @@ public class Catalog {
 		name2tableID.clear();
 		tableID2desc.clear();
 		tableID2dbFile.clear();
+		tableID2indexes.clear();
+		tableID2bitmaps.clear();
 	}
 
 	public String getPrimaryKey(int tableid) {
@@ -156,7 +266,8 @@ public class Catalog {
 			BufferedReader br = new BufferedReader(new FileReader(new File(catalogFile)));
 			try {
 				while ((line = br.readLine()) != null) {
-					// assume line is of the format name (field type, field type, ...)
+					// assume line is of the format name (field type [pk] [hash] [bitmap], ...) [storage words], where
+					// the storage words are described at parseStorage
 					String name = line.substring(0, line.indexOf("(")).trim();
 					// System.out.println("TABLE NAME: " + name);
 					String fields = line.substring(line.indexOf("(") + 1, line.indexOf(")")).trim();
@@ -164,6 +275,8 @@ public class Catalog {
 					ArrayList<String> names = new ArrayList<String>();
 					ArrayList<Type> types = new ArrayList<Type>();
 					String primaryKey = "";
+					ArrayList<Integer> hashed = new ArrayList<Integer>();
+					ArrayList<Integer> bitmapped = new ArrayList<Integer>();
 					for (String e : els) {
 						String[] els2 = e.trim().split(" ");
 						names.add(els2[0].trim());
@@ -175,11 +288,16 @@ public class Catalog {
 							System.out.println("Unknown type " + els2[1]);
 							System.exit(0);
 						}
-						if (els2.length == 3) {
-							if (els2[2].trim().equals("pk"))
+						// "hash" declares a HashIndex on the field, and "bitmap" a BitmapIndex
+						for (int i = 2; i < els2.length; i++) {
+							if (els2[i].trim().equals("pk"))
 								primaryKey = els2[0].trim();
+							else if (els2[i].trim().equals("hash"))
+								hashed.add(names.size() - 1);
+							else if (els2[i].trim().equals("bitmap"))
+								bitmapped.add(names.size() - 1);
 							else {
-								System.out.println("Unknown annotation " + els2[2]);
+								System.out.println("Unknown annotation " + els2[i]);
 								System.exit(0);
 							}
 						}
@@ -187,8 +305,53 @@ public class Catalog {
 					Type[] typeAr = types.toArray(new Type[0]);
 					String[] namesAr = names.toArray(new String[0]);
 					TupleDesc t = new TupleDesc(typeAr, namesAr);
-					HeapFile tabHf = new HeapFile(new File(name + ".dat"), t);
+					Storage storage;
+					try {
+						storage = parseStorage(line.substring(line.indexOf(")") + 1));
+					} catch (IllegalArgumentException e) {
+						System.out.println("Invalid storage of " + name + ": " + e.getMessage());
+						System.exit(0);
+						return;
+					}
+					boolean variableLength = "variable".equals(storage.layout);
+					boolean dictionaryEncoded = "dictionary".equals(storage.layout);
+					int pageSize = storage.pageSize;
+					String kind = storage.kind == null ? "" : storage.kind;
+					DbFile tabHf;
+					if (kind.equals("lsm"))
+						tabHf = new LsmFile(new File(name + ".dat"), t, primaryKey.equals("") ? 0 : names
+								.indexOf(primaryKey));
+					else if (kind.equals("clustered"))
+						tabHf = new ClusteredFile(new File(name + ".dat"), t, primaryKey.equals("") ? 0 : names
+								.indexOf(primaryKey), pageSize);
+					else if (kind.equals("btree"))
+						tabHf = new BTreeFile(new File(name + ".dat"), t, primaryKey.equals("") ? 0 : names
+								.indexOf(primaryKey));
+					else if (kind.equals("column"))
+						tabHf = new ColumnFile(new File(name + ".dat"), t);
+					else if (kind.equals("pax"))
+						tabHf = new PaxFile(new File(name + ".dat"), t);
+					else if (storage.codec != null)
+						tabHf = new CompressedHeapFile(new File(name + ".dat"), t, variableLength, dictionaryEncoded,
+								pageSize, storage.codec);
+					else if (storage.mapped)
+						tabHf = new MappedHeapFile(new File(name + ".dat"), t, variableLength, dictionaryEncoded,
+								pageSize);
+					else
+						tabHf = new HeapFile(new File(name + ".dat"), t, variableLength, dictionaryEncoded, pageSize);
+					if ((!hashed.isEmpty() || !bitmapped.isEmpty())
+							&& (!(tabHf instanceof HeapFile) || tabHf instanceof ClusteredFile)) {
+						System.out.println("Indexes need an unclustered heap file: " + name);
+						System.exit(0);
+						return;
+					}
 					addTable(tabHf, name, primaryKey);
+					for (int field : hashed)
+						addIndex(new HashIndex(new File(name + "." + names.get(field) + ".hash"), (HeapFile) tabHf,
+								field));
+					for (int field : bitmapped)
+						addBitmapIndex(new BitmapIndex(new File(name + "." + names.get(field) + ".bitmap"),
+								(HeapFile) tabHf, field));
 					System.out.println("Added table : " + name + " with schema " + t);
 				}
 			} finally {
@@ -202,4 +365,123 @@ public class Catalog {
 			System.exit(0);
 		}
 	}
+
+	/**
+	 * The storage of a table, as chosen by the words after its schema in the catalog file.
+	 */
+	static class Storage {
+
+		/**
+		 * "pax", "column", "btree", "clustered" or "lsm", or null for a heap file.
+		 */
+		String kind;
+
+		/**
+		 * "fixed", "variable" or "dictionary", or null if none was given.
+		 */
+		String layout;
+
+		boolean mapped;
+
+		PageCodec codec;
+
+		int pageSize = BufferPool.PAGE_SIZE;
+	}
+
+	/**
+	 * Parses the storage words of a table. A table is a heap file unless one of the kinds says otherwise:
+	 * <ul>
+	 * <li>"pax": a PaxFile, which stores each page column by column.</li>
+	 * <li>"column": a read-only ColumnFile, one file per column.</li>
+	 * <li>"btree": a BTreeFile sorted on the primary key, or on the first field if there is none.</li>
+	 * <li>"clustered": a ClusteredFile sorted on the same field.</li>
+	 * <li>"lsm": an LsmFile sorted on the same field.</li>
+	 * </ul>
+	 * The other words only apply to heap files, except where noted:
+	 * <ul>
+	 * <li>"fixed": pads strings to their full length; the default, and allowed for every kind.</li>
+	 * <li>"variable": stores strings at their actual length.</li>
+	 * <li>"dictionary": stores strings as codes of a per-table dictionary.</li>
+	 * <li>"mapped": reads the file through a memory mapping.</li>
+	 * <li>"lz" or "deflate": compresses the pages with that codec; not with "mapped".</li>
+	 * <li>"pagesize=N": pages of N bytes, or N KB if N ends in "k", instead of PAGE_SIZE; also for "clustered".</li>
+	 * </ul>
+	 *
+	 * @param words
+	 *            the words, separated by white space, in any case.
+	 * @return the storage.
+	 * @throws IllegalArgumentException
+	 *             if a word is unknown, two words conflict or a word does not apply to the kind of the table.
+	 */
+	static Storage parseStorage(String words) {
+		Storage storage = new Storage();
+		String pageSizeWord = null;
+		for (String word : words.trim().toLowerCase().split("\\s+")) {
+			if (word.equals(""))
+				continue;
+			if (word.equals("pax") || word.equals("column") || word.equals("btree") || word.equals("clustered")
+					|| word.equals("lsm"))
+				storage.kind = choose(storage.kind, word);
+			else if (word.equals("fixed") || word.equals("variable") || word.equals("dictionary"))
+				storage.layout = choose(storage.layout, word);
+			else if (word.equals("mapped"))
+				storage.mapped = true;
+			else if (CompressedHeapFile.codec(word) != null)
+				storage.codec = CompressedHeapFile.codec(choose(storage.codec == null ? null : storage.codec.name(),
+						word));
+			else if (word.startsWith("pagesize=")) {
+				int pageSize = parsePageSize(word.substring("pagesize=".length()));
+				if (!BufferPool.isValidPageSize(pageSize))
+					throw new IllegalArgumentException("invalid page size " + word);
+				if (pageSizeWord != null && pageSize != storage.pageSize)
+					choose(pageSizeWord, word);
+				pageSizeWord = word;
+				storage.pageSize = pageSize;
+			} else
+				throw new IllegalArgumentException("unknown storage " + word);
+		}
+		if (storage.mapped && storage.codec != null)
+			throw new IllegalArgumentException("mapped and " + storage.codec.name() + " cannot be combined");
+		if (storage.kind != null) {
+			if (storage.mapped)
+				throw new IllegalArgumentException("mapped does not apply to " + storage.kind);
+			if (storage.layout != null && !storage.layout.equals("fixed"))
+				throw new IllegalArgumentException(storage.layout + " does not apply to " + storage.kind);
+			if (storage.codec != null)
+				throw new IllegalArgumentException(storage.codec.name() + " does not apply to " + storage.kind);
+			if (pageSizeWord != null && !storage.kind.equals("clustered"))
+				throw new IllegalArgumentException(pageSizeWord + " does not apply to " + storage.kind);
+		}
+		return storage;
+	}
+
+	/**
+	 * Returns word, the second storage word of a group of exclusive words, if the first one is null or the same.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the words differ.
+	 */
+	private static String choose(String first, String word) {
+		if (first != null && !first.equals(word))
+			throw new IllegalArgumentException(first + " and " + word + " cannot be combined");
+		return word;
+	}
+
+	/**
+	 * Parses the value of a "pagesize=" storage word: a number of bytes, or of KB if it ends in "k".
+	 *
+	 * @return the page size, or -1 if the value is not a number
+	 */
+	private static int parsePageSize(String value) {
+		int unit = 1;
+		if (value.endsWith("k")) {
+			unit = 1024;
+			value = value.substring(0, value.length() - 1);
+		}
+		try {
+			return Integer.parseInt(value) * unit;
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
 }
@@ -0,0 +1,102 @@
+package simpledb;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * ClockPolicy approximates LRU with a reference bit per page. A hit only sets the bit of the page and takes no lock, so
+ * this policy keeps BufferPool hits free of contention. To choose a victim, a clock hand sweeps the resident pages,
+ * clearing set bits, and stops at the first page whose bit is already clear.
+ */
+public class ClockPolicy extends AbstractReplacementPolicy {
+
+	/**
+	 * A slot on the clock.
+	 */
+	private static class Frame {
+		PageId pid;
+
+		volatile boolean referenced;
+
+		/**
+		 * The index of this slot on the clock, so that removing a page does not search the clock.
+		 */
+		final int slot;
+
+		Frame(PageId pid, int slot) {
+			this.pid = pid;
+			this.slot = slot;
+		}
+	}
+
+	/**
+	 * The slots on the clock, in sweep order. A slot whose pid is null is free.
+	 */
+	private final ArrayList<Frame> clock = new ArrayList<Frame>();
+
+	/**
+	 * The slots of the resident pages.
+	 */
+	private final ConcurrentHashMap<PageId, Frame> frames = new ConcurrentHashMap<PageId, Frame>();
+
+	/**
+	 * The indices of free slots on the clock.
+	 */
+	private final LinkedList<Integer> free = new LinkedList<Integer>();
+
+	/**
+	 * The position of the clock hand.
+	 */
+	private int hand = 0;
+
+	protected void hit(PageId pid) {
+		Frame f = frames.get(pid);
+		if (f != null)
+			f.referenced = true;
+	}
+
+	public synchronized void pageAdded(PageId pid) {
+		if (frames.containsKey(pid))
+			return;
+		Frame f;
+		if (free.isEmpty()) {
+			f = new Frame(pid, clock.size());
+			clock.add(f);
+		} else {
+			f = clock.get(free.removeFirst());
+			f.pid = pid;
+			f.referenced = false;
+		}
+		frames.put(pid, f);
+	}
+
+	public synchronized void pageRemoved(PageId pid) {
+		Frame f = frames.remove(pid);
+		if (f != null) {
+			f.pid = null;
+			free.add(f.slot);
+		}
+	}
+
+	public synchronized PageId chooseVictim() {
+		if (frames.isEmpty())
+			return null;
+		while (true) {
+			if (hand >= clock.size())
+				hand = 0;
+			int slot = hand++;
+			Frame f = clock.get(slot);
+			if (f.pid == null)
+				continue;
+			if (f.referenced) {
+				f.referenced = false;
+				continue;
+			}
+			PageId victim = f.pid;
+			frames.remove(victim);
+			f.pid = null;
+			free.add(slot);
+			return victim;
+		}
+	}
+}
@@ -0,0 +1,885 @@
+package simpledb;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * ClusteredFile is a HeapFile whose pages are kept sorted on a cluster key: the tuples of each page are in key order,
+ * and every key on a page is at least as large as every key on the pages before it. Inserts do not disturb the order:
+ * they go to a small <em>delta</em>, an unsorted HeapFile next to the data file, and {@link #merge} folds the delta into
+ * the sorted pages by rewriting the file, which also drops the space left by deletes. A merge is started in the
+ * background whenever the delta reaches {@link #getMergePages} pages.
+ * <p>
+ * A scan returns the tuples in key order, merging the sorted pages with the sorted tuples of the delta, so an ORDER BY
+ * on the key needs no sort. The smallest key of each page (its <em>fence</em>) is kept in memory, so a scan of a range
+ * of keys starts at the first page that can hold the lowest key, found by binary search, and stops at the first key
+ * above the range. The fences are saved next to the data file together with its length and modification time, like a
+ * {@link ZoneMap}, and are rebuilt from the pages if the data file has changed since.
+ * <p>
+ * The pages of the delta are read and written through this file, which the Catalog registers under the ID of the
+ * delta as well as its own. Inserts and deletes are serialized on the file. A merge only holds the file to take a
+ * snapshot of the delta, to read each page of the sorted file and to swap the files at the end, so inserts, deletes
+ * and scans go on while it writes the merged file. The swap is skipped if a scan is open, because a merge moves every
+ * tuple; for the same reason a clustered table cannot have hash or bitmap indexes.
+ * <p>
+ * The swap replaces both the data file and the delta, whose pages that were not folded in move to its start. It
+ * first writes a swap record that names the number of folded delta pages and the lengths of the new files, so a swap
+ * that is interrupted is detected and finished when the file is opened again.
+ *
+ * @see IndexScan
+ */
+public class ClusteredFile extends HeapFile implements SortedFile {
+
+	/**
+	 * The default number of pages of the delta that start a merge.
+	 */
+	public static final int DEFAULT_MERGE_PAGES = 16;
+
+	/**
+	 * Runs the background merges of all clustered files, one at a time.
+	 */
+	private static final ExecutorService merger = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "simpledb-merge");
+			t.setDaemon(true);
+			return t;
+		}
+	});
+
+	/**
+	 * The index of the field that the tuples are sorted on.
+	 */
+	private final int keyField;
+
+	/**
+	 * The tuples inserted since the last merge.
+	 */
+	private final HeapFile delta;
+
+	/**
+	 * The smallest key of each page when it was written, or null if they have not been loaded; a page that was empty
+	 * has the fence of the page before it, and null if there is none.
+	 */
+	private Field[] fences;
+
+	/**
+	 * The number of scans of this file that are open.
+	 */
+	private int readers;
+
+	/**
+	 * The number of pages of the delta that start a merge, or 0 if merges are only started by {@link #merge}.
+	 */
+	private volatile int mergePages = DEFAULT_MERGE_PAGES;
+
+	/**
+	 * Whether a background merge has been started and has not finished.
+	 */
+	private boolean mergeScheduled;
+
+	/**
+	 * Whether a merge is running; the fields below describe it.
+	 */
+	private boolean merging;
+
+	/**
+	 * The number of pages of the delta that the running merge folds in; inserts go to later pages meanwhile.
+	 */
+	private int foldedPages;
+
+	/**
+	 * The number of pages of the sorted file that the running merge has read.
+	 */
+	private int basePagesRead;
+
+	/**
+	 * The tuples deleted during the running merge from pages that it had already read, which it deletes from the
+	 * merged file before the swap.
+	 */
+	private final ArrayList<Tuple> deletedDuringMerge = new ArrayList<Tuple>();
+
+	/**
+	 * Constructs a ClusteredFile backed by the specified file, and by a delta in the same file with ".delta" appended
+	 * to its name. An empty file is an empty table.
+	 *
+	 * @param f
+	 *            the file that stores the sorted pages, as written by {@link #merge} or by HeapFileEncoder from tuples
+	 *            sorted on the key.
+	 * @param keyField
+	 *            the index of the int or string field that the tuples are sorted on.
+	 */
+	public ClusteredFile(File f, TupleDesc td, int keyField) {
+		this(f, td, keyField, BufferPool.PAGE_SIZE);
+	}
+
+	/**
+	 * Constructs a ClusteredFile whose sorted pages and delta have the specified page size.
+	 *
+	 * @param pageSize
+	 *            the size of the pages, a power of two from BufferPool.PAGE_SIZE to BufferPool.MAX_PAGE_SIZE.
+	 * @see #ClusteredFile(File, TupleDesc, int)
+	 */
+	public ClusteredFile(File f, TupleDesc td, int keyField, int pageSize) {
+		super(f, td, false, false, pageSize);
+		this.keyField = keyField;
+		this.delta = new HeapFile(new File(f.getPath() + ".delta"), td, false, false, pageSize);
+		try {
+			finishSwap();
+		} catch (IOException e) {
+			throw new RuntimeException("failed to finish the last merge of " + f.getName(), e);
+		}
+	}
+
+	// see SortedFile.java for javadocs
+	public int keyField() {
+		return keyField;
+	}
+
+	/**
+	 * Returns the ID of the delta, under which the Catalog must also register this file.
+	 */
+	public int deltaId() {
+		return delta.getId();
+	}
+
+	/**
+	 * Returns the number of pages in the delta.
+	 */
+	public int deltaPages() {
+		return delta.numPages();
+	}
+
+	/**
+	 * Returns the number of pages of the delta that start a background merge.
+	 */
+	public int getMergePages() {
+		return mergePages;
+	}
+
+	/**
+	 * Sets the number of pages of the delta that start a background merge.
+	 *
+	 * @param pages
+	 *            a number of pages, or 0 to merge only when {@link #merge} is called.
+	 */
+	public void setMergePages(int pages) {
+		mergePages = pages;
+	}
+
+	/**
+	 * Returns the file that the fences of the pages are saved to.
+	 */
+	public File fenceFile() {
+		return new File(file.getPath() + ".fence");
+	}
+
+	/**
+	 * Returns the file that a merge writes the new sorted pages to.
+	 */
+	private File mergeFile() {
+		return new File(file.getPath() + ".merge");
+	}
+
+	/**
+	 * Returns the file that a merge writes the new delta to.
+	 */
+	private File nextDeltaFile() {
+		return new File(delta.getFile().getPath() + ".next");
+	}
+
+	/**
+	 * Returns the file of the swap record, which exists while a merge replaces the data file and the delta.
+	 */
+	private File swapFile() {
+		return new File(file.getPath() + ".swap");
+	}
+
+	/**
+	 * Finishes a swap that was interrupted, using its swap record, or deletes the files of a merge that did not reach
+	 * its swap.
+	 *
+	 * @throws IOException
+	 *             if the files do not match the swap record.
+	 */
+	private void finishSwap() throws IOException {
+		File record = swapFile();
+		int folded;
+		long mergedLength, deltaLength;
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(record)));
+			try {
+				folded = in.readInt();
+				mergedLength = in.readLong();
+				deltaLength = in.readLong();
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			// no record, or one that was not completely written: no file was replaced yet
+			record.delete();
+			mergeFile().delete();
+			nextDeltaFile().delete();
+			return;
+		}
+		finishReplace(mergeFile(), file, mergedLength, folded);
+		finishReplace(nextDeltaFile(), delta.getFile(), deltaLength, folded);
+		for (File f : new File[] { fenceFile(), freeSpaceFile(), zoneMapFile(), delta.freeSpaceFile(),
+				delta.zoneMapFile() })
+			f.delete();
+		record.delete();
+	}
+
+	/**
+	 * Replaces target with the specified file of a swap, unless it already was.
+	 */
+	private static void finishReplace(File from, File target, long length, int folded) throws IOException {
+		if (from.exists()) {
+			if (from.length() != length)
+				throw new IOException(from.getName() + " has " + from.length() + " bytes, the swap record says "
+						+ length);
+			replace(from, target);
+		} else if (target.length() != length)
+			throw new IOException("the swap that folded " + folded + " delta pages left " + target.getName()
+					+ " with " + target.length() + " bytes instead of " + length);
+	}
+
+	/**
+	 * Renames from to target, replacing target.
+	 */
+	private static void replace(File from, File target) throws IOException {
+		if (!from.renameTo(target) && !(target.delete() && from.renameTo(target)))
+			throw new IOException("failed to replace " + target.getName() + " with " + from.getName());
+	}
+
+	/**
+	 * Returns whether the specified page belongs to the delta.
+	 */
+	private boolean inDelta(PageId pid) {
+		return pid.getTableId() == delta.getId() && pid.getTableId() != getId();
+	}
+
+	// see DbFile.java for javadocs
+	public Page readPage(PageId pid) {
+		return inDelta(pid) ? delta.readPage(pid) : super.readPage(pid);
+	}
+
+	// see HeapFile.java for javadocs
+	public Page readPage(PageId pid, java.nio.ByteBuffer frame) {
+		return inDelta(pid) ? delta.readPage(pid, frame) : super.readPage(pid, frame);
+	}
+
+	// see DbFile.java for javadocs
+	public void writePage(Page page) throws IOException {
+		if (inDelta(page.getId()))
+			delta.writePage(page);
+		else
+			super.writePage(page);
+	}
+
+	// see DbFile.java for javadocs
+	public synchronized void close() throws IOException {
+		super.close();
+		delta.close();
+	}
+
+	// see DbFile.java for javadocs
+	// The tuple is added to the delta, and a merge is started in the background if the delta has grown large enough.
+	public synchronized ArrayList<Page> addTuple(TransactionId tid, Tuple t) throws DbException, IOException,
+			TransactionAbortedException {
+		ArrayList<Page> modified = delta.addTuple(tid, t);
+		scheduleMerge();
+		return modified;
+	}
+
+	// see HeapFile.java for javadocs
+	// The tuples are appended to the delta, which keeps the sorted pages sorted, and a merge is started in the
+	// background if the delta has grown large enough.
+	public synchronized int appendTuples(TransactionId tid, DbIterator tuples) throws DbException, IOException,
+			TransactionAbortedException {
+		int count = delta.appendTuples(tid, tuples);
+		scheduleMerge();
+		return count;
+	}
+
+	/**
+	 * Starts a merge in the background if the delta has reached {@link #getMergePages} pages and no merge is running.
+	 */
+	private void scheduleMerge() {
+		int pages = mergePages;
+		if (pages > 0 && !mergeScheduled && delta.numPages() >= pages) {
+			mergeScheduled = true;
+			merger.execute(new Runnable() {
+				public void run() {
+					try {
+						merge(new TransactionId());
+					} catch (Exception e) {
+						// the delta is kept, and the next insert starts another merge
+						e.printStackTrace();
+					} finally {
+						synchronized (ClusteredFile.this) {
+							mergeScheduled = false;
+						}
+					}
+				}
+			});
+		}
+	}
+
+	// see DbFile.java for javadocs
+	// A merge renumbers every tuple, so a tuple whose slot no longer holds it is looked up by its fields. A tuple that
+	// a running merge has already read is also remembered, so that the merge deletes it as well.
+	public synchronized Page deleteTuple(TransactionId tid, Tuple t) throws DbException,
+			TransactionAbortedException {
+		RecordId rid = t.getRecordId();
+		if (rid == null || !holds(tid, rid, t)) {
+			locate(tid, t);
+			rid = t.getRecordId();
+		}
+		if (!inDelta(rid.getPageId())) {
+			Page page = super.deleteTuple(tid, t);
+			if (merging && rid.getPageId().pageno() < basePagesRead)
+				deletedDuringMerge.add(t);
+			return page;
+		}
+		Page page = delta.deleteTuple(tid, t);
+		int pageNo = rid.getPageId().pageno();
+		if (merging && pageNo < foldedPages) {
+			deletedDuringMerge.add(t);
+			try {
+				// keep inserts away from the pages being folded in
+				delta.freeSpaceMap().update(pageNo, 0);
+			} catch (IOException e) {
+				DbException dbe = new DbException("failed to load the free-space map of the delta");
+				dbe.initCause(e);
+				throw dbe;
+			}
+		}
+		return page;
+	}
+
+	/**
+	 * Returns whether the slot of the specified RecordId holds a tuple with the same fields as t.
+	 */
+	private boolean holds(TransactionId tid, RecordId rid, Tuple t) throws DbException,
+			TransactionAbortedException {
+		PageId pid = rid.getPageId();
+		HeapFile f = inDelta(pid) ? delta : this;
+		if (pid.getTableId() != f.getId() || pid.pageno() >= f.numPages())
+			return false;
+		Tuple u = ((HeapPage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_ONLY)).getTuple(rid
+				.tupleno());
+		return u != null && sameFields(t, u);
+	}
+
+	/**
+	 * Sets the RecordId of t to that of a tuple with the same fields: one in the delta, or one on the sorted pages
+	 * that can hold its key.
+	 *
+	 * @throws DbException
+	 *             if no tuple of this file has the fields of t.
+	 */
+	private void locate(TransactionId tid, Tuple t) throws DbException, TransactionAbortedException {
+		BufferPool pool = Database.getBufferPool();
+		for (int i = 0, n = delta.numPages(); i < n; i++)
+			if (find(pool.getPage(tid, new HeapPageId(delta.getId(), i), Permissions.READ_ONLY), t))
+				return;
+		Field key = t.getField(keyField);
+		Field[] f = fences();
+		for (int i = firstPage(key); i < f.length && (f[i] == null || BTreePage.compare(f[i], key) <= 0); i++)
+			if (find(pool.getPage(tid, new HeapPageId(getId(), i), Permissions.READ_ONLY), t))
+				return;
+		throw new DbException("the tuple is not stored in this file");
+	}
+
+	/**
+	 * Sets the RecordId of t to that of a tuple of the specified page with the same fields, if there is one.
+	 */
+	private boolean find(Page page, Tuple t) {
+		Iterator<Tuple> it = ((HeapPage) page).iterator();
+		while (it.hasNext()) {
+			Tuple u = it.next();
+			if (sameFields(t, u)) {
+				t.setRecordId(u.getRecordId());
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Records that a scan of this file was opened. A merge does not start, or swap the files, while a scan is open.
+	 */
+	private synchronized void opened() {
+		readers++;
+	}
+
+	/**
+	 * Records that a scan of this file was closed.
+	 */
+	private synchronized void closed() {
+		readers--;
+	}
+
+	/**
+	 * Folds the delta into the sorted pages: the tuples of both, as seen through the BufferPool, are written in key
+	 * order to a new file, which replaces the data file, and the delta keeps only the pages added since the merge
+	 * started. The file is only locked to take a snapshot of the delta, to read each sorted page and to swap the
+	 * files; tuples deleted in between from pages that were already read are deleted from the new file before the
+	 * swap. The pages of both files are dropped from the BufferPool. Nothing is done if a scan of this file is open
+	 * when the merge starts or when it would swap the files, or if another merge is running.
+	 *
+	 * @return true if the delta was merged, false if a scan was open or another merge was running.
+	 */
+	public boolean merge(TransactionId tid) throws DbException, IOException, TransactionAbortedException {
+		ArrayList<Tuple> added;
+		int basePages;
+		synchronized (this) {
+			if (readers > 0 || merging)
+				return false;
+			added = deltaTuples(tid, null, false, null, false);
+			foldedPages = delta.numPages();
+			FreeSpaceMap map = delta.freeSpaceMap();
+			for (int i = 0; i < foldedPages; i++)
+				map.update(i, 0);
+			basePages = numPages();
+			basePagesRead = 0;
+			merging = true;
+		}
+		boolean swapped = false;
+		try {
+			ArrayList<Field> newFences = new ArrayList<Field>();
+			writeMerged(tid, added, basePages, newFences);
+			synchronized (this) {
+				if (readers > 0)
+					return false;
+				swap(tid, newFences);
+				swapped = true;
+				return true;
+			}
+		} finally {
+			synchronized (this) {
+				merging = false;
+				deletedDuringMerge.clear();
+			}
+			if (!swapped) {
+				mergeFile().delete();
+				nextDeltaFile().delete();
+			}
+		}
+	}
+
+	/**
+	 * Writes the tuples of the sorted pages, read one page at a time with this file locked, merged with the
+	 * specified sorted tuples of the delta, to {@link #mergeFile}, and adds the fences of its pages to newFences.
+	 */
+	private void writeMerged(TransactionId tid, ArrayList<Tuple> added, int basePages, ArrayList<Field> newFences)
+			throws DbException, IOException, TransactionAbortedException {
+		BufferPool pool = Database.getBufferPool();
+		ScanRing ring = pool.scanRingFor(basePages * (pageSize / BufferPool.PAGE_SIZE));
+		FileOutputStream fos = new FileOutputStream(mergeFile());
+		OutputStream out = new BufferedOutputStream(fos, 1 << 16);
+		try {
+			ArrayList<Tuple> base = new ArrayList<Tuple>();
+			int nextBase = 0;
+			int nextPage = 0;
+			int next = 0;
+			HeapPage page = null;
+			while (true) {
+				if (nextBase == base.size() && nextPage < basePages) {
+					base.clear();
+					nextBase = 0;
+					synchronized (this) {
+						HeapPage p = (HeapPage) pool.getPage(tid, new HeapPageId(getId(), nextPage),
+								Permissions.READ_ONLY, ring);
+						Iterator<Tuple> it = p.iterator();
+						while (it.hasNext())
+							base.add(it.next());
+						basePagesRead = ++nextPage;
+					}
+					continue;
+				}
+				Tuple b = nextBase < base.size() ? base.get(nextBase) : null;
+				if (b == null && next == added.size())
+					break;
+				Tuple t;
+				if (b != null && (next == added.size() || compare(b, added.get(next)) <= 0)) {
+					t = b;
+					nextBase++;
+				} else
+					t = added.get(next++);
+				if (page == null || page.availableSpace() < storedLength(t)) {
+					if (page != null)
+						out.write(page.getPageData());
+					page = new HeapPage(new HeapPageId(getId(), newFences.size()), HeapPage
+							.createEmptyPageData(pageSize));
+					newFences.add(t.getField(keyField));
+				}
+				page.addTuple(t);
+			}
+			if (page != null)
+				out.write(page.getPageData());
+			out.flush();
+			fos.getFD().sync();
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Replaces the data file with {@link #mergeFile} and the delta with its pages that were not folded in. Must be
+	 * called with this file locked.
+	 */
+	private void swap(TransactionId tid, ArrayList<Field> newFences) throws DbException, IOException,
+			TransactionAbortedException {
+		File merged = mergeFile();
+		for (Tuple t : deletedDuringMerge)
+			deleteMerged(merged, newFences, t);
+
+		BufferPool pool = Database.getBufferPool();
+		File nextDelta = nextDeltaFile();
+		FileOutputStream fos = new FileOutputStream(nextDelta);
+		OutputStream out = new BufferedOutputStream(fos, 1 << 16);
+		try {
+			for (int i = foldedPages, n = delta.numPages(); i < n; i++)
+				out.write(((HeapPage) pool.getPage(tid, new HeapPageId(delta.getId(), i), Permissions.READ_ONLY))
+						.getPageData());
+			out.flush();
+			fos.getFD().sync();
+		} finally {
+			out.close();
+		}
+
+		// once the record is on disk, an interrupted swap is finished when the file is opened again
+		fos = new FileOutputStream(swapFile());
+		DataOutputStream record = new DataOutputStream(fos);
+		try {
+			record.writeInt(foldedPages);
+			record.writeLong(merged.length());
+			record.writeLong(nextDelta.length());
+			record.flush();
+			fos.getFD().sync();
+		} finally {
+			record.close();
+		}
+
+		for (int i = 0, n = numPages(); i < n; i++)
+			pool.discardPage(new HeapPageId(getId(), i));
+		for (int i = 0, n = delta.numPages(); i < n; i++)
+			pool.discardPage(new HeapPageId(delta.getId(), i));
+		replaced();
+		delta.replaced();
+		replace(merged, file);
+		replace(nextDelta, delta.getFile());
+		swapFile().delete();
+		// reopen the channels, so that writing an evicted page never has to wait for this file
+		channel();
+		delta.channel();
+		fences = newFences.toArray(new Field[0]);
+		saveFences();
+	}
+
+	/**
+	 * Deletes one tuple with the same fields as t from the merged file, whose pages have the specified fences.
+	 */
+	private void deleteMerged(File merged, ArrayList<Field> newFences, Tuple t) throws DbException, IOException {
+		Field key = t.getField(keyField);
+		int lo = 0, hi = newFences.size() - 1;
+		while (lo < hi) {
+			int mid = (lo + hi + 1) >>> 1;
+			if (BTreePage.compare(newFences.get(mid), key) < 0)
+				lo = mid;
+			else
+				hi = mid - 1;
+		}
+		RandomAccessFile raf = new RandomAccessFile(merged, "rw");
+		try {
+			for (int i = lo; i < newFences.size() && BTreePage.compare(newFences.get(i), key) <= 0; i++) {
+				byte[] data = new byte[pageSize];
+				raf.seek((long) i * pageSize);
+				raf.readFully(data);
+				HeapPage page = new HeapPage(new HeapPageId(getId(), i), data);
+				Iterator<Tuple> it = page.iterator();
+				while (it.hasNext()) {
+					Tuple u = it.next();
+					if (sameFields(t, u)) {
+						page.deleteTuple(u);
+						raf.seek((long) i * pageSize);
+						raf.write(page.getPageData());
+						return;
+					}
+				}
+			}
+		} finally {
+			raf.close();
+		}
+	}
+
+	private boolean sameFields(Tuple a, Tuple b) {
+		for (int i = 0; i < td.numFields(); i++)
+			if (!a.getField(i).equals(b.getField(i)))
+				return false;
+		return true;
+	}
+
+	/**
+	 * Returns the tuples of the delta whose keys are in the specified range, as seen through the BufferPool, sorted on
+	 * the key; tuples with equal keys are in the order of the delta.
+	 */
+	private ArrayList<Tuple> deltaTuples(TransactionId tid, Field low, boolean lowInclusive, Field high,
+			boolean highInclusive) throws DbException, TransactionAbortedException {
+		ArrayList<Tuple> tuples = new ArrayList<Tuple>();
+		for (int i = 0, n = delta.numPages(); i < n; i++) {
+			HeapPage page = (HeapPage) Database.getBufferPool().getPage(tid, new HeapPageId(delta.getId(), i),
+					Permissions.READ_ONLY);
+			Iterator<Tuple> it = page.iterator();
+			while (it.hasNext()) {
+				Tuple t = it.next();
+				Field key = t.getField(keyField);
+				if (aboveLow(key, low, lowInclusive) && belowHigh(key, high, highInclusive))
+					tuples.add(t);
+			}
+		}
+		Collections.sort(tuples, new Comparator<Tuple>() {
+			public int compare(Tuple a, Tuple b) {
+				return ClusteredFile.this.compare(a, b);
+			}
+		});
+		return tuples;
+	}
+
+	/**
+	 * Compares the keys of the specified tuples.
+	 */
+	private int compare(Tuple a, Tuple b) {
+		return BTreePage.compare(a.getField(keyField), b.getField(keyField));
+	}
+
+	private static boolean aboveLow(Field key, Field low, boolean lowInclusive) {
+		if (low == null)
+			return true;
+		int cmp = BTreePage.compare(key, low);
+		return cmp > 0 || (cmp == 0 && lowInclusive);
+	}
+
+	private static boolean belowHigh(Field key, Field high, boolean highInclusive) {
+		if (high == null)
+			return true;
+		int cmp = BTreePage.compare(key, high);
+		return cmp < 0 || (cmp == 0 && highInclusive);
+	}
+
+	/**
+	 * Returns the number of the first page that can hold a key that is not smaller than the specified key: the last
+	 * page whose fence is smaller than the key, as a tuple with a key equal to the fence of a page may also be on the
+	 * page before it.
+	 */
+	private synchronized int firstPage(Field key) throws DbException {
+		Field[] f = fences();
+		int lo = 0, hi = f.length - 1;
+		while (lo < hi) {
+			int mid = (lo + hi + 1) >>> 1;
+			if (f[mid] == null || BTreePage.compare(f[mid], key) < 0)
+				lo = mid;
+			else
+				hi = mid - 1;
+		}
+		return lo;
+	}
+
+	/**
+	 * Returns the fences of the pages, loading them from {@link #fenceFile} or, if they were not saved since the data
+	 * file last changed, reading them from the pages on disk and saving them. Deletes only remove keys from a page, so
+	 * a fence read from a page that is changed in the BufferPool is still a lower bound of its keys.
+	 */
+	private Field[] fences() throws DbException {
+		if (fences == null) {
+			try {
+				fences = loadFences();
+				if (fences == null) {
+					fences = new Field[numPages()];
+					Field last = null;
+					for (int i = 0; i < fences.length; i++) {
+						Iterator<Tuple> it = ((HeapPage) super.readPage(new HeapPageId(getId(), i))).iterator();
+						if (it.hasNext())
+							last = it.next().getField(keyField);
+						fences[i] = last;
+					}
+					saveFences();
+				}
+			} catch (IOException e) {
+				DbException dbe = new DbException("failed to load the fences of " + file.getName());
+				dbe.initCause(e);
+				throw dbe;
+			}
+		}
+		return fences;
+	}
+
+	/**
+	 * Reads the saved fences, or returns null if they do not exist or do not match the data file.
+	 */
+	private Field[] loadFences() throws IOException {
+		if (!fenceFile().exists())
+			return null;
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(fenceFile())));
+		try {
+			if (in.readInt() != keyField || in.readLong() != file.length() || in.readLong() != file.lastModified())
+				return null;
+			Field[] result = new Field[in.readInt()];
+			for (int i = 0; i < result.length; i++) {
+				if (!in.readBoolean())
+					continue;
+				if (td.getType(keyField) == Type.INT_TYPE)
+					result[i] = new IntField(in.readInt());
+				else
+					result[i] = new StringField(in.readUTF(), Type.STRING_LEN);
+			}
+			return result;
+		} catch (EOFException e) {
+			return null;
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Saves the fences together with the length and modification time of the data file.
+	 */
+	private void saveFences() throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fenceFile())));
+		try {
+			out.writeInt(keyField);
+			out.writeLong(file.length());
+			out.writeLong(file.lastModified());
+			out.writeInt(fences.length);
+			for (Field f : fences) {
+				out.writeBoolean(f != null);
+				if (f instanceof IntField)
+					out.writeInt(((IntField) f).getValue());
+				else if (f != null)
+					out.writeUTF(((StringField) f).getValue());
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	// see DbFile.java for javadocs
+	public DbFileIterator iterator(TransactionId tid) {
+		return new ClusteredFileIterator(tid, null, false, null, false);
+	}
+
+	// see SortedFile.java for javadocs
+	public DbFileIterator rangeIterator(TransactionId tid, Field low, boolean lowInclusive, Field high,
+			boolean highInclusive) {
+		return new ClusteredFileIterator(tid, low, lowInclusive, high, highInclusive);
+	}
+
+	/**
+	 * Iterates over the tuples of a range of keys in key order, by merging a scan of the sorted pages, from the first
+	 * page that can hold the lowest key, with the tuples of the delta in the range, which are read and sorted when the
+	 * iterator is opened.
+	 */
+	class ClusteredFileIterator extends AbstractDbFileIterator {
+
+		final TransactionId tid;
+
+		/**
+		 * The range of keys to return; a null bound is open.
+		 */
+		final Field low, high;
+		final boolean lowInclusive, highInclusive;
+
+		/**
+		 * The scan of the sorted pages, or null if this iterator is not open.
+		 */
+		HeapFileIterator base;
+
+		/**
+		 * The next tuple of the sorted pages in the range, or null if there is none.
+		 */
+		Tuple nextBase;
+
+		/**
+		 * The tuples of the delta in the range, and the index of the next one to return.
+		 */
+		ArrayList<Tuple> added;
+		int nextAdded;
+
+		ClusteredFileIterator(TransactionId tid, Field low, boolean lowInclusive, Field high, boolean highInclusive) {
+			this.tid = tid;
+			this.low = low;
+			this.lowInclusive = lowInclusive;
+			this.high = high;
+			this.highInclusive = highInclusive;
+		}
+
+		public void open() throws DbException, TransactionAbortedException {
+			opened();
+			base = new HeapFileIterator(tid);
+			try {
+				if (low != null)
+					base.firstPage = firstPage(low);
+				base.open();
+				nextBase = readBase();
+				added = deltaTuples(tid, low, lowInclusive, high, highInclusive);
+				nextAdded = 0;
+			} catch (DbException e) {
+				close();
+				throw e;
+			} catch (TransactionAbortedException e) {
+				close();
+				throw e;
+			} catch (RuntimeException e) {
+				close();
+				throw e;
+			}
+		}
+
+		/**
+		 * Returns the next tuple of the sorted pages in the range, or null if there is none.
+		 */
+		private Tuple readBase() throws DbException, TransactionAbortedException {
+			while (base.hasNext()) {
+				Tuple t = base.next();
+				Field key = t.getField(keyField);
+				if (!belowHigh(key, high, highInclusive))
+					return null;
+				if (aboveLow(key, low, lowInclusive))
+					return t;
+			}
+			return null;
+		}
+
+		protected Tuple readNext() throws DbException, TransactionAbortedException {
+			if (base == null)
+				return null;
+			Tuple a = nextAdded < added.size() ? added.get(nextAdded) : null;
+			if (nextBase != null && (a == null || compare(nextBase, a) <= 0)) {
+				Tuple t = nextBase;
+				nextBase = readBase();
+				return t;
+			}
+			if (a != null)
+				nextAdded++;
+			return a;
+		}
+
+		public void rewind() throws DbException, TransactionAbortedException {
+			close();
+			open();
+		}
+
+		public void close() {
+			super.close();
+			if (base != null) {
+				base.close();
+				base = null;
+				nextBase = null;
+				added = null;
+				closed();
+			}
+		}
+	}
+}
@@ -0,0 +1,475 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ColumnFile is a read-only DbFile that stores each field of a table in a file of its own, next to the file the table
+ * is named after: field i is stored in {@code <file>.i}. Each column file is a sequence of ColumnSegments of
+ * {@link #SEGMENT_TUPLES} values each (the last may be shorter), and each segment is encoded with the encoding that
+ * suits its values best, so sorted, repetitive or narrow columns take a fraction of the space of a HeapFile.
+ * <p>
+ * The segments are the pages of a ColumnFile: segment s of field i has page number {@code s * numFields + i}. A scan
+ * reads through the BufferPool only the segments of the fields it needs, as told by {@link SeqScan#needFields}, and
+ * returns ordinary Tuples, so the operators above it need not know how the table is stored. {@link #getBytesRead}
+ * reports how many bytes were read from disk, to compare with {@link #heapBytes}.
+ * <p>
+ * Files are written by {@link #convert}, from the text input of HeapFileEncoder or from another DbFile.
+ *
+ * @see ColumnSegment
+ */
+public class ColumnFile implements DbFile {
+
+	/**
+	 * The number of tuples in each segment.
+	 */
+	public static final int SEGMENT_TUPLES = 4096;
+
+	/**
+	 * The file this table is named after.
+	 */
+	private final File file;
+
+	/**
+	 * The TupleDesc associated with this ColumnFile.
+	 */
+	private final TupleDesc td;
+
+	/**
+	 * The channel of the file of each field, opened on first use.
+	 */
+	private final FileChannel[] channels;
+
+	/**
+	 * The location of each segment of each field in its file, found on first use by walking the segment headers.
+	 */
+	private long[][] locations;
+
+	/**
+	 * The number of tuples in this table, found along with the locations of the segments.
+	 */
+	private int numTuples;
+
+	/**
+	 * The number of bytes read from disk by readPage.
+	 */
+	private final AtomicLong bytesRead = new AtomicLong();
+
+	/**
+	 * Constructs a ColumnFile whose columns are stored next to the specified file.
+	 *
+	 * @param f
+	 *            the file that the table is named after; the columns are stored in {@link #columnFile}.
+	 */
+	public ColumnFile(File f, TupleDesc td) {
+		this.file = f;
+		this.td = td;
+		this.channels = new FileChannel[td.numFields()];
+	}
+
+	/**
+	 * Returns the File this ColumnFile is named after.
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Returns the file that stores the specified field of a table named after the specified file.
+	 */
+	public static File columnFile(File f, int field) {
+		return new File(f.getPath() + "." + field);
+	}
+
+	// see DbFile.java for javadocs
+	public int getId() {
+		return file.getAbsoluteFile().hashCode();
+	}
+
+	// see DbFile.java for javadocs
+	public TupleDesc getTupleDesc() {
+		return td;
+	}
+
+	/**
+	 * Returns the number of segments of each field.
+	 */
+	public int numSegments() {
+		return locations()[0].length - 1;
+	}
+
+	/**
+	 * Returns the number of tuples in this table.
+	 */
+	public int numTuples() {
+		locations();
+		return numTuples;
+	}
+
+	/**
+	 * Returns the number of bytes that readPage has read from disk since this ColumnFile was created or the count was
+	 * reset.
+	 */
+	public long getBytesRead() {
+		return bytesRead.get();
+	}
+
+	/**
+	 * Resets the count returned by {@link #getBytesRead}.
+	 */
+	public void resetBytesRead() {
+		bytesRead.set(0);
+	}
+
+	/**
+	 * Returns the number of bytes that a HeapFile with the fixed-length layout would take for the tuples of this table,
+	 * which a scan of the HeapFile reads whatever fields it needs.
+	 */
+	public long heapBytes() {
+		int recordLength = 4;
+		for (int i = 0; i < td.numFields(); i++)
+			recordLength += td.getType(i).getLen();
+		int perPage = (BufferPool.PAGE_SIZE - 4) / recordLength;
+		return (long) Math.max(1, (numTuples() + perPage - 1) / perPage) * BufferPool.PAGE_SIZE;
+	}
+
+	/**
+	 * Returns the locations of the segments of each field, with the end of the last segment of each field at the end of
+	 * its array, reading the headers of the segments if they have not been read.
+	 */
+	private synchronized long[][] locations() {
+		if (locations == null) {
+			long[][] l = new long[td.numFields()][];
+			try {
+				for (int i = 0; i < l.length; i++) {
+					ArrayList<Long> starts = new ArrayList<Long>();
+					int tuples = 0;
+					DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(
+							columnFile(file, i))));
+					try {
+						long position = 0, length = columnFile(file, i).length();
+						while (position < length) {
+							starts.add(position);
+							in.readInt();
+							tuples += in.readInt();
+							int payload = in.readInt();
+							in.skipBytes(payload);
+							position += ColumnSegment.HEADER_SIZE + payload;
+						}
+						starts.add(position);
+					} finally {
+						in.close();
+					}
+					l[i] = new long[starts.size()];
+					for (int s = 0; s < l[i].length; s++)
+						l[i][s] = starts.get(s);
+					if (i == 0)
+						numTuples = tuples;
+					else if (l[i].length != l[0].length || tuples != numTuples)
+						throw new IllegalStateException("the columns of " + file.getName() + " have different lengths");
+				}
+			} catch (IOException e) {
+				throw new RuntimeException("failed to read the segments of " + file.getName(), e);
+			}
+			locations = l;
+		}
+		return locations;
+	}
+
+	// see DbFile.java for javadocs
+	public Page readPage(PageId pid) {
+		if (getId() != pid.getTableId())
+			throw new IllegalArgumentException("page " + pid.pageno() + " does not belong to this file");
+		int field = pid.pageno() % td.numFields();
+		int segment = pid.pageno() / td.numFields();
+		long[] l = locations()[field];
+		if (segment >= l.length - 1)
+			throw new IllegalArgumentException("page " + pid.pageno() + " does not exist in this file");
+		byte[] data = new byte[(int) (l[segment + 1] - l[segment])];
+		try {
+			ByteBuffer buf = ByteBuffer.wrap(data);
+			FileChannel ch = channel(field);
+			while (buf.hasRemaining())
+				if (ch.read(buf, l[segment] + buf.position()) < 0)
+					throw new EOFException();
+		} catch (IOException e) {
+			throw new RuntimeException("failed to read page " + pid.pageno(), e);
+		}
+		bytesRead.addAndGet(data.length);
+		return new ColumnSegment((HeapPageId) pid, data);
+	}
+
+	/**
+	 * Returns the channel of the file of the specified field, opening it if it is not open.
+	 */
+	private synchronized FileChannel channel(int field) throws IOException {
+		if (channels[field] == null || !channels[field].isOpen())
+			channels[field] = new RandomAccessFile(columnFile(file, field), "r").getChannel();
+		return channels[field];
+	}
+
+	/**
+	 * Closes the files of this ColumnFile. They are reopened if the ColumnFile is used again.
+	 */
+	public synchronized void close() throws IOException {
+		for (int i = 0; i < channels.length; i++) {
+			if (channels[i] != null)
+				channels[i].close();
+			channels[i] = null;
+		}
+	}
+
+	/**
+	 * ColumnFiles are read-only; their segments are never dirtied, so this is never called by the BufferPool.
+	 */
+	public void writePage(Page p) throws IOException {
+		throw new IOException(file.getName() + " is a read-only column file");
+	}
+
+	/**
+	 * ColumnFiles are read-only.
+	 *
+	 * @throws DbException
+	 *             always.
+	 */
+	public ArrayList<Page> addTuple(TransactionId tid, Tuple t) throws DbException {
+		throw new DbException(file.getName() + " is a read-only column file");
+	}
+
+	/**
+	 * ColumnFiles are read-only.
+	 *
+	 * @throws DbException
+	 *             always.
+	 */
+	public Page deleteTuple(TransactionId tid, Tuple t) throws DbException {
+		throw new DbException(file.getName() + " is a read-only column file");
+	}
+
+	// see DbFile.java for javadocs
+	public DbFileIterator iterator(TransactionId tid) {
+		return new ColumnFileIterator(tid);
+	}
+
+	/**
+	 * Iterates over the tuples of this ColumnFile one segment at a time, reading the segments of the needed fields
+	 * through the BufferPool, or through a private ScanRing if the table is large relative to the BufferPool.
+	 */
+	class ColumnFileIterator extends AbstractDbFileIterator {
+
+		/**
+		 * The transaction on whose behalf segments are read.
+		 */
+		final TransactionId tid;
+
+		/**
+		 * The fields that are decoded into the returned tuples, or null for all of them.
+		 */
+		boolean[] fields;
+
+		/**
+		 * The fields whose segments are read: the needed fields, or the first field if no field is needed, so that
+		 * the scan still knows how many tuples each segment holds.
+		 */
+		boolean[] read;
+
+		/**
+		 * The number of the next segment to read, or -1 if this iterator is not open.
+		 */
+		int segment = -1;
+
+		/**
+		 * The values of the needed fields in the current segment; the entries of the other fields are null.
+		 */
+		final Field[][] values = new Field[td.numFields()][];
+
+		/**
+		 * The number of tuples in the current segment, and the position of the next tuple in it.
+		 */
+		int count, position;
+
+		/**
+		 * The ring of this scan, or null if the scan reads through the shared pool.
+		 */
+		ScanRing ring;
+
+		ColumnFileIterator(TransactionId tid) {
+			this.tid = tid;
+		}
+
+		/**
+		 * Adds the specified fields to the fields that are read and decoded into the returned tuples. Until this is
+		 * called, every field is read.
+		 */
+		void needFields(Collection<Integer> needed) {
+			if (fields == null)
+				fields = new boolean[td.numFields()];
+			for (int f : needed)
+				fields[f] = true;
+		}
+
+		public void open() throws DbException, TransactionAbortedException {
+			read = new boolean[td.numFields()];
+			boolean any = false;
+			for (int i = 0; i < read.length; i++)
+				any |= read[i] = fields == null || fields[i];
+			read[0] |= !any;
+			segment = 0;
+			count = position = 0;
+			ring = Database.getBufferPool().scanRingFor(numSegments() * td.numFields());
+		}
+
+		protected Tuple readNext() throws DbException, TransactionAbortedException {
+			if (segment < 0)
+				return null;
+			while (position == count) {
+				if (segment == numSegments())
+					return null;
+				for (int i = 0; i < values.length; i++) {
+					if (!read[i])
+						continue;
+					ColumnSegment s = (ColumnSegment) Database.getBufferPool().getPage(tid,
+							new HeapPageId(getId(), segment * td.numFields() + i), Permissions.READ_ONLY, ring);
+					values[i] = s.values();
+					count = values[i].length;
+				}
+				segment++;
+				position = 0;
+			}
+			Tuple t = new Tuple(td);
+			for (int i = 0; i < values.length; i++)
+				if (fields == null || fields[i])
+					t.setField(i, values[i][position]);
+			t.setRecordId(new RecordId(new HeapPageId(getId(), (segment - 1) * td.numFields()), position));
+			position++;
+			return t;
+		}
+
+		public void rewind() throws DbException, TransactionAbortedException {
+			close();
+			open();
+		}
+
+		public void close() {
+			super.close();
+			segment = -1;
+			Arrays.fill(values, null);
+			if (ring != null)
+				ring.close();
+			ring = null;
+		}
+	}
+
+	/**
+	 * Converts the specified comma delimited text file, in the format that HeapFileEncoder reads, into the column files
+	 * of a table named after the specified file.
+	 *
+	 * @param inFile
+	 *            the input file to read data from.
+	 * @param outFile
+	 *            the file that the table is named after.
+	 * @param typeAr
+	 *            the type of each field.
+	 * @throws IOException
+	 *             if the input or output files can't be opened.
+	 */
+	public static void convert(File inFile, File outFile, Type[] typeAr) throws IOException {
+		Writer writer = new Writer(outFile, typeAr);
+		BufferedReader in = new BufferedReader(new FileReader(inFile));
+		try {
+			String line;
+			while ((line = in.readLine()) != null) {
+				if (line.trim().length() == 0)
+					continue;
+				String[] values = line.split(",");
+				Tuple t = new Tuple(new TupleDesc(typeAr));
+				for (int j = 0; j < typeAr.length; j++) {
+					String s = values[j].trim();
+					t.setField(j, typeAr[j] == Type.INT_TYPE ? new IntField(Integer.parseInt(s)) : new StringField(s,
+							Type.STRING_LEN));
+				}
+				writer.add(t);
+			}
+		} finally {
+			in.close();
+			writer.close();
+		}
+	}
+
+	/**
+	 * Converts the tuples of the specified table, such as a HeapFile, into the column files of a table named after the
+	 * specified file. The tuples are read through the BufferPool.
+	 *
+	 * @param source
+	 *            the table to convert.
+	 * @param outFile
+	 *            the file that the table is named after.
+	 */
+	public static void convert(DbFile source, File outFile) throws IOException, DbException,
+			TransactionAbortedException {
+		Writer writer = new Writer(outFile, ZoneMap.typesOf(source.getTupleDesc()));
+		DbFileIterator it = source.iterator(new TransactionId());
+		try {
+			it.open();
+			while (it.hasNext())
+				writer.add(it.next());
+		} finally {
+			it.close();
+			writer.close();
+		}
+	}
+
+	/**
+	 * Writes tuples into column files, a segment of each field at a time.
+	 */
+	private static class Writer {
+
+		final Type[] types;
+
+		final OutputStream[] out;
+
+		/**
+		 * The values of each field in the segment being filled.
+		 */
+		final ArrayList<ArrayList<Field>> pending = new ArrayList<ArrayList<Field>>();
+
+		Writer(File f, Type[] types) throws IOException {
+			this.types = types;
+			out = new OutputStream[types.length];
+			for (int i = 0; i < types.length; i++) {
+				out[i] = new BufferedOutputStream(new FileOutputStream(columnFile(f, i)));
+				pending.add(new ArrayList<Field>(SEGMENT_TUPLES));
+			}
+		}
+
+		void add(Tuple t) throws IOException {
+			for (int i = 0; i < types.length; i++)
+				pending.get(i).add(t.getField(i));
+			if (pending.get(0).size() == SEGMENT_TUPLES)
+				flush();
+		}
+
+		/**
+		 * Writes the pending segment of each field.
+		 */
+		void flush() throws IOException {
+			for (int i = 0; i < types.length; i++) {
+				out[i].write(ColumnSegment.encode(types[i], pending.get(i)));
+				pending.get(i).clear();
+			}
+		}
+
+		void close() throws IOException {
+			try {
+				if (!pending.get(0).isEmpty())
+					flush();
+			} finally {
+				for (OutputStream o : out)
+					o.close();
+			}
+		}
+	}
+}
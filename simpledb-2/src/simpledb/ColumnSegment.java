@@ -0,0 +1,310 @@
+package simpledb;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * A ColumnSegment holds the values of one field for a run of consecutive tuples of a {@code ColumnFile}, encoded with
+ * whichever of the encodings below is smallest for those values. Segments are the pages of a ColumnFile: the BufferPool
+ * caches them encoded, and the values are decoded the first time a scan reads them.
+ * <p>
+ * A segment is stored as a 12-byte header, holding its encoding, its number of values and the length of its payload,
+ * followed by the payload. Strings are written with {@link DataOutputStream#writeUTF}. The encodings are
+ * <ul>
+ * <li>{@link #PLAIN}: the values one after the other.</li>
+ * <li>{@link #RUN_LENGTH}: the number of runs, then each run as a value and the number of times it repeats.</li>
+ * <li>{@link #DICTIONARY}: the number of distinct values and the values, then the index of each value in them, in 1, 2
+ * or 4 bytes depending on the number of distinct values.</li>
+ * <li>{@link #FRAME_OF_REFERENCE}, for int fields only: the smallest value and a bit width, then the difference of
+ * each value from the smallest, packed in that many bits.</li>
+ * </ul>
+ * Segments never change once written.
+ *
+ * @see ColumnFile
+ */
+public class ColumnSegment implements Page {
+
+	public static final int PLAIN = 0;
+	public static final int RUN_LENGTH = 1;
+	public static final int DICTIONARY = 2;
+	public static final int FRAME_OF_REFERENCE = 3;
+
+	/**
+	 * The number of bytes of the header of a segment.
+	 */
+	static final int HEADER_SIZE = 12;
+
+	/**
+	 * The ID of this segment: its page number is {@code segment * numFields + field}.
+	 */
+	private final HeapPageId pid;
+
+	/**
+	 * The type of the values of this segment.
+	 */
+	private final Type type;
+
+	/**
+	 * The header and payload of this segment.
+	 */
+	private final byte[] data;
+
+	/**
+	 * The decoded values, or null if they have not been decoded yet. Equal values that are stored once, in a run or a
+	 * dictionary, are decoded into the same Field.
+	 */
+	private volatile Field[] values;
+
+	/**
+	 * Creates a segment from its stored bytes.
+	 *
+	 * @param id
+	 *            the ID of the segment.
+	 * @param data
+	 *            the header and payload of the segment, as written by {@link #encode}.
+	 */
+	public ColumnSegment(HeapPageId id, byte[] data) {
+		this.pid = id;
+		TupleDesc td = Database.getCatalog().getTupleDesc(id.getTableId());
+		this.type = td.getType(id.pageno() % td.numFields());
+		this.data = data;
+	}
+
+	public HeapPageId getId() {
+		return pid;
+	}
+
+	/**
+	 * Returns the encoding of this segment.
+	 */
+	public int getEncoding() {
+		return readInt(data, 0);
+	}
+
+	/**
+	 * Returns the number of values in this segment.
+	 */
+	public int numValues() {
+		return readInt(data, 4);
+	}
+
+	/**
+	 * Returns the values of this segment, decoding them on the first call. The caller must not modify the array.
+	 */
+	public Field[] values() {
+		Field[] v = values;
+		if (v == null) {
+			try {
+				values = v = decode(type, data);
+			} catch (IOException e) {
+				throw new RuntimeException("corrupt segment " + pid.pageno(), e);
+			}
+		}
+		return v;
+	}
+
+	// segments are read-only
+	public TransactionId isDirty() {
+		return null;
+	}
+
+	public void markDirty(boolean dirty, TransactionId tid) {
+	}
+
+	public byte[] getPageData() {
+		return data;
+	}
+
+	public Page getBeforeImage() {
+		return this;
+	}
+
+	public void setBeforeImage() {
+	}
+
+	private static int readInt(byte[] b, int offset) {
+		return (b[offset] << 24) | (b[offset + 1] & 0xFF) << 16 | (b[offset + 2] & 0xFF) << 8 | (b[offset + 3] & 0xFF);
+	}
+
+	/**
+	 * Encodes the specified values with the smallest of the encodings that apply to them.
+	 *
+	 * @param type
+	 *            the type of the values.
+	 * @param values
+	 *            the values.
+	 * @return the header and payload of the segment.
+	 */
+	static byte[] encode(Type type, List<Field> values) throws IOException {
+		byte[] best = encode(type, values, PLAIN);
+		int[] others = type == Type.INT_TYPE ? new int[] { RUN_LENGTH, DICTIONARY, FRAME_OF_REFERENCE } : new int[] {
+				RUN_LENGTH, DICTIONARY };
+		for (int encoding : others) {
+			byte[] b = encode(type, values, encoding);
+			if (b != null && b.length < best.length)
+				best = b;
+		}
+		return best;
+	}
+
+	/**
+	 * Encodes the specified values with the specified encoding, or returns null if the encoding does not apply.
+	 */
+	static byte[] encode(Type type, List<Field> values, int encoding) throws IOException {
+		ByteArrayOutputStream payload = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(payload);
+		switch (encoding) {
+		case PLAIN:
+			for (Field f : values)
+				write(out, f);
+			break;
+		case RUN_LENGTH: {
+			ArrayList<Integer> starts = new ArrayList<Integer>();
+			for (int i = 0; i < values.size(); i++)
+				if (i == 0 || !values.get(i).equals(values.get(i - 1)))
+					starts.add(i);
+			out.writeInt(starts.size());
+			for (int r = 0; r < starts.size(); r++) {
+				int end = r + 1 < starts.size() ? starts.get(r + 1) : values.size();
+				write(out, values.get(starts.get(r)));
+				out.writeInt(end - starts.get(r));
+			}
+			break;
+		}
+		case DICTIONARY: {
+			HashMap<Field, Integer> codes = new HashMap<Field, Integer>();
+			ArrayList<Field> dictionary = new ArrayList<Field>();
+			for (Field f : values) {
+				if (!codes.containsKey(f)) {
+					codes.put(f, dictionary.size());
+					dictionary.add(f);
+				}
+			}
+			out.writeInt(dictionary.size());
+			for (Field f : dictionary)
+				write(out, f);
+			int width = codeWidth(dictionary.size());
+			for (Field f : values) {
+				int code = codes.get(f);
+				if (width == 1)
+					out.writeByte(code);
+				else if (width == 2)
+					out.writeShort(code);
+				else
+					out.writeInt(code);
+			}
+			break;
+		}
+		case FRAME_OF_REFERENCE: {
+			if (type != Type.INT_TYPE)
+				return null;
+			int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+			for (Field f : values) {
+				int v = ((IntField) f).getValue();
+				min = Math.min(min, v);
+				max = Math.max(max, v);
+			}
+			int bits = values.isEmpty() ? 0 : 64 - Long.numberOfLeadingZeros((long) max - min);
+			out.writeInt(min);
+			out.writeByte(bits);
+			long buffer = 0;
+			int buffered = 0;
+			for (Field f : values) {
+				buffer |= ((long) ((IntField) f).getValue() - min) << buffered;
+				buffered += bits;
+				while (buffered >= 8) {
+					out.writeByte((int) buffer);
+					buffer >>>= 8;
+					buffered -= 8;
+				}
+			}
+			if (buffered > 0)
+				out.writeByte((int) buffer);
+			break;
+		}
+		default:
+			throw new IllegalArgumentException("unknown encoding " + encoding);
+		}
+		out.flush();
+		ByteArrayOutputStream segment = new ByteArrayOutputStream(HEADER_SIZE + payload.size());
+		DataOutputStream header = new DataOutputStream(segment);
+		header.writeInt(encoding);
+		header.writeInt(values.size());
+		header.writeInt(payload.size());
+		payload.writeTo(segment);
+		return segment.toByteArray();
+	}
+
+	/**
+	 * Returns the number of bytes of each code of a dictionary with the specified number of values.
+	 */
+	private static int codeWidth(int dictionarySize) {
+		return dictionarySize <= 256 ? 1 : dictionarySize <= 65536 ? 2 : 4;
+	}
+
+	private static void write(DataOutputStream out, Field f) throws IOException {
+		if (f instanceof IntField)
+			out.writeInt(((IntField) f).getValue());
+		else
+			out.writeUTF(((StringField) f).getValue());
+	}
+
+	private static Field read(DataInputStream in, Type type) throws IOException {
+		if (type == Type.INT_TYPE)
+			return new IntField(in.readInt());
+		return new StringField(in.readUTF(), Type.STRING_LEN);
+	}
+
+	/**
+	 * Decodes the values of a segment.
+	 */
+	static Field[] decode(Type type, byte[] data) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+		int encoding = in.readInt();
+		Field[] values = new Field[in.readInt()];
+		in.readInt();
+		switch (encoding) {
+		case PLAIN:
+			for (int i = 0; i < values.length; i++)
+				values[i] = read(in, type);
+			break;
+		case RUN_LENGTH:
+			for (int r = in.readInt(), i = 0; r > 0; r--) {
+				Field f = read(in, type);
+				for (int n = in.readInt(); n > 0; n--)
+					values[i++] = f;
+			}
+			break;
+		case DICTIONARY: {
+			Field[] dictionary = new Field[in.readInt()];
+			for (int d = 0; d < dictionary.length; d++)
+				dictionary[d] = read(in, type);
+			int width = codeWidth(dictionary.length);
+			for (int i = 0; i < values.length; i++)
+				values[i] = dictionary[width == 1 ? in.readUnsignedByte() : width == 2 ? in.readUnsignedShort() : in
+						.readInt()];
+			break;
+		}
+		case FRAME_OF_REFERENCE: {
+			int min = in.readInt();
+			int bits = in.readUnsignedByte();
+			long mask = (1L << bits) - 1;
+			long buffer = 0;
+			int buffered = 0;
+			for (int i = 0; i < values.length; i++) {
+				while (buffered < bits) {
+					buffer |= (long) in.readUnsignedByte() << buffered;
+					buffered += 8;
+				}
+				values[i] = new IntField((int) (min + (buffer & mask)));
+				buffer >>>= bits;
+				buffered -= bits;
+			}
+			break;
+		}
+		default:
+			throw new IOException("unknown encoding " + encoding);
+		}
+		return values;
+	}
+}
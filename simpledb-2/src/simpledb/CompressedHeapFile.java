@@ -0,0 +1,516 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * CompressedHeapFile is a HeapFile whose pages are compressed with a PageCodec when they are written and decompressed
+ * when they are read, to cut the I/O of large tables that are rarely updated. The pages themselves are ordinary
+ * HeapPages, and the BufferPool caches them decompressed, so only a miss pays for decoding.
+ * <p>
+ * Compressed pages have different sizes, so each page is stored in a <em>slot</em> of the data file, and a page
+ * directory in the same file with ".dir" appended records where. The directory starts with the ID of the codec,
+ * followed by 16 bytes for each page: the offset of its slot, the length of its image and the capacity of the slot. A
+ * page that does not compress to less than the page size is stored as is, with that length. A page that
+ * is written again is overwritten in place if its new image fits in its slot; otherwise it is written to a new slot at
+ * the end of the file and its directory entry is switched to it, so a reader or a crash sees either the old image or
+ * the new one. New slots have SLOT_HEADROOM of spare room for pages that grow a little; the space of abandoned slots
+ * is only reclaimed by converting the table again.
+ *
+ * @see PageCodec
+ */
+public class CompressedHeapFile extends HeapFile {
+
+	/**
+	 * The spare room of a new slot, as a fraction of the length of its image; slots are also rounded up to
+	 * SLOT_ALIGN bytes.
+	 */
+	public static final double SLOT_HEADROOM = 0.125;
+
+	/**
+	 * The multiple of the capacity of every slot written by writePage.
+	 */
+	public static final int SLOT_ALIGN = 64;
+
+	private static final int HEADER_SIZE = 4;
+
+	private static final int ENTRY_SIZE = 16;
+
+	/**
+	 * The codec of the pages of this file.
+	 */
+	private final PageCodec codec;
+
+	/**
+	 * The offset, image length and slot capacity of each page, loaded from the directory on first use.
+	 */
+	private long[] offsets;
+	private int[] lengths;
+	private int[] capacities;
+
+	/**
+	 * The number of pages, or -1 if the directory has not been loaded.
+	 */
+	private volatile int pages = -1;
+
+	/**
+	 * The end of the last slot, where the next new slot starts.
+	 */
+	private long end;
+
+	/**
+	 * The sum of the lengths of the page images.
+	 */
+	private long storedBytes;
+
+	/**
+	 * The channel used for reads and writes of the directory, opened when the directory is loaded.
+	 */
+	private FileChannel directory;
+
+	private final AtomicLong pagesDecoded = new AtomicLong();
+
+	private final AtomicLong decodeNanos = new AtomicLong();
+
+	/**
+	 * A buffer of each thread for reading and writing compressed page images.
+	 */
+	private final ThreadLocal<byte[]> images = new ThreadLocal<byte[]>() {
+		protected byte[] initialValue() {
+			return new byte[codec.maxCompressedLength(pageSize)];
+		}
+	};
+
+	/**
+	 * A buffer of each thread that pages read into a frame are decompressed into.
+	 */
+	private final ThreadLocal<byte[]> decoded = new ThreadLocal<byte[]>() {
+		protected byte[] initialValue() {
+			return new byte[pageSize];
+		}
+	};
+
+	/**
+	 * Constructs a compressed heap file backed by the specified file.
+	 *
+	 * @param f
+	 *            the file that stores the slots of the pages of this heap file.
+	 * @param codec
+	 *            the codec of the pages, which must be the one the file was written with.
+	 */
+	public CompressedHeapFile(File f, TupleDesc td, PageCodec codec) {
+		this(f, td, false, false, codec);
+	}
+
+	/**
+	 * Constructs a compressed heap file backed by the specified file, whose pages use the specified record layout.
+	 *
+	 * @param f
+	 *            the file that stores the slots of the pages of this heap file.
+	 * @param variableLength
+	 *            true if the pages store string fields at their actual length.
+	 * @param dictionaryEncoded
+	 *            true if the pages store string fields as codes of the dictionary of the file.
+	 * @param codec
+	 *            the codec of the pages, which must be the one the file was written with.
+	 * @see HeapFile#HeapFile(File, TupleDesc, boolean, boolean)
+	 */
+	public CompressedHeapFile(File f, TupleDesc td, boolean variableLength, boolean dictionaryEncoded,
+			PageCodec codec) {
+		this(f, td, variableLength, dictionaryEncoded, BufferPool.PAGE_SIZE, codec);
+	}
+
+	/**
+	 * Constructs a compressed heap file backed by the specified file, whose pages use the specified record layout and
+	 * size. Larger pages give the codec more repetitions to find, so they usually compress better.
+	 *
+	 * @param f
+	 *            the file that stores the slots of the pages of this heap file.
+	 * @param variableLength
+	 *            true if the pages store string fields at their actual length.
+	 * @param dictionaryEncoded
+	 *            true if the pages store string fields as codes of the dictionary of the file.
+	 * @param pageSize
+	 *            the size of the pages before compression, which must be the one the file was written with.
+	 * @param codec
+	 *            the codec of the pages, which must be the one the file was written with.
+	 * @see HeapFile#HeapFile(File, TupleDesc, boolean, boolean, int)
+	 */
+	public CompressedHeapFile(File f, TupleDesc td, boolean variableLength, boolean dictionaryEncoded, int pageSize,
+			PageCodec codec) {
+		super(f, td, variableLength, dictionaryEncoded, pageSize);
+		this.codec = codec;
+	}
+
+	/**
+	 * Returns the codec with the specified name, as used in the catalog, or null if there is none.
+	 */
+	public static PageCodec codec(String name) {
+		if (name.equals(DeflateCodec.INSTANCE.name()))
+			return DeflateCodec.INSTANCE;
+		if (name.equals(LzCodec.INSTANCE.name()))
+			return LzCodec.INSTANCE;
+		return null;
+	}
+
+	/**
+	 * Returns the codec of the pages of this file.
+	 */
+	public PageCodec getCodec() {
+		return codec;
+	}
+
+	/**
+	 * Returns the file that stores the page directory of this file.
+	 */
+	public File directoryFile() {
+		return new File(file.getPath() + ".dir");
+	}
+
+	/**
+	 * Loads the page directory if it has not been loaded, creating it if the file is empty.
+	 */
+	private synchronized void loadDirectory() throws IOException {
+		if (pages >= 0)
+			return;
+		FileChannel ch = new RandomAccessFile(directoryFile(), "rw").getChannel();
+		try {
+			ByteBuffer buf = ByteBuffer.allocate((int) ch.size());
+			while (buf.hasRemaining())
+				if (ch.read(buf, buf.position()) < 0)
+					throw new EOFException();
+			buf.flip();
+			if (buf.remaining() == 0) {
+				if (file.length() > 0)
+					throw new IOException(file.getName() + " has no page directory");
+				ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+				header.putInt(codec.id());
+				header.flip();
+				writeFully(ch, header, 0);
+				buf = ByteBuffer.allocate(0);
+			} else if (buf.getInt() != codec.id())
+				throw new IOException(file.getName() + " was not compressed with " + codec.name());
+			int n = buf.remaining() / ENTRY_SIZE;
+			offsets = new long[Math.max(n, 16)];
+			lengths = new int[offsets.length];
+			capacities = new int[offsets.length];
+			end = file.length();
+			storedBytes = 0;
+			for (int i = 0; i < n; i++) {
+				offsets[i] = buf.getLong();
+				lengths[i] = buf.getInt();
+				capacities[i] = buf.getInt();
+				end = Math.max(end, offsets[i] + capacities[i]);
+				storedBytes += lengths[i];
+			}
+			directory = ch;
+			pages = n;
+		} finally {
+			if (directory != ch)
+				ch.close();
+		}
+	}
+
+	/**
+	 * Returns the number of pages in this file.
+	 */
+	public int numPages() {
+		int n = pages;
+		if (n >= 0)
+			return n;
+		try {
+			loadDirectory();
+		} catch (IOException e) {
+			throw new RuntimeException("failed to load the page directory of " + file.getName(), e);
+		}
+		return pages;
+	}
+
+	// see DbFile.java for javadocs
+	public Page readPage(PageId pid) {
+		if (getId() != pid.getTableId())
+			throw new IllegalArgumentException("page " + pid.pageno() + " does not belong to this file");
+		byte[] data = new byte[pageSize];
+		try {
+			read(pid.pageno(), data);
+			return new HeapPage((HeapPageId) pid, data);
+		} catch (IOException e) {
+			throw new RuntimeException("failed to read page " + pid.pageno(), e);
+		}
+	}
+
+	/**
+	 * Reads the specified page and decompresses it into the specified frame.
+	 *
+	 * @see HeapFile#readPage(PageId, ByteBuffer)
+	 */
+	public Page readPage(PageId pid, ByteBuffer frame) {
+		if (getId() != pid.getTableId())
+			throw new IllegalArgumentException("page " + pid.pageno() + " does not belong to this file");
+		byte[] data = decoded.get();
+		try {
+			read(pid.pageno(), data);
+		} catch (IOException e) {
+			throw new RuntimeException("failed to read page " + pid.pageno(), e);
+		}
+		ByteBuffer buf = frame.duplicate();
+		buf.clear();
+		buf.put(data);
+		return new HeapPage((HeapPageId) pid, frame);
+	}
+
+	/**
+	 * Reads the image of the specified page and decompresses it into data.
+	 */
+	private void read(int pageNo, byte[] data) throws IOException {
+		long offset;
+		int length;
+		synchronized (this) {
+			loadDirectory();
+			if (pageNo >= pages)
+				throw new IllegalArgumentException("page " + pageNo + " does not exist in this file");
+			offset = offsets[pageNo];
+			length = lengths[pageNo];
+		}
+		// a slot that a page moves out of is never reused, so the image read here is whole even if the page is
+		// written again meanwhile
+		if (length == pageSize) {
+			if (!readFully(ByteBuffer.wrap(data), offset))
+				throw new EOFException("page " + pageNo + " is past the end of " + file.getName());
+			return;
+		}
+		byte[] image = images.get();
+		if (!readFully(ByteBuffer.wrap(image, 0, length), offset))
+			throw new EOFException("page " + pageNo + " is past the end of " + file.getName());
+		long start = System.nanoTime();
+		codec.decompress(image, 0, length, data, pageSize);
+		decodeNanos.addAndGet(System.nanoTime() - start);
+		pagesDecoded.incrementAndGet();
+	}
+
+	/**
+	 * Compresses the specified page data into image, or returns the data itself if it does not compress.
+	 *
+	 * @return the image, whose length is image.length only if it is the data.
+	 */
+	private byte[] compress(byte[] data, byte[] image, int[] length) {
+		length[0] = codec.compress(data, pageSize, image);
+		if (length[0] < pageSize)
+			return image;
+		length[0] = pageSize;
+		return data;
+	}
+
+	/**
+	 * Returns the capacity of a new slot for an image of the specified length.
+	 */
+	private int slotFor(int length) {
+		int capacity = (int) (length * (1 + SLOT_HEADROOM));
+		capacity = (capacity + SLOT_ALIGN - 1) / SLOT_ALIGN * SLOT_ALIGN;
+		return Math.max(length, Math.min(capacity, pageSize));
+	}
+
+	// see DbFile.java for javadocs
+	public void writePage(Page page) throws IOException {
+		int[] length = new int[1];
+		byte[] image = compress(page.getPageData(), images.get(), length);
+		int pageNo = page.getId().pageno();
+		synchronized (this) {
+			loadDirectory();
+			if (pageNo > pages)
+				throw new IllegalArgumentException("page " + pageNo + " is past the end of " + file.getName());
+			long offset;
+			int capacity;
+			if (pageNo < pages && length[0] <= capacities[pageNo]) {
+				offset = offsets[pageNo];
+				capacity = capacities[pageNo];
+			} else {
+				offset = end;
+				capacity = slotFor(length[0]);
+				end += capacity;
+			}
+			writeFully(channel(), ByteBuffer.wrap(image, 0, length[0]), offset);
+			setEntries(pageNo, new long[] { offset }, new int[] { length[0] }, new int[] { capacity }, 1);
+		}
+	}
+
+	/**
+	 * Compresses the specified new pages into consecutive slots at the end of the file, writes them with one
+	 * sequential write, adds them to the directory and forces both to disk.
+	 */
+	protected void appendPages(int first, List<HeapPage> batch) throws IOException {
+		int n = batch.size();
+		long[] o = new long[n];
+		int[] l = new int[n];
+		int[] c = new int[n];
+		ByteArrayOutputStream out = new ByteArrayOutputStream(n * pageSize / 2);
+		byte[] buffer = images.get();
+		int[] length = new int[1];
+		for (int i = 0; i < n; i++) {
+			byte[] image = compress(batch.get(i).getPageData(), buffer, length);
+			o[i] = out.size();
+			l[i] = length[0];
+			c[i] = slotFor(length[0]);
+			out.write(image, 0, length[0]);
+			for (int pad = c[i] - l[i]; pad > 0; pad--)
+				out.write(0);
+		}
+		synchronized (this) {
+			loadDirectory();
+			if (first != pages)
+				throw new IllegalArgumentException("page " + first + " is not at the end of " + file.getName());
+			long start = end;
+			for (int i = 0; i < n; i++)
+				o[i] += start;
+			writeFully(channel(), ByteBuffer.wrap(out.toByteArray()), start);
+			end = start + out.size();
+			channel().force(false);
+			setEntries(first, o, l, c, n);
+			directory.force(false);
+		}
+	}
+
+	/**
+	 * Sets the directory entries of the specified consecutive pages, in memory and on disk. The caller holds the lock
+	 * of this file.
+	 */
+	private void setEntries(int first, long[] o, int[] l, int[] c, int n) throws IOException {
+		if (first + n > offsets.length) {
+			int size = Math.max(first + n, offsets.length * 2);
+			long[] grownOffsets = new long[size];
+			int[] grownLengths = new int[size];
+			int[] grownCapacities = new int[size];
+			System.arraycopy(offsets, 0, grownOffsets, 0, pages);
+			System.arraycopy(lengths, 0, grownLengths, 0, pages);
+			System.arraycopy(capacities, 0, grownCapacities, 0, pages);
+			offsets = grownOffsets;
+			lengths = grownLengths;
+			capacities = grownCapacities;
+		}
+		ByteBuffer buf = ByteBuffer.allocate(n * ENTRY_SIZE);
+		for (int i = 0; i < n; i++) {
+			int pageNo = first + i;
+			if (pageNo < pages)
+				storedBytes -= lengths[pageNo];
+			storedBytes += l[i];
+			offsets[pageNo] = o[i];
+			lengths[pageNo] = l[i];
+			capacities[pageNo] = c[i];
+			buf.putLong(o[i]).putInt(l[i]).putInt(c[i]);
+		}
+		buf.flip();
+		writeFully(directory, buf, HEADER_SIZE + (long) first * ENTRY_SIZE);
+		pages = Math.max(pages, first + n);
+	}
+
+	/**
+	 * Closes the channels of this file. The directory is loaded again if the file is used again.
+	 */
+	public synchronized void close() throws IOException {
+		super.close();
+		if (directory != null)
+			directory.close();
+		directory = null;
+		pages = -1;
+	}
+
+	/**
+	 * Returns the number of bytes of the page images, which are what a scan of the whole file reads.
+	 */
+	public synchronized long storedBytes() throws IOException {
+		loadDirectory();
+		return storedBytes;
+	}
+
+	/**
+	 * Returns the ratio of the size of the pages to the size of their images, or 1 if the file is empty.
+	 */
+	public double compressionRatio() throws IOException {
+		long stored = storedBytes();
+		return stored == 0 ? 1 : (double) numPages() * pageSize / stored;
+	}
+
+	/**
+	 * Returns the number of pages decompressed since this file was constructed or resetStats was called. Pages that
+	 * did not compress, and pages served from the BufferPool, are not counted.
+	 */
+	public long pagesDecoded() {
+		return pagesDecoded.get();
+	}
+
+	/**
+	 * Returns the average time that decompressing a page took, in nanoseconds, or 0 if no page was decompressed.
+	 */
+	public double decodeNanosPerPage() {
+		long n = pagesDecoded.get();
+		return n == 0 ? 0 : (double) decodeNanos.get() / n;
+	}
+
+	/**
+	 * Resets the counts of pagesDecoded and decodeNanosPerPage.
+	 */
+	public void resetStats() {
+		pagesDecoded.set(0);
+		decodeNanos.set(0);
+	}
+
+	/**
+	 * Converts a HeapFile into a CompressedHeapFile: the pages of the source, as written by HeapFileEncoder or a
+	 * HeapFile, are compressed into slots of exactly their length, since the archived tables this is meant for are
+	 * rarely updated, and the page directory is written next to the target. The dictionary of a dictionary-encoded
+	 * source must be copied by the caller. The saved free-space and zone maps of the target are deleted, so that they
+	 * are rebuilt from its pages.
+	 *
+	 * @param source
+	 *            the file of the HeapFile.
+	 * @param target
+	 *            the file of the CompressedHeapFile, which is replaced.
+	 * @param codec
+	 *            the codec that compresses the pages.
+	 */
+	public static void convert(File source, File target, PageCodec codec) throws IOException {
+		convert(source, target, codec, BufferPool.PAGE_SIZE);
+	}
+
+	/**
+	 * Converts a HeapFile whose pages have the specified size into a CompressedHeapFile.
+	 *
+	 * @param pageSize
+	 *            the page size of the source, which the target keeps.
+	 * @see #convert(File, File, PageCodec)
+	 */
+	public static void convert(File source, File target, PageCodec codec, int pageSize) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(source), 1 << 16));
+		DataOutputStream data = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(target), 1 << 16));
+		DataOutputStream directory = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(new File(
+				target.getPath() + ".dir")), 1 << 16));
+		try {
+			directory.writeInt(codec.id());
+			byte[] page = new byte[pageSize];
+			byte[] image = new byte[codec.maxCompressedLength(pageSize)];
+			long offset = 0;
+			for (long i = source.length() / pageSize; i > 0; i--) {
+				in.readFully(page);
+				int length = codec.compress(page, page.length, image);
+				if (length >= pageSize) {
+					length = pageSize;
+					data.write(page);
+				} else
+					data.write(image, 0, length);
+				directory.writeLong(offset);
+				directory.writeInt(length);
+				directory.writeInt(length);
+				offset += length;
+			}
+		} finally {
+			in.close();
+			data.close();
+			directory.close();
+		}
+		new File(target.getPath() + ".fsm").delete();
+		new File(target.getPath() + ".zm").delete();
+	}
+}
@@ -54,6 +54,14 @@ public class Database { // 2016 F
         return _instance._bufferpool;
     }
 
+    /** Method used for testing -- create a new instance of the
+        buffer pool that evicts pages with the specified policy and return it
+    */
+    public static BufferPool resetBufferPool(int pages, ReplacementPolicy policy) {
+        _instance._bufferpool = new BufferPool(pages, policy);
+        return _instance._bufferpool;
+    }
+
     //reset the database, used for unit tests only.
     public static void reset() {
     	_instance = new Database();
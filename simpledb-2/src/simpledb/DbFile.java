@@ -49,6 +49,8 @@ public interface DbFile {
      * This method will acquire a lock on the affected pages of the file, and
      * may block until the lock can be acquired.
      *
+     * @return The page that was modified, or null if no page was modified
+     *         because the file records the delete elsewhere
      * @throws DbException if the tuple cannot be deleted or is not a member
      *   of the file
      */
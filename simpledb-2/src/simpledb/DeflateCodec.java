@@ -0,0 +1,89 @@
+package simpledb;
+
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * DeflateCodec compresses pages with the deflate algorithm of java.util.zip, without the zlib header. It compresses
+ * better than LzCodec but decodes several times slower, so it suits tables that are read rarely. Each thread keeps
+ * its own Deflater and Inflater, which are reset between pages.
+ */
+public class DeflateCodec implements PageCodec {
+
+	/**
+	 * The shared instance, which compresses at the default level.
+	 */
+	public static final DeflateCodec INSTANCE = new DeflateCodec(Deflater.DEFAULT_COMPRESSION);
+
+	private final int level;
+
+	private final ThreadLocal<Deflater> deflaters = new ThreadLocal<Deflater>() {
+		protected Deflater initialValue() {
+			return new Deflater(level, true);
+		}
+	};
+
+	private final ThreadLocal<Inflater> inflaters = new ThreadLocal<Inflater>() {
+		protected Inflater initialValue() {
+			return new Inflater(true);
+		}
+	};
+
+	/**
+	 * Constructs a codec that compresses at the specified level.
+	 *
+	 * @param level
+	 *            a level from Deflater.BEST_SPEED to Deflater.BEST_COMPRESSION, or Deflater.DEFAULT_COMPRESSION.
+	 */
+	public DeflateCodec(int level) {
+		this.level = level;
+	}
+
+	public int id() {
+		return 1;
+	}
+
+	public String name() {
+		return "deflate";
+	}
+
+	public int maxCompressedLength(int length) {
+		// stored blocks of at most 16383 bytes cost 5 bytes each, and the final block may be empty
+		return length + 5 * (length / 16383 + 2);
+	}
+
+	public int compress(byte[] src, int length, byte[] dst) {
+		Deflater deflater = deflaters.get();
+		deflater.reset();
+		deflater.setInput(src, 0, length);
+		deflater.finish();
+		int n = 0;
+		while (!deflater.finished()) {
+			if (n == dst.length)
+				throw new IllegalArgumentException("buffer of " + dst.length + " bytes is too small");
+			n += deflater.deflate(dst, n, dst.length - n);
+		}
+		return n;
+	}
+
+	public void decompress(byte[] src, int offset, int length, byte[] dst, int dstLength) throws IOException {
+		Inflater inflater = inflaters.get();
+		inflater.reset();
+		inflater.setInput(src, offset, length);
+		int n = 0;
+		try {
+			while (n < dstLength && !inflater.finished()) {
+				int m = inflater.inflate(dst, n, dstLength - n);
+				if (m == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+					break;
+				n += m;
+			}
+		} catch (DataFormatException e) {
+			throw new IOException("corrupt deflate page: " + e.getMessage());
+		}
+		if (n != dstLength || !inflater.finished())
+			throw new IOException("deflate page decompressed to " + n + " bytes, expected " + dstLength);
+	}
+}
@@ -5,7 +5,7 @@ import java.util.*;
 /**
  * Filter is an operator that implements a relational select.
  */
-public class Filter extends AbstractDbIterator {
+public class Filter extends AbstractDbIterator implements ViewIterator {
 
 	/**
 	 * The child operator.
@@ -16,6 +16,11 @@ public class Filter extends AbstractDbIterator {
 	 * The predicate.
 	 */
 	Predicate p;
+
+	/**
+	 * The view returned by nextView if the child cannot return views.
+	 */
+	TupleView view;
 	
     /**
      * Constructor accepts a predicate to apply and a child
@@ -27,7 +32,24 @@ public class Filter extends AbstractDbIterator {
     public Filter(Predicate p, DbIterator child) {
     	this.child = child;	
     	this.p = p;
-    	
+    	// a scan directly below can skip the pages that cannot match
+    	if (child instanceof SeqScan)
+    		((SeqScan) child).pushDown(p);
+    }
+
+    /**
+     * Lets the scan below this filter, if there is one, decode only the
+     * specified fields of the tuples it returns, besides the filtered field.
+     *
+     * @param fields the indexes of the fields that the caller reads
+     * @see SeqScan#needFields
+     */
+    public void needFields(Collection<Integer> fields) {
+        if (child instanceof SeqScan) {
+            ArrayList<Integer> needed = new ArrayList<Integer>(fields);
+            needed.add(p.field);
+            ((SeqScan) child).needFields(needed);
+        }
     }
 
     public TupleDesc getTupleDesc() {
@@ -70,13 +92,40 @@ public class Filter extends AbstractDbIterator {
      */
     protected Tuple readNext()
         throws NoSuchElementException, TransactionAbortedException, DbException {
+        if (child instanceof ViewIterator) {
+            // evaluate the predicate on the page bytes; only matching tuples are decoded
+            TupleView v = nextView();
+            return v == null ? null : v.toTuple();
+        }
         while(child.hasNext()){ //while the db iterator isnt run keep looping
         	Tuple t1 = child.next(); // get the next child and store it in tuple t1
         	if(p.filter(t1)){ //if the previous.filter of the child is true then return it
-        		System.out.println(t1);
         		return t1; //returns the next tuple 
         	}
         }
         return null; // return null  if there are no more tuples 
     }
+
+    /**
+     * Returns a view of the next tuple that passes the predicate. If the child
+     * returns views, the predicate is applied to them directly.
+     */
+    public TupleView nextView()
+        throws TransactionAbortedException, DbException {
+        if (!(child instanceof ViewIterator)) {
+            Tuple t = readNext();
+            if (t == null)
+                return null;
+            if (view == null)
+                view = new TupleView(getTupleDesc());
+            view.set(t);
+            return view;
+        }
+        TupleView v;
+        while ((v = ((ViewIterator) child).nextView()) != null) {
+            if (p.filter(v))
+                return v;
+        }
+        return null;
+    }
 }
@@ -0,0 +1,123 @@
+package simpledb;
+
+import java.nio.ByteBuffer;
+
+/**
+ * FrameArena is a preallocated pool of page-sized frames outside the Java heap. BufferPool reads pages into frames
+ * instead of fresh byte arrays, so a large pool keeps its page data in direct memory, where the garbage collector
+ * never scans or copies it, and only the small HeapPage objects live on the heap.
+ * <p>
+ * Frames are carved out of direct buffers of at most SLAB_FRAMES frames each, so an arena may be larger than the 2 GB
+ * limit of a single ByteBuffer. The total size is bounded by the JVM's -XX:MaxDirectMemorySize.
+ * 
+ * @see BufferPool#enableOffHeapFrames
+ * @see HeapPage#HeapPage(HeapPageId, ByteBuffer)
+ */
+public class FrameArena {
+
+	/**
+	 * The number of frames in each direct buffer allocated by an arena.
+	 */
+	public static final int SLAB_FRAMES = 16384;
+
+	/**
+	 * All frames of this arena; frame i is a slice of the (i / SLAB_FRAMES)-th slab.
+	 */
+	private final ByteBuffer[] frames;
+
+	/**
+	 * A stack of the indexes of the free frames; the first {@code free} entries are valid.
+	 */
+	private final int[] freeList;
+
+	private int free;
+
+	private final int frameSize;
+
+	/**
+	 * Allocates an arena of the specified number of frames of BufferPool.PAGE_SIZE bytes.
+	 * 
+	 * @param numFrames
+	 *            the number of frames in the arena.
+	 */
+	public FrameArena(int numFrames) {
+		this(numFrames, BufferPool.PAGE_SIZE);
+	}
+
+	/**
+	 * Allocates an arena of the specified number of frames of the specified size.
+	 * 
+	 * @param numFrames
+	 *            the number of frames in the arena.
+	 * @param frameSize
+	 *            the size of each frame, at most BufferPool.MAX_PAGE_SIZE bytes so that a slab stays below 2 GB.
+	 */
+	public FrameArena(int numFrames, int frameSize) {
+		this.frameSize = frameSize;
+		frames = new ByteBuffer[numFrames];
+		freeList = new int[numFrames];
+		ByteBuffer slab = null;
+		for (int i = 0; i < numFrames; i++) {
+			int offset = i % SLAB_FRAMES;
+			if (offset == 0)
+				slab = ByteBuffer.allocateDirect(Math.min(SLAB_FRAMES, numFrames - i) * frameSize);
+			ByteBuffer frame = slab.duplicate();
+			frame.position(offset * frameSize);
+			frame.limit((offset + 1) * frameSize);
+			frames[i] = frame.slice();
+			freeList[i] = numFrames - 1 - i;
+		}
+		free = numFrames;
+	}
+
+	/**
+	 * Takes a free frame out of this arena.
+	 * 
+	 * @return the number of the frame, or -1 if every frame is in use.
+	 */
+	public synchronized int allocate() {
+		return free == 0 ? -1 : freeList[--free];
+	}
+
+	/**
+	 * Returns the buffer of the specified frame. The buffer holds {@link #frameSize} bytes; callers should not change its
+	 * position or limit.
+	 * 
+	 * @param frame
+	 *            the number of a frame obtained from {@link #allocate}.
+	 */
+	public ByteBuffer frame(int frame) {
+		return frames[frame];
+	}
+
+	/**
+	 * Returns the specified frame to this arena. The frame must no longer be read by any page.
+	 * 
+	 * @param frame
+	 *            the number of a frame obtained from {@link #allocate}.
+	 */
+	public synchronized void release(int frame) {
+		freeList[free++] = frame;
+	}
+
+	/**
+	 * @return the size in bytes of each frame of this arena.
+	 */
+	public int frameSize() {
+		return frameSize;
+	}
+
+	/**
+	 * @return the number of frames in this arena.
+	 */
+	public int size() {
+		return frames.length;
+	}
+
+	/**
+	 * @return the number of frames that are not in use.
+	 */
+	public synchronized int available() {
+		return free;
+	}
+}
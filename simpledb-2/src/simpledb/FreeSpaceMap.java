@@ -0,0 +1,216 @@
+package simpledb;
+
+import java.io.*;
+
+/**
+ * FreeSpaceMap records how much space each page of a HeapFile has left for new tuples, so that HeapFile.addTuple can
+ * go straight to a page with room instead of reading pages from the start of the file.
+ * <p>
+ * The map takes two bytes per page. Pages are also kept in one bucket per number of free bytes, and a bitmap records
+ * which buckets are not empty, so a lookup checks at most pageSize / 64 words of the bitmap however large the file
+ * is, and picks the fullest page that fits.
+ * <p>
+ * The map is saved next to the data file by {@link #save} and loaded by {@link #load}. It is only a hint: callers
+ * check the page they are sent to and correct the map if the page has less room than the map says.
+ *
+ * @see HeapFile#addTuple
+ */
+public class FreeSpaceMap {
+
+	/**
+	 * The number of free bytes of each page.
+	 */
+	private char[] free = new char[64];
+
+	/**
+	 * The position of each page in the bucket of its number of free bytes.
+	 */
+	private int[] positions = new int[64];
+
+	private int numPages;
+
+	/**
+	 * The pages with each number of free bytes; the first {@code sizes[n]} entries of {@code buckets[n]} are valid.
+	 * A bucket is allocated when the first page is added to it.
+	 */
+	private final int[][] buckets;
+
+	private final int[] sizes;
+
+	/**
+	 * A bitmap of the buckets that hold at least one page.
+	 */
+	private final long[] nonEmpty;
+
+	/**
+	 * The largest number of free bytes that this map records; larger numbers are recorded as this one.
+	 */
+	private final int maxFree;
+
+	/**
+	 * Creates an empty map for pages of BufferPool.PAGE_SIZE bytes.
+	 */
+	public FreeSpaceMap() {
+		this(BufferPool.PAGE_SIZE);
+	}
+
+	/**
+	 * Creates an empty map for pages of the specified size.
+	 *
+	 * @param pageSize
+	 *            the size of the pages, at most BufferPool.MAX_PAGE_SIZE.
+	 */
+	public FreeSpaceMap(int pageSize) {
+		// a page always has a header, so the free bytes of a page fit in a char even for the largest pages
+		maxFree = Math.min(pageSize, Character.MAX_VALUE);
+		buckets = new int[maxFree + 1][];
+		sizes = new int[maxFree + 1];
+		nonEmpty = new long[(maxFree + 64) / 64];
+	}
+
+	/**
+	 * Returns the number of pages in this map.
+	 */
+	public synchronized int numPages() {
+		return numPages;
+	}
+
+	/**
+	 * Returns the number of free bytes this map records for the specified page.
+	 */
+	public synchronized int freeSpace(int pageNo) {
+		return free[pageNo];
+	}
+
+	/**
+	 * Records the free space of the specified page. Pages must be added in order: pageNo may be at most
+	 * {@link #numPages}.
+	 *
+	 * @param pageNo
+	 *            the number of the page.
+	 * @param freeBytes
+	 *            the number of bytes available for new tuples on the page.
+	 */
+	public synchronized void update(int pageNo, int freeBytes) {
+		if (pageNo > numPages)
+			throw new IllegalArgumentException("page " + pageNo + " is past the end of the map");
+		int n = Math.max(0, Math.min(maxFree, freeBytes));
+		if (pageNo == numPages) {
+			if (numPages == free.length) {
+				free = copyOf(free, numPages * 2);
+				positions = copyOf(positions, numPages * 2);
+			}
+			numPages++;
+		} else {
+			if (free[pageNo] == n)
+				return;
+			remove(free[pageNo], positions[pageNo]);
+		}
+		free[pageNo] = (char) n;
+		if (buckets[n] == null)
+			buckets[n] = new int[4];
+		else if (sizes[n] == buckets[n].length)
+			buckets[n] = copyOf(buckets[n], sizes[n] * 2);
+		positions[pageNo] = sizes[n];
+		buckets[n][sizes[n]++] = pageNo;
+		nonEmpty[n >>> 6] |= 1L << n;
+	}
+
+	/**
+	 * Removes the page at the specified position from the specified bucket, moving the last page of the bucket into
+	 * its place.
+	 */
+	private void remove(int n, int position) {
+		int last = buckets[n][--sizes[n]];
+		buckets[n][position] = last;
+		positions[last] = position;
+		if (sizes[n] == 0)
+			nonEmpty[n >>> 6] &= ~(1L << n);
+	}
+
+	/**
+	 * Returns a page that has at least the specified number of free bytes according to this map, or -1 if there is
+	 * none.
+	 *
+	 * @param neededBytes
+	 *            the number of bytes needed.
+	 */
+	public synchronized int findPage(int neededBytes) {
+		int n = Math.max(0, neededBytes);
+		if (n > maxFree)
+			return -1;
+		int word = n >>> 6;
+		long bits = nonEmpty[word] & (-1L << n);
+		while (bits == 0) {
+			if (++word == nonEmpty.length)
+				return -1;
+			bits = nonEmpty[word];
+		}
+		n = word * 64 + Long.numberOfTrailingZeros(bits);
+		return buckets[n][sizes[n] - 1];
+	}
+
+	/**
+	 * Writes this map to the specified file: the number of pages, followed by the number of free bytes of each page.
+	 */
+	public synchronized void save(File f) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f)));
+		try {
+			out.writeInt(numPages);
+			for (int i = 0; i < numPages; i++)
+				out.writeChar(free[i]);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Reads a map written by {@link #save}. A saved map that covers more pages than the data file has is stale (the
+	 * file was replaced), and is ignored.
+	 *
+	 * @param f
+	 *            the file that the map was saved to.
+	 * @param filePages
+	 *            the number of pages in the data file.
+	 * @return the map, which may cover fewer pages than the data file, or an empty map if f does not exist or is stale.
+	 */
+	public static FreeSpaceMap load(File f, int filePages) throws IOException {
+		return load(f, filePages, BufferPool.PAGE_SIZE);
+	}
+
+	/**
+	 * Reads a map written by {@link #save} for a file of pages of the specified size.
+	 *
+	 * @see #load(File, int)
+	 */
+	public static FreeSpaceMap load(File f, int filePages, int pageSize) throws IOException {
+		FreeSpaceMap map = new FreeSpaceMap(pageSize);
+		if (!f.exists())
+			return map;
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f)));
+		try {
+			int n = in.readInt();
+			if (n > filePages)
+				return map;
+			for (int i = 0; i < n; i++)
+				map.update(i, in.readChar());
+		} catch (EOFException e) {
+			return new FreeSpaceMap(pageSize);
+		} finally {
+			in.close();
+		}
+		return map;
+	}
+
+	private static char[] copyOf(char[] a, int length) {
+		char[] copy = new char[length];
+		System.arraycopy(a, 0, copy, 0, Math.min(a.length, length));
+		return copy;
+	}
+
+	private static int[] copyOf(int[] a, int length) {
+		int[] copy = new int[length];
+		System.arraycopy(a, 0, copy, 0, Math.min(a.length, length));
+		return copy;
+	}
+}
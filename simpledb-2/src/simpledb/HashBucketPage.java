@@ -0,0 +1,275 @@
+package simpledb;
+
+import java.nio.ByteBuffer;
+import java.text.ParseException;
+import java.util.*;
+
+/**
+ * A {@code HashBucketPage} is a page of a {@code HashIndex}: either a primary bucket, which the directory of the index
+ * points to, or an overflow page chained to a bucket whose entries all have the same hash and so cannot be split.
+ * <p>
+ * Every page starts with a header of five 4-byte integers: (1) its type, (2) the number of entries, (3) the local
+ * depth of the bucket, (4) the low bits of the hash that all entries of the bucket share, and (5) the next overflow
+ * page of the bucket, or -1. The entries follow in no particular order; each one holds the hash of the key, the key in
+ * {@link Type#getLen} bytes, and the page number and tuple number of the {@code RecordId} of the tuple.
+ *
+ * @see HashIndex
+ */
+public class HashBucketPage implements Page {
+
+	public static final int BUCKET = 1;
+	public static final int OVERFLOW = 2;
+
+	/**
+	 * The number of bytes of the header of every page.
+	 */
+	static final int HEADER_SIZE = 20;
+
+	static final int TYPE = 0;
+	static final int COUNT = 4;
+	static final int DEPTH = 8;
+	static final int BITS = 12;
+	static final int NEXT = 16;
+
+	/**
+	 * The ID of this {@code HashBucketPage}.
+	 */
+	final HeapPageId pid;
+
+	/**
+	 * The type of the keys of the index.
+	 */
+	final Type keyType;
+
+	/**
+	 * The number of bytes of each entry.
+	 */
+	final int entryLength;
+
+	/**
+	 * The content of this {@code HashBucketPage}.
+	 */
+	final byte[] data;
+
+	/**
+	 * A buffer that wraps {@code data}.
+	 */
+	final ByteBuffer buffer;
+
+	/**
+	 * The previous image of this {@code HashBucketPage}, or {@code null} if it has not been modified since its before
+	 * image was last set.
+	 */
+	private volatile byte[] oldData;
+
+	/**
+	 * The transaction that last dirtied this {@code HashBucketPage}, or {@code null} if it is clean.
+	 */
+	private TransactionId dirtier;
+
+	/**
+	 * Whether this {@code HashBucketPage} has been modified since it was last written to disk.
+	 */
+	private boolean dirty;
+
+	/**
+	 * Creates a {@code HashBucketPage} from a byte array storing data read from disk.
+	 *
+	 * @param id
+	 *            the ID of the page.
+	 * @param data
+	 *            a byte array of {@link BufferPool#PAGE_SIZE} bytes.
+	 */
+	public HashBucketPage(HeapPageId id, byte[] data) {
+		this.pid = id;
+		this.keyType = Database.getCatalog().getTupleDesc(id.getTableId()).getType(0);
+		this.entryLength = entryLength(keyType);
+		this.data = data;
+		this.buffer = ByteBuffer.wrap(data);
+	}
+
+	/**
+	 * Returns the number of bytes of an entry with a key of the specified type.
+	 */
+	static int entryLength(Type keyType) {
+		return 4 + keyType.getLen() + 8;
+	}
+
+	/**
+	 * Returns the number of entries with keys of the specified type that fit on a page.
+	 */
+	static int capacity(Type keyType) {
+		return (BufferPool.PAGE_SIZE - HEADER_SIZE) / entryLength(keyType);
+	}
+
+	/**
+	 * Returns an empty page of the specified type with the specified header.
+	 */
+	static byte[] emptyPage(int type, int depth, int bits) {
+		ByteBuffer b = ByteBuffer.allocate(BufferPool.PAGE_SIZE);
+		b.putInt(TYPE, type);
+		b.putInt(COUNT, 0);
+		b.putInt(DEPTH, depth);
+		b.putInt(BITS, bits);
+		b.putInt(NEXT, -1);
+		return b.array();
+	}
+
+	/**
+	 * @return the ID of this {@code HashBucketPage}.
+	 */
+	public HeapPageId getId() {
+		return pid;
+	}
+
+	/**
+	 * Returns the type of this page, {@link #BUCKET} or {@link #OVERFLOW}.
+	 */
+	public int getType() {
+		return buffer.getInt(TYPE);
+	}
+
+	/**
+	 * Returns the number of entries of this page.
+	 */
+	public int getCount() {
+		return buffer.getInt(COUNT);
+	}
+
+	/**
+	 * Returns the local depth of the bucket: the number of low bits of the hash that its entries share.
+	 */
+	public int getDepth() {
+		return buffer.getInt(DEPTH);
+	}
+
+	/**
+	 * Returns the low bits of the hash that the entries of the bucket share.
+	 */
+	public int getBits() {
+		return buffer.getInt(BITS);
+	}
+
+	/**
+	 * Returns the next overflow page of the bucket, or -1 if there is none.
+	 */
+	public int getNext() {
+		return buffer.getInt(NEXT);
+	}
+
+	void setNext(int pageNo) {
+		copyBeforeImage();
+		buffer.putInt(NEXT, pageNo);
+	}
+
+	/**
+	 * Returns whether this page has no room for another entry.
+	 */
+	public boolean isFull() {
+		return getCount() == capacity(keyType);
+	}
+
+	/**
+	 * Returns the hash of the entry at the specified index.
+	 */
+	public int getHash(int i) {
+		return buffer.getInt(HEADER_SIZE + i * entryLength);
+	}
+
+	/**
+	 * Returns the key of the entry at the specified index.
+	 */
+	public Field getKey(int i) {
+		try {
+			return keyType.parse(buffer, HEADER_SIZE + i * entryLength + 4);
+		} catch (ParseException e) {
+			e.printStackTrace();
+			throw new NoSuchElementException("parsing error!");
+		}
+	}
+
+	/**
+	 * Returns the {@code RecordId} of the entry at the specified index, on a page of the specified table.
+	 */
+	public RecordId getRecordId(int i, int tableId) {
+		int location = HEADER_SIZE + i * entryLength + 4 + keyType.getLen();
+		return new RecordId(new HeapPageId(tableId, buffer.getInt(location)), buffer.getInt(location + 4));
+	}
+
+	/**
+	 * Returns whether the entry at the specified index points to the tuple at the specified {@code RecordId}.
+	 */
+	boolean pointsTo(int i, RecordId rid) {
+		int location = HEADER_SIZE + i * entryLength + 4 + keyType.getLen();
+		return buffer.getInt(location) == rid.getPageId().pageno() && buffer.getInt(location + 4) == rid.tupleno();
+	}
+
+	/**
+	 * Adds an entry at the end of this page.
+	 *
+	 * @throws DbException
+	 *             if this page is full.
+	 */
+	public void addEntry(int hash, Field key, RecordId rid) throws DbException {
+		int n = getCount();
+		if (n == capacity(keyType))
+			throw new DbException("the page is full");
+		copyBeforeImage();
+		int location = HEADER_SIZE + n * entryLength;
+		buffer.putInt(location, hash);
+		PaxPage.writeField(buffer, location + 4, key);
+		buffer.putInt(location + 4 + keyType.getLen(), rid.getPageId().pageno());
+		buffer.putInt(location + 8 + keyType.getLen(), rid.tupleno());
+		buffer.putInt(COUNT, n + 1);
+	}
+
+	/**
+	 * Deletes the entry at the specified index by moving the last entry into its place.
+	 */
+	public void deleteEntry(int i) {
+		int n = getCount();
+		copyBeforeImage();
+		System.arraycopy(data, HEADER_SIZE + (n - 1) * entryLength, data, HEADER_SIZE + i * entryLength, entryLength);
+		buffer.putInt(COUNT, n - 1);
+	}
+
+	/**
+	 * Copies the entry at the specified index of this page to the end of the specified page, which must have room.
+	 */
+	void copyEntry(int i, HashBucketPage to) {
+		int n = to.getCount();
+		System.arraycopy(data, HEADER_SIZE + i * entryLength, to.data, HEADER_SIZE + n * entryLength, entryLength);
+		to.buffer.putInt(COUNT, n + 1);
+	}
+
+	public void markDirty(boolean dirty, TransactionId tid) {
+		this.dirty = dirty;
+		this.dirtier = dirty ? tid : null;
+	}
+
+	public TransactionId isDirty() {
+		return dirty ? dirtier : null;
+	}
+
+	public byte[] getPageData() {
+		return data;
+	}
+
+	public HashBucketPage getBeforeImage() {
+		byte[] before = oldData;
+		return new HashBucketPage(pid, before != null ? before : data.clone());
+	}
+
+	public void setBeforeImage() {
+		oldData = null;
+	}
+
+	/**
+	 * Saves the before image of this {@code HashBucketPage}, if it has not been saved since it was last set, before the
+	 * first write to this {@code HashBucketPage}.
+	 */
+	synchronized void copyBeforeImage() {
+		if (oldData == null)
+			oldData = data.clone();
+	}
+}
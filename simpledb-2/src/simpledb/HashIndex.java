@@ -0,0 +1,518 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+/**
+ * HashIndex is a secondary index on one field of a HeapFile that maps each value of the field to the
+ * {@code RecordId}s of the tuples holding it, so that an equality predicate or an equi-join probe on the field reads
+ * one bucket page, and the pages of the matching tuples, instead of the whole table. It is an extendible hash table:
+ * a directory of 2^d entries, indexed by the low d bits of the hash of a key, points to {@link HashBucketPage}s, and a
+ * full bucket splits in two on the next bit of the hash, doubling the directory if it already used all d bits.
+ * <p>
+ * The directory is not stored: every bucket records its local depth and the bits of the hash it holds, and the
+ * directory is rebuilt from the headers of the pages when the index is first used. A bucket whose entries all have
+ * the same hash cannot be split and takes overflow pages instead; buckets are never merged.
+ * <p>
+ * An index is registered with {@link Catalog#addIndex} and kept up to date by {@link BufferPool#insertTuple} and
+ * {@link BufferPool#deleteTuple}. Its pages are cached in the BufferPool under its own ID; the pages of a split are
+ * rewritten on disk at once and dropped from the BufferPool, and only adding an entry to a bucket that has room, or
+ * deleting one, changes a cached page in place. Updates are serialized on the index.
+ *
+ * @see HashIndexScan
+ * @see IndexJoin
+ */
+public class HashIndex implements DbFile {
+
+	/**
+	 * The most bits of the hash that the directory is indexed by.
+	 */
+	static final int MAX_DEPTH = 20;
+
+	/**
+	 * The File associated with this HashIndex.
+	 */
+	private final File file;
+
+	/**
+	 * The ID of the indexed table.
+	 */
+	private final int tableId;
+
+	/**
+	 * The index of the indexed field.
+	 */
+	private final int keyField;
+
+	/**
+	 * The TupleDesc of the entries: the key, and the page number and tuple number of a tuple.
+	 */
+	private final TupleDesc td;
+
+	/**
+	 * The channel used for all reads and writes of this HashIndex, opened on first use.
+	 */
+	private FileChannel channel;
+
+	/**
+	 * The page number of the bucket of each combination of the low bits of the hash, or null if it has not been
+	 * built.
+	 */
+	private int[] directory;
+
+	/**
+	 * The number of bits of the hash that the directory is indexed by.
+	 */
+	private int globalDepth;
+
+	/**
+	 * Constructs a HashIndex backed by the specified file.
+	 *
+	 * @param f
+	 *            the file that stores the buckets; an empty file is an empty index, which {@link #build} fills.
+	 * @param table
+	 *            the indexed table.
+	 * @param keyField
+	 *            the index of the indexed field.
+	 */
+	public HashIndex(File f, HeapFile table, int keyField) {
+		this.file = f;
+		this.tableId = table.getId();
+		this.keyField = keyField;
+		TupleDesc tableTd = table.getTupleDesc();
+		this.td = new TupleDesc(new Type[] { tableTd.getType(keyField), Type.INT_TYPE, Type.INT_TYPE }, new String[] {
+				tableTd.getFieldName(keyField), "pageno", "tupleno" });
+	}
+
+	/**
+	 * Returns the File backing this HashIndex on disk.
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Returns the ID of the indexed table.
+	 */
+	public int getTableId() {
+		return tableId;
+	}
+
+	/**
+	 * Returns the index of the indexed field.
+	 */
+	public int keyField() {
+		return keyField;
+	}
+
+	// see DbFile.java for javadocs
+	public int getId() {
+		return file.getAbsoluteFile().hashCode();
+	}
+
+	// see DbFile.java for javadocs
+	public TupleDesc getTupleDesc() {
+		return td;
+	}
+
+	/**
+	 * Returns the number of pages in this HashIndex.
+	 */
+	public int numPages() {
+		return (int) (file.length() / BufferPool.PAGE_SIZE);
+	}
+
+	// see DbFile.java for javadocs
+	public Page readPage(PageId pid) {
+		if (getId() != pid.getTableId())
+			throw new IllegalArgumentException("page " + pid.pageno() + " does not belong to this file");
+		byte[] data = new byte[BufferPool.PAGE_SIZE];
+		try {
+			if (!read(pid.pageno(), ByteBuffer.wrap(data)))
+				throw new IllegalArgumentException("page " + pid.pageno() + " does not exist in this file");
+		} catch (IOException e) {
+			throw new RuntimeException("failed to read page " + pid.pageno(), e);
+		}
+		return new HashBucketPage((HeapPageId) pid, data);
+	}
+
+	// see DbFile.java for javadocs
+	public void writePage(Page page) throws IOException {
+		write(page.getId().pageno(), page.getPageData());
+	}
+
+	/**
+	 * Reads the start of the specified page from disk until buf is full.
+	 *
+	 * @return false if the end of the file was reached before buf was filled
+	 */
+	private boolean read(int pageNo, ByteBuffer buf) throws IOException {
+		long position = (long) pageNo * BufferPool.PAGE_SIZE;
+		FileChannel ch = channel();
+		while (buf.hasRemaining())
+			if (ch.read(buf, position + buf.position()) < 0)
+				return false;
+		return true;
+	}
+
+	/**
+	 * Writes the specified content to the specified page on disk.
+	 */
+	private void write(int pageNo, byte[] data) throws IOException {
+		ByteBuffer buf = ByteBuffer.wrap(data);
+		long position = (long) pageNo * BufferPool.PAGE_SIZE;
+		FileChannel ch = channel();
+		while (buf.hasRemaining())
+			ch.write(buf, position + buf.position());
+	}
+
+	/**
+	 * Returns the channel of this HashIndex, opening it if it is not open.
+	 */
+	private synchronized FileChannel channel() throws IOException {
+		if (channel == null || !channel.isOpen())
+			channel = new RandomAccessFile(file, "rw").getChannel();
+		return channel;
+	}
+
+	/**
+	 * Closes the channel of this HashIndex. The channel is reopened if the HashIndex is used again.
+	 */
+	public synchronized void close() throws IOException {
+		if (channel != null)
+			channel.close();
+		channel = null;
+	}
+
+	/**
+	 * Returns the hash of the specified key. The hash codes of IntFields are their values, so they are mixed to spread
+	 * runs of consecutive values over the low bits.
+	 */
+	static int hash(Field key) {
+		int h = key.hashCode() * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * Builds the directory from the headers of the pages on disk, writing an empty bucket first if the file is empty.
+	 * The headers on disk are up to date, as a bucket only changes its depth when it is split and rewritten.
+	 */
+	private void loadDirectory() throws IOException {
+		if (directory != null)
+			return;
+		if (numPages() == 0)
+			write(0, HashBucketPage.emptyPage(HashBucketPage.BUCKET, 0, 0));
+		int pages = numPages();
+		int[][] buckets = new int[pages][];
+		int depth = 0;
+		ByteBuffer header = ByteBuffer.allocate(HashBucketPage.HEADER_SIZE);
+		for (int pageNo = 0; pageNo < pages; pageNo++) {
+			header.clear();
+			read(pageNo, header);
+			if (header.getInt(HashBucketPage.TYPE) != HashBucketPage.BUCKET)
+				continue;
+			buckets[pageNo] = new int[] { header.getInt(HashBucketPage.DEPTH), header.getInt(HashBucketPage.BITS) };
+			depth = Math.max(depth, buckets[pageNo][0]);
+		}
+		int[] dir = new int[1 << depth];
+		for (int pageNo = 0; pageNo < pages; pageNo++)
+			if (buckets[pageNo] != null)
+				for (int i = buckets[pageNo][1]; i < dir.length; i += 1 << buckets[pageNo][0])
+					dir[i] = pageNo;
+		globalDepth = depth;
+		directory = dir;
+	}
+
+	/**
+	 * Returns the specified page of this HashIndex through the BufferPool.
+	 */
+	private HashBucketPage page(TransactionId tid, int pageNo, Permissions perm) throws DbException,
+			TransactionAbortedException {
+		return (HashBucketPage) Database.getBufferPool().getPage(tid, new HeapPageId(getId(), pageNo), perm);
+	}
+
+	/**
+	 * Replaces the specified page on disk with the specified content, and drops the cached page so that it is read
+	 * again.
+	 */
+	private void rewrite(int pageNo, byte[] content) throws IOException {
+		Database.getBufferPool().discardPage(new HeapPageId(getId(), pageNo));
+		write(pageNo, content);
+	}
+
+	/**
+	 * Returns the page number of the bucket of the specified hash.
+	 */
+	private int bucketOf(int hash) {
+		return directory[hash & ((1 << globalDepth) - 1)];
+	}
+
+	/**
+	 * Adds an entry for every tuple of the indexed table.
+	 */
+	public synchronized void build(TransactionId tid) throws DbException, IOException, TransactionAbortedException {
+		DbFileIterator it = Database.getCatalog().getDbFile(tableId).iterator(tid);
+		it.open();
+		try {
+			while (it.hasNext()) {
+				Tuple t = it.next();
+				insert(tid, t.getField(keyField), t.getRecordId());
+			}
+		} finally {
+			it.close();
+		}
+	}
+
+	/**
+	 * Adds an entry that maps the specified key to the tuple at the specified {@code RecordId}.
+	 */
+	public synchronized void insert(TransactionId tid, Field key, RecordId rid) throws DbException, IOException,
+			TransactionAbortedException {
+		loadDirectory();
+		int hash = hash(key);
+		while (true) {
+			int pageNo = bucketOf(hash);
+			HashBucketPage bucket = page(tid, pageNo, Permissions.READ_WRITE);
+			HashBucketPage last = bucket;
+			boolean sameHash = true;
+			for (HashBucketPage p = bucket; p != null; p = p.getNext() < 0 ? null : page(tid, p.getNext(),
+					Permissions.READ_WRITE)) {
+				if (!p.isFull()) {
+					p.addEntry(hash, key, rid);
+					p.markDirty(true, tid);
+					return;
+				}
+				for (int i = 0; i < p.getCount() && sameHash; i++)
+					sameHash = p.getHash(i) == hash;
+				last = p;
+			}
+			if (sameHash || bucket.getDepth() == MAX_DEPTH) {
+				// no split would separate the entries: chain an overflow page holding the new entry
+				int overflow = numPages();
+				byte[] content = HashBucketPage.emptyPage(HashBucketPage.OVERFLOW, bucket.getDepth(), bucket.getBits());
+				HashBucketPage page = new HashBucketPage(new HeapPageId(getId(), overflow), content);
+				page.addEntry(hash, key, rid);
+				write(overflow, content);
+				last.setNext(overflow);
+				last.markDirty(true, tid);
+				return;
+			}
+			split(tid, pageNo);
+		}
+	}
+
+	/**
+	 * Splits the specified bucket, with its overflow pages, on the next bit of the hash: the entries with that bit
+	 * set move to a new bucket at the end of the file.
+	 */
+	private void split(TransactionId tid, int pageNo) throws DbException, IOException, TransactionAbortedException {
+		HashBucketPage bucket = page(tid, pageNo, Permissions.READ_WRITE);
+		int depth = bucket.getDepth();
+		int bits = bucket.getBits();
+		if (depth == globalDepth) {
+			int[] dir = new int[directory.length * 2];
+			System.arraycopy(directory, 0, dir, 0, directory.length);
+			System.arraycopy(directory, 0, dir, directory.length, directory.length);
+			directory = dir;
+			globalDepth++;
+		}
+		ArrayList<HashBucketPage> chain = new ArrayList<HashBucketPage>();
+		ArrayList<Integer> spare = new ArrayList<Integer>();
+		for (HashBucketPage p = bucket; p != null; p = p.getNext() < 0 ? null : page(tid, p.getNext(),
+				Permissions.READ_WRITE)) {
+			chain.add(p);
+			if (p != bucket)
+				spare.add(p.getId().pageno());
+		}
+		int newBucket = numPages();
+		write(newBucket, HashBucketPage.emptyPage(HashBucketPage.BUCKET, depth + 1, bits | (1 << depth)));
+
+		ArrayList<HashBucketPage> low = new ArrayList<HashBucketPage>();
+		ArrayList<HashBucketPage> high = new ArrayList<HashBucketPage>();
+		low.add(new HashBucketPage(new HeapPageId(getId(), pageNo), HashBucketPage.emptyPage(HashBucketPage.BUCKET,
+				depth + 1, bits)));
+		high.add(new HashBucketPage(new HeapPageId(getId(), newBucket), HashBucketPage.emptyPage(
+				HashBucketPage.BUCKET, depth + 1, bits | (1 << depth))));
+		for (HashBucketPage p : chain) {
+			for (int i = 0; i < p.getCount(); i++) {
+				ArrayList<HashBucketPage> side = ((p.getHash(i) >>> depth) & 1) == 0 ? low : high;
+				HashBucketPage to = side.get(side.size() - 1);
+				if (to.isFull()) {
+					int overflow = spare.isEmpty() ? numPages() : spare.remove(0);
+					HashBucketPage next = new HashBucketPage(new HeapPageId(getId(), overflow), HashBucketPage
+							.emptyPage(HashBucketPage.OVERFLOW, to.getDepth(), to.getBits()));
+					to.setNext(overflow);
+					side.add(next);
+					to = next;
+					if (overflow == numPages())
+						write(overflow, next.getPageData());
+				}
+				p.copyEntry(i, to);
+			}
+		}
+		// overflow pages left over after deletes stay chained, empty, to the bucket with the low bit clear
+		for (int overflow : spare) {
+			HashBucketPage last = low.get(low.size() - 1);
+			HashBucketPage next = new HashBucketPage(new HeapPageId(getId(), overflow), HashBucketPage.emptyPage(
+					HashBucketPage.OVERFLOW, last.getDepth(), last.getBits()));
+			last.setNext(overflow);
+			low.add(next);
+		}
+		for (HashBucketPage p : low)
+			rewrite(p.getId().pageno(), p.getPageData());
+		for (HashBucketPage p : high)
+			rewrite(p.getId().pageno(), p.getPageData());
+
+		int highBits = bits | (1 << depth);
+		for (int i = highBits; i < directory.length; i += 1 << (depth + 1))
+			directory[i] = newBucket;
+	}
+
+	/**
+	 * Deletes the entry that maps the specified key to the tuple at the specified {@code RecordId}.
+	 *
+	 * @return false if there is no such entry.
+	 */
+	public synchronized boolean delete(TransactionId tid, Field key, RecordId rid) throws DbException,
+			TransactionAbortedException {
+		try {
+			loadDirectory();
+		} catch (IOException e) {
+			DbException dbe = new DbException("failed to read the directory of " + file.getName());
+			dbe.initCause(e);
+			throw dbe;
+		}
+		int hash = hash(key);
+		for (int pageNo = bucketOf(hash); pageNo >= 0;) {
+			HashBucketPage p = page(tid, pageNo, Permissions.READ_WRITE);
+			for (int i = 0; i < p.getCount(); i++) {
+				if (p.getHash(i) == hash && p.pointsTo(i, rid)) {
+					p.deleteEntry(i);
+					p.markDirty(true, tid);
+					return true;
+				}
+			}
+			pageNo = p.getNext();
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the {@code RecordId}s of the tuples of the indexed table whose indexed field equals the specified key.
+	 */
+	public ArrayList<RecordId> lookup(TransactionId tid, Field key) throws DbException, TransactionAbortedException {
+		int pageNo;
+		int hash = hash(key);
+		synchronized (this) {
+			try {
+				loadDirectory();
+			} catch (IOException e) {
+				DbException dbe = new DbException("failed to read the directory of " + file.getName());
+				dbe.initCause(e);
+				throw dbe;
+			}
+			pageNo = bucketOf(hash);
+		}
+		ArrayList<RecordId> rids = new ArrayList<RecordId>();
+		while (pageNo >= 0) {
+			HashBucketPage p = page(tid, pageNo, Permissions.READ_ONLY);
+			for (int i = 0; i < p.getCount(); i++)
+				if (p.getHash(i) == hash && key.equals(p.getKey(i)))
+					rids.add(p.getRecordId(i, tableId));
+			pageNo = p.getNext();
+		}
+		return rids;
+	}
+
+	/**
+	 * The entries of a HashIndex are only changed through the indexed table.
+	 *
+	 * @throws DbException
+	 *             always.
+	 */
+	public ArrayList<Page> addTuple(TransactionId tid, Tuple t) throws DbException {
+		throw new DbException(file.getName() + " is an index; insert into the indexed table instead");
+	}
+
+	/**
+	 * The entries of a HashIndex are only changed through the indexed table.
+	 *
+	 * @throws DbException
+	 *             always.
+	 */
+	public Page deleteTuple(TransactionId tid, Tuple t) throws DbException {
+		throw new DbException(file.getName() + " is an index; delete from the indexed table instead");
+	}
+
+	/**
+	 * Returns an iterator over the entries of this HashIndex, as tuples of its TupleDesc, in no particular order.
+	 */
+	public DbFileIterator iterator(TransactionId tid) {
+		return new HashIndexIterator(tid);
+	}
+
+	/**
+	 * Iterates over the entries of the pages of this HashIndex in page order. The entries of a page are read when the
+	 * iterator reaches it.
+	 */
+	class HashIndexIterator extends AbstractDbFileIterator {
+
+		final TransactionId tid;
+
+		/**
+		 * The current page, or null if this iterator is not open.
+		 */
+		HashBucketPage page;
+
+		/**
+		 * The page number of the current page, and the index of the next entry on it.
+		 */
+		int pageNo, position;
+
+		HashIndexIterator(TransactionId tid) {
+			this.tid = tid;
+		}
+
+		public void open() throws DbException, TransactionAbortedException {
+			pageNo = -1;
+			position = 0;
+			page = null;
+			if (numPages() > 0) {
+				pageNo = 0;
+				page = page(tid, 0, Permissions.READ_ONLY);
+			}
+		}
+
+		protected Tuple readNext() throws DbException, TransactionAbortedException {
+			if (page == null)
+				return null;
+			while (position == page.getCount()) {
+				if (++pageNo >= numPages()) {
+					page = null;
+					return null;
+				}
+				page = page(tid, pageNo, Permissions.READ_ONLY);
+				position = 0;
+			}
+			Tuple t = new Tuple(td);
+			RecordId rid = page.getRecordId(position, tableId);
+			t.setField(0, page.getKey(position));
+			t.setField(1, new IntField(rid.getPageId().pageno()));
+			t.setField(2, new IntField(rid.tupleno()));
+			position++;
+			return t;
+		}
+
+		public void rewind() throws DbException, TransactionAbortedException {
+			close();
+			open();
+		}
+
+		public void close() {
+			super.close();
+			page = null;
+		}
+	}
+}
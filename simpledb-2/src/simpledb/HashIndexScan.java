@@ -0,0 +1,117 @@
+package simpledb;
+import java.util.*;
+
+/**
+ * HashIndexScan is an access method that reads the tuples of a table whose
+ * indexed field equals a key, by looking the key up in a {@link HashIndex}
+ * on the field and reading the tuples at the returned RecordIds. It returns
+ * the same tuples as a Filter with an EQUALS predicate over a SeqScan of the
+ * table, in no particular order. {@link IndexJoin} probes it with a new key
+ * for every outer tuple.
+ */
+public class HashIndexScan extends AbstractDbIterator {
+
+    final TransactionId tid;
+
+    final HashIndex index;
+
+    final TupleDesc td;
+
+    /** The key to look up, or null if no tuple is returned. */
+    Field key;
+
+    /** The RecordIds of the matching tuples, or null if this scan is not open. */
+    ArrayList<RecordId> rids;
+
+    /** The index in rids of the next tuple. */
+    int position;
+
+    /**
+     * Creates a scan of the tuples of the specified table that satisfy the
+     * specified predicate.
+     *
+     * @param tid The transaction this scan is running as a part of.
+     * @param tableid the table to scan.
+     * @param tableAlias the alias of this table (needed by the parser).
+     * @param p a predicate for which {@link #canAnswer} is true.
+     * @throws IllegalArgumentException if the predicate cannot be answered
+     *   by a hash index of the table.
+     */
+    public HashIndexScan(TransactionId tid, int tableid, String tableAlias, Predicate p) {
+        this(tid, tableid, tableAlias, p.field);
+        if (p.op != Predicate.Op.EQUALS)
+            throw new IllegalArgumentException("predicate " + p + " cannot be answered by a hash index");
+        key = p.operand;
+    }
+
+    /**
+     * Creates a scan of the tuples of the specified table whose specified
+     * field equals the key of the last call to {@link #probe}; it returns
+     * nothing until then.
+     *
+     * @param tid The transaction this scan is running as a part of.
+     * @param tableid the table to scan.
+     * @param tableAlias the alias of this table (needed by the parser).
+     * @param field a field of the table that has a hash index.
+     * @throws IllegalArgumentException if the field has no hash index.
+     */
+    public HashIndexScan(TransactionId tid, int tableid, String tableAlias, int field) {
+        index = Database.getCatalog().getIndex(tableid, field);
+        if (index == null)
+            throw new IllegalArgumentException("field " + field + " of table " + tableid + " has no hash index");
+        this.tid = tid;
+        td = Database.getCatalog().getTupleDesc(tableid);
+    }
+
+    /**
+     * Returns whether the specified table has a hash index on the field of
+     * the specified predicate and the predicate is an EQUALS predicate.
+     *
+     * @param tableid the table to scan.
+     * @param p a predicate on the tuples of the table.
+     */
+    public static boolean canAnswer(int tableid, Predicate p) {
+        return p.op == Predicate.Op.EQUALS && Database.getCatalog().getIndex(tableid, p.field) != null;
+    }
+
+    /**
+     * Makes this scan return the tuples whose indexed field equals the
+     * specified key, from the first one; the scan must be open.
+     */
+    public void probe(Field key) throws DbException, TransactionAbortedException {
+        this.key = key;
+        rewind();
+    }
+
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    public void open()
+        throws DbException, TransactionAbortedException {
+        rids = key == null ? new ArrayList<RecordId>() : index.lookup(tid, key);
+        position = 0;
+    }
+
+    protected Tuple readNext() throws DbException, TransactionAbortedException {
+        while (rids != null && position < rids.size()) {
+            RecordId rid = rids.get(position++);
+            HeapPage page = (HeapPage) Database.getBufferPool().getPage(tid, rid.getPageId(), Permissions.READ_ONLY);
+            Tuple t = page.getTuple(rid.tupleno());
+            if (t != null)
+                return t;
+        }
+        return null;
+    }
+
+    public void close() {
+        super.close();
+        rids = null;
+    }
+
+    public void rewind()
+        throws DbException, TransactionAbortedException {
+        close();
+        open();
+    }
+}
@@ -1,6 +1,9 @@
 package simpledb;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
 import java.util.*;
 
 /**
@@ -22,7 +25,46 @@ public class HeapFile implements DbFile {
 	 */
 	protected TupleDesc td;
 
-	private Page page;
+	/**
+	 * Whether the pages of this HeapFile store string fields at their actual length instead of padding them to
+	 * Type.STRING_LEN bytes.
+	 * 
+	 * @see HeapPage#HeapPage(HeapPageId, byte[])
+	 */
+	protected final boolean variableLength;
+
+	/**
+	 * Whether the pages of this HeapFile store string fields as codes of its StringDictionary.
+	 * 
+	 * @see #getDictionary
+	 */
+	protected final boolean dictionaryEncoded;
+
+	/**
+	 * The size of the pages of this HeapFile, a power of two from BufferPool.PAGE_SIZE to BufferPool.MAX_PAGE_SIZE.
+	 */
+	protected final int pageSize;
+
+	/**
+	 * The dictionary of the string fields, loaded on first use if this HeapFile is dictionary-encoded.
+	 */
+	private StringDictionary dictionary;
+
+	/**
+	 * The channel used for all reads and writes of this HeapFile, opened on first use. Pages are read and written with
+	 * positional I/O, so concurrent callers never share a file pointer.
+	 */
+	private volatile FileChannel channel;
+
+	/**
+	 * The free space of each page, loaded on the first insert or delete.
+	 */
+	private FreeSpaceMap freeSpace;
+
+	/**
+	 * The per-page summaries of the field values, loaded on the first insert, delete or pruned scan.
+	 */
+	private ZoneMap zones;
 
 	/**
 	 * Constructs a heap file backed by the specified file.
@@ -31,8 +73,98 @@ public class HeapFile implements DbFile {
 	 *            the file that stores the on-disk backing store for this heap file.
 	 */
 	public HeapFile(File f, TupleDesc td) {
+		this(f, td, false);
+	}
+
+	/**
+	 * Constructs a heap file backed by the specified file, whose pages use the specified record layout.
+	 * 
+	 * @param f
+	 *            the file that stores the on-disk backing store for this heap file.
+	 * @param variableLength
+	 *            true if the pages store string fields at their actual length, as written by
+	 *            HeapFileEncoder.convert with variableLength set; false if every field takes Type.getLen() bytes.
+	 */
+	public HeapFile(File f, TupleDesc td, boolean variableLength) {
+		this(f, td, variableLength, false);
+	}
+
+	/**
+	 * Constructs a heap file backed by the specified file, whose pages use the specified record layout.
+	 * 
+	 * @param f
+	 *            the file that stores the on-disk backing store for this heap file.
+	 * @param variableLength
+	 *            true if the pages store string fields at their actual length.
+	 * @param dictionaryEncoded
+	 *            true if the pages store each string field as the 4-byte code of the string in the dictionary of the
+	 *            file, as written by HeapFileEncoder.convert with dictionaryEncoded set; variableLength is then
+	 *            irrelevant.
+	 */
+	public HeapFile(File f, TupleDesc td, boolean variableLength, boolean dictionaryEncoded) {
+		this(f, td, variableLength, dictionaryEncoded, BufferPool.PAGE_SIZE);
+	}
+
+	/**
+	 * Constructs a heap file backed by the specified file, whose pages use the specified record layout and size.
+	 * Large pages suit tables that are mostly scanned, since each read brings in more tuples, and small pages suit
+	 * tables whose tuples are read and updated one at a time.
+	 * 
+	 * @param f
+	 *            the file that stores the on-disk backing store for this heap file.
+	 * @param variableLength
+	 *            true if the pages store string fields at their actual length.
+	 * @param dictionaryEncoded
+	 *            true if the pages store string fields as codes of the dictionary of the file.
+	 * @param pageSize
+	 *            the size of the pages, a power of two from BufferPool.PAGE_SIZE to BufferPool.MAX_PAGE_SIZE; the
+	 *            file must have been written with this size.
+	 * @see HeapFile#HeapFile(File, TupleDesc, boolean, boolean)
+	 */
+	public HeapFile(File f, TupleDesc td, boolean variableLength, boolean dictionaryEncoded, int pageSize) {
+		if (!BufferPool.isValidPageSize(pageSize))
+			throw new IllegalArgumentException("unsupported page size " + pageSize);
 		this.file = f;
 		this.td = td;
+		this.variableLength = variableLength && !dictionaryEncoded;
+		this.dictionaryEncoded = dictionaryEncoded;
+		this.pageSize = pageSize;
+	}
+
+	/**
+	 * Returns the size of the pages of this HeapFile.
+	 */
+	public int getPageSize() {
+		return pageSize;
+	}
+
+	/**
+	 * Returns whether the pages of this HeapFile store string fields at their actual length.
+	 */
+	public boolean isVariableLength() {
+		return variableLength;
+	}
+
+	/**
+	 * Returns the file that the dictionary of the string fields of this HeapFile is saved to.
+	 */
+	public File dictionaryFile() {
+		return new File(file.getPath() + ".dict");
+	}
+
+	/**
+	 * Returns the dictionary of the string fields of this HeapFile, loading it from {@link #dictionaryFile} on first
+	 * use, or null if the pages of this HeapFile store strings themselves.
+	 */
+	public synchronized StringDictionary getDictionary() {
+		if (dictionaryEncoded && dictionary == null) {
+			try {
+				dictionary = new StringDictionary(dictionaryFile());
+			} catch (IOException e) {
+				throw new RuntimeException("failed to load the dictionary of " + file.getName(), e);
+			}
+		}
+		return dictionary;
 	}
 
 	/**
@@ -67,71 +199,552 @@ public class HeapFile implements DbFile {
 
 	// see DbFile.java for javadocs
 	public Page readPage(PageId pid) {
-		// some code goes here
-		if(getId() == pid.getTableId()) 
-        {
-            RandomAccessFile randomAccessFile = null;   
-            byte[] page = new byte[BufferPool.PAGE_SIZE];   
-            try {
-                randomAccessFile = new RandomAccessFile(file, "rw");    
-                randomAccessFile.seek(pid.pageno());    
-                randomAccessFile.readFully(page);;      
-            } catch (FileNotFoundException e) {e.printStackTrace(); 
-            } catch (IOException e) {e.printStackTrace();}  
-            HeapPage heapPage = null;   
-            try {
-                heapPage = new HeapPage((HeapPageId) pid, page);    
-            } catch (IOException e) {e.printStackTrace();}
-            try {
-                randomAccessFile.close();   
-            } catch (IOException e) {e.printStackTrace();}
-            return heapPage;    
-        }
-		throw new UnsupportedOperationException("Implement this");
+		if (getId() != pid.getTableId())
+			throw new IllegalArgumentException("page " + pid.pageno() + " does not belong to this file");
+		byte[] data = new byte[pageSize];
+		try {
+			if (!readFully(ByteBuffer.wrap(data), (long) pid.pageno() * pageSize))
+				throw new IllegalArgumentException("page " + pid.pageno() + " does not exist in this file");
+			return new HeapPage((HeapPageId) pid, data);
+		} catch (IOException e) {
+			throw new RuntimeException("failed to read page " + pid.pageno(), e);
+		}
+	}
+
+	/**
+	 * Reads the specified page into the specified frame and returns a HeapPage that reads its content from the frame,
+	 * so that the page data is never copied onto the Java heap.
+	 * 
+	 * @param pid
+	 *            the ID of the page to read.
+	 * @param frame
+	 *            a buffer of getPageSize() bytes, which must not be reused until the returned page has been
+	 *            detached from it.
+	 * @return the page; subclasses that do not need the frame may return a page that does not use it.
+	 * @see FrameArena
+	 */
+	public Page readPage(PageId pid, ByteBuffer frame) {
+		if (getId() != pid.getTableId())
+			throw new IllegalArgumentException("page " + pid.pageno() + " does not belong to this file");
+		ByteBuffer buf = frame.duplicate();
+		buf.clear();
+		try {
+			if (!readFully(buf, (long) pid.pageno() * pageSize))
+				throw new IllegalArgumentException("page " + pid.pageno() + " does not exist in this file");
+		} catch (IOException e) {
+			throw new RuntimeException("failed to read page " + pid.pageno(), e);
+		}
+		return new HeapPage((HeapPageId) pid, frame);
 	}
 
 	// see DbFile.java for javadocs
 	public void writePage(Page page) throws IOException {
-		// some code goes here
-		// not necessary for assignment1
+		ByteBuffer buf = ByteBuffer.wrap(page.getPageData());
+		long position = (long) page.getId().pageno() * pageSize;
+		try {
+			writeFully(channel(), buf, position);
+		} catch (ClosedChannelException e) {
+			// the channel was closed under us (e.g., by an interrupted reader); reopen it and retry once
+			buf.rewind();
+			writeFully(channel(), buf, position);
+		}
+	}
+
+	/**
+	 * Reads from the specified position of this HeapFile until buf is full.
+	 * 
+	 * @return false if the end of the file was reached before buf was filled
+	 */
+	boolean readFully(ByteBuffer buf, long position) throws IOException {
+		try {
+			return readFully(channel(), buf, position);
+		} catch (ClosedChannelException e) {
+			buf.clear();
+			return readFully(channel(), buf, position);
+		}
+	}
+
+	private static boolean readFully(FileChannel ch, ByteBuffer buf, long position) throws IOException {
+		while (buf.hasRemaining()) {
+			int n = ch.read(buf, position + buf.position());
+			if (n < 0)
+				return false;
+		}
+		return true;
+	}
+
+	static void writeFully(FileChannel ch, ByteBuffer buf, long position) throws IOException {
+		while (buf.hasRemaining())
+			ch.write(buf, position + buf.position());
+	}
+
+	/**
+	 * Returns the channel of this HeapFile, opening it if it is not open.
+	 */
+	protected FileChannel channel() throws IOException {
+		FileChannel ch = channel;
+		if (ch != null && ch.isOpen())
+			return ch;
+		synchronized (this) {
+			if (channel == null || !channel.isOpen())
+				channel = new RandomAccessFile(file, "rw").getChannel();
+			return channel;
+		}
+	}
+
+	/**
+	 * Closes the channel of this HeapFile. The channel is reopened if the HeapFile is used again.
+	 */
+	public synchronized void close() throws IOException {
+		if (freeSpace != null)
+			freeSpace.save(freeSpaceFile());
+		if (channel != null)
+			channel.close();
+		channel = null;
+		if (zones != null)
+			zones.save(zoneMapFile(), file);
+		if (dictionary != null)
+			dictionary.close();
+	}
+
+	/**
+	 * Forgets the free-space and zone maps of this HeapFile and deletes their saved copies, and closes its channel,
+	 * because the file was replaced on disk. The maps are rebuilt from the new file when they are next needed.
+	 */
+	synchronized void replaced() throws IOException {
+		freeSpace = null;
+		zones = null;
+		freeSpaceFile().delete();
+		zoneMapFile().delete();
+		if (channel != null)
+			channel.close();
+		channel = null;
+	}
+
+	/**
+	 * Returns the file that the free-space map of this HeapFile is saved to when this HeapFile is closed.
+	 */
+	public File freeSpaceFile() {
+		return new File(file.getPath() + ".fsm");
+	}
+
+	/**
+	 * Returns the free-space map of this HeapFile, loading it from {@link #freeSpaceFile} if it has not been loaded.
+	 * Pages added to the file since the map was saved are read to find their free space.
+	 */
+	synchronized FreeSpaceMap freeSpaceMap() throws IOException {
+		if (freeSpace == null) {
+			int pages = numPages();
+			FreeSpaceMap map = FreeSpaceMap.load(freeSpaceFile(), pages, pageSize);
+			for (int i = map.numPages(); i < pages; i++)
+				map.update(i, ((HeapPage) readPage(new HeapPageId(getId(), i))).availableSpace());
+			freeSpace = map;
+		}
+		return freeSpace;
+	}
+
+	/**
+	 * Returns the file that the zone map of this HeapFile is saved to.
+	 */
+	public File zoneMapFile() {
+		return new File(file.getPath() + ".zm");
+	}
+
+	/**
+	 * Returns the zone map of this HeapFile, loading it from {@link #zoneMapFile} or, if it was not saved since the
+	 * file last changed, rebuilding it from the pages on disk and saving it. The map is loaded before the first
+	 * insert or delete, so no change that the map does not cover can be waiting in the BufferPool when it is rebuilt.
+	 */
+	synchronized ZoneMap zoneMap() throws IOException {
+		if (zones == null) {
+			Type[] types = ZoneMap.typesOf(td);
+			ZoneMap map = ZoneMap.load(zoneMapFile(), file, types);
+			if (map == null) {
+				map = new ZoneMap(types);
+				for (int i = 0, pages = numPages(); i < pages; i++)
+					map.summarize(i, ((HeapPage) readPage(new HeapPageId(getId(), i))).iterator());
+				map.save(zoneMapFile(), file);
+			}
+			zones = map;
+		}
+		return zones;
+	}
+
+	/**
+	 * Returns the number of bytes that the specified tuple and its entry take on a page of this HeapFile.
+	 */
+	int storedLength(Tuple t) {
+		int length = 4;
+		for (int i = 0; i < td.numFields(); i++) {
+			Field f = t.getField(i);
+			if (dictionaryEncoded && f instanceof StringField)
+				length += 4;
+			else if (variableLength && f instanceof StringField)
+				length += 4 + ((StringField) f).getValue().length();
+			else
+				length += td.getType(i).getLen();
+		}
+		return length;
 	}
 
 	/**
 	 * Returns the number of pages in this HeapFile.
 	 */
 	public int numPages() {
-		return (int) (file.length() / BufferPool.PAGE_SIZE);
+		return (int) (file.length() / pageSize);
 	}
 
 	// see DbFile.java for javadocs
+	// The free-space map sends the tuple to a page that has room for it; if the map is out of date and the page is
+	// full, the map is corrected and another page is tried. A new page is appended only if no page has room.
 	public ArrayList<Page> addTuple(TransactionId tid, Tuple t) throws DbException, IOException,
 			TransactionAbortedException {
-		// some code goes here
-		// not necessary for assignment1
-		return null;
+		FreeSpaceMap map = freeSpaceMap();
+		zoneMap();
+		int needed = storedLength(t);
+		int pageNo;
+		while ((pageNo = map.findPage(needed)) >= 0) {
+			HeapPage page = (HeapPage) Database.getBufferPool().getPage(tid, new HeapPageId(getId(), pageNo),
+					Permissions.READ_WRITE);
+			if (page.availableSpace() >= needed)
+				return addTuple(map, page, t);
+			map.update(pageNo, page.availableSpace());
+		}
+		synchronized (this) {
+			pageNo = numPages();
+			writePage(new HeapPage(new HeapPageId(getId(), pageNo), HeapPage.createEmptyPageData(pageSize)));
+			map.update(pageNo, pageSize - 4);
+		}
+		HeapPage page = (HeapPage) Database.getBufferPool().getPage(tid, new HeapPageId(getId(), pageNo),
+				Permissions.READ_WRITE);
+		return addTuple(map, page, t);
+	}
+
+	/**
+	 * Adds the specified tuple to the specified page and records the space left on the page.
+	 */
+	private ArrayList<Page> addTuple(FreeSpaceMap map, HeapPage page, Tuple t) throws DbException {
+		page.addTuple(t);
+		map.update(page.getId().pageno(), page.availableSpace());
+		zones.include(page.getId().pageno(), t);
+		ArrayList<Page> modified = new ArrayList<Page>();
+		modified.add(page);
+		return modified;
+	}
+
+	/**
+	 * The number of pages that {@link #appendTuples} builds, writes and logs at a time.
+	 */
+	public static final int APPEND_BATCH_PAGES = 256;
+
+	/**
+	 * Appends the tuples of the specified iterator to new pages at the end of this HeapFile, without going through
+	 * the BufferPool. The pages are filled in memory and appended {@link #APPEND_BATCH_PAGES} at a time: each batch is
+	 * recorded by a single record in the log, written with one sequential write and forced to disk, and then added to
+	 * the free-space and zone maps and to the hash and bitmap indexes of the table. Pages that are already in the file
+	 * are not used, even if they have room, so a load never touches a page that a transaction may hold. The tuples of
+	 * a batch are read from the iterator before the file is locked, so the lock is only held to number, log and
+	 * write the batch.
+	 * 
+	 * @param tid
+	 *            the transaction performing the load.
+	 * @param tuples
+	 *            the tuples to append, which this method opens, drains and closes. Each tuple is given its
+	 *            {@code RecordId}.
+	 * @return the number of tuples appended.
+	 */
+	public int appendTuples(TransactionId tid, DbIterator tuples) throws DbException, IOException,
+			TransactionAbortedException {
+		FreeSpaceMap map = freeSpaceMap();
+		zoneMap();
+		int count = 0;
+		// the bytes of the tuples that fill a batch if no page wastes any room
+		long batchBytes = (long) APPEND_BATCH_PAGES * (pageSize - 4);
+		tuples.open();
+		try {
+			ArrayList<Tuple> pending = new ArrayList<Tuple>();
+			long pendingBytes = 0;
+			ArrayList<HeapPage> batch = new ArrayList<HeapPage>();
+			while (true) {
+				// the tuples are read without holding this file: the child may read through the BufferPool, whose
+				// evictions lock the file they write to, and page appends by addTuple need not wait for the child
+				while (pendingBytes < batchBytes && tuples.hasNext()) {
+					Tuple t = tuples.next();
+					pending.add(t);
+					pendingBytes += storedLength(t);
+				}
+				if (pending.isEmpty())
+					break;
+				int added = 0;
+				synchronized (this) {
+					// the batch is numbered from the end of the file, so no other page may be appended until it is
+					// written
+					int first = numPages();
+					HeapPage page = null;
+					for (; added < pending.size(); added++) {
+						Tuple next = pending.get(added);
+						if (page == null || page.availableSpace() < storedLength(next)) {
+							if (batch.size() == APPEND_BATCH_PAGES)
+								break;
+							page = new HeapPage(new HeapPageId(getId(), first + batch.size()), HeapPage
+									.createEmptyPageData(pageSize));
+							batch.add(page);
+						}
+						page.addTuple(next);
+					}
+					Database.getLogFile().logAppend(tid, getId(), first, batch.size());
+					appendPages(first, batch);
+				}
+				// the tuples that did not fit in the batch stay pending for the next one
+				List<Tuple> appended = pending.subList(0, added);
+				for (HeapPage p : batch) {
+					map.update(p.getId().pageno(), p.availableSpace());
+					zones.summarize(p.getId().pageno(), p.iterator());
+				}
+				for (HashIndex index : Database.getCatalog().getIndexes(getId()))
+					for (Tuple t : appended)
+						index.insert(tid, t.getField(index.keyField()), t.getRecordId());
+				for (BitmapIndex index : Database.getCatalog().getBitmapIndexes(getId()))
+					for (Tuple t : appended)
+						index.insert(t.getField(index.keyField()), t.getRecordId());
+				for (Tuple t : appended)
+					pendingBytes -= storedLength(t);
+				count += added;
+				appended.clear();
+				batch.clear();
+			}
+		} finally {
+			tuples.close();
+		}
+		return count;
+	}
+
+	/**
+	 * Writes the specified new pages to the end of this HeapFile with one sequential write, and forces them to disk.
+	 * 
+	 * @param first
+	 *            the number of the first page, which is the number of pages in the file.
+	 * @param pages
+	 *            the pages, numbered from first on.
+	 */
+	protected void appendPages(int first, List<HeapPage> pages) throws IOException {
+		ByteBuffer buf = ByteBuffer.allocate(pages.size() * pageSize);
+		for (HeapPage p : pages)
+			buf.put(p.getPageData());
+		buf.flip();
+		writeFully(channel(), buf, (long) first * pageSize);
+		channel().force(false);
 	}
 
 	// see DbFile.java for javadocs
 	public Page deleteTuple(TransactionId tid, Tuple t) throws DbException, TransactionAbortedException {
-		// some code goes here
-		// not necessary for assignment1
-		return null;
+		RecordId rid = t.getRecordId();
+		if (rid == null || rid.getPageId().getTableId() != getId())
+			throw new DbException("the tuple is not stored in this file");
+		int pageNo = rid.getPageId().pageno();
+		try {
+			zoneMap();
+			HeapPage page = (HeapPage) Database.getBufferPool().getPage(tid, rid.getPageId(),
+					Permissions.READ_WRITE);
+			page.deleteTuple(t);
+			freeSpaceMap().update(pageNo, page.availableSpace());
+			zones.summarize(pageNo, page.iterator());
+			return page;
+		} catch (IOException e) {
+			DbException dbe = new DbException("failed to load the maps of " + file.getName());
+			dbe.initCause(e);
+			throw dbe;
+		}
 	}
 
 	// see DbFile.java for javadocs
 	public DbFileIterator iterator(TransactionId tid) {
-		// some code goes here
-		ArrayList<HeapPage> heappage = new ArrayList<HeapPage>();  
-        Iterator<HeapPage> iteratorhp = heappage.iterator();
-        BufferPool bufferpool = new BufferPool(heappage.size());    
-        page = null;  
-        Permissions perm = new Permissions(0); 
-        try {
-            page = (HeapPage) bufferpool.getPage(tid, page.getId(), perm);  
-        } catch (TransactionAbortedException e) {e.printStackTrace();
-        } catch (DbException e) {e.printStackTrace();}  
-        while(iteratorhp.hasNext()) return (DbFileIterator) iteratorhp; 
-		throw new UnsupportedOperationException("Implement this");
+		return new HeapFileIterator(tid);
+	}
+
+	/**
+	 * Iterates over the tuples of this HeapFile one page at a time. Pages are fetched through the BufferPool, and only
+	 * the page currently being scanned is referenced by the iterator. A HeapFile that is large relative to the
+	 * BufferPool is scanned through a private ScanRing so that the scan does not flush the pool. The current page is
+	 * pinned, so its tuples can be returned as TupleViews that read the page directly.
+	 */
+	class HeapFileIterator extends AbstractDbFileIterator implements ViewIterator {
+
+		/**
+		 * The transaction on whose behalf pages are read.
+		 */
+		TransactionId tid;
+
+		/**
+		 * The number of the next page to scan, or -1 if this iterator is not open.
+		 */
+		int pageNo = -1;
+
+		/**
+		 * The number of the page that the scan starts at.
+		 */
+		int firstPage;
+
+		/**
+		 * The page currently being scanned, or null if there is none.
+		 */
+		HeapPage page;
+
+		/**
+		 * The content of the current page, pinned while the page is being scanned.
+		 */
+		ByteBuffer content;
+
+		/**
+		 * The number of entries in the current page.
+		 */
+		int entries;
+
+		/**
+		 * The entry of the current page that was read last.
+		 */
+		int entry;
+
+		/**
+		 * The view returned by nextView.
+		 */
+		TupleView view = new TupleView(td);
+
+		/**
+		 * The ring of this scan, or null if the scan reads through the shared pool.
+		 */
+		ScanRing ring;
+
+		/**
+		 * Decides which pages to prefetch, or null if this scan does not prefetch.
+		 */
+		ReadAhead readAhead;
+
+		/**
+		 * The number of wasted prefetches last seen by this scan.
+		 */
+		long wastedSeen;
+
+		/**
+		 * The predicates that the tuples returned by this scan will be filtered with; pages that the zone map shows
+		 * cannot satisfy all of them are skipped.
+		 */
+		final ArrayList<Predicate> skipUnless = new ArrayList<Predicate>();
+
+		/**
+		 * The zone map used to skip pages, or null if this scan reads every page.
+		 */
+		ZoneMap zoneMap;
+
+		HeapFileIterator(TransactionId tid) {
+			this.tid = tid;
+		}
+
+		/**
+		 * Makes this scan skip the pages that cannot hold a tuple satisfying the specified predicate. Tuples that do
+		 * not satisfy it are still returned from the pages that are read.
+		 */
+		void skipPagesNotMatching(Predicate p) {
+			skipUnless.add(p);
+		}
+
+		public void open() throws DbException, TransactionAbortedException {
+			if (!skipUnless.isEmpty()) {
+				try {
+					zoneMap = zoneMap();
+				} catch (IOException e) {
+					DbException dbe = new DbException("failed to load the zone map of " + file.getName());
+					dbe.initCause(e);
+					throw dbe;
+				}
+			}
+			pageNo = firstPage;
+			BufferPool pool = Database.getBufferPool();
+			// the pool counts its room in pages of PAGE_SIZE, so a table of large pages takes more of it
+			ring = pool.scanRingFor(numPages() * (pageSize / BufferPool.PAGE_SIZE));
+			readAhead = pool.readAheadFor(ring);
+			wastedSeen = pool.getPrefetcher().getWasted();
+		}
+
+		protected Tuple readNext() throws DbException, TransactionAbortedException {
+			TupleView v = nextView();
+			return v == null ? null : v.toTuple();
+		}
+
+		public TupleView nextView() throws DbException, TransactionAbortedException {
+			if (pageNo < 0)
+				return null;
+			while (true) {
+				while (page != null && ++entry < entries) {
+					int location = HeapPage.tupleLocation(content, entry);
+					if (location >= 0) {
+						view.set(page, content, entry, location);
+						return view;
+					}
+				}
+				releasePage();
+				int pages = numPages();
+				while (zoneMap != null && pageNo < pages && !zoneMap.mayMatch(pageNo, skipUnless))
+					pageNo++;
+				if (pageNo >= pages)
+					return null;
+				if (readAhead != null)
+					prefetch(pageNo);
+				page = (HeapPage) Database.getBufferPool().getPage(tid, new HeapPageId(getId(), pageNo++),
+						Permissions.READ_ONLY, ring);
+				content = page.pin();
+				entries = HeapPage.entryCount(content);
+				entry = -1;
+			}
+		}
+
+		/**
+		 * Unpins the current page, if any.
+		 */
+		void releasePage() {
+			if (page != null)
+				page.unpin();
+			page = null;
+			content = null;
+		}
+
+		/**
+		 * Issues prefetch reads for the pages after the specified page, as decided by the ReadAhead of this scan.
+		 */
+		void prefetch(int requested) {
+			BufferPool pool = Database.getBufferPool();
+			long wasted = pool.getPrefetcher().getWasted();
+			if (wasted > wastedSeen) {
+				readAhead.prefetchWasted();
+				wastedSeen = wasted;
+			}
+			int[] range = readAhead.pageRequested(requested, numPages());
+			for (int p = range[0]; p < range[1]; p++) {
+				if (zoneMap != null && !zoneMap.mayMatch(p, skipUnless))
+					continue;
+				HeapPageId pid = new HeapPageId(getId(), p);
+				if (ring != null)
+					ring.prefetch(pid, pool.getPrefetcher());
+				else
+					pool.prefetchPage(pid);
+			}
+		}
+
+		public void rewind() throws DbException, TransactionAbortedException {
+			close();
+			open();
+		}
+
+		public void close() {
+			super.close();
+			pageNo = -1;
+			releasePage();
+			if (ring != null)
+				ring.close();
+			ring = null;
+			readAhead = null;
+			zoneMap = null;
+		}
 	}
 
 }
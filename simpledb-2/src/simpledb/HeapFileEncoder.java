@@ -1,14 +1,20 @@
 package simpledb;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.concurrent.*;
 
 /**
  * HeapFileEncoder reads a comma delimited text file or accepts
  * an array of tuples and converts it to
  * pages of binary data in the appropriate format for simpledb heap pages
  * Pages are padded out to a specified length, and written consecutive in a
- * data file.
+ * data file. Text files are parsed in chunks on several threads, and the
+ * pages are written in order by a single writer.
  */
 
 public class HeapFileEncoder {
@@ -70,7 +76,7 @@ public class HeapFileEncoder {
     * where each row represents a tuple.<br>
     * <p>
     * The format of the output file will be as specified in HeapPage and
-    * HeapFile.
+    * HeapFile, with every field padded to its fixed length.
     *
     * @see HeapPage
     * @see HeapFile
@@ -84,52 +90,232 @@ public class HeapFileEncoder {
   public static void convert(File inFile, File outFile, int npagebytes,
                  int numFields, Type[] typeAr)
       throws IOException {
+      convert(inFile, outFile, npagebytes, numFields, typeAr, false);
+  }
 
-      int nrecbytes = 0;
-      for (int i = 0; i < numFields ; i++) {
-          nrecbytes += typeAr[i].getLen();
-      }
-      int nrecords = (npagebytes - 4) /  (nrecbytes + 4);
-      
-    int nheaderbytes = (4 + 4 * nrecords);
+   /** Convert the specified input text file into a binary page file whose
+    * records use the specified layout. With the variable-length layout,
+    * strings are written at their actual length instead of being padded to
+    * Type.STRING_LEN bytes, so a page holds as many records as fit in it.
+    * The resulting file must be opened with a HeapFile that uses the same
+    * layout.
+    * <p>
+    * The zone map of the file is written next to it, and a free-space map
+    * left by an earlier file of the same name is deleted.
+    *
+    * @see HeapFile#HeapFile(File, TupleDesc, boolean)
+    * @param inFile The input file to read data from
+    * @param outFile The output file to write data to
+    * @param npagebytes The number of bytes per page in the output file
+    * @param numFields the number of fields in each input line/output tuple
+    * @param typeAr the type of each field
+    * @param variableLength true to store strings at their actual length
+    * @throws IOException if the input/output file can't be opened or a
+    *   malformed input line is encountered
+    */
+  public static void convert(File inFile, File outFile, int npagebytes,
+                 int numFields, Type[] typeAr, boolean variableLength)
+      throws IOException {
+      convert(inFile, outFile, npagebytes, numFields, typeAr, variableLength, false);
+  }
 
-    BufferedReader br = new BufferedReader(new FileReader(inFile));
-    FileOutputStream os = new FileOutputStream(outFile);
+   /** Convert the specified input text file into a binary page file whose
+    * records use the specified layout. With dictionaryEncoded set, each
+    * string is written as the 4-byte code of the string in a dictionary
+    * saved next to the file (see HeapFile#dictionaryFile), which replaces
+    * any dictionary left by an earlier file of the same name; variableLength
+    * is then ignored.
+    *
+    * @see HeapFile#HeapFile(File, TupleDesc, boolean, boolean)
+    * @param inFile The input file to read data from
+    * @param outFile The output file to write data to
+    * @param npagebytes The number of bytes per page in the output file
+    * @param numFields the number of fields in each input line/output tuple
+    * @param typeAr the type of each field
+    * @param variableLength true to store strings at their actual length
+    * @param dictionaryEncoded true to store strings as dictionary codes
+    * @throws IOException if the input/output file can't be opened or a
+    *   malformed input line is encountered
+    */
+  public static void convert(File inFile, File outFile, int npagebytes,
+                 int numFields, Type[] typeAr, boolean variableLength,
+                 boolean dictionaryEncoded)
+      throws IOException {
+      convert(inFile, outFile, npagebytes, numFields, typeAr, variableLength,
+              dictionaryEncoded, Runtime.getRuntime().availableProcessors());
+  }
 
-    // our numbers probably won't be much larger than 1024 digits
-    char buf[] = new char[1024];
+  /** The number of bytes of input that each task of a conversion parses. */
+  static final int CHUNK_BYTES = 1 << 20;
+
+   /** Convert the specified input text file into a binary page file, on
+    * the specified number of threads. The input is read in chunks of about
+    * CHUNK_BYTES bytes that end at a line break; the threads parse the
+    * chunks and build their pages, and the pages are written in input
+    * order with large sequential writes as the chunks are done. The pages
+    * of a chunk are filled in order, so only the last page of each chunk
+    * may have room left, and the output of a given input does not depend
+    * on the number of threads. Dictionary codes are given to the strings
+    * in the order they first occur in the input, as a single thread would.
+    *
+    * @see #convert(File, File, int, int, Type[], boolean, boolean)
+    * @param threads the number of threads that parse the input
+    */
+  public static void convert(File inFile, File outFile, int npagebytes,
+                 int numFields, Type[] typeAr, boolean variableLength,
+                 boolean dictionaryEncoded, int threads)
+      throws IOException {
 
-    int curpos = 0;
-    int recordcount = 0;
+    StringDictionary dictionary = null;
+    if (dictionaryEncoded) {
+        File dictionaryFile = new File(outFile.getPath() + ".dict");
+        dictionaryFile.delete();
+        dictionary = new StringDictionary(dictionaryFile);
+    }
+    ExecutorService parsers = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "simpledb-encoder");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+    FileInputStream is = new FileInputStream(inFile);
+    FileOutputStream os = new FileOutputStream(outFile);
+    FileChannel in = is.getChannel();
+    FileChannel out = os.getChannel();
+    ZoneMap zones = new ZoneMap(typeAr);
     int npages = 0;
-    int fieldNo = 0;
+    try {
+        // the chunks being parsed, in input order; a few more than there
+        // are threads, so that the threads are kept busy while the oldest
+        // chunk is written, without holding much of the input in memory
+        LinkedList<Future<Chunk>> parsing = new LinkedList<Future<Chunk>>();
+        byte[] carry = new byte[0];
+        boolean eof = false;
+        while (!eof) {
+            // read a chunk after the partial line left by the last one,
+            // growing it until it holds at least one line break
+            byte[] chunk = new byte[Math.max(CHUNK_BYTES, 2 * carry.length)];
+            System.arraycopy(carry, 0, chunk, 0, carry.length);
+            ByteBuffer buf = ByteBuffer.wrap(chunk, carry.length, chunk.length - carry.length);
+            while (buf.hasRemaining() && !eof)
+                eof = in.read(buf) < 0;
+            int length = buf.position();
+            int end = length;
+            if (!eof) {
+                while (end > 0 && chunk[end - 1] != '\n')
+                    end--;
+                if (end == 0) {
+                    carry = new byte[length];
+                    System.arraycopy(chunk, 0, carry, 0, length);
+                    continue;
+                }
+            }
+            carry = new byte[length - end];
+            System.arraycopy(chunk, end, carry, 0, carry.length);
+            parsing.add(parsers.submit(new Parse(chunk, end, npagebytes, numFields, typeAr,
+                    variableLength, dictionaryEncoded)));
+            if (parsing.size() > threads + 1)
+                npages = write(parsing.removeFirst(), out, npages, zones, dictionary, typeAr, npagebytes);
+        }
+        while (!parsing.isEmpty())
+            npages = write(parsing.removeFirst(), out, npages, zones, dictionary, typeAr, npagebytes);
 
-    ByteArrayOutputStream headerBAOS = new ByteArrayOutputStream(nheaderbytes);
-    DataOutputStream headerStream = new DataOutputStream(headerBAOS);
-    ByteArrayOutputStream pageBAOS = new ByteArrayOutputStream(npagebytes);
-    DataOutputStream pageStream = new DataOutputStream(pageBAOS);
-
-    boolean done = false;
-    boolean first = true;
-    while (!done) {
-        int c = br.read();
-        
-	// Ignore Windows/Notepad special line endings
-	if (c == '\r')
-	    continue;
-
-        if (c == '\n') {
-            if (first)
+        // if this file is empty, do flush an empty page to disk
+        if (npages == 0) {
+            ByteArrayOutputStream empty = new ByteArrayOutputStream(npagebytes);
+            writePage(empty, npagebytes, new ByteArrayOutputStream(), new ArrayList<Integer>());
+            writeFully(out, ByteBuffer.wrap(empty.toByteArray()));
+            npages++;
+        }
+    } finally {
+        parsers.shutdownNow();
+        is.close();
+        os.close();
+        if (dictionary != null)
+            dictionary.close();
+    }
+    zones.save(new File(outFile.getPath() + ".zm"), outFile);
+    new File(outFile.getPath() + ".fsm").delete();
+  }
+
+  /** The pages built from a chunk of the input. */
+  private static class Chunk {
+    /** The pages, one after the other. */
+    final ByteArrayOutputStream pages = new ByteArrayOutputStream();
+    int numPages;
+    /** The zone map of the pages, numbered from 0. */
+    ZoneMap zones;
+    /** With dictionary encoding, the strings of the chunk in the order
+     * they first occur; the pages hold their indexes in this list in place
+     * of their codes. */
+    final ArrayList<String> strings = new ArrayList<String>();
+  }
+
+  /** Parses the lines of a chunk of the input and builds their pages. */
+  private static class Parse implements Callable<Chunk> {
+    final byte[] input;
+    final int length;
+    final int npagebytes;
+    final int numFields;
+    final Type[] typeAr;
+    final boolean variableLength;
+    final boolean dictionaryEncoded;
+
+    Parse(byte[] input, int length, int npagebytes, int numFields, Type[] typeAr,
+            boolean variableLength, boolean dictionaryEncoded) {
+        this.input = input;
+        this.length = length;
+        this.npagebytes = npagebytes;
+        this.numFields = numFields;
+        this.typeAr = typeAr;
+        this.variableLength = variableLength;
+        this.dictionaryEncoded = dictionaryEncoded;
+    }
+
+    public Chunk call() throws IOException {
+        // decode as a FileReader would
+        String text = new String(input, 0, length);
+        Chunk chunk = new Chunk();
+        chunk.zones = new ZoneMap(typeAr);
+        HashMap<String, Integer> indexes = new HashMap<String, Integer>();
+
+        // the record being read, and the records of the page being filled
+        ByteArrayOutputStream recordBAOS = new ByteArrayOutputStream();
+        DataOutputStream recordStream = new DataOutputStream(recordBAOS);
+        ByteArrayOutputStream pageBAOS = new ByteArrayOutputStream(npagebytes);
+        ArrayList<Integer> recordLengths = new ArrayList<Integer>();
+        int[] keys = new int[numFields];
+
+        int fieldNo = 0;
+        int start = 0;
+        boolean first = true;
+        // a last line without a line break is ignored
+        for (int i = 0, n = text.length(); i < n; i++) {
+            char c = text.charAt(i);
+
+            // Ignore Windows/Notepad special line endings; they are trimmed
+            // from the fields
+            if (c == '\r')
                 continue;
-            recordcount++;
-            first = true;
-        } else
-            first = false;
-        if (c == ',' || c == '\n' || c == '\r') {
-            String s = new String(buf, 0, curpos);
+
+            if (c == '\n') {
+                if (first) {
+                    start = i + 1;
+                    continue;
+                }
+                first = true;
+            } else
+                first = false;
+            if (c != ',' && c != '\n')
+                continue;
+
+            String s = text.substring(start, i);
+            start = i + 1;
             if (typeAr[fieldNo] == Type.INT_TYPE) {
                 try {
-                    pageStream.writeInt(Integer.parseInt(s.trim()));
+                    keys[fieldNo] = Integer.parseInt(s.trim());
+                    recordStream.writeInt(keys[fieldNo]);
                 } catch (NumberFormatException e) {
                     System.out.println ("BAD LINE : " + s);
                 }
@@ -141,66 +327,132 @@ public class HeapFileEncoder {
                     String news = s.substring(0,Type.STRING_LEN);
                     s  = news;
                 }
-                pageStream.writeInt(s.length());
-                pageStream.writeBytes(s);
-                while (overflow-- > 0)
-                    pageStream.write((byte)0);
+                keys[fieldNo] = ZoneMap.prefixKey(s);
+                if (dictionaryEncoded) {
+                    Integer index = indexes.get(s);
+                    if (index == null) {
+                        index = chunk.strings.size();
+                        indexes.put(s, index);
+                        chunk.strings.add(s);
+                    }
+                    recordStream.writeInt(index);
+                } else {
+                    recordStream.writeInt(s.length());
+                    recordStream.writeBytes(s);
+                    while (!variableLength && overflow-- > 0)
+                        recordStream.write((byte)0);
+                }
             }
-            curpos = 0;
-            if (c == '\n')
-                fieldNo = 0;
-            else
+            if (c == ',') {
                 fieldNo++;
-            
-        } else if (c == -1) {
-            done = true;
-            
-        } else {
-            buf[curpos++] = (char)c;
-            continue;
+                continue;
+            }
+            fieldNo = 0;
+
+            // when a record is complete, add it to the page, first writing out
+            // the page if the record (and its entry) does not fit on it
+            recordStream.flush();
+            if (4 + 4 * (recordLengths.size() + 1) + pageBAOS.size() + recordBAOS.size() > npagebytes) {
+                writePage(chunk.pages, npagebytes, pageBAOS, recordLengths);
+                chunk.numPages++;
+            }
+            recordLengths.add(recordBAOS.size());
+            recordBAOS.writeTo(pageBAOS);
+            recordBAOS.reset();
+            chunk.zones.include(chunk.numPages, keys);
         }
-        
-        // if we wrote a full page of records, or if we're done altogether,
-        // write out the header of the page.
-        //
-        // in the header, write a 1 for bits that correspond to records we've
-        // written and 0 for empty slots.
-        //
-        // when we're done, also flush the page to disk, but only if it has
-        // records on it.  however, if this file is empty, do flush an empty
-        // page to disk.
-        if (recordcount >= nrecords
-            || done && recordcount > 0
-            || done && npages == 0) {
-            int i = 0;
-
-            headerStream.writeInt(recordcount);
-            int freeSpace = npagebytes - 4 - recordcount * (4 + nrecbytes);
-            for (int j = 0; j < recordcount; j++) {
-            	headerStream.writeInt(4 + 4 * recordcount + freeSpace + nrecbytes * j);
+
+        // write out the last page, if it has records on it
+        if (recordLengths.size() > 0) {
+            writePage(chunk.pages, npagebytes, pageBAOS, recordLengths);
+            chunk.numPages++;
+        }
+        return chunk;
+    }
+  }
+
+  /** Waits for the specified chunk to be parsed and appends its pages to
+   * the output, after giving its strings their dictionary codes, and adds
+   * them to the zone map.
+   *
+   * @return the number of pages written so far
+   */
+  private static int write(Future<Chunk> parsed, FileChannel out, int npages,
+                 ZoneMap zones, StringDictionary dictionary, Type[] typeAr,
+                 int npagebytes) throws IOException {
+    Chunk chunk;
+    try {
+        chunk = parsed.get();
+    } catch (InterruptedException e) {
+        throw new InterruptedIOException("interrupted while converting");
+    } catch (ExecutionException e) {
+        if (e.getCause() instanceof IOException)
+            throw (IOException) e.getCause();
+        if (e.getCause() instanceof RuntimeException)
+            throw (RuntimeException) e.getCause();
+        throw new IOException("failed to convert: " + e.getCause());
+    }
+    ByteBuffer pages = ByteBuffer.wrap(chunk.pages.toByteArray());
+    if (dictionary != null && !chunk.strings.isEmpty()) {
+        // every field of a dictionary-encoded record takes 4 bytes
+        int[] codes = new int[chunk.strings.size()];
+        for (int i = 0; i < codes.length; i++)
+            codes[i] = dictionary.code(chunk.strings.get(i));
+        for (int p = 0; p < chunk.numPages; p++) {
+            int base = p * npagebytes;
+            for (int r = 0, n = pages.getInt(base); r < n; r++) {
+                int location = base + pages.getInt(base + 4 + 4 * r);
+                for (int f = 0; f < typeAr.length; f++)
+                    if (typeAr[f] == Type.STRING_TYPE)
+                        pages.putInt(location + 4 * f, codes[pages.getInt(location + 4 * f)]);
             }
-            
-            // pad the rest of the page with zeroes
-            for (i = 0; i < freeSpace; i++)
-            	headerStream.writeByte(0);
-            // write header and body to file
-            headerStream.flush();
-            headerBAOS.writeTo(os);
-            pageStream.flush();
-            pageBAOS.writeTo(os);
-            
-            // reset header and body for next page
-            headerBAOS = new ByteArrayOutputStream(nheaderbytes);
-            headerStream = new DataOutputStream(headerBAOS);
-            pageBAOS = new ByteArrayOutputStream(npagebytes);
-            pageStream = new DataOutputStream(pageBAOS);
-            
-            recordcount = 0;
-            npages++;
         }
     }
-    br.close();
-    os.close();
+    writeFully(out, pages);
+    int[] min = new int[typeAr.length];
+    int[] max = new int[typeAr.length];
+    for (int p = 0; p < chunk.numPages; p++) {
+        for (int f = 0; f < typeAr.length; f++) {
+            min[f] = chunk.zones.getMin(p, f);
+            max[f] = chunk.zones.getMax(p, f);
+        }
+        zones.include(npages + p, min);
+        zones.include(npages + p, max);
+    }
+    return npages + chunk.numPages;
+  }
+
+  private static void writeFully(FileChannel out, ByteBuffer buf) throws IOException {
+    while (buf.hasRemaining())
+        out.write(buf);
+  }
+
+  /** Writes a page holding the specified records to os, and empties
+   * pageBAOS and recordLengths for the next page. The page starts with the
+   * number of records and the location of each record, and ends with the
+   * records, in order; the free space between them is padded with zeroes.
+   */
+  private static void writePage(OutputStream os, int npagebytes,
+                 ByteArrayOutputStream pageBAOS,
+                 ArrayList<Integer> recordLengths) throws IOException {
+    int nheaderbytes = 4 + 4 * recordLengths.size();
+    ByteArrayOutputStream headerBAOS = new ByteArrayOutputStream(nheaderbytes);
+    DataOutputStream headerStream = new DataOutputStream(headerBAOS);
+    headerStream.writeInt(recordLengths.size());
+    int freeSpace = npagebytes - nheaderbytes - pageBAOS.size();
+    int location = nheaderbytes + freeSpace;
+    for (int length : recordLengths) {
+        headerStream.writeInt(location);
+        location += length;
+    }
+    for (int i = 0; i < freeSpace; i++)
+        headerStream.writeByte(0);
+    headerStream.flush();
+    headerBAOS.writeTo(os);
+    pageBAOS.writeTo(os);
+
+    pageBAOS.reset();
+    recordLengths.clear();
   }
   
 }
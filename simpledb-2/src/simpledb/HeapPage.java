@@ -3,6 +3,7 @@ package simpledb;
 import java.text.ParseException;
 import java.util.*;
 import java.io.*;
+import java.nio.ByteBuffer;
 
 /**
  * A {@code HeapPage} is a collection of {@code Tuple}s. A fixed-size memory space is used for each {@code HeapPage}. A
@@ -15,7 +16,6 @@ import java.io.*;
 public class HeapPage implements Page {
 
 	private static final DataInputStream DataInputStream = null;
-	private Tuple tupHolder;
 
 	/**
 	 * The ID of this {@code HeapPage}.
@@ -28,39 +28,144 @@ public class HeapPage implements Page {
 	TupleDesc td;
 
 	/**
-	 * The current content of this {@code HeapPage}.
+	 * Whether string fields are stored at their actual length (a 4-byte length followed by that many bytes) instead of
+	 * being padded to {@link Type#getLen} bytes. The layout is chosen per table by its {@code HeapFile}.
 	 */
-	byte[] data;
+	final boolean variableLength;
 
 	/**
-	 * The previous image of this {@code HeapPage}.
+	 * The dictionary whose codes are stored instead of the string fields, or {@code null} if the string fields are
+	 * stored themselves. The layout is chosen per table by its {@code HeapFile}.
 	 */
-	byte[] oldData;
+	final StringDictionary dictionary;
+
+	/**
+	 * The current content of this {@code HeapPage}, or {@code null} if this {@code HeapPage} is still a view of
+	 * {@code view}.
+	 */
+	volatile byte[] data;
+
+	/**
+	 * A read-only view of the on-disk image of this {@code HeapPage} (a slice of a memory-mapped file or a
+	 * {@code BufferPool} frame), or {@code null} if this {@code HeapPage} was created from a byte array or has been
+	 * detached from its view. The view is copied into {@code data} the first time this {@code HeapPage} is modified.
+	 */
+	volatile ByteBuffer view;
+
+	/**
+	 * The size of the content of this {@code HeapPage}, which is the page size of its {@code HeapFile}.
+	 */
+	private final int pageSize;
+
+	/**
+	 * A buffer that wraps {@code data}, kept so that reading the page does not wrap it again for every tuple.
+	 */
+	private volatile ByteBuffer dataBuffer;
+
+	/**
+	 * The number of readers that hold the content of this {@code HeapPage} through {@link #pin}.
+	 */
+	private int pins;
+
+	/**
+	 * The arena to return the frame of this {@code HeapPage} to when the last pin is released, or {@code null} if the
+	 * frame has not been detached while pinned.
+	 */
+	private FrameArena pendingArena;
+
+	private int pendingFrame;
+
+	/**
+	 * The previous image of this {@code HeapPage}, or {@code null} if this {@code HeapPage} has not been modified since
+	 * its before image was last set. The before image is copied by {@link #writeInt} on the first write, so pages that
+	 * are only read never copy it.
+	 */
+	volatile byte[] oldData;
 	Tuple tuple;
 
+	/**
+	 * The transaction that last dirtied this {@code HeapPage}, or {@code null} if this {@code HeapPage} is clean.
+	 */
+	TransactionId dirtier;
+
+	/**
+	 * Whether this {@code HeapPage} has been modified since it was last written to disk.
+	 */
+	boolean dirty;
+
 	/**
 	 * Creates a {@code HeapPage} from a byte array storing data read from disk. This byte array contains (1) a 4-byte
 	 * integer representing the number of {@code Tuple}s assigned to the {@code HeapPage}, (2) a sequence of integer
 	 * values each of which indicates where the corresponding {@code Tuple} is stored in the byte array, (3) a free
-	 * space reserved for storing additional {@code Tuple}s, and (4) a sequence of {@code Tuple}s.
+	 * space reserved for storing additional {@code Tuple}s, and (4) a sequence of {@code Tuple}s. Each {@code Tuple}
+	 * stores its fields one after the other; if the {@code HeapFile} of the table uses the variable-length layout, a
+	 * string field takes 4 bytes plus its length, if it is dictionary-encoded, a string field takes the 4 bytes of its
+	 * code, and otherwise every field takes {@link Type#getLen} bytes.
 	 * 
 	 * @param id
 	 *            the ID of the {@code HeapPage}.
 	 * @param data
-	 *            a byte array storing the data to read.
+	 *            a byte array storing the data to read, whose length is the page size of the {@code HeapFile}.
 	 * @see Database#getCatalog
 	 * @see Catalog#getTupleDesc
-	 * @see BufferPool#PAGE_SIZE
+	 * @see HeapFile#getPageSize
 	 */
 	public HeapPage(HeapPageId id, byte[] data) throws IOException {
 		this.pid = id;
 		this.td = Database.getCatalog().getTupleDesc(id.getTableId());
+		this.variableLength = isVariableLength(id.getTableId());
+		this.dictionary = dictionaryOf(id.getTableId());
 		this.data = data;
-		setBeforeImage();
+		this.pageSize = data.length;
 		//this.tupleCount = entryCount(this.td);
 		
 	}
 
+	/**
+	 * Creates a {@code HeapPage} that reads its content directly from the specified buffer instead of a private byte
+	 * array. The buffer must hold the page size of the {@code HeapFile} in bytes, in the format described in
+	 * {@link #HeapPage(HeapPageId, byte[])}, and must not be modified while this {@code HeapPage} is in use, except by
+	 * writing this {@code HeapPage} back to disk.
+	 * 
+	 * @param id
+	 *            the ID of the {@code HeapPage}.
+	 * @param view
+	 *            a buffer storing the data to read.
+	 * @see MappedHeapFile
+	 * @see FrameArena
+	 */
+	public HeapPage(HeapPageId id, ByteBuffer view) {
+		this.pid = id;
+		this.td = Database.getCatalog().getTupleDesc(id.getTableId());
+		this.variableLength = isVariableLength(id.getTableId());
+		this.dictionary = dictionaryOf(id.getTableId());
+		this.view = view;
+		this.pageSize = view.capacity();
+	}
+
+	/**
+	 * @return the size in bytes of the content of this {@code HeapPage}.
+	 */
+	int pageSize() {
+		return pageSize;
+	}
+
+	/**
+	 * Returns whether the pages of the specified table use the variable-length layout.
+	 */
+	private static boolean isVariableLength(int tableId) {
+		DbFile file = Database.getCatalog().getDbFile(tableId);
+		return file instanceof HeapFile && ((HeapFile) file).isVariableLength();
+	}
+
+	/**
+	 * Returns the dictionary of the string fields of the specified table, or {@code null} if they are not encoded.
+	 */
+	private static StringDictionary dictionaryOf(int tableId) {
+		DbFile file = Database.getCatalog().getDbFile(tableId);
+		return file instanceof HeapFile ? ((HeapFile) file).getDictionary() : null;
+	}
+
 	/**
 	 * Generates a byte array representing the contents of this {@code HeapPage}. This method is used to serialize this
 	 * {@code HeapPage} to disk.
@@ -72,35 +177,189 @@ public class HeapPage implements Page {
 	 * @return a byte array correspond to the content of this {@code HeapPage}.
 	 */
 	public byte[] getPageData() {
-		return data;
+		byte[] d = data;
+		if (d == null) {
+			synchronized (this) {
+				if (data == null)
+					data = view != null ? copy(view) : readFromDisk();
+				d = data;
+			}
+		}
+		return d;
+	}
+
+	/**
+	 * Detaches this {@code HeapPage} from its frame and returns the frame to the specified arena, at once or, if this
+	 * {@code HeapPage} is pinned, when the last pin is released. An unmodified page is not copied: its content is the
+	 * same as on disk, and it is read again from disk if it is used after being detached. Readers that were reading the
+	 * frame without a pin at that moment notice that this {@code HeapPage} was detached and read it again.
+	 * 
+	 * @param arena
+	 *            the arena that owns the frame.
+	 * @param frame
+	 *            the number of the frame in the arena.
+	 * @see BufferPool#evictPage
+	 */
+	synchronized void detach(FrameArena arena, int frame) {
+		view = null;
+		if (pins > 0) {
+			pendingArena = arena;
+			pendingFrame = frame;
+		} else
+			arena.release(frame);
+	}
+
+	/**
+	 * Returns the current content of this {@code HeapPage} and keeps it from being reused for another page until
+	 * {@link #unpin} is called, even if this {@code HeapPage} is evicted in the meantime. Every call must be matched
+	 * by a call to {@code unpin}.
+	 * 
+	 * @return a buffer holding the content of this {@code HeapPage}.
+	 */
+	synchronized ByteBuffer pin() {
+		pins++;
+		return content(view);
+	}
+
+	/**
+	 * Releases a pin obtained with {@link #pin}.
+	 */
+	synchronized void unpin() {
+		if (--pins == 0 && pendingArena != null) {
+			pendingArena.release(pendingFrame);
+			pendingArena = null;
+		}
+	}
+
+	/**
+	 * Reads the on-disk image of this {@code HeapPage} from its {@code HeapFile}.
+	 */
+	private byte[] readFromDisk() {
+		HeapFile file = (HeapFile) Database.getCatalog().getDbFile(pid.getTableId());
+		return ((HeapPage) file.readPage(pid)).getPageData();
+	}
+
+	/**
+	 * Returns the buffer that currently holds the content of this {@code HeapPage}: {@code data} if it has been
+	 * copied to the heap, and otherwise the specified view.
+	 * 
+	 * @param v
+	 *            the value of {@code view}, read before calling this method.
+	 */
+	private ByteBuffer content(ByteBuffer v) {
+		byte[] d = data;
+		if (d == null && v != null)
+			return v;
+		if (d == null)
+			d = getPageData();
+		ByteBuffer b = dataBuffer;
+		if (b == null || b.array() != d)
+			dataBuffer = b = ByteBuffer.wrap(d);
+		return b;
+	}
+
+	/**
+	 * Returns whether content, obtained from {@link #content} for the view v, may have been reused for another page
+	 * while it was being read.
+	 */
+	private boolean detached(ByteBuffer content, ByteBuffer v) {
+		return content == v && view != v;
+	}
+
+	/**
+	 * Returns a copy of the specified page-sized buffer.
+	 */
+	private static byte[] copy(ByteBuffer v) {
+		byte[] copy = new byte[v.capacity()];
+		ByteBuffer dup = v.duplicate();
+		dup.clear();
+		dup.get(copy);
+		return copy;
 	}
 
 	/**
 	 * @return an iterator over all {@code Tuple}s on this {@code HeapPage} (calling remove on this iterator throws an
 	 *         {@code UnsupportedOperationException}) (note that this iterator shouldn't return {@code Tuples} in empty
-	 *         slots!)
+	 *         slots!). Each {@code Tuple} is decoded when the iterator reaches it, so a caller that stops early does
+	 *         not pay for the rest of the page.
 	 */
-	
 	public Iterator<Tuple> iterator() {
-		// some code goes here
-		int numTuples = entryCount();
-		int index;
-		ArrayList<Tuple> tuples = new ArrayList<Tuple>();
-		//Iterator<Tuple> iterator; //= tuples.iterator(); 
-		
-		for(index = 1; index <= numTuples; index++)
-		{
-			tupHolder = getTuple(index);
-			tuples.add(tupHolder);
+		return new SlotIterator();
+	}
+
+	/**
+	 * Walks the entries of this {@code HeapPage}, decoding the {@code Tuple} of each non-empty entry on demand. If
+	 * this {@code HeapPage} is detached from its frame while the iterator reads it, the iterator reads the entry again
+	 * from the new content.
+	 */
+	private class SlotIterator implements Iterator<Tuple> {
+
+		/**
+		 * The view from which content was obtained.
+		 */
+		ByteBuffer v;
+
+		/**
+		 * The content being read.
+		 */
+		ByteBuffer content;
+
+		/**
+		 * The entry of the last {@code Tuple} found.
+		 */
+		int entry = -1;
+
+		/**
+		 * The next {@code Tuple} to return, or {@code null} if it has not been read yet.
+		 */
+		Tuple next;
+
+		SlotIterator() {
+			v = view;
+			content = content(v);
 		}
-		//iterator = tuples.iterator();
-		
-		if(tuples.iterator().hasNext())
-		{
-			return tuples.iterator();
+
+		public boolean hasNext() {
+			if (next == null)
+				next = advance();
+			return next != null;
+		}
+
+		public Tuple next() {
+			if (!hasNext())
+				throw new NoSuchElementException();
+			Tuple t = next;
+			next = null;
+			return t;
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException("remove");
+		}
+
+		/**
+		 * Finds and decodes the next non-empty entry, or returns {@code null} at the end of the page.
+		 */
+		private Tuple advance() {
+			while (true) {
+				int e = entry;
+				Tuple t = null;
+				try {
+					int numTuples = readInt(content, 0);
+					while (t == null && ++e < numTuples)
+						t = readTuple(content, e);
+				} catch (RuntimeException ex) {
+					if (!detached(content, v))
+						throw ex;
+				}
+				if (!detached(content, v)) {
+					entry = e;
+					return t;
+				}
+				v = view;
+				content = content(v);
+			}
 		}
-        return null;
-//        throw new UnsupportedOperationException("Implement this"); 
 	}
 
 	/**
@@ -119,29 +378,15 @@ public class HeapPage implements Page {
 	 * @param t
 	 *            the {@code Tuple} to delete
 	 */
-	
 	public void deleteTuple(Tuple t) throws DbException {
-		// some code goes here
-		//the given RecordId curRec = t.getRecordId().tupleno() does not work...
-		//needs to be broken up and have it changed to an int to work 
-		//RecordId curRecId = t.getRecordId();
-		//int intRec = curRecId.tupleno();
-		
-		
-		if(pid == t.getRecordId().pid && getTuple(tupleLocation(t.getRecordId().tupleno)) != null)
-		{
-			saveTupleLocation(t.getRecordId().tupleno, tupleLocation(t.getRecordId().tupleno));
-			return;
-		}
-		else
-			throw new DbException("current Tuple isnt stored on this page!");
-		//saveTupleLocation(intRec, tupleLocation(intRec));
-		
-		//obtains id of the entry t to be deleted and then
-		//saving -1 to the entry using save tuple location 
-		//
-		
-		//throw new UnsupportedOperationException("Implement this");
+		RecordId rid = t.getRecordId();
+		if (rid == null || !pid.equals(rid.getPageId()))
+			throw new DbException("the tuple is not stored on this page");
+		int entry = rid.tupleno();
+		if (entry < 0 || entry >= entryCount() || tupleLocation(entry) < 0)
+			throw new DbException("the slot of the tuple is already empty");
+		saveTupleLocation(entry, -1);
+		t.setRecordId(null);
 	}
 
 	/**
@@ -154,27 +399,76 @@ public class HeapPage implements Page {
 	 *            the {@code Tuple} to add.
 	 */
 	public void addTuple(Tuple t) throws DbException {
-		// some code goes here
-		// not necessary for assignment1
-		throw new UnsupportedOperationException("Implement this");
+		if (!td.equals(t.getTupleDesc()))
+			throw new DbException("the tuple does not match the TupleDesc of this page");
+		byte[] record = toByteArray(t);
+		byte[] d = getPageData();
+		int count = readInt(d, 0);
+		int entry = emptyEntry();
+		int header = entry < 0 ? 4 + 4 * (count + 1) : 4 + 4 * count;
+		if (endOfFreeSpace() - header < record.length) {
+			if (availableSpace() < 4 + record.length)
+				throw new DbException("the page is full");
+			compact();
+		}
+		int location = endOfFreeSpace() - record.length;
+		copyBeforeImage();
+		System.arraycopy(record, 0, d, location, record.length);
+		if (entry < 0) {
+			entry = count;
+			saveEntryCount(count + 1);
+		}
+		saveTupleLocation(entry, location);
+		t.setRecordId(new RecordId(pid, entry));
+	}
+
+	/**
+	 * Returns the number of bytes available on this {@code HeapPage} for a new {@code Tuple} and its entry, once the
+	 * page is compacted. An empty entry left by a deleted {@code Tuple} counts as 4 available bytes, since the new
+	 * {@code Tuple} can reuse it.
+	 * 
+	 * @see FreeSpaceMap
+	 */
+	public int availableSpace() {
+		byte[] d = getPageData();
+		ByteBuffer content = ByteBuffer.wrap(d);
+		int count = readInt(d, 0);
+		int used = 4 + 4 * count;
+		boolean emptyEntry = false;
+		for (int i = 0; i < count; i++) {
+			int location = readInt(d, 4 + 4 * i);
+			if (location >= 0)
+				used += recordLength(content, location);
+			else
+				emptyEntry = true;
+		}
+		return d.length - used + (emptyEntry ? 4 : 0);
+	}
+
+	/**
+	 * Returns the first empty entry of this {@code HeapPage}, or -1 if every entry holds a {@code Tuple}.
+	 */
+	private int emptyEntry() {
+		byte[] d = getPageData();
+		for (int i = 0, count = readInt(d, 0); i < count; i++)
+			if (readInt(d, 4 + 4 * i) < 0)
+				return i;
+		return -1;
 	}
 
 	/**
 	 * Marks this {@code HeapPage} as dirty/not dirty and record that transaction that did the dirtying
 	 */
 	public void markDirty(boolean dirty, TransactionId tid) {
-		// some code goes here
-		// not necessary for assignment1
-		throw new UnsupportedOperationException("Implement this");
+		this.dirty = dirty;
+		this.dirtier = dirty ? tid : null;
 	}
 
 	/**
 	 * Returns the tid of the transaction that last dirtied this page, or null if the page is not dirty
 	 */
 	public TransactionId isDirty() {
-		// some code goes here
-		// Not necessary for assignment1
-		throw new UnsupportedOperationException("Implement this");
+		return dirty ? dirtier : null;
 	}
 
 	/**
@@ -184,37 +478,121 @@ public class HeapPage implements Page {
 	 *            the ID of the entry at which the {@code Tuple} is stored.
 	 */
 	public Tuple getTuple(int entryID) {
-		
-		// some code goes here
-		int location = tupleLocation(entryID);
-		DataInputStream in = new DataInputStream(new ByteArrayInputStream(data, location, data.length - location)); 
-		Tuple newtuple = createTuple(in);
-		
-		newtuple.setRecordId(new RecordId (pid, entryID));
-		return newtuple;
-		//Tuple tuple = null;
-		
-		//tuple = getTuple(entryID);
-		
-		/*
-		if(!newtuple.equals(null))
-			{
-			
-			newtuple.setRecordId(new RecordId(pid, entryID));
-			return newtuple;
+		while (true) {
+			ByteBuffer v = view;
+			ByteBuffer content = content(v);
+			Tuple t = null;
+			try {
+				t = readTuple(content, entryID);
+			} catch (RuntimeException e) {
+				if (!detached(content, v))
+					throw e;
 			}
-		else 
-			throw new UnsupportedOperationException("Implement this");
-			*/
-		
+			if (!detached(content, v))
+				return t;
+		}
+	}
+
+	/**
+	 * Reads the {@code Tuple} at the specified entry from the specified content of this {@code HeapPage}.
+	 * 
+	 * @return the {@code Tuple}, or {@code null} if there is no {@code Tuple} at the entry.
+	 */
+	Tuple readTuple(ByteBuffer content, int entryID) {
+		if (entryID < 0 || entryID >= readInt(content, 0))
+			return null;
+		int location = readInt(content, 4 + 4 * entryID);
+		if (location < 0)
+			return null; // the entry was deleted
+		Tuple newtuple = new Tuple(td);
+		try {
+			for (int j = 0, offset = location; j < td.numFields(); j++) {
+				newtuple.setField(j, parseField(content, j, offset));
+				offset += fieldLength(content, j, offset);
+			}
+		} catch (java.text.ParseException e) {
+			// a read of a page that is detached from its frame meanwhile fails here and is retried, so the failure is
+			// only reported by callers that do not retry
+			NoSuchElementException nse = new NoSuchElementException("parsing error!");
+			nse.initCause(e);
+			throw nse;
+		}
+		newtuple.setRecordId(new RecordId(pid, entryID));
+		return newtuple;
+	}
+
+	/**
+	 * Returns the number of bytes taken by the specified field of a {@code Tuple} in the specified content of this
+	 * {@code HeapPage}.
+	 * 
+	 * @param field
+	 *            the index of the field.
+	 * @param offset
+	 *            the location of the field in content.
+	 */
+	int fieldLength(ByteBuffer content, int field, int offset) {
+		Type type = td.getType(field);
+		if (dictionary != null && type == Type.STRING_TYPE)
+			return 4;
+		if (variableLength && type == Type.STRING_TYPE)
+			return 4 + readInt(content, offset);
+		return type.getLen();
+	}
+
+	/**
+	 * Returns the specified field of a {@code Tuple} in the specified content of this {@code HeapPage}. A
+	 * dictionary-encoded string is not decoded: the shared {@code StringField} of its code is returned.
+	 * 
+	 * @param field
+	 *            the index of the field.
+	 * @param offset
+	 *            the location of the field in content.
+	 */
+	Field parseField(ByteBuffer content, int field, int offset) throws ParseException {
+		Type type = td.getType(field);
+		if (dictionary != null && type == Type.STRING_TYPE)
+			return dictionary.field(readInt(content, offset));
+		return type.parse(content, offset);
+	}
+
+	/**
+	 * Returns the number of bytes taken by the {@code Tuple} at the specified location of the specified content of
+	 * this {@code HeapPage}.
+	 */
+	int recordLength(ByteBuffer content, int location) {
+		int offset = location;
+		for (int j = 0; j < td.numFields(); j++)
+			offset += fieldLength(content, j, offset);
+		return offset - location;
+	}
+
+	/**
+	 * Returns the number of entries in the specified content of a {@code HeapPage}.
+	 */
+	static int entryCount(ByteBuffer content) {
+		return readInt(content, 0);
+	}
+
+	/**
+	 * Returns the location of the tuple at the specified entry of the specified content of a {@code HeapPage}, or a
+	 * negative number if the entry was deleted.
+	 */
+	static int tupleLocation(ByteBuffer content, int entryID) {
+		return readInt(content, 4 + 4 * entryID);
 	}
 
 	/**
 	 * Returns a view of this {@code HeapPage} before it was modified -- used by recovery
 	 */
 	public HeapPage getBeforeImage() {
+		byte[] before;
+		synchronized (this) {
+			before = oldData;
+			if (before == null)
+				before = data != null ? data.clone() : view != null ? copy(view) : readFromDisk();
+		}
 		try {
-			return new HeapPage(pid, oldData);
+			return new HeapPage(pid, before);
 		} catch (IOException e) {
 			e.printStackTrace();
 			// should never happen -- we parsed it OK before!
@@ -223,8 +601,20 @@ public class HeapPage implements Page {
 		return null;
 	}
 
+	/**
+	 * Makes the current content of this {@code HeapPage} its before image. Nothing is copied until the next write.
+	 */
 	public void setBeforeImage() {
-		oldData = getPageData().clone();
+		oldData = null;
+	}
+
+	/**
+	 * Saves the before image of this {@code HeapPage}, if it has not been saved since it was last set, before the
+	 * first write to this {@code HeapPage}.
+	 */
+	private synchronized void copyBeforeImage() {
+		if (oldData == null)
+			oldData = getPageData().clone();
 	}
 
 	/**
@@ -232,15 +622,26 @@ public class HeapPage implements Page {
 	 * the file. Passing the results of this method to the {@code HeapPage} constructor will create a {@code HeapPage}
 	 * with no valid {@code Tuple}s in it.
 	 * 
-	 * @return the created byte array.
+	 * @return the created byte array of {@link BufferPool#PAGE_SIZE} bytes.
 	 */
 	public static byte[] createEmptyPageData() {
-		int len = BufferPool.PAGE_SIZE;
-		return new byte[len]; // all 0
+		return createEmptyPageData(BufferPool.PAGE_SIZE);
+	}
+
+	/**
+	 * Generates a byte array corresponding to an empty {@code HeapPage} of the specified size.
+	 * 
+	 * @param pageSize
+	 *            the page size of the {@code HeapFile}.
+	 * @return the created byte array.
+	 */
+	public static byte[] createEmptyPageData(int pageSize) {
+		return new byte[pageSize]; // all 0
 	}
 
 	/**
-	 * Writes an integer value at the specified location of a byte array.
+	 * Writes an integer value at the specified location of a byte array. If the byte array is the content of this
+	 * {@code HeapPage}, its before image is saved first.
 	 * 
 	 * @param data
 	 *            a byte array.
@@ -250,6 +651,8 @@ public class HeapPage implements Page {
 	 *            the value to write.
 	 */
 	protected void writeInt(byte[] data, int location, int value) {
+		if (data == this.data)
+			copyBeforeImage();
 		data[location] = (byte) (value >>> 24);
 		data[location + 1] = (byte) (value >>> 16);
 		data[location + 2] = (byte) (value >>> 8);
@@ -271,7 +674,14 @@ public class HeapPage implements Page {
 	}
 
 	/**
-	 * Returns a byte array representing the specified tuple.
+	 * Reads an integer at the specified location of the specified content of this {@code HeapPage}.
+	 */
+	private static int readInt(ByteBuffer content, int location) {
+		return content.getInt(location);
+	}
+
+	/**
+	 * Returns a byte array representing the specified tuple in the layout of this {@code HeapPage}.
 	 * 
 	 * @param t
 	 *            a tuple.
@@ -283,7 +693,14 @@ public class HeapPage implements Page {
 		try {
 			for (int j = 0; j < t.fields.length; j++) {
 				Field f = t.getField(j);
-				f.serialize(out);
+				if (dictionary != null && f instanceof StringField)
+					out.writeInt(dictionary.code(((StringField) f).getValue()));
+				else if (variableLength && f instanceof StringField) {
+					String s = ((StringField) f).getValue();
+					out.writeInt(s.length());
+					out.writeBytes(s);
+				} else
+					f.serialize(out);
 			}
 			out.flush();
 			b.flush();
@@ -320,9 +737,14 @@ public class HeapPage implements Page {
 	 * @return the end location of the free space in this {@code HeapPage}.
 	 */
 	protected int endOfFreeSpace() {
-		// some code goes here
-		// not necessary for assignment1
-		throw new UnsupportedOperationException("Implement this");
+		byte[] d = getPageData();
+		int end = d.length;
+		for (int i = readInt(d, 0) - 1; i >= 0; i--) {
+			int location = readInt(d, 4 + 4 * i);
+			if (location >= 0 && location < end)
+				end = location;
+		}
+		return end;
 	}
 
 	/**
@@ -334,7 +756,7 @@ public class HeapPage implements Page {
 		
 		// some code goes here
 		//if (entryCount() >= 0)
-		return readInt(data,0);
+		return readInt(content(view), 0);
 		//throw new UnsupportedOperationException("Implement this");
 	}
 
@@ -345,10 +767,7 @@ public class HeapPage implements Page {
 	 *            the number of entries in this {@code HeapPage}.
 	 */
 	protected void saveEntryCount(int count) {
-		// some code goes here
-		// not necessary for assignment1
-		
-		throw new UnsupportedOperationException("Implement this");
+		writeInt(getPageData(), 0, count);
 	}
 
 	/**
@@ -361,7 +780,7 @@ public class HeapPage implements Page {
 	protected int tupleLocation(int entryID) {
 		// some code goes here
 		//if(entryID!=-1)
-			return readInt(data,4+4*entryID);
+			return readInt(content(view), 4+4*entryID);
 		//else
 			//throw new UnsupportedOperationException("Implement this");
 	}
@@ -372,21 +791,10 @@ public class HeapPage implements Page {
 	 * @param entryID
 	 *            the ID of the entry at which the tuple is stored.
 	 * @param location
-	 *            the location of the tuple.
+	 *            the location of the tuple, or -1 if the entry is empty.
 	 */
 	protected void saveTupleLocation(int entryID, int location) {
-		// some code goes here
-		// not necessary for assignment1
-		//byte[] currentdata = getPageData();
-		setBeforeImage();
-		if(getTuple(entryID) != null)
-		{
-			writeInt(data, location, -1);
-		}
-		
-		return;
-		//data = currentdata;
-		//throw new UnsupportedOperationException("Implement this");
+		writeInt(getPageData(), 4 + 4 * entryID, location);
 	}
 
 	/**
@@ -408,12 +816,33 @@ public class HeapPage implements Page {
 	}
 
 	/**
-	 * Compacts this {@code HeapPage}.
+	 * Compacts this {@code HeapPage}: moves the {@code Tuple}s to the end of the page, next to each other, so that the
+	 * space freed by deleted {@code Tuple}s joins the free space. Entries keep their IDs, so the {@code RecordId}s of
+	 * the {@code Tuple}s remain valid.
 	 */
 	protected void compact() {
-		// some code goes here
-		// not necessary for assignment1
-		throw new UnsupportedOperationException("Implement this");
+		byte[] d = getPageData();
+		ByteBuffer content = ByteBuffer.wrap(d);
+		int count = readInt(d, 0);
+		long[] byLocation = new long[count];
+		int live = 0;
+		for (int i = 0; i < count; i++) {
+			int location = readInt(d, 4 + 4 * i);
+			if (location >= 0)
+				byLocation[live++] = (long) location << 32 | i;
+		}
+		Arrays.sort(byLocation, 0, live);
+		copyBeforeImage();
+		// move the tuples from the last one down, so that a tuple is never overwritten before it is moved
+		int end = d.length;
+		for (int k = live - 1; k >= 0; k--) {
+			int location = (int) (byLocation[k] >>> 32);
+			int length = recordLength(content, location);
+			end -= length;
+			System.arraycopy(d, location, d, end, length);
+			writeInt(d, 4 + 4 * (int) byLocation[k], end);
+		}
+		Arrays.fill(d, sizeOfHeader(), end, (byte) 0);
 	}
 
-}
\ No newline at end of file
+}
@@ -38,7 +38,8 @@ public class HeapPageId implements PageId {
      * @see BufferPool
      */
     public int hashCode() {
-        return Integer.parseInt(String.valueOf(tableId % 32000) + String.valueOf(pgNo));
+        // computed arithmetically: this is called on every BufferPool lookup, so it must not allocate
+        return 31 * tableId + pgNo;
     }
 
     /**
@@ -0,0 +1,54 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * IndexJoin is a Join on the equality of a field of the outer relation with
+ * a field of a table that has a {@link HashIndex} on it: instead of scanning
+ * the inner table for every outer tuple, it probes the index with the value
+ * of the outer field and reads only the matching inner tuples. It returns
+ * the same tuples as the nested loops of {@link Join}.
+ */
+public class IndexJoin extends Join {
+
+    private final JoinPredicate p;
+
+    private final DbIterator child1;
+
+    private final HashIndexScan child2;
+
+    /**
+     * Constructor.
+     *
+     * @param p An EQUALS predicate whose second field is the indexed field
+     *   of child2
+     * @param child1 Iterator for the left(outer) relation to join
+     * @param child2 A scan of the right(inner) table that is probed with the
+     *   joined field of each outer tuple
+     */
+    public IndexJoin(JoinPredicate p, DbIterator child1, HashIndexScan child2) {
+        super(p, child1, child2);
+        if (p.op != Predicate.Op.EQUALS || child2.index.keyField() != p.field2)
+            throw new IllegalArgumentException("an index join needs an EQUALS predicate on the indexed field");
+        this.p = p;
+        this.child1 = child1;
+        this.child2 = child2;
+    }
+
+    public void open()
+        throws DbException, NoSuchElementException, TransactionAbortedException {
+        t1 = null;
+        super.open();
+    }
+
+    protected Tuple readNext() throws TransactionAbortedException, DbException {
+        while (true) {
+            if (t1 != null && child2.hasNext())
+                return concatenate(t1, child2.next());
+            if (!child1.hasNext())
+                return null;
+            t1 = child1.next();
+            child2.probe(t1.getField(p.field1));
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package simpledb;
+import java.util.*;
+
+/**
+ * IndexScan is an access method that reads the tuples of a table stored in a
+ * {@link SortedFile}, such as a {@link BTreeFile} or a {@link ClusteredFile},
+ * whose keys satisfy predicates on the key field, in key order, by searching
+ * the file for the first key of the range and reading the pages from there
+ * until the last one. It returns the same tuples as Filters over a SeqScan of
+ * the table, without reading the tuples outside the range.
+ */
+public class IndexScan implements DbIterator {
+
+    final TransactionId tid;
+
+    final SortedFile file;
+
+    DbFileIterator fileit;
+
+    TupleDesc td;
+
+    /** The range of keys to return; a null bound is open. */
+    Field low, high;
+    boolean lowInclusive, highInclusive;
+
+    /**
+     * Creates a scan of the tuples of the specified table that satisfy the
+     * specified predicate.
+     *
+     * @param tid The transaction this scan is running as a part of.
+     * @param tableid the table to scan, which must be stored in a SortedFile.
+     * @param tableAlias the alias of this table (needed by the parser).
+     * @param p a predicate on the key field of the table, for which
+     *   {@link #canAnswer} is true.
+     * @throws IllegalArgumentException if the table or the predicate cannot
+     *   be answered by an index scan.
+     */
+    public IndexScan(TransactionId tid, int tableid, String tableAlias, Predicate p) {
+        if (!canAnswer(tableid, p))
+            throw new IllegalArgumentException("predicate " + p + " cannot be answered by an index scan");
+        this.tid = tid;
+        file = (SortedFile) Database.getCatalog().getDbFile(tableid);
+        td = file.getTupleDesc();
+        restrict(p);
+    }
+
+    /**
+     * Narrows the range of this scan to the keys that also satisfy the
+     * specified predicate, if {@link #canAnswer} is true for it; otherwise the
+     * caller must still apply it. Must be called before open.
+     *
+     * @param p a predicate on the tuples of this scan
+     * @return true if this scan now only returns tuples that satisfy p.
+     */
+    public boolean restrict(Predicate p) {
+        if (!canAnswer(file.getId(), p))
+            return false;
+        switch (p.op) {
+        case EQUALS:
+            raiseLow(p.operand, true);
+            lowerHigh(p.operand, true);
+            break;
+        case GREATER_THAN:
+        case GREATER_THAN_OR_EQ:
+            raiseLow(p.operand, p.op == Predicate.Op.GREATER_THAN_OR_EQ);
+            break;
+        default:
+            lowerHigh(p.operand, p.op == Predicate.Op.LESS_THAN_OR_EQ);
+        }
+        fileit = file.rangeIterator(tid, low, lowInclusive, high, highInclusive);
+        return true;
+    }
+
+    private void raiseLow(Field key, boolean inclusive) {
+        int cmp = low == null ? 1 : BTreePage.compare(key, low);
+        if (cmp > 0) {
+            low = key;
+            lowInclusive = inclusive;
+        } else if (cmp == 0)
+            lowInclusive &= inclusive;
+    }
+
+    private void lowerHigh(Field key, boolean inclusive) {
+        int cmp = high == null ? -1 : BTreePage.compare(key, high);
+        if (cmp < 0) {
+            high = key;
+            highInclusive = inclusive;
+        } else if (cmp == 0)
+            highInclusive &= inclusive;
+    }
+
+    /**
+     * Returns whether the specified table is stored in a SortedFile keyed on
+     * the field of the specified predicate, and the predicate selects a range
+     * of keys: EQUALS, or a comparison other than LIKE and NOT_EQUALS.
+     *
+     * @param tableid the table to scan.
+     * @param p a predicate on the tuples of the table.
+     */
+    public static boolean canAnswer(int tableid, Predicate p) {
+        DbFile file = Database.getCatalog().getDbFile(tableid);
+        return file instanceof SortedFile && ((SortedFile) file).keyField() == p.field
+                && p.op != Predicate.Op.LIKE && p.op != Predicate.Op.NOT_EQUALS;
+    }
+
+    public void open()
+        throws DbException, TransactionAbortedException {
+        fileit.open();
+    }
+
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    public boolean hasNext() throws TransactionAbortedException, DbException {
+        return fileit.hasNext();
+    }
+
+    public Tuple next()
+        throws NoSuchElementException, TransactionAbortedException, DbException {
+        return fileit.next();
+    }
+
+    public void close() {
+        fileit.close();
+    }
+
+    public void rewind()
+        throws DbException, NoSuchElementException, TransactionAbortedException {
+        fileit.rewind();
+    }
+}
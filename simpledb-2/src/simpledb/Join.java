@@ -97,10 +97,19 @@ public class Join extends AbstractDbIterator {
     			return null;
     	}
     	while (true) {
-            while (child2.hasNext()) {
-                Tuple t2 = child2.next();
-                if(p.filter(t1, t2)){
-                	return concatenate(t1, t2);
+            if (child2 instanceof ViewIterator) {
+                // compare against the inner tuples in place; only matches are decoded
+                TupleView v2;
+                while ((v2 = ((ViewIterator) child2).nextView()) != null) {
+                    if (p.filter(t1, v2))
+                        return concatenate(t1, v2.toTuple());
+                }
+            } else {
+                while (child2.hasNext()) {
+                    Tuple t2 = child2.next();
+                    if(p.filter(t1, t2)){
+                    	return concatenate(t1, t2);
+                    }
                 }
             }
             child2.rewind();
@@ -54,8 +54,15 @@ public class JoinOptimizer {
         }
         
         JoinPredicate p = new JoinPredicate(t1id,lj.p,t2id);
-       
-        j = new Join(p,plan1,plan2);
+
+        // an equi-join with the whole of a table that has a hash index on
+        // the joined field probes the index instead of scanning the table
+        if (lj.p == Predicate.Op.EQUALS && plan2 instanceof SeqScan
+                && Database.getCatalog().getIndex(((SeqScan) plan2).tableid, t2id) != null) {
+            SeqScan ss = (SeqScan) plan2;
+            j = new IndexJoin(p, plan1, new HashIndexScan(ss.tid, ss.tableid, lj.t2, t2id));
+        } else
+            j = new Join(p,plan1,plan2);
         
         return j;
 
@@ -12,6 +12,13 @@ public class JoinPredicate {
 	
 	protected Predicate.Op op;
 
+	/**
+	 * The last outer tuple whose string field was converted for comparison
+	 * with views, and the ASCII bytes of that field (null if not ASCII).
+	 */
+	private Tuple bytesOf;
+	private byte[] bytes;
+
     /**
      * Constructor -- create a new predicate over two fields of two tuples.
      *
@@ -36,5 +43,28 @@ public class JoinPredicate {
     public boolean filter(Tuple t1, Tuple t2) {
         return t1.getField(field1).compare(op, t2.getField(field2));
     }
+
+    /**
+     * Apply the predicate to a tuple and the tuple shown by a view, with the
+     * same result as {@link #filter(Tuple, Tuple)}. The field of the view
+     * is compared without creating a Field, except for LIKE on strings; a
+     * dictionary-encoded string is compared as the Field its dictionary
+     * shares.
+     * @return true if the tuples satisfy the predicate.
+     */
+    public boolean filter(Tuple t1, TupleView v2) {
+        Field f1 = t1.getField(field1);
+        if (f1 instanceof IntField)
+            return Predicate.compare(op, ((IntField) f1).getValue(), v2.getInt(field2));
+        if (op != Predicate.Op.LIKE && f1 instanceof StringField && v2.getDictionary() == null) {
+            if (bytesOf != t1) {
+                bytesOf = t1;
+                bytes = TupleView.asciiBytes(((StringField) f1).getValue());
+            }
+            if (bytes != null)
+                return Predicate.matches(op, -v2.compareString(field2, bytes));
+        }
+        return f1.compare(op, v2.getField(field2));
+    }
     
 }
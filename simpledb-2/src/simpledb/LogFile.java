@@ -51,8 +51,8 @@ transaction id.
 <li> Each log record ends with a long integer file offset representing
 the position in the log file where the record began.
 
-<li> There are five record types: ABORT, COMMIT, UPDATE, BEGIN, and
-CHECKPOINT
+<li> There are six record types: ABORT, COMMIT, UPDATE, BEGIN,
+CHECKPOINT, and APPEND
 
 <li> ABORT, COMMIT, and BEGIN records contain no additional data
 
@@ -67,6 +67,12 @@ of the record is an integer count of the number of transactions, as well
 as a long integer transaction id and a long integer first record offset
 for each active transaction.
 
+<li> APPEND records describe a batch of pages that HeapFile.appendTuples()
+wrote to the end of a table without going through the BufferPool.  They
+consist of three integers: the table id, the number of the first page
+of the batch, and the number of pages.  The pages are new, so undoing
+the batch only requires truncating the table to its first page.
+
 </ul>
 
 */
@@ -82,6 +88,7 @@ public class LogFile {
     static final int UPDATE_RECORD = 3;
     static final int BEGIN_RECORD = 4;
     static final int CHECKPOINT_RECORD = 5;
+    static final int APPEND_RECORD = 6;
     static final long NO_CHECKPOINT_ID = -1;
 
     static int INT_SIZE = 4;
@@ -218,6 +225,31 @@ public class LogFile {
         Debug.log("WRITE OFFSET = " + currentOffset);
     }
 
+    /** Write an APPEND record to disk for the specified tid and batch
+        of pages appended to a table, and force the log to disk, so the
+        record is durable before the pages are written.
+        @param tid The transaction performing the append
+        @param tableId The table the pages are appended to
+        @param firstPage The number of the first appended page
+        @param numPages The number of appended pages
+
+        @see simpledb.HeapFile#appendTuples
+    */
+    public synchronized void logAppend(TransactionId tid, int tableId,
+                                       int firstPage, int numPages)
+        throws IOException {
+        Debug.log("APPEND, offset = " + raf.getFilePointer());
+        preAppend();
+        raf.writeInt(APPEND_RECORD);
+        raf.writeLong(tid.getId());
+        raf.writeInt(tableId);
+        raf.writeInt(firstPage);
+        raf.writeInt(numPages);
+        raf.writeLong(currentOffset);
+        currentOffset = raf.getFilePointer();
+        force();
+    }
+
     void writePageData(RandomAccessFile raf, Page p) throws IOException{
         PageId pid = p.getId();
         int pageInfo[] = pid.serialize();
@@ -416,6 +448,10 @@ public class LogFile {
                     writePageData(logNew, before);
                     writePageData(logNew, after);
                     break;
+                case APPEND_RECORD:
+                    for (int i = 0; i < 3; i++)
+                        logNew.writeInt(raf.readInt());
+                    break;
                 case CHECKPOINT_RECORD:
                     int numXactions = raf.readInt();
                     logNew.writeInt(numXactions);
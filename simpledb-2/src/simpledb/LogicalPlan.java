@@ -30,6 +30,7 @@ public  class LogicalPlan {
     private Vector<LogicalJoinNode> joins;
     private Vector<LogicalScanNode> tables;
     private Vector<LogicalFilterNode> filters;
+    private Vector<Vector<LogicalFilterNode>> disjunctions;
     private HashMap<String,DbIterator> subplanMap;
     private HashMap<String,Integer> tableMap;
 
@@ -46,6 +47,7 @@ public  class LogicalPlan {
     public LogicalPlan() {
         joins = new Vector<LogicalJoinNode>();
         filters = new Vector<LogicalFilterNode>();
+        disjunctions = new Vector<Vector<LogicalFilterNode>>();
         tables = new Vector<LogicalScanNode>();
         subplanMap = new HashMap<String,DbIterator>();
         tableMap = new HashMap<String,Integer>();
@@ -104,6 +106,30 @@ public  class LogicalPlan {
         filters.addElement(lf);
     }
 
+    /** Add a disjunction of filters to the logical plan: a tuple passes
+     *   it if it passes any of the filters.  The filters must all be on
+     *   fields of one table that have a {@link BitmapIndex}; the
+     *   disjunction is evaluated by uniting their bitmaps.
+     *   @param fields The fields of the filters, named as for {@link #addFilter}
+     *   @param ops The predicates of the filters
+     *   @param constantValues The constants of the filters
+     *   @throws ParsingException if a field is not in one of the tables
+     *   added via {@link #addScan}, is ambiguous, or the fields are in
+     *   different tables
+     */
+    public void addDisjunction(Vector<String> fields, Vector<Predicate.Op> ops,
+        Vector<String> constantValues) throws ParsingException {
+        Vector<LogicalFilterNode> d = new Vector<LogicalFilterNode>();
+        for (int i = 0; i < fields.size(); i++) {
+            String field = disambiguateName(fields.elementAt(i));
+            String table = field.split("[.]")[0];
+            if (d.size() > 0 && !table.equals(d.elementAt(0).t))
+                throw new ParsingException("OR expressions must be on fields of one table");
+            d.addElement(new LogicalFilterNode(table, field, ops.elementAt(i), constantValues.elementAt(i)));
+        }
+        disjunctions.addElement(d);
+    }
+
     /** Add a join between two fields of two different tables.  
      *  @param joinField1 The name of the first join field; this can
      *  be a fully qualified name (e.g., tableName.field or
@@ -243,6 +269,42 @@ public  class LogicalPlan {
 
     }
 
+    /** Returns the predicate of the specified filter, on the fields of the specified TupleDesc.
+     *  @throws ParsingException if the field of the filter is unknown
+     */
+    private Predicate predicate(LogicalFilterNode lf, TupleDesc td) throws ParsingException {
+        Field f;
+        Type ftyp;
+        int field;
+        try {
+            field = td.nameToId(disambiguateName(lf.f));
+            ftyp = td.getType(field);
+        } catch (java.util.NoSuchElementException e) {
+            throw new ParsingException("Unknown field in filter expression " + lf.f);
+        }
+        if (ftyp == Type.INT_TYPE)
+            f = new IntField(new Integer(lf.c).intValue());
+        else
+            f = new StringField(lf.c, Type.STRING_LEN);
+        return new Predicate(field, lf.p, f);
+    }
+
+    /** Returns whether the specified plan returns its tuples in ascending order
+     *  of the specified field: if it is a scan of a {@link SortedFile} keyed on
+     *  the field, possibly under Filters, which keep the order of their child.
+     */
+    static boolean isSortedOn(DbIterator node, int field) {
+        while (node instanceof Filter)
+            node = ((Filter) node).child;
+        if (node instanceof IndexScan)
+            return ((IndexScan) node).file.keyField() == field;
+        if (node instanceof SeqScan) {
+            DbFile file = Database.getCatalog().getDbFile(((SeqScan) node).tableid);
+            return file instanceof SortedFile && ((SortedFile) file).keyField() == field;
+        }
+        return false;
+    }
+
     /** Convert the aggregate operator name s into an Aggregator.op operation.
      *  @throws ParsingException if s is not a valid operator name 
      */
@@ -291,6 +353,33 @@ public  class LogicalPlan {
 
         }
 
+        // a disjunction is evaluated by uniting the bitmaps of the bitmap
+        // indexes on its fields, before the filters narrow the result
+        for (Vector<LogicalFilterNode> d : disjunctions) {
+            String alias = d.elementAt(0).t;
+            DbIterator subplan = subplanMap.get(alias);
+            if (subplan == null) {
+                throw new ParsingException("Unknown table in WHERE clause " + alias);
+            }
+            BitmapScan any = null;
+            double sel = 0;
+            for (LogicalFilterNode lf : d) {
+                Predicate p = predicate(lf, subplan.getTupleDesc());
+                if (!BitmapScan.canAnswer(getTableId(alias), p))
+                    throw new ParsingException("OR expressions are only supported on fields with bitmap indexes: " + lf.f);
+                if (any == null)
+                    any = new BitmapScan(t, getTableId(alias), alias, p);
+                else
+                    any.or(p);
+                sel += statsMap.get(alias).estimateSelectivity(p.field, p.op, p.operand);
+            }
+            if (subplan instanceof BitmapScan)
+                ((BitmapScan) subplan).and(any);
+            else
+                subplanMap.put(alias, any);
+            filterSelectivities.put(alias, filterSelectivities.get(alias) * Math.min(1.0, sel));
+        }
+
         Iterator<LogicalFilterNode> filterIt = filters.iterator();        
         while (filterIt.hasNext()) {
             LogicalFilterNode lf = filterIt.next();
@@ -299,31 +388,29 @@ public  class LogicalPlan {
                 throw new ParsingException("Unknown table in WHERE clause " + lf.t);
             }
 
-            Field f;
-            Type ftyp;
-            TupleDesc td = subplanMap.get(lf.t).getTupleDesc();
-            
-            try {
-                ftyp = td.getType(td.nameToId(disambiguateName(lf.f)));
-            } catch (java.util.NoSuchElementException e) {
-                throw new ParsingException("Unknown field in filter expression " + lf.f);
-            }
-            if (ftyp == Type.INT_TYPE)
-                f = new IntField(new Integer(lf.c).intValue());
+            Predicate p = predicate(lf, subplan.getTupleDesc());
+            // a filter on the key of a table stored in a B+ tree or a clustered
+            // file replaces the scan of the whole table with a scan of the
+            // matching keys, found by searching the file, and
+            // further filters on the key narrow that range; an equality on a
+            // field with a hash index reads only the matching tuples, and
+            // filters on fields with bitmap indexes intersect their bitmaps
+            if (subplan instanceof SeqScan && IndexScan.canAnswer(getTableId(lf.t), p))
+                subplanMap.put(lf.t, new IndexScan(t, getTableId(lf.t), lf.t, p));
+            else if (subplan instanceof IndexScan && ((IndexScan) subplan).restrict(p))
+                subplanMap.put(lf.t, subplan);
+            else if (subplan instanceof SeqScan && HashIndexScan.canAnswer(getTableId(lf.t), p))
+                subplanMap.put(lf.t, new HashIndexScan(t, getTableId(lf.t), lf.t, p));
+            else if (subplan instanceof SeqScan && BitmapScan.canAnswer(getTableId(lf.t), p))
+                subplanMap.put(lf.t, new BitmapScan(t, getTableId(lf.t), lf.t, p));
+            else if (subplan instanceof BitmapScan && ((BitmapScan) subplan).and(p))
+                subplanMap.put(lf.t, subplan);
             else
-                f = new StringField(lf.c, Type.STRING_LEN);
-
-            Predicate p = null;
-            try {
-                p = new Predicate(subplan.getTupleDesc().nameToId(disambiguateName(lf.f)), lf.p,f);
-            } catch (NoSuchElementException e) {
-                throw new ParsingException("Unknown field " + lf.f);
-            }
-            subplanMap.put(lf.t, new Filter(p, subplan));
+                subplanMap.put(lf.t, new Filter(p, subplan));
 
             TableStats s = statsMap.get(lf.t);
             
-            double sel= s.estimateSelectivity(subplan.getTupleDesc().nameToId(disambiguateName(lf.f)), lf.p, f);
+            double sel= s.estimateSelectivity(p.field, lf.p, p.operand);
             filterSelectivities.put(lf.t, filterSelectivities.get(lf.t) * sel);
 
             //s.addSelectivityFactor(estimateFilterSelectivity(lf,statsMap));
@@ -444,12 +531,24 @@ public  class LogicalPlan {
 
         if (hasAgg) {
             TupleDesc td = node.getTupleDesc();
-            Aggregate aggNode;
+            DbIterator aggNode;
             try {
-                aggNode = new Aggregate(node,
-                                        td.nameToId(disambiguateName(aggField)),
-                                        groupByField == null?Aggregator.NO_GROUPING:td.nameToId(disambiguateName(groupByField)),
-                                getAggOp(aggOp));
+                int afield = td.nameToId(disambiguateName(aggField));
+                int gfield = groupByField == null?Aggregator.NO_GROUPING:td.nameToId(disambiguateName(groupByField));
+                // a count over the tuples of a table with a bitmap index is
+                // computed from the cardinalities of the bitmaps
+                BitmapScan scan = null;
+                if (getAggOp(aggOp) == Aggregator.Op.COUNT) {
+                    if (node instanceof BitmapScan)
+                        scan = (BitmapScan) node;
+                    else if (node instanceof SeqScan
+                            && !Database.getCatalog().getBitmapIndexes(((SeqScan) node).tableid).isEmpty())
+                        scan = new BitmapScan(t, ((SeqScan) node).tableid, null);
+                }
+                if (scan != null && BitmapCount.canGroup(scan, gfield))
+                    aggNode = new BitmapCount(scan, afield, gfield);
+                else
+                    aggNode = new Aggregate(node, afield, gfield, getAggOp(aggOp));
             } catch (NoSuchElementException e) {
                 throw new simpledb.ParsingException(e);
             } catch (IllegalArgumentException e) {
@@ -459,7 +558,10 @@ public  class LogicalPlan {
         }
 
         if (hasOrderBy) {
-            node = new OrderBy(node.getTupleDesc().nameToId(disambiguateName(oByField)), oByAsc, node);
+            int field = node.getTupleDesc().nameToId(disambiguateName(oByField));
+            // the tuples of a scan of a file sorted on the field are already in order
+            if (!oByAsc || !isSortedOn(node, field))
+                node = new OrderBy(field, oByAsc, node);
         }
 
         return new Project(outFields, outTypes, node);
@@ -0,0 +1,35 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * LruPolicy evicts the page that was least recently requested.
+ */
+public class LruPolicy extends AbstractReplacementPolicy {
+
+	/**
+	 * The resident pages, ordered from least to most recently used.
+	 */
+	private final LinkedHashMap<PageId, Boolean> pages = new LinkedHashMap<PageId, Boolean>(16, 0.75f, true);
+
+	protected synchronized void hit(PageId pid) {
+		pages.get(pid); // moves pid to the most recently used end
+	}
+
+	public synchronized void pageAdded(PageId pid) {
+		pages.put(pid, Boolean.TRUE);
+	}
+
+	public synchronized void pageRemoved(PageId pid) {
+		pages.remove(pid);
+	}
+
+	public synchronized PageId chooseVictim() {
+		Iterator<PageId> i = pages.keySet().iterator();
+		if (!i.hasNext())
+			return null;
+		PageId victim = i.next();
+		i.remove();
+		return victim;
+	}
+}
@@ -0,0 +1,944 @@
+package simpledb;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * LsmFile is a log-structured merge tree: a DbFile for tables that are written much more often than they are read,
+ * sorted on a key field. Inserts and deletes only add an entry to an in-memory sorted <em>memtable</em>; when it holds
+ * {@link #getMemtableTuples} entries it is written out as an immutable sorted run (see {@link LsmRun}), so a write
+ * never reads or rewrites a page. Deletes are blind: an entry of a delete is a <em>tombstone</em> that cancels the
+ * entry of the tuple with the same key and sequence number, wherever it is.
+ * <p>
+ * Runs are kept in levels. New runs go to level 0, where their key ranges may overlap. When level 0 has
+ * {@link #L0_RUNS} runs, a compaction in the background merges them with the runs of level 1 that they overlap; runs
+ * of level 1 and below do not overlap each other, and when a level grows past its size ({@link #LEVEL1_PAGES} pages
+ * for level 1, and {@link #LEVEL_RATIO} times more for each level below) one of its runs is merged into the next level
+ * the same way. Compactions drop the tuples that were deleted, and the tombstones that no longer can match anything.
+ * <p>
+ * A scan merges the memtable with every run that overlaps its range, and returns the tuples in key order, so an
+ * ORDER BY on the key needs no sort and a range of keys is read from the first page of each run that can hold it. A
+ * scan for a single key also skips the runs whose {@link BloomFilter} rules the key out. The pages of the runs are
+ * numbered in the page numbers of this file and read through the BufferPool. A run replaced by a compaction is deleted
+ * once no scan is reading it.
+ * <p>
+ * The list of runs is the manifest, stored in the file this LsmFile is constructed with, and the runs are stored next
+ * to it. The memtable is not logged: it reaches disk when it fills, and when {@link #flush} or {@link #close} is
+ * called. The {@code RecordId} of a tuple encodes its sequence number rather than a location, so a LsmFile cannot have
+ * hash or bitmap indexes.
+ *
+ * @see IndexScan
+ */
+public class LsmFile implements SortedFile {
+
+	/**
+	 * The default number of entries of the memtable that are written out as a run.
+	 */
+	public static final int DEFAULT_MEMTABLE_TUPLES = 4096;
+
+	/**
+	 * The number of runs of level 0 that start a compaction.
+	 */
+	public static final int L0_RUNS = 4;
+
+	/**
+	 * The number of pages that level 1 may hold before one of its runs is compacted into level 2.
+	 */
+	public static final int LEVEL1_PAGES = 64;
+
+	/**
+	 * How many times more pages each level below level 1 may hold than the level above it.
+	 */
+	public static final int LEVEL_RATIO = 10;
+
+	/**
+	 * The number of pages after which a compaction starts a new run.
+	 */
+	public static final int RUN_PAGES = 32;
+
+	/**
+	 * Runs the background compactions of all LsmFiles, one at a time.
+	 */
+	private static final ExecutorService compactor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "simpledb-compaction");
+			t.setDaemon(true);
+			return t;
+		}
+	});
+
+	/**
+	 * An entry of the memtable or of a run: a tuple, or the tombstone of the tuple with the same key and sequence
+	 * number.
+	 */
+	static final class Entry {
+		final Field key;
+		final int seq;
+
+		/**
+		 * The tuple, or null if this entry is a tombstone.
+		 */
+		final Tuple tuple;
+
+		Entry(Field key, int seq, Tuple tuple) {
+			this.key = key;
+			this.seq = seq;
+			this.tuple = tuple;
+		}
+	}
+
+	/**
+	 * Orders entries by key, and entries with equal keys by sequence number.
+	 */
+	static final Comparator<Entry> ENTRY_ORDER = new Comparator<Entry>() {
+		public int compare(Entry a, Entry b) {
+			int cmp = BTreePage.compare(a.key, b.key);
+			if (cmp != 0)
+				return cmp;
+			return a.seq < b.seq ? -1 : (a.seq == b.seq ? 0 : 1);
+		}
+	};
+
+	/**
+	 * The manifest.
+	 */
+	private final File file;
+
+	private final TupleDesc td;
+
+	/**
+	 * The index of the field that the tuples are sorted on.
+	 */
+	private final int keyField;
+
+	/**
+	 * The entries added since the memtable was last written out.
+	 */
+	private TreeSet<Entry> memtable = new TreeSet<Entry>(ENTRY_ORDER);
+
+	/**
+	 * The number of entries of the memtable that are written out as a run.
+	 */
+	private volatile int memtableTuples = DEFAULT_MEMTABLE_TUPLES;
+
+	/**
+	 * The runs of each level, or null if the manifest has not been loaded; the runs of level 1 and below are sorted
+	 * on their smallest keys.
+	 */
+	private ArrayList<ArrayList<LsmRun>> levels;
+
+	/**
+	 * The largest key of the last run of each level that was compacted into the next level, so that the runs of a
+	 * level are compacted in turn.
+	 */
+	private final ArrayList<Field> compactedKeys = new ArrayList<Field>();
+
+	/**
+	 * Every run whose pages may be read, by the number of its first page: the runs of the levels, and the runs
+	 * replaced by a compaction that scans are still reading.
+	 */
+	private final ConcurrentSkipListMap<Integer, LsmRun> runsByPage = new ConcurrentSkipListMap<Integer, LsmRun>();
+
+	/**
+	 * The sequence number of the next entry, the number of the first page of the next run, and the number in the
+	 * name of the next run file.
+	 */
+	private int nextSeq, nextPage, nextRun;
+
+	/**
+	 * Whether compactions are started in the background, or only by {@link #compact}.
+	 */
+	private volatile boolean backgroundCompaction = true;
+
+	/**
+	 * Whether a background compaction has been started and has not finished.
+	 */
+	private boolean compactionScheduled;
+
+	/**
+	 * Constructs an LsmFile whose manifest is the specified file; an empty file is an empty table.
+	 *
+	 * @param f
+	 *            the manifest, next to which the runs are stored.
+	 * @param keyField
+	 *            the index of the int or string field that the tuples are sorted on.
+	 */
+	public LsmFile(File f, TupleDesc td, int keyField) {
+		this.file = f;
+		this.td = td;
+		this.keyField = keyField;
+	}
+
+	/**
+	 * Returns the manifest of this LsmFile.
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	// see DbFile.java for javadocs
+	public int getId() {
+		return file.getAbsoluteFile().hashCode();
+	}
+
+	// see DbFile.java for javadocs
+	public TupleDesc getTupleDesc() {
+		return td;
+	}
+
+	// see SortedFile.java for javadocs
+	public int keyField() {
+		return keyField;
+	}
+
+	/**
+	 * Returns the number of entries of the memtable that are written out as a run.
+	 */
+	public int getMemtableTuples() {
+		return memtableTuples;
+	}
+
+	/**
+	 * Sets the number of entries of the memtable that are written out as a run.
+	 */
+	public void setMemtableTuples(int tuples) {
+		memtableTuples = tuples;
+	}
+
+	/**
+	 * Sets whether compactions are started in the background when level 0 fills, or only by {@link #compact}.
+	 */
+	public void setBackgroundCompaction(boolean background) {
+		backgroundCompaction = background;
+	}
+
+	/**
+	 * Returns the number of runs of the specified level.
+	 */
+	public synchronized int numRuns(int level) throws DbException {
+		load();
+		return level < levels.size() ? levels.get(level).size() : 0;
+	}
+
+	/**
+	 * Returns the number of pages of the runs of all levels.
+	 */
+	public synchronized int numPages() throws DbException {
+		load();
+		int pages = 0;
+		for (ArrayList<LsmRun> level : levels)
+			pages += pages(level);
+		return pages;
+	}
+
+	private static int pages(ArrayList<LsmRun> runs) {
+		int pages = 0;
+		for (LsmRun run : runs)
+			pages += run.numPages;
+		return pages;
+	}
+
+	/**
+	 * Returns the runs of the specified level, adding empty levels if needed.
+	 */
+	private ArrayList<LsmRun> level(int level) {
+		while (levels.size() <= level)
+			levels.add(new ArrayList<LsmRun>());
+		return levels.get(level);
+	}
+
+	/**
+	 * Returns the file of the run with the specified number.
+	 */
+	private File runFile(int run) {
+		return new File(file.getPath() + ".run" + run);
+	}
+
+	/**
+	 * Returns the {@code RecordId} of the tuple with the specified sequence number.
+	 */
+	private RecordId recordId(int seq) {
+		return new RecordId(new HeapPageId(getId(), seq >>> 16), seq & 0xffff);
+	}
+
+	/**
+	 * Loads the manifest and opens the runs it lists, unless they have been loaded.
+	 */
+	private void load() throws DbException {
+		if (levels != null)
+			return;
+		levels = new ArrayList<ArrayList<LsmRun>>();
+		if (file.length() == 0)
+			return;
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			try {
+				if (in.readInt() != keyField)
+					throw new DbException(file.getName() + " is sorted on another field");
+				nextSeq = in.readInt();
+				nextPage = in.readInt();
+				nextRun = in.readInt();
+				for (int i = 0, n = in.readInt(); i < n; i++) {
+					LsmRun run = LsmRun.open(new File(file.getParentFile(), in.readUTF()), td, keyField);
+					run.level = in.readInt();
+					run.firstPage = in.readInt();
+					level(run.level).add(run);
+					runsByPage.put(run.firstPage, run);
+				}
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			levels = null;
+			runsByPage.clear();
+			DbException dbe = new DbException("failed to load the manifest " + file.getName());
+			dbe.initCause(e);
+			throw dbe;
+		} catch (DbException e) {
+			levels = null;
+			runsByPage.clear();
+			throw e;
+		}
+		for (int i = 1; i < levels.size(); i++)
+			Collections.sort(levels.get(i), BY_MIN_KEY);
+	}
+
+	private static final Comparator<LsmRun> BY_MIN_KEY = new Comparator<LsmRun>() {
+		public int compare(LsmRun a, LsmRun b) {
+			return BTreePage.compare(a.minKey(), b.minKey());
+		}
+	};
+
+	/**
+	 * Writes the manifest to a new file, which replaces the old one.
+	 */
+	private void saveManifest() throws IOException {
+		File tmp = new File(file.getPath() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+		try {
+			out.writeInt(keyField);
+			out.writeInt(nextSeq);
+			out.writeInt(nextPage);
+			out.writeInt(nextRun);
+			int n = 0;
+			for (ArrayList<LsmRun> level : levels)
+				n += level.size();
+			out.writeInt(n);
+			for (ArrayList<LsmRun> level : levels)
+				for (LsmRun run : level) {
+					out.writeUTF(run.file.getName());
+					out.writeInt(run.level);
+					out.writeInt(run.firstPage);
+				}
+		} finally {
+			out.close();
+		}
+		if (!tmp.renameTo(file) && !(file.delete() && tmp.renameTo(file)))
+			throw new IOException("failed to replace " + file.getName() + " with " + tmp.getName());
+	}
+
+	/**
+	 * Adds a run to the specified level, numbering its pages after those of every other run.
+	 */
+	private void install(LsmRun run, int level) {
+		run.level = level;
+		run.firstPage = nextPage;
+		nextPage += run.numPages;
+		runsByPage.put(run.firstPage, run);
+		ArrayList<LsmRun> runs = level(level);
+		if (level == 0) {
+			runs.add(run);
+			return;
+		}
+		int i = 0;
+		while (i < runs.size() && BTreePage.compare(runs.get(i).minKey(), run.minKey()) < 0)
+			i++;
+		runs.add(i, run);
+	}
+
+	// see DbFile.java for javadocs
+	public Page readPage(PageId pid) {
+		if (getId() != pid.getTableId())
+			throw new IllegalArgumentException("page " + pid.pageno() + " does not belong to this file");
+		Map.Entry<Integer, LsmRun> e = runsByPage.floorEntry(pid.pageno());
+		if (e == null || pid.pageno() >= e.getKey() + e.getValue().numPages)
+			throw new IllegalArgumentException("page " + pid.pageno() + " does not exist in this file");
+		try {
+			return e.getValue().readPage(new HeapPageId(pid.getTableId(), pid.pageno()), pid.pageno() - e.getKey());
+		} catch (IOException ex) {
+			throw new RuntimeException("failed to read page " + pid.pageno(), ex);
+		}
+	}
+
+	/**
+	 * Runs are never modified, so their pages are never dirtied and this is never called by the BufferPool.
+	 *
+	 * @throws IOException
+	 *             always.
+	 */
+	public void writePage(Page p) throws IOException {
+		throw new IOException(file.getName() + " does not write pages in place");
+	}
+
+	// see DbFile.java for javadocs
+	// The tuple is added to the memtable, so no page is modified.
+	public synchronized ArrayList<Page> addTuple(TransactionId tid, Tuple t) throws DbException, IOException,
+			TransactionAbortedException {
+		load();
+		int seq = nextSeq++;
+		Tuple copy = new Tuple(td);
+		for (int i = 0; i < td.numFields(); i++)
+			copy.setField(i, t.getField(i));
+		copy.setRecordId(recordId(seq));
+		t.setRecordId(copy.getRecordId());
+		memtable.add(new Entry(t.getField(keyField), seq, copy));
+		if (memtable.size() >= memtableTuples)
+			writeMemtable();
+		return new ArrayList<Page>();
+	}
+
+	/**
+	 * Removes the specified tuple by adding its tombstone to the memtable, or by removing its entry if it is still in
+	 * the memtable. The tuple is not looked up, so deleting a tuple that has already been deleted has no effect.
+	 *
+	 * @return null, as no page is modified.
+	 * @throws DbException
+	 *             if the tuple is not stored in this file.
+	 */
+	public synchronized Page deleteTuple(TransactionId tid, Tuple t) throws DbException,
+			TransactionAbortedException {
+		load();
+		RecordId rid = t.getRecordId();
+		if (rid == null || rid.getPageId().getTableId() != getId())
+			throw new DbException("the tuple is not stored in " + file.getName());
+		Entry tombstone = new Entry(t.getField(keyField), (rid.getPageId().pageno() << 16) | rid.tupleno(), null);
+		Entry e = memtable.ceiling(tombstone);
+		if (e != null && ENTRY_ORDER.compare(e, tombstone) == 0) {
+			if (e.tuple != null)
+				memtable.remove(e);
+			return null;
+		}
+		memtable.add(tombstone);
+		if (memtable.size() >= memtableTuples) {
+			try {
+				writeMemtable();
+			} catch (IOException ex) {
+				DbException dbe = new DbException("failed to write the memtable of " + file.getName());
+				dbe.initCause(ex);
+				throw dbe;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Writes the memtable out as a run of level 0, and starts a compaction in the background if level 0 is full.
+	 */
+	private void writeMemtable() throws IOException {
+		if (memtable.isEmpty())
+			return;
+		LsmRun.Writer w = new LsmRun.Writer(runFile(nextRun++), td, keyField);
+		LsmRun run;
+		try {
+			for (Entry e : memtable)
+				w.add(e);
+			run = w.finish();
+		} catch (IOException e) {
+			w.abort();
+			throw e;
+		}
+		install(run, 0);
+		memtable = new TreeSet<Entry>(ENTRY_ORDER);
+		saveManifest();
+		if (backgroundCompaction && !compactionScheduled && level(0).size() >= L0_RUNS) {
+			compactionScheduled = true;
+			compactor.execute(new Runnable() {
+				public void run() {
+					try {
+						compact();
+					} catch (Exception e) {
+						// the runs are kept, and the next run written starts another compaction
+						e.printStackTrace();
+					} finally {
+						synchronized (LsmFile.this) {
+							compactionScheduled = false;
+						}
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * Writes the memtable out as a run, so that its tuples are on disk.
+	 */
+	public synchronized void flush() throws DbException, IOException {
+		load();
+		writeMemtable();
+	}
+
+	/**
+	 * Writes the memtable out and closes the files of the runs. They are reopened if the LsmFile is used again.
+	 */
+	public synchronized void close() throws IOException {
+		if (levels == null)
+			return;
+		writeMemtable();
+		saveManifest();
+		for (LsmRun run : runsByPage.values())
+			run.close();
+	}
+
+	/**
+	 * Compacts levels until none is over its size.
+	 */
+	public void compact() throws DbException, IOException {
+		while (compactOnce())
+			;
+	}
+
+	/**
+	 * The runs that a compaction merges, and the level that it writes its runs to.
+	 */
+	private static class Compaction {
+		final ArrayList<LsmRun> inputs;
+		final int level;
+
+		/**
+		 * Whether no level below the output level holds a run, so that tombstones that match no entry of the inputs
+		 * can be dropped.
+		 */
+		boolean bottom;
+
+		Compaction(ArrayList<LsmRun> inputs, int level) {
+			this.inputs = inputs;
+			this.level = level;
+		}
+	}
+
+	/**
+	 * Chooses the next compaction and marks its inputs, or returns null if no level is over its size.
+	 */
+	private synchronized Compaction pickCompaction() throws DbException {
+		load();
+		Compaction c = null;
+		ArrayList<LsmRun> l0 = level(0);
+		if (l0.size() >= L0_RUNS) {
+			ArrayList<LsmRun> inputs = new ArrayList<LsmRun>(l0);
+			Field low = null, high = null;
+			for (LsmRun run : l0) {
+				if (low == null || BTreePage.compare(run.minKey(), low) < 0)
+					low = run.minKey();
+				if (high == null || BTreePage.compare(run.maxKey, high) > 0)
+					high = run.maxKey;
+			}
+			c = new Compaction(inputs, 1);
+			addOverlapping(inputs, level(1), low, high);
+		} else {
+			for (int i = 1; i < levels.size() && c == null; i++) {
+				ArrayList<LsmRun> runs = levels.get(i);
+				long size = LEVEL1_PAGES;
+				for (int j = 1; j < i; j++)
+					size *= LEVEL_RATIO;
+				if (pages(runs) <= size)
+					continue;
+				while (compactedKeys.size() <= i)
+					compactedKeys.add(null);
+				// the first run after the one compacted last, wrapping around
+				LsmRun next = runs.get(0);
+				for (LsmRun run : runs)
+					if (compactedKeys.get(i) != null && BTreePage.compare(run.minKey(), compactedKeys.get(i)) > 0) {
+						next = run;
+						break;
+					}
+				compactedKeys.set(i, next.maxKey);
+				ArrayList<LsmRun> inputs = new ArrayList<LsmRun>();
+				inputs.add(next);
+				c = new Compaction(inputs, i + 1);
+				addOverlapping(inputs, level(i + 1), next.minKey(), next.maxKey);
+			}
+		}
+		if (c == null)
+			return null;
+		for (LsmRun run : c.inputs)
+			if (run.compacting)
+				return null;
+		for (LsmRun run : c.inputs)
+			run.compacting = true;
+		c.bottom = true;
+		for (int i = c.level + 1; i < levels.size(); i++)
+			c.bottom &= levels.get(i).isEmpty();
+		return c;
+	}
+
+	private static void addOverlapping(ArrayList<LsmRun> inputs, ArrayList<LsmRun> runs, Field low, Field high) {
+		for (LsmRun run : runs)
+			if (run.overlaps(low, high))
+				inputs.add(run);
+	}
+
+	/**
+	 * Runs the next compaction, if a level is over its size: the entries of its inputs are merged into new runs of
+	 * {@link #RUN_PAGES} pages, split between keys, which replace the inputs.
+	 *
+	 * @return whether a compaction was run.
+	 */
+	private boolean compactOnce() throws DbException, IOException {
+		Compaction c = pickCompaction();
+		if (c == null)
+			return false;
+		ArrayList<LsmRun> outputs = new ArrayList<LsmRun>();
+		LsmRun.Writer w = null;
+		boolean done = false;
+		try {
+			Merge merge = new Merge(!c.bottom);
+			for (LsmRun run : c.inputs)
+				merge.add(new RunCursor(run, null, null, false, null, false));
+			for (Entry e = merge.next(); e != null; e = merge.next()) {
+				if (w != null && w.numPages() >= RUN_PAGES && !e.key.equals(w.lastKey())) {
+					outputs.add(w.finish());
+					w = null;
+				}
+				if (w == null)
+					w = new LsmRun.Writer(runFile(newRun()), td, keyField);
+				w.add(e);
+			}
+			if (w != null)
+				outputs.add(w.finish());
+			w = null;
+			done = true;
+		} catch (TransactionAbortedException e) {
+			throw new DbException("a compaction does not read through the BufferPool");
+		} finally {
+			if (!done) {
+				if (w != null)
+					w.abort();
+				for (LsmRun run : outputs)
+					run.file.delete();
+				synchronized (this) {
+					for (LsmRun run : c.inputs)
+						run.compacting = false;
+				}
+			}
+		}
+		deleteRuns(replace(c, outputs));
+		return true;
+	}
+
+	private synchronized int newRun() {
+		return nextRun++;
+	}
+
+	/**
+	 * Replaces the inputs of the specified compaction with its outputs, and saves the manifest.
+	 *
+	 * @return the inputs that no scan is reading, which can be deleted.
+	 */
+	private synchronized ArrayList<LsmRun> replace(Compaction c, ArrayList<LsmRun> outputs) throws IOException {
+		ArrayList<LsmRun> unread = new ArrayList<LsmRun>();
+		for (LsmRun run : c.inputs) {
+			levels.get(run.level).remove(run);
+			run.compacting = false;
+			run.obsolete = true;
+			if (run.readers == 0)
+				unread.add(run);
+		}
+		for (LsmRun run : outputs)
+			install(run, c.level);
+		saveManifest();
+		return unread;
+	}
+
+	/**
+	 * Deletes the files of the specified runs, which have been replaced and are not read by any scan, and drops their
+	 * pages from the BufferPool.
+	 */
+	private void deleteRuns(ArrayList<LsmRun> runs) {
+		BufferPool pool = Database.getBufferPool();
+		for (LsmRun run : runs) {
+			runsByPage.remove(run.firstPage);
+			for (int i = 0; i < run.numPages; i++)
+				pool.discardPage(new HeapPageId(getId(), run.firstPage + i));
+			try {
+				run.close();
+			} catch (IOException e) {
+				// the file is deleted anyway
+			}
+			run.file.delete();
+		}
+	}
+
+	private static boolean aboveLow(Field key, Field low, boolean lowInclusive) {
+		if (low == null)
+			return true;
+		int cmp = BTreePage.compare(key, low);
+		return cmp > 0 || (cmp == 0 && lowInclusive);
+	}
+
+	private static boolean belowHigh(Field key, Field high, boolean highInclusive) {
+		if (high == null)
+			return true;
+		int cmp = BTreePage.compare(key, high);
+		return cmp < 0 || (cmp == 0 && highInclusive);
+	}
+
+	/**
+	 * A sorted source of entries: the memtable or a run. {@code head} is the next entry, or null if there is none.
+	 */
+	private abstract static class Cursor {
+		Entry head;
+
+		/**
+		 * Moves {@code head} to the next entry.
+		 */
+		abstract void advance() throws DbException, TransactionAbortedException;
+	}
+
+	/**
+	 * A cursor over a list of entries of the memtable.
+	 */
+	private static class MemCursor extends Cursor {
+		final Iterator<Entry> it;
+
+		MemCursor(List<Entry> entries) {
+			this.it = entries.iterator();
+		}
+
+		void advance() {
+			head = it.hasNext() ? it.next() : null;
+		}
+	}
+
+	/**
+	 * A cursor over the entries of a run in a range of keys, from the first page that can hold the lowest key.
+	 */
+	private class RunCursor extends Cursor {
+		final LsmRun run;
+
+		/**
+		 * The transaction that reads the pages through the BufferPool, or null if they are read from disk, for a
+		 * compaction.
+		 */
+		final TransactionId tid;
+
+		final Field low, high;
+		final boolean lowInclusive, highInclusive;
+
+		int pageIndex, entryIndex;
+		LsmPage page;
+
+		RunCursor(LsmRun run, TransactionId tid, Field low, boolean lowInclusive, Field high, boolean highInclusive) {
+			this.run = run;
+			this.tid = tid;
+			this.low = low;
+			this.lowInclusive = lowInclusive;
+			this.high = high;
+			this.highInclusive = highInclusive;
+			this.pageIndex = low == null ? 0 : run.firstPage(low);
+		}
+
+		void advance() throws DbException, TransactionAbortedException {
+			while (true) {
+				if (page == null) {
+					if (pageIndex >= run.numPages) {
+						head = null;
+						return;
+					}
+					page = readPage(pageIndex);
+					entryIndex = 0;
+				}
+				if (entryIndex >= page.getCount()) {
+					page = null;
+					pageIndex++;
+					continue;
+				}
+				Field key = page.getField(entryIndex, keyField);
+				if (!belowHigh(key, high, highInclusive)) {
+					page = null;
+					pageIndex = run.numPages;
+					head = null;
+					return;
+				}
+				int i = entryIndex++;
+				if (aboveLow(key, low, lowInclusive)) {
+					head = new Entry(key, page.getSeq(i), page.isTombstone(i) ? null : page.getTuple(i));
+					return;
+				}
+			}
+		}
+
+		private LsmPage readPage(int index) throws DbException, TransactionAbortedException {
+			HeapPageId pid = new HeapPageId(getId(), run.firstPage + index);
+			if (tid != null)
+				return (LsmPage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_ONLY);
+			try {
+				return run.readPage(pid, index);
+			} catch (IOException e) {
+				DbException dbe = new DbException("failed to read " + run.file.getName());
+				dbe.initCause(e);
+				throw dbe;
+			}
+		}
+	}
+
+	/**
+	 * Merges cursors into a single sequence of entries in (key, sequence number) order, in which a tuple and its
+	 * tombstone cancel each other.
+	 */
+	private static class Merge {
+		final PriorityQueue<Cursor> queue = new PriorityQueue<Cursor>(8, new Comparator<Cursor>() {
+			public int compare(Cursor a, Cursor b) {
+				return ENTRY_ORDER.compare(a.head, b.head);
+			}
+		});
+
+		/**
+		 * Whether tombstones that cancel no entry of the cursors are returned.
+		 */
+		final boolean keepTombstones;
+
+		Merge(boolean keepTombstones) {
+			this.keepTombstones = keepTombstones;
+		}
+
+		/**
+		 * Adds a cursor that has not been advanced.
+		 */
+		void add(Cursor c) throws DbException, TransactionAbortedException {
+			c.advance();
+			if (c.head != null)
+				queue.add(c);
+		}
+
+		/**
+		 * Returns the next entry, or null if there is none.
+		 */
+		Entry next() throws DbException, TransactionAbortedException {
+			while (!queue.isEmpty()) {
+				Cursor c = queue.poll();
+				Entry e = c.head;
+				add(c);
+				boolean cancelled = false;
+				while (!queue.isEmpty() && ENTRY_ORDER.compare(queue.peek().head, e) == 0) {
+					// entries with the same key and sequence number are a tuple and its tombstone
+					Cursor d = queue.poll();
+					cancelled = true;
+					add(d);
+				}
+				if (!cancelled && (e.tuple != null || keepTombstones))
+					return e;
+			}
+			return null;
+		}
+	}
+
+	// see DbFile.java for javadocs
+	public DbFileIterator iterator(TransactionId tid) {
+		return new LsmFileIterator(tid, null, false, null, false);
+	}
+
+	// see SortedFile.java for javadocs
+	public DbFileIterator rangeIterator(TransactionId tid, Field low, boolean lowInclusive, Field high,
+			boolean highInclusive) {
+		return new LsmFileIterator(tid, low, lowInclusive, high, highInclusive);
+	}
+
+	/**
+	 * Iterates over the tuples of a range of keys in key order, by merging the entries of the memtable in the range,
+	 * which are copied when the iterator is opened, with those of the runs that overlap the range. The runs are kept
+	 * until the iterator is closed, even if a compaction replaces them.
+	 */
+	class LsmFileIterator extends AbstractDbFileIterator {
+
+		final TransactionId tid;
+
+		/**
+		 * The range of keys to return; a null bound is open.
+		 */
+		final Field low, high;
+		final boolean lowInclusive, highInclusive;
+
+		/**
+		 * The runs that are read, or null if this iterator is not open.
+		 */
+		ArrayList<LsmRun> runs;
+
+		Merge merge;
+
+		LsmFileIterator(TransactionId tid, Field low, boolean lowInclusive, Field high, boolean highInclusive) {
+			this.tid = tid;
+			this.low = low;
+			this.lowInclusive = lowInclusive;
+			this.high = high;
+			this.highInclusive = highInclusive;
+		}
+
+		public void open() throws DbException, TransactionAbortedException {
+			boolean point = low != null && lowInclusive && highInclusive && low.equals(high);
+			ArrayList<Entry> entries = new ArrayList<Entry>();
+			runs = new ArrayList<LsmRun>();
+			synchronized (LsmFile.this) {
+				load();
+				for (Entry e : low == null ? memtable : memtable.tailSet(new Entry(low, -1, null))) {
+					if (!belowHigh(e.key, high, highInclusive))
+						break;
+					if (aboveLow(e.key, low, lowInclusive))
+						entries.add(e);
+				}
+				for (ArrayList<LsmRun> level : levels)
+					for (LsmRun run : level)
+						if (point ? run.mightContain(low) : run.overlaps(low, high)) {
+							run.readers++;
+							runs.add(run);
+						}
+			}
+			merge = new Merge(false);
+			try {
+				merge.add(new MemCursor(entries));
+				for (LsmRun run : runs)
+					merge.add(new RunCursor(run, tid, low, lowInclusive, high, highInclusive));
+			} catch (DbException e) {
+				close();
+				throw e;
+			} catch (TransactionAbortedException e) {
+				close();
+				throw e;
+			} catch (RuntimeException e) {
+				close();
+				throw e;
+			}
+		}
+
+		protected Tuple readNext() throws DbException, TransactionAbortedException {
+			if (merge == null)
+				return null;
+			Entry e = merge.next();
+			if (e == null)
+				return null;
+			if (e.tuple.getRecordId() == null)
+				e.tuple.setRecordId(recordId(e.seq));
+			return e.tuple;
+		}
+
+		public void rewind() throws DbException, TransactionAbortedException {
+			close();
+			open();
+		}
+
+		public void close() {
+			super.close();
+			merge = null;
+			if (runs == null)
+				return;
+			ArrayList<LsmRun> unread = new ArrayList<LsmRun>();
+			synchronized (LsmFile.this) {
+				for (LsmRun run : runs)
+					if (--run.readers == 0 && run.obsolete)
+						unread.add(run);
+			}
+			runs = null;
+			deleteRuns(unread);
+		}
+	}
+}
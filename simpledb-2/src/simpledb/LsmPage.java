@@ -0,0 +1,193 @@
+package simpledb;
+
+import java.nio.ByteBuffer;
+import java.text.ParseException;
+import java.util.*;
+
+/**
+ * An {@code LsmPage} is a page of a sorted run of an {@code LsmFile}. Runs are written once and never modified, so
+ * these pages are never dirty.
+ * <p>
+ * A page starts with the number of its entries, as a 4-byte integer, followed by the entries in (key, sequence
+ * number) order. Each entry holds the sequence number of the tuple shifted left by one, with the low bit set if the
+ * entry is a tombstone, followed by the fields of the tuple in {@link Type#getLen} bytes each; the fields of a
+ * tombstone other than its key are zero.
+ *
+ * @see LsmFile
+ * @see LsmRun
+ */
+public class LsmPage implements Page {
+
+	/**
+	 * The ID of this {@code LsmPage}.
+	 */
+	final HeapPageId pid;
+
+	/**
+	 * The schema of the tuples of this {@code LsmPage}.
+	 */
+	final TupleDesc td;
+
+	/**
+	 * The offset of each field within an entry.
+	 */
+	final int[] offsets;
+
+	/**
+	 * The number of bytes of each entry.
+	 */
+	final int entryLength;
+
+	/**
+	 * The content of this {@code LsmPage}.
+	 */
+	final byte[] data;
+
+	/**
+	 * A buffer that wraps {@code data}.
+	 */
+	final ByteBuffer buffer;
+
+	/**
+	 * Creates an {@code LsmPage} from a byte array storing data read from disk.
+	 *
+	 * @param id
+	 *            the ID of the page.
+	 * @param data
+	 *            a byte array of {@link BufferPool#PAGE_SIZE} bytes.
+	 */
+	public LsmPage(HeapPageId id, byte[] data) {
+		this(id, Database.getCatalog().getTupleDesc(id.getTableId()), data);
+	}
+
+	LsmPage(HeapPageId id, TupleDesc td, byte[] data) {
+		this.pid = id;
+		this.td = td;
+		this.offsets = offsets(td);
+		this.entryLength = offsets[td.numFields()];
+		this.data = data;
+		this.buffer = ByteBuffer.wrap(data);
+	}
+
+	/**
+	 * Returns the offset of each field of the specified schema within an entry, followed by the length of an entry.
+	 */
+	static int[] offsets(TupleDesc td) {
+		int[] offsets = new int[td.numFields() + 1];
+		offsets[0] = 4;
+		for (int i = 0; i < td.numFields(); i++)
+			offsets[i + 1] = offsets[i] + td.getType(i).getLen();
+		return offsets;
+	}
+
+	/**
+	 * Returns the number of entries of the specified schema that fit on a page.
+	 */
+	static int capacity(TupleDesc td) {
+		return (BufferPool.PAGE_SIZE - 4) / offsets(td)[td.numFields()];
+	}
+
+	/**
+	 * Writes the specified entries to a new page.
+	 */
+	static byte[] write(TupleDesc td, List<LsmFile.Entry> entries, int keyField) {
+		int[] offsets = offsets(td);
+		int entryLength = offsets[td.numFields()];
+		ByteBuffer b = ByteBuffer.allocate(BufferPool.PAGE_SIZE);
+		b.putInt(0, entries.size());
+		for (int i = 0; i < entries.size(); i++) {
+			LsmFile.Entry e = entries.get(i);
+			int location = 4 + i * entryLength;
+			b.putInt(location, (e.seq << 1) | (e.tuple == null ? 1 : 0));
+			if (e.tuple == null)
+				PaxPage.writeField(b, location + offsets[keyField], e.key);
+			else
+				for (int j = 0; j < td.numFields(); j++)
+					PaxPage.writeField(b, location + offsets[j], e.tuple.getField(j));
+		}
+		return b.array();
+	}
+
+	/**
+	 * @return the ID of this {@code LsmPage}.
+	 */
+	public HeapPageId getId() {
+		return pid;
+	}
+
+	/**
+	 * Returns the number of entries of this page.
+	 */
+	public int getCount() {
+		return buffer.getInt(0);
+	}
+
+	/**
+	 * Returns the sequence number of the entry at the specified index.
+	 */
+	public int getSeq(int i) {
+		return buffer.getInt(4 + i * entryLength) >>> 1;
+	}
+
+	/**
+	 * Returns whether the entry at the specified index is a tombstone, which deletes the tuple with the same key and
+	 * sequence number.
+	 */
+	public boolean isTombstone(int i) {
+		return (buffer.getInt(4 + i * entryLength) & 1) != 0;
+	}
+
+	/**
+	 * Returns the specified field of the entry at the specified index.
+	 */
+	public Field getField(int i, int field) {
+		try {
+			return td.getType(field).parse(buffer, 4 + i * entryLength + offsets[field]);
+		} catch (ParseException e) {
+			e.printStackTrace();
+			throw new NoSuchElementException("parsing error!");
+		}
+	}
+
+	/**
+	 * Returns the tuple of the entry at the specified index, which must not be a tombstone, without a
+	 * {@code RecordId}.
+	 */
+	public Tuple getTuple(int i) {
+		Tuple t = new Tuple(td);
+		for (int j = 0; j < td.numFields(); j++)
+			t.setField(j, getField(i, j));
+		return t;
+	}
+
+	/**
+	 * Runs are never modified, so {@code LsmPage}s are always clean.
+	 */
+	public TransactionId isDirty() {
+		return null;
+	}
+
+	/**
+	 * Does nothing: runs are never modified.
+	 */
+	public void markDirty(boolean dirty, TransactionId tid) {
+	}
+
+	// see Page.java for javadocs
+	public byte[] getPageData() {
+		return data.clone();
+	}
+
+	/**
+	 * Returns this page, which is never modified.
+	 */
+	public Page getBeforeImage() {
+		return this;
+	}
+
+	/**
+	 * Does nothing: runs are never modified.
+	 */
+	public void setBeforeImage() {
+	}
+}
@@ -0,0 +1,317 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.ParseException;
+import java.util.*;
+
+/**
+ * LsmRun is an immutable sorted run of an {@code LsmFile}: a file of {@link LsmPage}s holding entries in (key,
+ * sequence number) order, followed by a footer. The footer holds the number of entries, the smallest key of each page
+ * (its <em>fence</em>), the largest key of the run, and a {@link BloomFilter} of its keys; the last 4 bytes of the file
+ * are the number of pages, which locates the footer. The footer is kept in memory while the run is in use, so finding
+ * the first page of a range of keys, and ruling out a run that cannot hold a key, need no I/O.
+ * <p>
+ * The pages of a run are numbered from {@link #firstPage} in the page numbers of its LsmFile, which reads them through
+ * the BufferPool.
+ *
+ * @see LsmFile
+ */
+public class LsmRun {
+
+	/**
+	 * The file of this run.
+	 */
+	final File file;
+
+	/**
+	 * The schema of the tuples of this run.
+	 */
+	final TupleDesc td;
+
+	/**
+	 * The level of the LsmFile that this run belongs to.
+	 */
+	int level;
+
+	/**
+	 * The page number of the first page of this run in its LsmFile.
+	 */
+	int firstPage;
+
+	/**
+	 * The number of pages and of entries of this run.
+	 */
+	final int numPages, numEntries;
+
+	/**
+	 * The smallest key of each page.
+	 */
+	final Field[] fences;
+
+	/**
+	 * The largest key of this run.
+	 */
+	final Field maxKey;
+
+	/**
+	 * A filter of the keys of this run.
+	 */
+	final BloomFilter bloom;
+
+	/**
+	 * The number of scans that are reading this run.
+	 */
+	int readers;
+
+	/**
+	 * Whether this run has been replaced by a compaction, so that it is deleted when no scan is reading it.
+	 */
+	boolean obsolete;
+
+	/**
+	 * Whether this run is the input of a compaction that is running.
+	 */
+	boolean compacting;
+
+	/**
+	 * The channel that the pages are read from, or null if it is closed.
+	 */
+	private FileChannel channel;
+
+	private LsmRun(File file, TupleDesc td, int numPages, int numEntries, Field[] fences, Field maxKey,
+			BloomFilter bloom) {
+		this.file = file;
+		this.td = td;
+		this.numPages = numPages;
+		this.numEntries = numEntries;
+		this.fences = fences;
+		this.maxKey = maxKey;
+		this.bloom = bloom;
+	}
+
+	/**
+	 * Opens the run stored in the specified file, by reading its footer.
+	 *
+	 * @param f
+	 *            a file written by a {@link Writer}.
+	 * @param td
+	 *            the schema of the tuples of the run.
+	 * @param keyField
+	 *            the index of the field that the run is sorted on.
+	 */
+	public static LsmRun open(File f, TupleDesc td, int keyField) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(f, "r");
+		try {
+			raf.seek(raf.length() - 4);
+			int numPages = raf.readInt();
+			raf.seek((long) numPages * BufferPool.PAGE_SIZE);
+			byte[] footer = new byte[(int) (raf.length() - raf.getFilePointer())];
+			raf.readFully(footer);
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(footer));
+			Type keyType = td.getType(keyField);
+			int numEntries = in.readInt();
+			Field[] fences = new Field[numPages];
+			for (int i = 0; i < numPages; i++)
+				fences[i] = keyType.parse(in);
+			Field maxKey = keyType.parse(in);
+			return new LsmRun(f, td, numPages, numEntries, fences, maxKey, BloomFilter.read(in));
+		} catch (ParseException e) {
+			throw new IOException("the footer of " + f.getName() + " is corrupt");
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Returns the smallest key of this run.
+	 */
+	public Field minKey() {
+		return fences[0];
+	}
+
+	/**
+	 * Returns whether this run may hold keys in the specified range.
+	 *
+	 * @param low
+	 *            the lowest key, or null for no lower bound.
+	 * @param high
+	 *            the highest key, or null for no upper bound.
+	 */
+	public boolean overlaps(Field low, Field high) {
+		return (low == null || BTreePage.compare(maxKey, low) >= 0)
+				&& (high == null || BTreePage.compare(minKey(), high) <= 0);
+	}
+
+	/**
+	 * Returns false if this run holds no entry with the specified key; true if it may.
+	 */
+	public boolean mightContain(Field key) {
+		return overlaps(key, key) && bloom.mightContain(key);
+	}
+
+	/**
+	 * Returns the index of the first page of this run that can hold a key that is not smaller than the specified key:
+	 * the last page whose fence is smaller than the key, as an entry with a key equal to the fence of a page may also
+	 * be on the page before it.
+	 */
+	public int firstPage(Field key) {
+		int lo = 0, hi = numPages - 1;
+		while (lo < hi) {
+			int mid = (lo + hi + 1) >>> 1;
+			if (BTreePage.compare(fences[mid], key) < 0)
+				lo = mid;
+			else
+				hi = mid - 1;
+		}
+		return lo;
+	}
+
+	/**
+	 * Reads the page at the specified index of this run from disk.
+	 *
+	 * @param pid
+	 *            the ID to give the page.
+	 */
+	public LsmPage readPage(HeapPageId pid, int index) throws IOException {
+		byte[] data = new byte[BufferPool.PAGE_SIZE];
+		ByteBuffer buf = ByteBuffer.wrap(data);
+		FileChannel ch = channel();
+		long position = (long) index * BufferPool.PAGE_SIZE;
+		while (buf.hasRemaining()) {
+			int n = ch.read(buf, position + buf.position());
+			if (n < 0)
+				throw new EOFException("page " + index + " of " + file.getName() + " is truncated");
+		}
+		return new LsmPage(pid, td, data);
+	}
+
+	private synchronized FileChannel channel() throws IOException {
+		if (channel == null || !channel.isOpen())
+			channel = new RandomAccessFile(file, "r").getChannel();
+		return channel;
+	}
+
+	/**
+	 * Closes the file of this run. It is reopened if the run is read again.
+	 */
+	public synchronized void close() throws IOException {
+		if (channel != null)
+			channel.close();
+		channel = null;
+	}
+
+	/**
+	 * Writes a run, one entry at a time, in (key, sequence number) order.
+	 */
+	public static class Writer {
+
+		private final File file;
+		private final TupleDesc td;
+		private final int keyField;
+		private final int capacity;
+		private final OutputStream out;
+
+		/**
+		 * The entries of the page being filled.
+		 */
+		private final ArrayList<LsmFile.Entry> page = new ArrayList<LsmFile.Entry>();
+
+		private final ArrayList<Field> fences = new ArrayList<Field>();
+
+		/**
+		 * The keys of the entries written so far, which the filter is built from once their number is known.
+		 */
+		private final ArrayList<Field> keys = new ArrayList<Field>();
+
+		private Field lastKey;
+
+		/**
+		 * Creates a writer of a run to the specified file, which is replaced.
+		 */
+		public Writer(File f, TupleDesc td, int keyField) throws IOException {
+			this.file = f;
+			this.td = td;
+			this.keyField = keyField;
+			this.capacity = LsmPage.capacity(td);
+			this.out = new BufferedOutputStream(new FileOutputStream(f));
+		}
+
+		/**
+		 * Appends the specified entry, which must not come before the last one in (key, sequence number) order.
+		 */
+		public void add(LsmFile.Entry e) throws IOException {
+			if (page.size() == capacity)
+				writePage();
+			if (page.isEmpty())
+				fences.add(e.key);
+			page.add(e);
+			if (lastKey == null || !lastKey.equals(e.key))
+				keys.add(e.key);
+			lastKey = e.key;
+		}
+
+		private void writePage() throws IOException {
+			out.write(LsmPage.write(td, page, keyField));
+			page.clear();
+		}
+
+		/**
+		 * Returns the number of pages written or started so far.
+		 */
+		public int numPages() {
+			return fences.size();
+		}
+
+		/**
+		 * Returns the number of entries added so far.
+		 */
+		public int numEntries() {
+			return fences.isEmpty() ? 0 : (fences.size() - 1) * capacity + page.size();
+		}
+
+		/**
+		 * Returns the key of the last entry added, or null if there is none.
+		 */
+		public Field lastKey() {
+			return lastKey;
+		}
+
+		/**
+		 * Writes the last page and the footer, and closes the file.
+		 *
+		 * @return the run that was written, which must have at least one entry.
+		 */
+		public LsmRun finish() throws IOException {
+			if (lastKey == null)
+				throw new IllegalStateException("a run must have at least one entry");
+			int numEntries = numEntries();
+			writePage();
+			BloomFilter bloom = new BloomFilter(keys.size());
+			for (Field k : keys)
+				bloom.add(k);
+			DataOutputStream footer = new DataOutputStream(out);
+			footer.writeInt(numEntries);
+			for (Field f : fences)
+				f.serialize(footer);
+			lastKey.serialize(footer);
+			bloom.write(footer);
+			footer.writeInt(fences.size());
+			footer.close();
+			return new LsmRun(file, td, fences.size(), numEntries, fences.toArray(new Field[0]), lastKey, bloom);
+		}
+
+		/**
+		 * Closes and deletes the file, for a run that is abandoned.
+		 */
+		public void abort() {
+			try {
+				out.close();
+			} catch (IOException e) {
+				// the file is deleted anyway
+			}
+			file.delete();
+		}
+	}
+}
@@ -0,0 +1,167 @@
+package simpledb;
+
+import java.io.IOException;
+
+/**
+ * LzCodec compresses pages in the LZ4 block format: a sequence of literal runs, each followed by a copy of earlier
+ * bytes given by an offset of at most 65535 and a length. It finds matches with a single-probe hash table of 4-byte
+ * sequences, so it compresses less than DeflateCodec, but it decodes with little more than array copies, which keeps
+ * the cost of reading a compressed page close to that of reading a plain one.
+ * <p>
+ * Each sequence starts with a token whose high 4 bits are the number of literals and whose low 4 bits are the match
+ * length minus 4; a nibble of 15 is followed by bytes that are added to it, up to the first byte that is not 255. The
+ * literals and a 2-byte little-endian offset come next. The last sequence has literals only, and, as the format
+ * requires, the last 5 bytes are literals and no match starts in the last 12 bytes.
+ */
+public class LzCodec implements PageCodec {
+
+	/**
+	 * The shared instance.
+	 */
+	public static final LzCodec INSTANCE = new LzCodec();
+
+	private static final int MIN_MATCH = 4;
+
+	private static final int LAST_LITERALS = 5;
+
+	private static final int MATCH_LIMIT = 12;
+
+	private static final int MAX_OFFSET = 65535;
+
+	private static final int HASH_BITS = 12;
+
+	public int id() {
+		return 2;
+	}
+
+	public String name() {
+		return "lz";
+	}
+
+	public int maxCompressedLength(int length) {
+		return length + length / 255 + 16;
+	}
+
+	private static int readInt(byte[] b, int i) {
+		return (b[i] & 0xff) | (b[i + 1] & 0xff) << 8 | (b[i + 2] & 0xff) << 16 | b[i + 3] << 24;
+	}
+
+	private static int hash(int sequence) {
+		return (sequence * -1640531535) >>> (32 - HASH_BITS);
+	}
+
+	/**
+	 * Writes a length that did not fit in its nibble, less the 15 that the nibble holds.
+	 */
+	private static int writeLength(byte[] dst, int op, int n) {
+		while (n >= 255) {
+			dst[op++] = (byte) 255;
+			n -= 255;
+		}
+		dst[op++] = (byte) n;
+		return op;
+	}
+
+	/**
+	 * Writes a sequence of the literals from anchor to end of src, followed by a match unless matchLength is 0.
+	 */
+	private static int writeSequence(byte[] src, int anchor, int end, byte[] dst, int op, int offset,
+			int matchLength) {
+		int literals = end - anchor;
+		int token = op++;
+		int nibbles = Math.min(literals, 15) << 4;
+		if (literals >= 15)
+			op = writeLength(dst, op, literals - 15);
+		System.arraycopy(src, anchor, dst, op, literals);
+		op += literals;
+		if (matchLength > 0) {
+			dst[op++] = (byte) offset;
+			dst[op++] = (byte) (offset >>> 8);
+			int m = matchLength - MIN_MATCH;
+			nibbles |= Math.min(m, 15);
+			if (m >= 15)
+				op = writeLength(dst, op, m - 15);
+		}
+		dst[token] = (byte) nibbles;
+		return op;
+	}
+
+	public int compress(byte[] src, int length, byte[] dst) {
+		// positions plus one, so that 0 means empty
+		int[] table = new int[1 << HASH_BITS];
+		int op = 0;
+		int anchor = 0;
+		int i = 0;
+		int limit = length - MATCH_LIMIT;
+		while (i < limit) {
+			int sequence = readInt(src, i);
+			int h = hash(sequence);
+			int ref = table[h] - 1;
+			table[h] = i + 1;
+			if (ref < 0 || i - ref > MAX_OFFSET || readInt(src, ref) != sequence) {
+				i++;
+				continue;
+			}
+			int matchLength = MIN_MATCH;
+			int max = length - LAST_LITERALS - i;
+			while (matchLength < max && src[ref + matchLength] == src[i + matchLength])
+				matchLength++;
+			op = writeSequence(src, anchor, i, dst, op, i - ref, matchLength);
+			i += matchLength;
+			anchor = i;
+		}
+		return writeSequence(src, anchor, length, dst, op, 0, 0);
+	}
+
+	public void decompress(byte[] src, int offset, int length, byte[] dst, int dstLength) throws IOException {
+		int ip = offset;
+		int end = offset + length;
+		int op = 0;
+		try {
+			while (true) {
+				if (ip >= end)
+					throw new IOException("corrupt lz page: no last literals");
+				int token = src[ip++] & 0xff;
+				int literals = token >>> 4;
+				if (literals == 15) {
+					int b;
+					do {
+						b = src[ip++] & 0xff;
+						literals += b;
+					} while (b == 255);
+				}
+				if (ip + literals > end || op + literals > dstLength)
+					throw new IOException("corrupt lz page: literals past the end");
+				System.arraycopy(src, ip, dst, op, literals);
+				ip += literals;
+				op += literals;
+				if (ip == end)
+					break;
+				int distance = (src[ip] & 0xff) | (src[ip + 1] & 0xff) << 8;
+				ip += 2;
+				int matchLength = token & 15;
+				if (matchLength == 15) {
+					int b;
+					do {
+						b = src[ip++] & 0xff;
+						matchLength += b;
+					} while (b == 255);
+				}
+				matchLength += MIN_MATCH;
+				if (distance == 0 || distance > op || op + matchLength > dstLength)
+					throw new IOException("corrupt lz page: bad match at " + op);
+				if (distance >= matchLength)
+					System.arraycopy(dst, op - distance, dst, op, matchLength);
+				else
+					// the copy overlaps the bytes it writes, which repeats them
+					for (int k = 0; k < matchLength; k++)
+						dst[op + k] = dst[op - distance + k];
+				op += matchLength;
+			}
+		} catch (ArrayIndexOutOfBoundsException e) {
+			throw new IOException("corrupt lz page: truncated at " + op);
+		}
+		if (op != dstLength)
+			throw new IOException("lz page decompressed to " + op + " bytes, expected " + dstLength);
+	}
+}
@@ -0,0 +1,166 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+
+/**
+ * MappedHeapFile is a HeapFile whose pages are read from a memory mapping of the file instead of being copied into a
+ * fresh byte array. Each HeapPage returned by readPage is a read-only view of the mapping, so reading a page costs
+ * neither a system call nor a copy, and the OS page cache does the caching. A page is copied into a private byte array
+ * only when it is modified; writes still go through HeapFile.writePage, and the mapping sees them because it shares
+ * the page cache with the file.
+ * <p>
+ * The file is mapped in segments of SEGMENT_PAGES pages. A segment that ends at the end of the file is remapped when
+ * the file grows past it, so pages appended with writePage become readable.
+ * 
+ * @see HeapPage#HeapPage(HeapPageId, ByteBuffer)
+ */
+public class MappedHeapFile extends HeapFile {
+
+	/**
+	 * The number of pages in each mapped segment.
+	 */
+	public static final int SEGMENT_PAGES = 1024;
+
+	/**
+	 * The mapped segments, indexed by segment number; an entry is null if the segment has not been mapped yet. The
+	 * array is replaced, never modified, so readers need not lock it.
+	 */
+	private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+
+	/**
+	 * Constructs a memory-mapped heap file backed by the specified file.
+	 * 
+	 * @param f
+	 *            the file that stores the on-disk backing store for this heap file.
+	 */
+	public MappedHeapFile(File f, TupleDesc td) {
+		super(f, td);
+	}
+
+	/**
+	 * Constructs a memory-mapped heap file backed by the specified file, whose pages use the specified record layout.
+	 * 
+	 * @param f
+	 *            the file that stores the on-disk backing store for this heap file.
+	 * @param variableLength
+	 *            true if the pages store string fields at their actual length.
+	 * @see HeapFile#HeapFile(File, TupleDesc, boolean)
+	 */
+	public MappedHeapFile(File f, TupleDesc td, boolean variableLength) {
+		super(f, td, variableLength);
+	}
+
+	/**
+	 * Constructs a memory-mapped heap file backed by the specified file, whose pages use the specified record layout.
+	 * 
+	 * @param f
+	 *            the file that stores the on-disk backing store for this heap file.
+	 * @param variableLength
+	 *            true if the pages store string fields at their actual length.
+	 * @param dictionaryEncoded
+	 *            true if the pages store string fields as codes of the dictionary of the file.
+	 * @see HeapFile#HeapFile(File, TupleDesc, boolean, boolean)
+	 */
+	public MappedHeapFile(File f, TupleDesc td, boolean variableLength, boolean dictionaryEncoded) {
+		super(f, td, variableLength, dictionaryEncoded);
+	}
+
+	/**
+	 * Constructs a memory-mapped heap file backed by the specified file, whose pages use the specified record layout
+	 * and size.
+	 * 
+	 * @param f
+	 *            the file that stores the on-disk backing store for this heap file.
+	 * @param variableLength
+	 *            true if the pages store string fields at their actual length.
+	 * @param dictionaryEncoded
+	 *            true if the pages store string fields as codes of the dictionary of the file.
+	 * @param pageSize
+	 *            the size of the pages, a power of two from BufferPool.PAGE_SIZE to BufferPool.MAX_PAGE_SIZE.
+	 * @see HeapFile#HeapFile(File, TupleDesc, boolean, boolean, int)
+	 */
+	public MappedHeapFile(File f, TupleDesc td, boolean variableLength, boolean dictionaryEncoded, int pageSize) {
+		super(f, td, variableLength, dictionaryEncoded, pageSize);
+	}
+
+	// see DbFile.java for javadocs
+	public Page readPage(PageId pid) {
+		if (getId() != pid.getTableId())
+			throw new IllegalArgumentException("page " + pid.pageno() + " does not belong to this file");
+		int offset = pid.pageno() % SEGMENT_PAGES;
+		MappedByteBuffer segment;
+		try {
+			segment = segment(pid.pageno() / SEGMENT_PAGES, offset + 1);
+		} catch (IOException e) {
+			throw new RuntimeException("failed to map page " + pid.pageno(), e);
+		}
+		if (segment == null)
+			throw new IllegalArgumentException("page " + pid.pageno() + " does not exist in this file");
+		ByteBuffer view = segment.duplicate();
+		view.position(offset * pageSize);
+		view.limit((offset + 1) * pageSize);
+		return new HeapPage((HeapPageId) pid, view.slice());
+	}
+
+	/**
+	 * Returns the same page as {@link #readPage(PageId)}; a mapped page already lives outside the Java heap, so the
+	 * frame is not used.
+	 */
+	public Page readPage(PageId pid, ByteBuffer frame) {
+		return readPage(pid);
+	}
+
+	/**
+	 * Returns the specified segment, mapping it if it is not mapped or if it is mapped but holds fewer than the
+	 * specified number of pages.
+	 * 
+	 * @return the segment, or null if the file is too short to hold that many pages in the segment
+	 */
+	private MappedByteBuffer segment(int index, int pages) throws IOException {
+		MappedByteBuffer[] s = segments;
+		if (index < s.length && s[index] != null && s[index].capacity() >= pages * pageSize)
+			return s[index];
+		synchronized (this) {
+			s = segments;
+			if (index < s.length && s[index] != null && s[index].capacity() >= pages * pageSize)
+				return s[index];
+			MappedByteBuffer segment;
+			try {
+				segment = map(channel(), index, pages, pageSize);
+			} catch (ClosedChannelException e) {
+				// the channel was closed under us (e.g., by an interrupted reader); reopen it and retry once
+				segment = map(channel(), index, pages, pageSize);
+			}
+			if (segment == null)
+				return null;
+			MappedByteBuffer[] grown = new MappedByteBuffer[Math.max(s.length, index + 1)];
+			System.arraycopy(s, 0, grown, 0, s.length);
+			grown[index] = segment;
+			segments = grown;
+			return segment;
+		}
+	}
+
+	private static MappedByteBuffer map(FileChannel ch, int index, int pages, int pageSize) throws IOException {
+		long start = (long) index * SEGMENT_PAGES * pageSize;
+		long available = (ch.size() - start) / pageSize;
+		if (available < pages)
+			return null;
+		long size = Math.min(available, SEGMENT_PAGES) * pageSize;
+		return ch.map(FileChannel.MapMode.READ_ONLY, start, size);
+	}
+
+	/**
+	 * Drops the mappings and closes the channel of this MappedHeapFile. The mappings themselves are released when
+	 * the pages that view them are garbage collected.
+	 */
+	public synchronized void close() throws IOException {
+		segments = new MappedByteBuffer[0];
+		super.close();
+	}
+
+}
@@ -0,0 +1,53 @@
+package simpledb;
+
+import java.io.IOException;
+
+/**
+ * The interface for the compression codecs that a CompressedHeapFile applies
+ * to each page it writes. Codecs keep no state between calls, so one
+ * instance may be used by many threads.
+ *
+ * @see CompressedHeapFile
+ */
+public interface PageCodec {
+    /**
+     * Returns the number that identifies this codec in the page directory of
+     * a CompressedHeapFile.
+     */
+    public int id();
+
+    /**
+     * Returns the name of this codec, as used in the catalog.
+     */
+    public String name();
+
+    /**
+     * Returns the largest number of bytes that compressing the specified
+     * number of bytes can produce.
+     */
+    public int maxCompressedLength(int length);
+
+    /**
+     * Compresses bytes of src into dst.
+     *
+     * @param src the bytes to compress.
+     * @param length the number of bytes of src to compress.
+     * @param dst a buffer of at least maxCompressedLength(length) bytes.
+     * @return the number of bytes written to dst.
+     */
+    public int compress(byte[] src, int length, byte[] dst);
+
+    /**
+     * Decompresses bytes produced by compress into dst.
+     *
+     * @param src the buffer that holds the compressed bytes.
+     * @param offset the position of the compressed bytes in src.
+     * @param length the number of compressed bytes.
+     * @param dst the buffer to decompress into.
+     * @param dstLength the number of bytes that the compressed bytes must
+     *        decompress to.
+     * @throws IOException if the compressed bytes are corrupt, or do not
+     *         decompress to exactly dstLength bytes.
+     */
+    public void decompress(byte[] src, int offset, int length, byte[] dst, int dstLength) throws IOException;
+}
@@ -42,7 +42,12 @@ public class Parser {
 
             }
         } else if (wx.getOperator().equals("OR")) {
-            throw new simpledb.ParsingException("OR expressions currently unsupported.");
+            // a disjunction of selections on fields of one table with bitmap indexes
+            Vector<String> columns = new Vector<String>();
+            Vector<Predicate.Op> ops = new Vector<Predicate.Op>();
+            Vector<String> compValues = new Vector<String>();
+            processDisjunction(wx, columns, ops, compValues);
+            lp.addDisjunction(columns, ops, compValues);
         } else {
             // this is a binary expression comparing two constants
             @SuppressWarnings("unchecked")
@@ -109,6 +114,40 @@ public class Parser {
 
     }
 
+    /** Collects the selections of a disjunction, flattening nested ORs. */
+    static void processDisjunction(ZExpression wx, Vector<String> columns, Vector<Predicate.Op> ops,
+            Vector<String> compValues) throws simpledb.ParsingException {
+        for (int i = 0; i < wx.nbOperands(); i++) {
+            if (!(wx.getOperand(i) instanceof ZExpression)) {
+                throw new simpledb.ParsingException("Only disjunctions of selections are currently supported.");
+            }
+            ZExpression newWx = (ZExpression)wx.getOperand(i);
+            if (newWx.getOperator().equals("OR")) {
+                processDisjunction(newWx, columns, ops, compValues);
+                continue;
+            }
+            @SuppressWarnings("unchecked")
+            Vector<ZExp> sops = newWx.getOperands();
+            if (newWx.getOperator().equals("AND") || sops.size() != 2 || !(sops.elementAt(0) instanceof ZConstant)
+                    || !(sops.elementAt(1) instanceof ZConstant)) {
+                throw new simpledb.ParsingException("Only disjunctions of selections are currently supported.");
+            }
+            ZConstant op1 = (ZConstant)sops.elementAt(0);
+            ZConstant op2 = (ZConstant)sops.elementAt(1);
+            if ((op1.getType() == ZConstant.COLUMNNAME) == (op2.getType() == ZConstant.COLUMNNAME)) {
+                throw new simpledb.ParsingException("Only disjunctions of selections are currently supported.");
+            }
+            if (op1.getType() == ZConstant.COLUMNNAME) {
+                columns.add(op1.getValue());
+                compValues.add(op2.getValue());
+            } else {
+                columns.add(op2.getValue());
+                compValues.add(op1.getValue());
+            }
+            ops.add(getOp(newWx.getOperator()));
+        }
+    }
+
     public static LogicalPlan parseQueryLogicalPlan(TransactionId tid, ZQuery q) throws IOException, Zql.ParseException, simpledb.ParsingException { 
         @SuppressWarnings("unchecked")
         Vector<ZFromItem> from = q.getFrom();
@@ -350,6 +389,35 @@ public class Parser {
 
     }
 
+    /** Matches the COPY statement, which ZQL does not know: COPY table FROM 'file' */
+    static final java.util.regex.Pattern COPY_STATEMENT = java.util.regex.Pattern.compile(
+            "(?is)\\s*copy\\s+(\\S+)\\s+from\\s+'([^']*)'\\s*;?\\s*");
+
+    /** Appends the rows of a text file of comma-separated fields, in the
+        format read by HeapFileEncoder, to the end of a table with
+        HeapFile.appendTuples(), which writes full pages and logs one record
+        per batch of pages instead of inserting the rows one at a time
+        through the BufferPool.
+        @param table The name of the table
+        @param data The text file
+    */
+    public static void handleCopyStatement(String table, File data) throws TransactionAbortedException, DbException, IOException, simpledb.ParsingException {
+        int id;
+        try {
+            id = Database.getCatalog().getTableId(table); //will fall through if table doesn't exist
+        } catch (NoSuchElementException e) {
+            throw new simpledb.ParsingException ("Unknown table : " + table);
+        }
+        DbFile file = Database.getCatalog().getDbFile(id);
+        if (!(file instanceof HeapFile))
+            throw new simpledb.ParsingException("COPY only appends to heap and clustered tables, not to " + table);
+        if (!data.isFile())
+            throw new simpledb.ParsingException("Cannot read file : " + data);
+
+        int cnt = ((HeapFile) file).appendTuples(curtrans.getId(), new CopyFileIterator(data, file.getTupleDesc()));
+        System.out.println("Copied " + cnt + " rows.");
+    }
+
     public static void handleTransactStatement(ZTransactStmt s) throws TransactionAbortedException, DbException, IOException, simpledb.ParsingException, Zql.ParseException {
         if (s.getStmtType().equals("COMMIT")) {
             curtrans.transactionComplete(false);
@@ -404,6 +472,20 @@ public class Parser {
     
     public static void processNextStatement(InputStream is) {
         try {
+            // look at the start of the statement for a COPY statement
+            is = new BufferedInputStream(is);
+            byte[] head = new byte[4096];
+            is.mark(head.length);
+            int n = 0, r;
+            while (n < head.length && (r = is.read(head, n, head.length - n)) > 0)
+                n += r;
+            java.util.regex.Matcher copy = COPY_STATEMENT.matcher(new String(head, 0, n, "UTF-8"));
+            if (n < head.length && copy.matches()) {
+                handleCopyStatement(copy.group(1), new File(copy.group(2)));
+                return;
+            }
+            is.reset();
+
             ZqlParser p = new ZqlParser(is);
             ZStatement s = p.readStatement();
 
@@ -449,7 +531,8 @@ public class Parser {
         "insert",
         "delete",
         "values",
-        "into"
+        "into",
+        "copy"
     };
 
     public static void main(String argv[]) throws IOException {
@@ -596,3 +679,100 @@ class TupleArrayIterator implements DbIterator {
     }
 
 }
+
+/** Reads the rows of a text file of comma-separated fields, one row per
+    line, as HeapFileEncoder does: blank lines are skipped, fields are
+    trimmed, and strings longer than Type.STRING_LEN are truncated. */
+class CopyFileIterator implements DbIterator {
+    File file;
+    TupleDesc td;
+    BufferedReader in = null;
+    Tuple next = null;
+    int lineNo;
+
+    public CopyFileIterator(File file, TupleDesc td) {
+        this.file = file;
+        this.td = td;
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        try {
+            in = new BufferedReader(new FileReader(file), 1 << 16);
+        } catch (FileNotFoundException e) {
+            throw new DbException("Cannot read file : " + file);
+        }
+        lineNo = 0;
+        next = null;
+    }
+
+    public boolean hasNext() throws DbException, TransactionAbortedException {
+        if (in == null)
+            throw new IllegalStateException("iterator is not open");
+        if (next == null)
+            next = readNext();
+        return next != null;
+    }
+
+    public Tuple next() throws DbException, TransactionAbortedException, NoSuchElementException {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        Tuple t = next;
+        next = null;
+        return t;
+    }
+
+    /** Parses the next row, or returns null at the end of the file. */
+    Tuple readNext() throws DbException {
+        String line;
+        try {
+            do {
+                line = in.readLine();
+                lineNo++;
+            } while (line != null && line.trim().length() == 0);
+        } catch (IOException e) {
+            throw new DbException("Cannot read file : " + file + ": " + e.getMessage());
+        }
+        if (line == null)
+            return null;
+
+        String[] values = line.split(",", -1);
+        if (values.length != td.numFields())
+            throw new DbException("Line " + lineNo + " of " + file + " has " + values.length + " fields, expected " + td.numFields());
+        Tuple t = new Tuple(td);
+        for (int i = 0; i < values.length; i++) {
+            String s = values[i].trim();
+            if (td.getType(i) == Type.INT_TYPE) {
+                try {
+                    t.setField(i, new IntField(Integer.parseInt(s)));
+                } catch (NumberFormatException e) {
+                    throw new DbException("Line " + lineNo + " of " + file + ": " + s + " is not an integer");
+                }
+            } else {
+                if (s.length() > Type.STRING_LEN)
+                    s = s.substring(0, Type.STRING_LEN);
+                t.setField(i, new StringField(s, Type.STRING_LEN));
+            }
+        }
+        return t;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        close();
+        open();
+    }
+
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    public void close() {
+        if (in != null) {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // nothing was written, so nothing is lost
+            }
+            in = null;
+        }
+    }
+}
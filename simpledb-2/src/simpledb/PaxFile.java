@@ -0,0 +1,367 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+/**
+ * PaxFile is a DbFile that stores a collection of tuples in no particular order, like HeapFile, but on PaxPages, which
+ * keep the values of each field together in a minipage instead of storing the tuples one after the other. It is added
+ * to the Catalog and scanned by SeqScan like a HeapFile. A scan that is told which fields its consumer needs, as
+ * Project and Aggregate do through {@link SeqScan#needFields}, decodes only those fields, and reads only their
+ * minipages; Filter evaluates its predicate on a TupleView that reads the minipage of the filtered field only.
+ * <p>
+ * Every value takes {@link Type#getLen} bytes, so strings are always padded to Type.STRING_LEN bytes.
+ *
+ * @see PaxPage
+ */
+public class PaxFile implements DbFile {
+
+	/**
+	 * The File associated with this PaxFile.
+	 */
+	private final File file;
+
+	/**
+	 * The TupleDesc associated with this PaxFile.
+	 */
+	private final TupleDesc td;
+
+	/**
+	 * The channel used for all reads and writes of this PaxFile, opened on first use.
+	 */
+	private FileChannel channel;
+
+	/**
+	 * The number of empty slots of each page, loaded on the first insert or delete.
+	 */
+	private FreeSpaceMap freeSlots;
+
+	/**
+	 * Constructs a PaxFile backed by the specified file.
+	 *
+	 * @param f
+	 *            the file that stores the pages, as written by {@link #convert}.
+	 */
+	public PaxFile(File f, TupleDesc td) {
+		this.file = f;
+		this.td = td;
+	}
+
+	/**
+	 * Returns the File backing this PaxFile on disk.
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	// see DbFile.java for javadocs
+	public int getId() {
+		return file.getAbsoluteFile().hashCode();
+	}
+
+	// see DbFile.java for javadocs
+	public TupleDesc getTupleDesc() {
+		return td;
+	}
+
+	/**
+	 * Returns the number of pages in this PaxFile.
+	 */
+	public int numPages() {
+		return (int) (file.length() / BufferPool.PAGE_SIZE);
+	}
+
+	// see DbFile.java for javadocs
+	public Page readPage(PageId pid) {
+		if (getId() != pid.getTableId())
+			throw new IllegalArgumentException("page " + pid.pageno() + " does not belong to this file");
+		byte[] data = new byte[BufferPool.PAGE_SIZE];
+		try {
+			ByteBuffer buf = ByteBuffer.wrap(data);
+			long position = (long) pid.pageno() * BufferPool.PAGE_SIZE;
+			FileChannel ch = channel();
+			while (buf.hasRemaining())
+				if (ch.read(buf, position + buf.position()) < 0)
+					throw new IllegalArgumentException("page " + pid.pageno() + " does not exist in this file");
+		} catch (IOException e) {
+			throw new RuntimeException("failed to read page " + pid.pageno(), e);
+		}
+		return new PaxPage((HeapPageId) pid, data);
+	}
+
+	// see DbFile.java for javadocs
+	public void writePage(Page page) throws IOException {
+		ByteBuffer buf = ByteBuffer.wrap(page.getPageData());
+		long position = (long) page.getId().pageno() * BufferPool.PAGE_SIZE;
+		FileChannel ch = channel();
+		while (buf.hasRemaining())
+			ch.write(buf, position + buf.position());
+	}
+
+	/**
+	 * Returns the channel of this PaxFile, opening it if it is not open.
+	 */
+	private synchronized FileChannel channel() throws IOException {
+		if (channel == null || !channel.isOpen())
+			channel = new RandomAccessFile(file, "rw").getChannel();
+		return channel;
+	}
+
+	/**
+	 * Closes the channel of this PaxFile and saves its free-space map. The channel is reopened if the PaxFile is used
+	 * again.
+	 */
+	public synchronized void close() throws IOException {
+		if (freeSlots != null)
+			freeSlots.save(freeSpaceFile());
+		if (channel != null)
+			channel.close();
+		channel = null;
+	}
+
+	/**
+	 * Returns the file that the free-space map of this PaxFile is saved to when this PaxFile is closed. The map records
+	 * the number of empty slots of each page.
+	 */
+	public File freeSpaceFile() {
+		return new File(file.getPath() + ".fsm");
+	}
+
+	/**
+	 * Returns the free-space map of this PaxFile, loading it from {@link #freeSpaceFile} if it has not been loaded.
+	 */
+	synchronized FreeSpaceMap freeSpaceMap() throws IOException {
+		if (freeSlots == null) {
+			int pages = numPages();
+			FreeSpaceMap map = FreeSpaceMap.load(freeSpaceFile(), pages);
+			for (int i = map.numPages(); i < pages; i++)
+				map.update(i, ((PaxPage) readPage(new HeapPageId(getId(), i))).freeSlots());
+			freeSlots = map;
+		}
+		return freeSlots;
+	}
+
+	// see DbFile.java for javadocs
+	public ArrayList<Page> addTuple(TransactionId tid, Tuple t) throws DbException, IOException,
+			TransactionAbortedException {
+		FreeSpaceMap map = freeSpaceMap();
+		int pageNo;
+		while ((pageNo = map.findPage(1)) >= 0) {
+			PaxPage page = (PaxPage) Database.getBufferPool().getPage(tid, new HeapPageId(getId(), pageNo),
+					Permissions.READ_WRITE);
+			if (page.freeSlots() > 0)
+				return addTuple(map, page, t);
+			map.update(pageNo, 0);
+		}
+		synchronized (this) {
+			pageNo = numPages();
+			writePage(new PaxPage(new HeapPageId(getId(), pageNo), new byte[BufferPool.PAGE_SIZE]));
+			map.update(pageNo, PaxPage.capacity(ZoneMap.typesOf(td)));
+		}
+		PaxPage page = (PaxPage) Database.getBufferPool().getPage(tid, new HeapPageId(getId(), pageNo),
+				Permissions.READ_WRITE);
+		return addTuple(map, page, t);
+	}
+
+	/**
+	 * Adds the specified tuple to the specified page and records the number of slots left on the page.
+	 */
+	private ArrayList<Page> addTuple(FreeSpaceMap map, PaxPage page, Tuple t) throws DbException {
+		page.addTuple(t);
+		map.update(page.getId().pageno(), page.freeSlots());
+		ArrayList<Page> modified = new ArrayList<Page>();
+		modified.add(page);
+		return modified;
+	}
+
+	// see DbFile.java for javadocs
+	public Page deleteTuple(TransactionId tid, Tuple t) throws DbException, TransactionAbortedException {
+		RecordId rid = t.getRecordId();
+		if (rid == null || rid.getPageId().getTableId() != getId())
+			throw new DbException("the tuple is not stored in this file");
+		PaxPage page = (PaxPage) Database.getBufferPool().getPage(tid, rid.getPageId(), Permissions.READ_WRITE);
+		page.deleteTuple(t);
+		try {
+			freeSpaceMap().update(page.getId().pageno(), page.freeSlots());
+		} catch (IOException e) {
+			DbException dbe = new DbException("failed to load the free-space map of " + file.getName());
+			dbe.initCause(e);
+			throw dbe;
+		}
+		return page;
+	}
+
+	// see DbFile.java for javadocs
+	public DbFileIterator iterator(TransactionId tid) {
+		return new PaxFileIterator(tid);
+	}
+
+	/**
+	 * Iterates over the tuples of this PaxFile one page at a time, through the BufferPool, or through a private
+	 * ScanRing if the file is large relative to the BufferPool. Tuples returned by next only have the fields set with
+	 * {@link #needFields}, if it was called; views returned by nextView read any field.
+	 */
+	class PaxFileIterator extends AbstractDbFileIterator implements ViewIterator {
+
+		/**
+		 * The transaction on whose behalf pages are read.
+		 */
+		final TransactionId tid;
+
+		/**
+		 * The fields that are decoded into the returned tuples, or null for all of them.
+		 */
+		boolean[] fields;
+
+		/**
+		 * The number of the next page to scan, or -1 if this iterator is not open.
+		 */
+		int pageNo = -1;
+
+		/**
+		 * The page currently being scanned, or null if there is none.
+		 */
+		PaxPage page;
+
+		/**
+		 * The content of the current page.
+		 */
+		ByteBuffer content;
+
+		/**
+		 * The slot of the current page that was read last.
+		 */
+		int slot;
+
+		/**
+		 * The view returned by nextView.
+		 */
+		final TupleView view = new TupleView(td);
+
+		/**
+		 * The ring of this scan, or null if the scan reads through the shared pool.
+		 */
+		ScanRing ring;
+
+		PaxFileIterator(TransactionId tid) {
+			this.tid = tid;
+		}
+
+		/**
+		 * Adds the specified fields to the fields that are decoded into the returned tuples. Until this is called,
+		 * every field is decoded.
+		 */
+		void needFields(Collection<Integer> needed) {
+			if (fields == null)
+				fields = new boolean[td.numFields()];
+			for (int f : needed)
+				fields[f] = true;
+		}
+
+		public void open() throws DbException, TransactionAbortedException {
+			pageNo = 0;
+			ring = Database.getBufferPool().scanRingFor(numPages());
+		}
+
+		/**
+		 * Moves to the next tuple, reading the next pages as needed.
+		 *
+		 * @return false if there are no more tuples.
+		 */
+		private boolean advance() throws DbException, TransactionAbortedException {
+			if (pageNo < 0)
+				return false;
+			while (true) {
+				if (page != null && (slot = page.nextUsedSlot(content, slot + 1)) >= 0)
+					return true;
+				page = null;
+				if (pageNo >= numPages())
+					return false;
+				page = (PaxPage) Database.getBufferPool().getPage(tid, new HeapPageId(getId(), pageNo++),
+						Permissions.READ_ONLY, ring);
+				content = page.content();
+				slot = -1;
+			}
+		}
+
+		protected Tuple readNext() throws DbException, TransactionAbortedException {
+			return advance() ? page.readTuple(content, slot, fields) : null;
+		}
+
+		public TupleView nextView() throws DbException, TransactionAbortedException {
+			if (!advance())
+				return null;
+			view.set(page, content, slot, fields);
+			return view;
+		}
+
+		public void rewind() throws DbException, TransactionAbortedException {
+			close();
+			open();
+		}
+
+		public void close() {
+			super.close();
+			pageNo = -1;
+			page = null;
+			content = null;
+			if (ring != null)
+				ring.close();
+			ring = null;
+		}
+	}
+
+	/**
+	 * Converts the specified comma delimited text file into a file of PaxPages, in the format that HeapFileEncoder
+	 * reads: one tuple per line, with the fields in order.
+	 *
+	 * @param inFile
+	 *            the input file to read data from.
+	 * @param outFile
+	 *            the output file to write pages to.
+	 * @param typeAr
+	 *            the type of each field.
+	 * @throws IOException
+	 *             if the input or output file can't be opened.
+	 */
+	public static void convert(File inFile, File outFile, Type[] typeAr) throws IOException {
+		int capacity = PaxPage.capacity(typeAr);
+		int[] minipages = PaxPage.minipages(typeAr, capacity);
+		BufferedReader in = new BufferedReader(new FileReader(inFile));
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(outFile));
+		try {
+			ByteBuffer page = ByteBuffer.allocate(BufferPool.PAGE_SIZE);
+			int count = 0;
+			int npages = 0;
+			String line;
+			while ((line = in.readLine()) != null) {
+				if (line.trim().length() == 0)
+					continue;
+				String[] values = line.split(",");
+				for (int j = 0; j < typeAr.length; j++) {
+					String s = values[j].trim();
+					Field f = typeAr[j] == Type.INT_TYPE ? new IntField(Integer.parseInt(s)) : new StringField(s,
+							Type.STRING_LEN);
+					PaxPage.writeField(page, minipages[j] + count * typeAr[j].getLen(), f);
+				}
+				PaxPage.setUsed(page, count, true);
+				page.putInt(0, ++count);
+				if (count == capacity) {
+					out.write(page.array());
+					npages++;
+					page = ByteBuffer.allocate(BufferPool.PAGE_SIZE);
+					count = 0;
+				}
+			}
+			// write the last page if it has tuples, or an empty page if the file is empty
+			if (count > 0 || npages == 0)
+				out.write(page.array());
+		} finally {
+			in.close();
+			out.close();
+		}
+		new File(outFile.getPath() + ".fsm").delete();
+	}
+}
@@ -0,0 +1,328 @@
+package simpledb;
+
+import java.nio.ByteBuffer;
+import java.text.ParseException;
+import java.util.*;
+
+/**
+ * A {@code PaxPage} stores the tuples of a {@code PaxFile} column by column: the values of each field of all the
+ * tuples on the page are kept next to each other in a minipage of their own, instead of being interleaved tuple by
+ * tuple as in a {@code HeapPage}. A scan that reads a few fields of every tuple therefore only touches the minipages
+ * of those fields.
+ * <p>
+ * The page starts with (1) a 4-byte integer holding the number of tuples on the page and (2) a bitmap with one bit per
+ * slot, set if the slot holds a tuple, followed by (3) one minipage per field. Every value takes {@link Type#getLen}
+ * bytes, so the value of field i of the tuple in slot s is at {@code minipage(i) + s * getLen()}, and the page has
+ * room for the same number of tuples, {@link #capacity}, whatever they hold. The slot of a tuple is its tuple number
+ * in its {@code RecordId}.
+ *
+ * @see PaxFile
+ * @see HeapPage
+ */
+public class PaxPage implements Page {
+
+	/**
+	 * The ID of this {@code PaxPage}.
+	 */
+	final HeapPageId pid;
+
+	/**
+	 * The {@code TupleDesc} of the {@code Tuple}s stored in this {@code PaxPage}.
+	 */
+	final TupleDesc td;
+
+	/**
+	 * The number of slots of this {@code PaxPage}.
+	 */
+	final int capacity;
+
+	/**
+	 * The location of the minipage of each field.
+	 */
+	private final int[] minipages;
+
+	/**
+	 * The content of this {@code PaxPage}.
+	 */
+	private final byte[] data;
+
+	/**
+	 * A buffer that wraps {@code data}, kept so that reading the page does not wrap it again for every tuple.
+	 */
+	private final ByteBuffer buffer;
+
+	/**
+	 * The previous image of this {@code PaxPage}, or {@code null} if this {@code PaxPage} has not been modified since
+	 * its before image was last set.
+	 */
+	private volatile byte[] oldData;
+
+	/**
+	 * The transaction that last dirtied this {@code PaxPage}, or {@code null} if this {@code PaxPage} is clean.
+	 */
+	private TransactionId dirtier;
+
+	/**
+	 * Whether this {@code PaxPage} has been modified since it was last written to disk.
+	 */
+	private boolean dirty;
+
+	/**
+	 * Creates a {@code PaxPage} from a byte array storing data read from disk, in the format described above.
+	 *
+	 * @param id
+	 *            the ID of the {@code PaxPage}.
+	 * @param data
+	 *            a byte array of {@link BufferPool#PAGE_SIZE} bytes.
+	 */
+	public PaxPage(HeapPageId id, byte[] data) {
+		this.pid = id;
+		this.td = Database.getCatalog().getTupleDesc(id.getTableId());
+		Type[] types = ZoneMap.typesOf(td);
+		this.capacity = capacity(types);
+		this.minipages = minipages(types, capacity);
+		this.data = data;
+		this.buffer = ByteBuffer.wrap(data);
+	}
+
+	/**
+	 * Returns the number of tuples with fields of the specified types that fit on a {@code PaxPage}.
+	 */
+	static int capacity(Type[] types) {
+		int recordLength = 0;
+		for (Type t : types)
+			recordLength += t.getLen();
+		// each tuple takes its values and one bit of the bitmap
+		int n = (BufferPool.PAGE_SIZE - 4) * 8 / (recordLength * 8 + 1);
+		while (4 + (n + 7) / 8 + n * recordLength > BufferPool.PAGE_SIZE)
+			n--;
+		return n;
+	}
+
+	/**
+	 * Returns the location of the minipage of each field of a {@code PaxPage} with the specified number of slots.
+	 */
+	static int[] minipages(Type[] types, int capacity) {
+		int[] locations = new int[types.length];
+		int location = 4 + (capacity + 7) / 8;
+		for (int i = 0; i < types.length; i++) {
+			locations[i] = location;
+			location += capacity * types[i].getLen();
+		}
+		return locations;
+	}
+
+	/**
+	 * Writes the specified value into the specified slot of a minipage.
+	 *
+	 * @param content
+	 *            the content of a page.
+	 * @param location
+	 *            the location of the value in content.
+	 * @param f
+	 *            the value; a string longer than {@link Type#STRING_LEN} is truncated.
+	 */
+	static void writeField(ByteBuffer content, int location, Field f) {
+		if (f instanceof IntField) {
+			content.putInt(location, ((IntField) f).getValue());
+			return;
+		}
+		String s = ((StringField) f).getValue();
+		int len = Math.min(s.length(), Type.STRING_LEN);
+		content.putInt(location, len);
+		for (int k = 0; k < Type.STRING_LEN; k++)
+			content.put(location + 4 + k, k < len ? (byte) s.charAt(k) : 0);
+	}
+
+	/**
+	 * Marks the specified slot of the specified content as holding a tuple, or as empty.
+	 */
+	static void setUsed(ByteBuffer content, int slot, boolean used) {
+		int b = content.get(4 + slot / 8);
+		if (used)
+			b |= 1 << (slot % 8);
+		else
+			b &= ~(1 << (slot % 8));
+		content.put(4 + slot / 8, (byte) b);
+	}
+
+	/**
+	 * Returns whether the specified slot of the specified content holds a tuple.
+	 */
+	static boolean isUsed(ByteBuffer content, int slot) {
+		return (content.get(4 + slot / 8) & 1 << (slot % 8)) != 0;
+	}
+
+	/**
+	 * Returns the number of tuples in the specified content of a {@code PaxPage}.
+	 */
+	static int tupleCount(ByteBuffer content) {
+		return content.getInt(0);
+	}
+
+	/**
+	 * @return the ID of this {@code PaxPage}.
+	 */
+	public HeapPageId getId() {
+		return pid;
+	}
+
+	/**
+	 * Returns the content of this {@code PaxPage}.
+	 */
+	ByteBuffer content() {
+		return buffer;
+	}
+
+	/**
+	 * Returns the location of the value of the specified field of the tuple in the specified slot.
+	 */
+	int location(int field, int slot) {
+		return minipages[field] + slot * td.getType(field).getLen();
+	}
+
+	/**
+	 * Returns the first slot at or after the specified slot that holds a tuple, or -1 if there is none.
+	 */
+	int nextUsedSlot(ByteBuffer content, int slot) {
+		while (slot < capacity) {
+			if ((slot & 7) == 0 && content.get(4 + slot / 8) == 0)
+				slot += 8; // skip a run of 8 empty slots at once
+			else if (isUsed(content, slot))
+				return slot;
+			else
+				slot++;
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the number of empty slots of this {@code PaxPage}.
+	 */
+	public int freeSlots() {
+		return capacity - tupleCount(content());
+	}
+
+	/**
+	 * @return an iterator over all {@code Tuple}s on this {@code PaxPage}; calling remove on this iterator throws an
+	 *         {@code UnsupportedOperationException}.
+	 */
+	public Iterator<Tuple> iterator() {
+		final ByteBuffer content = content();
+		return new Iterator<Tuple>() {
+			int slot = nextUsedSlot(content, 0);
+
+			public boolean hasNext() {
+				return slot >= 0;
+			}
+
+			public Tuple next() {
+				if (slot < 0)
+					throw new NoSuchElementException();
+				Tuple t = readTuple(content, slot, null);
+				slot = nextUsedSlot(content, slot + 1);
+				return t;
+			}
+
+			public void remove() {
+				throw new UnsupportedOperationException("remove");
+			}
+		};
+	}
+
+	/**
+	 * Reads the {@code Tuple} in the specified slot of the specified content of this {@code PaxPage}, decoding only
+	 * the specified fields.
+	 *
+	 * @param fields
+	 *            which fields to decode, or null to decode all of them; the other fields of the tuple are null.
+	 */
+	Tuple readTuple(ByteBuffer content, int slot, boolean[] fields) {
+		Tuple t = new Tuple(td);
+		try {
+			for (int j = 0; j < td.numFields(); j++)
+				if (fields == null || fields[j])
+					t.setField(j, td.getType(j).parse(content, location(j, slot)));
+		} catch (ParseException e) {
+			e.printStackTrace();
+			throw new NoSuchElementException("parsing error!");
+		}
+		t.setRecordId(new RecordId(pid, slot));
+		return t;
+	}
+
+	/**
+	 * Adds the specified {@code Tuple} to the first empty slot of this {@code PaxPage}, and updates its
+	 * {@code RecordId}.
+	 *
+	 * @throws DbException
+	 *             if this {@code PaxPage} is full or the tuple does not match its {@code TupleDesc}.
+	 */
+	public void addTuple(Tuple t) throws DbException {
+		if (!td.equals(t.getTupleDesc()))
+			throw new DbException("the tuple does not match the TupleDesc of this page");
+		ByteBuffer content = content();
+		int slot = 0;
+		while (slot < capacity && isUsed(content, slot))
+			slot++;
+		if (slot == capacity)
+			throw new DbException("the page is full");
+		copyBeforeImage();
+		for (int j = 0; j < td.numFields(); j++)
+			writeField(content, location(j, slot), t.getField(j));
+		setUsed(content, slot, true);
+		content.putInt(0, tupleCount(content) + 1);
+		t.setRecordId(new RecordId(pid, slot));
+	}
+
+	/**
+	 * Deletes the specified {@code Tuple} from this {@code PaxPage}, and clears its {@code RecordId}.
+	 *
+	 * @throws DbException
+	 *             if the {@code Tuple} is not on this {@code PaxPage}, or its slot is already empty.
+	 */
+	public void deleteTuple(Tuple t) throws DbException {
+		RecordId rid = t.getRecordId();
+		if (rid == null || !pid.equals(rid.getPageId()))
+			throw new DbException("the tuple is not stored on this page");
+		ByteBuffer content = content();
+		int slot = rid.tupleno();
+		if (slot < 0 || slot >= capacity || !isUsed(content, slot))
+			throw new DbException("the slot of the tuple is already empty");
+		copyBeforeImage();
+		setUsed(content, slot, false);
+		content.putInt(0, tupleCount(content) - 1);
+		t.setRecordId(null);
+	}
+
+	public void markDirty(boolean dirty, TransactionId tid) {
+		this.dirty = dirty;
+		this.dirtier = dirty ? tid : null;
+	}
+
+	public TransactionId isDirty() {
+		return dirty ? dirtier : null;
+	}
+
+	public byte[] getPageData() {
+		return data;
+	}
+
+	public PaxPage getBeforeImage() {
+		byte[] before = oldData;
+		return new PaxPage(pid, before != null ? before : data.clone());
+	}
+
+	public void setBeforeImage() {
+		oldData = null;
+	}
+
+	/**
+	 * Saves the before image of this {@code PaxPage}, if it has not been saved since it was last set, before the
+	 * first write to this {@code PaxPage}.
+	 */
+	private synchronized void copyBeforeImage() {
+		if (oldData == null)
+			oldData = data.clone();
+	}
+}
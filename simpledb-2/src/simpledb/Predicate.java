@@ -35,6 +35,21 @@ public class Predicate {
     
     protected Field operand;
 
+    /**
+     * The operand as ASCII bytes if it is a string that TupleView can compare
+     * without decoding, and null otherwise.
+     */
+    protected byte[] operandBytes;
+
+    /**
+     * The dictionary that operandCode was looked up in, the code of a string
+     * operand there (-1 if the dictionary did not have it), and the number of
+     * codes the dictionary had before the lookup.
+     */
+    private StringDictionary codedIn;
+    private int operandCode;
+    private int codedSize;
+
     /**
      * Constructor.
      *
@@ -46,6 +61,8 @@ public class Predicate {
     	this.field = field;
     	this.op = op;
     	this.operand = operand;
+    	if (operand instanceof StringField)
+    		operandBytes = TupleView.asciiBytes(((StringField) operand).getValue());
     }
 
     /**
@@ -64,11 +81,81 @@ public class Predicate {
         return false;
     }
 
+    /**
+     * Applies this predicate to the tuple shown by the specified view, with
+     * the same result as {@link #filter(Tuple)}. Int fields and ASCII string
+     * operands are compared on the bytes of the page, without creating a
+     * Field; equality on a dictionary-encoded string compares its code with
+     * the code of the operand.
+     *
+     * @param v The view of the tuple to compare against
+     * @return true if the comparison is true, false otherwise.
+     */
+    public boolean filter(TupleView v) {
+    	if (operand instanceof IntField)
+    		return compare(op, v.getInt(field), ((IntField) operand).getValue());
+    	StringDictionary d = v.getDictionary();
+    	if (d != null && (op == Op.EQUALS || op == Op.NOT_EQUALS))
+    		return isOperand(d, v.getStringCode(field)) == (op == Op.EQUALS);
+    	if (operandBytes == null)
+    		return v.getField(field).compare(op, operand);
+    	if (op == Op.LIKE)
+    		return v.containsString(field, operandBytes);
+    	return matches(op, v.compareString(field, operandBytes));
+    }
+
+    /**
+     * Returns whether the specified code of a dictionary is the code of the
+     * string operand. The operand is looked up again only for another
+     * dictionary, or if it was missing and the code was added since.
+     */
+    private boolean isOperand(StringDictionary d, int code) {
+    	if (d != codedIn || (operandCode < 0 && code >= codedSize)) {
+    		codedSize = d.size();
+    		operandCode = d.lookup(((StringField) operand).getValue());
+    		codedIn = d;
+    	}
+    	return code == operandCode;
+    }
+
+    /**
+     * Compares two int values as IntField.compare does.
+     */
+    static boolean compare(Op op, int a, int b) {
+    	return matches(op, a < b ? -1 : (a == b ? 0 : 1));
+    }
+
+    /**
+     * Returns whether the result of a comparison satisfies op, with LIKE
+     * treated as EQUALS.
+     *
+     * @param cmp a negative integer, zero, or a positive integer as the left
+     *   operand is less than, equal to, or greater than the right one.
+     */
+    static boolean matches(Op op, int cmp) {
+    	switch (op) {
+    	case EQUALS:
+    	case LIKE:
+    		return cmp == 0;
+    	case NOT_EQUALS:
+    		return cmp != 0;
+    	case GREATER_THAN:
+    		return cmp > 0;
+    	case GREATER_THAN_OR_EQ:
+    		return cmp >= 0;
+    	case LESS_THAN:
+    		return cmp < 0;
+    	case LESS_THAN_OR_EQ:
+    		return cmp <= 0;
+    	}
+    	return false;
+    }
+
     /**
      * Returns something useful, like
      * "f = this.fieldid op = this.opstring operand = this.operandstring
      */
     public String toString() {
-    	return String.format("f = %i op = %s operand = %s", field, op, operand);
+    	return String.format("f = %d op = %s operand = %s", field, op, operand);
     }
 }
@@ -0,0 +1,96 @@
+package simpledb;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Prefetcher reads pages asynchronously on behalf of sequential scans, so that a scan finds the next pages already in
+ * memory instead of blocking on I/O. Reads run on a small pool of daemon threads shared by all buffer pools; each
+ * BufferPool has its own Prefetcher to keep its statistics.
+ * <p>
+ * A prefetch is a <em>hit</em> if the page is requested by the scan before it is dropped, and <em>wasted</em> if it
+ * is evicted or abandoned without being used.
+ * 
+ * @see BufferPool#prefetchPage
+ * @see ReadAhead
+ */
+public class Prefetcher {
+
+	/**
+	 * The number of threads that perform prefetch reads.
+	 */
+	public static final int THREADS = 2;
+
+	private static final ExecutorService executor = Executors.newFixedThreadPool(THREADS, new ThreadFactory() {
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "simpledb-prefetch");
+			t.setDaemon(true);
+			return t;
+		}
+	});
+
+	private final AtomicLong issued = new AtomicLong();
+
+	private final AtomicLong hits = new AtomicLong();
+
+	private final AtomicLong wasted = new AtomicLong();
+
+	/**
+	 * Runs the specified read on a prefetch thread and counts it as issued.
+	 * 
+	 * @param read
+	 *            the read to run
+	 */
+	void execute(Runnable read) {
+		issued.incrementAndGet();
+		executor.execute(read);
+	}
+
+	/**
+	 * Reads the specified page from its DbFile on a prefetch thread, without adding it to any buffer pool.
+	 * 
+	 * @return a Future that completes with the page
+	 */
+	Future<Page> read(final PageId pid) {
+		FutureTask<Page> task = new FutureTask<Page>(new Callable<Page>() {
+			public Page call() throws Exception {
+				return Database.getCatalog().getDbFile(pid.getTableId()).readPage(pid);
+			}
+		});
+		execute(task);
+		return task;
+	}
+
+	void recordHit() {
+		hits.incrementAndGet();
+	}
+
+	void recordWaste() {
+		wasted.incrementAndGet();
+	}
+
+	/**
+	 * @return the number of prefetch reads issued
+	 */
+	public long getIssued() {
+		return issued.get();
+	}
+
+	/**
+	 * @return the number of prefetched pages that were used
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * @return the number of prefetched pages that were dropped without being used
+	 */
+	public long getWasted() {
+		return wasted.get();
+	}
+
+	public String toString() {
+		return "Prefetcher(issued=" + getIssued() + ", hits=" + getHits() + ", wasted=" + getWasted() + ")";
+	}
+}
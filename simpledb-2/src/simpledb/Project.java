@@ -28,6 +28,11 @@ public class Project extends AbstractDbIterator {
             fieldAr[i] = childtd.getFieldName(fieldList.get(i));
         }
         td= new TupleDesc(typesList.toArray(new Type[0]), fieldAr);
+        // a scan below only needs to decode the projected fields
+        if (child instanceof SeqScan)
+            ((SeqScan) child).needFields(fieldList);
+        else if (child instanceof Filter)
+            ((Filter) child).needFields(fieldList);
     }
 
     public TupleDesc getTupleDesc() {
@@ -0,0 +1,85 @@
+package simpledb;
+
+/**
+ * ReadAhead tracks the pages requested by one scan, detects sequential access and decides how far ahead to prefetch.
+ * The window starts small once two consecutive pages have been read, doubles each time the scan uses a prefetched page,
+ * and halves when prefetched pages are wasted; a jump to a non-consecutive page resets it.
+ * 
+ * @see Prefetcher
+ */
+public class ReadAhead {
+
+	/**
+	 * The initial read-ahead window, in pages.
+	 */
+	public static final int MIN_WINDOW = 2;
+
+	/**
+	 * The largest allowed window, in pages.
+	 */
+	private final int maxWindow;
+
+	/**
+	 * The current window, in pages.
+	 */
+	private int window = MIN_WINDOW;
+
+	/**
+	 * The page number of the last request, or -2 if there was none.
+	 */
+	private int lastPage = -2;
+
+	/**
+	 * The highest page number already prefetched in the current sequential run.
+	 */
+	private int prefetchedTo = -1;
+
+	/**
+	 * Creates a ReadAhead whose window never exceeds maxWindow pages.
+	 */
+	public ReadAhead(int maxWindow) {
+		this.maxWindow = Math.max(1, maxWindow);
+		this.window = Math.min(MIN_WINDOW, this.maxWindow);
+	}
+
+	/**
+	 * Records a request for the specified page and returns the range of pages that should now be prefetched. The range
+	 * never includes pages prefetched earlier in the same sequential run.
+	 * 
+	 * @param pageNo
+	 *            the requested page number
+	 * @param numPages
+	 *            the number of pages in the file
+	 * @return a two-element array holding the first page to prefetch and the page one past the last; the range is empty
+	 *         if the access is not sequential
+	 */
+	public int[] pageRequested(int pageNo, int numPages) {
+		boolean sequential = pageNo == lastPage + 1;
+		lastPage = pageNo;
+		if (!sequential) {
+			window = Math.min(MIN_WINDOW, maxWindow);
+			prefetchedTo = pageNo;
+			return new int[] { pageNo, pageNo };
+		}
+		if (pageNo <= prefetchedTo)
+			window = Math.min(maxWindow, window * 2); // the scan used a prefetched page
+		int from = Math.max(prefetchedTo, pageNo) + 1;
+		int to = Math.max(from, Math.min(numPages, pageNo + 1 + window));
+		prefetchedTo = Math.max(prefetchedTo, to - 1);
+		return new int[] { from, to };
+	}
+
+	/**
+	 * Shrinks the window after prefetched pages were wasted.
+	 */
+	public void prefetchWasted() {
+		window = Math.max(1, window / 2);
+	}
+
+	/**
+	 * @return the current window, in pages
+	 */
+	public int getWindow() {
+		return window;
+	}
+}
@@ -0,0 +1,74 @@
+package simpledb;
+
+/**
+ * A ReplacementPolicy decides which page BufferPool evicts when it needs room for a new page. BufferPool reports every
+ * cache hit and miss to its policy, tells it when a page has been added or removed, and asks it for a victim when the
+ * pool is full.
+ * <p>
+ * A policy is created for a single BufferPool and must be safe to call from several threads at once.
+ * 
+ * @see BufferPool
+ * @see LruPolicy
+ * @see ClockPolicy
+ * @see TwoQPolicy
+ * @see ArcPolicy
+ */
+public interface ReplacementPolicy {
+
+	/**
+	 * Records a request for a page that is resident in the buffer pool.
+	 * 
+	 * @param pid
+	 *            the ID of the requested page. The page may have been evicted concurrently, in which case the call
+	 *            should be ignored apart from the hit count.
+	 */
+	public void recordHit(PageId pid);
+
+	/**
+	 * Records a request for a page that is not resident in the buffer pool. This is called before the page is read and
+	 * before any eviction needed to make room for it.
+	 * 
+	 * @param pid
+	 *            the ID of the requested page
+	 */
+	public void recordMiss(PageId pid);
+
+	/**
+	 * Notifies this policy that the specified page is now resident in the buffer pool.
+	 * 
+	 * @param pid
+	 *            the ID of the page that was added
+	 */
+	public void pageAdded(PageId pid);
+
+	/**
+	 * Notifies this policy that the specified page left the buffer pool without being chosen by
+	 * {@link #chooseVictim} (e.g., it was discarded by the recovery manager).
+	 * 
+	 * @param pid
+	 *            the ID of the page that was removed
+	 */
+	public void pageRemoved(PageId pid);
+
+	/**
+	 * Chooses a resident page to evict and stops tracking it as resident.
+	 * 
+	 * @return the ID of the page to evict, or null if no page is resident
+	 */
+	public PageId chooseVictim();
+
+	/**
+	 * @return the number of requests recorded by {@link #recordHit}
+	 */
+	public long getHits();
+
+	/**
+	 * @return the number of requests recorded by {@link #recordMiss}
+	 */
+	public long getMisses();
+
+	/**
+	 * @return the fraction of requests that were hits, or 0 if no request has been recorded
+	 */
+	public double getHitRatio();
+}
@@ -0,0 +1,134 @@
+package simpledb;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * A ScanRing is a small, private set of page frames used by one large sequential scan. Pages that the scan reads from
+ * disk are kept in the ring instead of the shared BufferPool, and the ring reuses its frames in round-robin order, so
+ * a scan over a table much larger than the pool does not push the working set of other transactions out of the pool.
+ * Pages that are already in the shared pool are still served from there.
+ * <p>
+ * A ScanRing is not thread-safe; each scan creates its own through {@link BufferPool#scanRingFor}.
+ * 
+ * @see BufferPool#getPage(TransactionId, PageId, Permissions, ScanRing)
+ */
+public class ScanRing {
+
+	/**
+	 * The frames of this ring.
+	 */
+	private final Page[] frames;
+
+	/**
+	 * The frame that the next page read into this ring replaces.
+	 */
+	private int next = 0;
+
+	/**
+	 * The number of pages read from disk into this ring.
+	 */
+	private long reads = 0;
+
+	/**
+	 * Prefetch reads that have been issued for this ring but not yet used.
+	 */
+	private final LinkedHashMap<PageId, Future<Page>> pending = new LinkedHashMap<PageId, Future<Page>>();
+
+	/**
+	 * The Prefetcher that issued the pending reads.
+	 */
+	private Prefetcher prefetcher;
+
+	/**
+	 * Creates a ring with the specified number of frames.
+	 * 
+	 * @param size
+	 *            the number of frames in the ring; must be positive
+	 */
+	public ScanRing(int size) {
+		frames = new Page[size];
+	}
+
+	/**
+	 * Returns the specified page if it is in this ring or has been prefetched for it, or null. If the page is still
+	 * being prefetched, waits for the read to complete.
+	 * 
+	 * @throws DbException
+	 *             if the prefetch read failed
+	 */
+	public Page get(PageId pid) throws DbException {
+		for (Page p : frames)
+			if (p != null && p.getId().equals(pid))
+				return p;
+		Future<Page> read = pending.remove(pid);
+		if (read == null)
+			return null;
+		Page page;
+		try {
+			page = read.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new DbException("interrupted while waiting for a prefetched page");
+		} catch (ExecutionException e) {
+			DbException dbe = new DbException("failed to prefetch page: " + e.getCause());
+			dbe.initCause(e.getCause());
+			throw dbe;
+		}
+		prefetcher.recordHit();
+		add(page);
+		return page;
+	}
+
+	/**
+	 * Starts reading the specified page into this ring in the background, unless it is already in this ring.
+	 * 
+	 * @param pid
+	 *            the ID of the page to read
+	 * @param prefetcher
+	 *            the Prefetcher that performs the read
+	 */
+	public void prefetch(PageId pid, Prefetcher prefetcher) {
+		if (pending.containsKey(pid))
+			return;
+		for (Page p : frames)
+			if (p != null && p.getId().equals(pid))
+				return;
+		this.prefetcher = prefetcher;
+		pending.put(pid, prefetcher.read(pid));
+	}
+
+	/**
+	 * Abandons all pending prefetch reads of this ring, counting them as wasted.
+	 */
+	public void close() {
+		for (Future<Page> read : pending.values()) {
+			read.cancel(false);
+			prefetcher.recordWaste();
+		}
+		pending.clear();
+	}
+
+	/**
+	 * Puts a page read from disk into this ring, replacing the page in the oldest frame.
+	 */
+	public void add(Page page) {
+		frames[next] = page;
+		next = (next + 1) % frames.length;
+		reads++;
+	}
+
+	/**
+	 * @return the number of frames in this ring
+	 */
+	public int size() {
+		return frames.length;
+	}
+
+	/**
+	 * @return the number of pages read from disk into this ring
+	 */
+	public long getReads() {
+		return reads;
+	}
+}
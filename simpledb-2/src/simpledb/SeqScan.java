@@ -6,12 +6,21 @@ import java.util.*;
  * each tuple of a table in no particular order (e.g., as they are laid out on
  * disk).
  */
-public class SeqScan implements DbIterator {
+public class SeqScan implements DbIterator, ViewIterator {
 	
+    /** The transaction this scan is running as a part of. */
+    final TransactionId tid;
+
+    /** The table being scanned. */
+    final int tableid;
+
     DbFileIterator fileit;
     
     TupleDesc td;
 
+    /** The view returned by nextView if the file iterator cannot return views itself. */
+    TupleView view;
+
     /**
      * Creates a sequential scan over the specified table as a part of the
      * specified transaction.
@@ -25,6 +34,8 @@ public class SeqScan implements DbIterator {
      *         name can be null.fieldName, tableAlias.null, or null.null).
      */
     public SeqScan(TransactionId tid, int tableid, String tableAlias) {
+        this.tid = tid;
+        this.tableid = tableid;
         fileit = Database.getCatalog().getDbFile(tableid).iterator(tid);
         td = Database.getCatalog().getTupleDesc(tableid);
     }
@@ -53,6 +64,47 @@ public class SeqScan implements DbIterator {
         return fileit.next();
     }
 
+    public TupleView nextView() throws DbException, TransactionAbortedException {
+        if (fileit instanceof ViewIterator)
+            return ((ViewIterator) fileit).nextView();
+        if (!fileit.hasNext())
+            return null;
+        if (view == null)
+            view = new TupleView(td);
+        view.set(fileit.next());
+        return view;
+    }
+
+    /**
+     * Lets this scan skip the pages whose zone map shows that none of their
+     * tuples satisfies p. The scan still returns every tuple of the pages it
+     * reads, so the caller must still apply p. Must be called before open.
+     *
+     * @param p a predicate on the tuples of this scan
+     * @see ZoneMap
+     */
+    public void pushDown(Predicate p) {
+        if (fileit instanceof HeapFile.HeapFileIterator)
+            ((HeapFile.HeapFileIterator) fileit).skipPagesNotMatching(p);
+    }
+
+    /**
+     * Lets this scan decode only the specified fields of the tuples returned
+     * by next, for a table stored in a PaxFile or a ColumnFile; the other
+     * fields are left null. Calls add to the fields already needed. Other
+     * files decode every field anyway. Must be called before open.
+     *
+     * @param fields the indexes of the fields that the caller reads
+     * @see PaxFile
+     * @see ColumnFile
+     */
+    public void needFields(Collection<Integer> fields) {
+        if (fileit instanceof PaxFile.PaxFileIterator)
+            ((PaxFile.PaxFileIterator) fileit).needFields(fields);
+        else if (fileit instanceof ColumnFile.ColumnFileIterator)
+            ((ColumnFile.ColumnFileIterator) fileit).needFields(fields);
+    }
+
     public void close() {
         fileit.close();
     }
@@ -14,7 +14,7 @@ public class SimpleDb {
                         BufferPool.PAGE_SIZE,
                         Integer.parseInt(args[2]));
         }
-        else if (args.length == 4) {
+        else if (args.length >= 4 && args.length <= 6) {
             ArrayList<Type> ts = new ArrayList<Type>();
             String[] typeStringAr = args[3].split(",");
             for (String s: typeStringAr) {
@@ -27,10 +27,23 @@ public class SimpleDb {
                 return;
             }
             }
+            // an optional argument chooses the record layout, as in the catalog, and another the page size
+            boolean variableLength = args.length >= 5 && args[4].toLowerCase().equals("variable");
+            boolean dictionaryEncoded = args.length >= 5 && args[4].toLowerCase().equals("dictionary");
+            if (args.length >= 5 && !variableLength && !dictionaryEncoded && !args[4].toLowerCase().equals("fixed")) {
+                System.out.println("Unknown layout " + args[4]);
+                return;
+            }
+            int pageSize = args.length == 6 ? Integer.parseInt(args[5]) : BufferPool.PAGE_SIZE;
+            if (!BufferPool.isValidPageSize(pageSize)) {
+                System.out.println("Invalid page size " + args[5]);
+                return;
+            }
             HeapFileEncoder.convert(new File(args[1]),
                         new File(args[1].replaceAll(".txt", ".dat")),
-                        BufferPool.PAGE_SIZE,
-                        Integer.parseInt(args[2]), ts.toArray(new Type[0]));
+                        pageSize,
+                        Integer.parseInt(args[2]), ts.toArray(new Type[0]), variableLength,
+                        dictionaryEncoded);
 
         } else {
             System.out.println("Unexpected number of arguments to convert ");
@@ -0,0 +1,27 @@
+package simpledb;
+
+/**
+ * The interface for DbFiles that keep their tuples sorted on a key field, so
+ * that the tuples whose keys are in a range can be read without reading the
+ * whole table. A SeqScan of a SortedFile returns its tuples in key order.
+ *
+ * @see IndexScan
+ */
+public interface SortedFile extends DbFile {
+    /**
+     * Returns the index of the field that the tuples are sorted on.
+     */
+    public int keyField();
+
+    /**
+     * Returns an iterator over the tuples whose keys are in the specified
+     * range, in key order.
+     *
+     * @param low the lowest key, or null for no lower bound.
+     * @param lowInclusive whether tuples with the lowest key are returned.
+     * @param high the highest key, or null for no upper bound.
+     * @param highInclusive whether tuples with the highest key are returned.
+     */
+    public DbFileIterator rangeIterator(TransactionId tid, Field low, boolean lowInclusive, Field high,
+            boolean highInclusive);
+}
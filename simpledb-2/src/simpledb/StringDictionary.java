@@ -0,0 +1,123 @@
+package simpledb;
+
+import java.io.*;
+import java.util.HashMap;
+
+/**
+ * StringDictionary assigns a small int code to each distinct string stored in the string fields of a dictionary-encoded
+ * HeapFile, so that pages store the 4-byte code of a string instead of the string. Codes are assigned in order from 0
+ * and never change. Each code has one StringField, which every tuple read with that code shares, so equal strings of a
+ * table are the same object and compare without looking at their characters.
+ * <p>
+ * The dictionary is kept in a file next to the data file, as the strings written with DataOutputStream.writeUTF in the
+ * order of their codes. A new string is appended to the file before its code is returned, so a page never holds a code
+ * that the file does not.
+ *
+ * @see HeapFile#getDictionary
+ */
+public class StringDictionary {
+
+	/**
+	 * The file that the strings are saved to.
+	 */
+	private final File file;
+
+	/**
+	 * The StringField of each code; entries past size are null. The array is replaced when it grows, after the
+	 * entries have been copied, so readers need not lock it.
+	 */
+	private volatile StringField[] fields = new StringField[16];
+
+	private int size;
+
+	/**
+	 * The code of each string.
+	 */
+	private final HashMap<String, Integer> codes = new HashMap<String, Integer>();
+
+	/**
+	 * The stream that new strings are appended to, opened when the first string is added.
+	 */
+	private DataOutputStream out;
+
+	/**
+	 * Creates a dictionary saved to the specified file, loading the strings already saved there, if any.
+	 */
+	public StringDictionary(File f) throws IOException {
+		this.file = f;
+		if (!f.exists())
+			return;
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f)));
+		try {
+			while (true)
+				add(in.readUTF());
+		} catch (EOFException e) {
+			// the end of the saved strings
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Returns the number of strings in this dictionary.
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the code of the specified string, adding it to this dictionary, and to its file, if it is not there.
+	 *
+	 * @param s
+	 *            a string of at most Type.STRING_LEN characters.
+	 */
+	public synchronized int code(String s) throws IOException {
+		Integer code = codes.get(s);
+		if (code != null)
+			return code;
+		if (out == null)
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+		out.writeUTF(s);
+		out.flush();
+		return add(s);
+	}
+
+	/**
+	 * Returns the code of the specified string, or -1 if it is not in this dictionary.
+	 */
+	public synchronized int lookup(String s) {
+		Integer code = codes.get(s);
+		return code == null ? -1 : code;
+	}
+
+	/**
+	 * Returns the StringField of the specified code.
+	 */
+	public StringField field(int code) {
+		return fields[code];
+	}
+
+	/**
+	 * Adds a string to the in-memory tables and returns its code.
+	 */
+	private int add(String s) {
+		StringField[] f = fields;
+		if (size == f.length) {
+			StringField[] grown = new StringField[size * 2];
+			System.arraycopy(f, 0, grown, 0, size);
+			fields = f = grown;
+		}
+		f[size] = new StringField(s, Type.STRING_LEN);
+		codes.put(s, size);
+		return size++;
+	}
+
+	/**
+	 * Closes the file of this dictionary. It is reopened if a string is added.
+	 */
+	public synchronized void close() throws IOException {
+		if (out != null)
+			out.close();
+		out = null;
+	}
+}
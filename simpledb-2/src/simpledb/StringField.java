@@ -38,6 +38,8 @@ public class StringField implements Field {
     }
 
     public boolean equals(Object field) {
+        if (this == field)
+            return true; // dictionary-encoded tables share one StringField per string
         return ((StringField) field).value.equals(value);
     }
 
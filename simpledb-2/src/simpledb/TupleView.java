@@ -0,0 +1,316 @@
+package simpledb;
+
+import java.nio.ByteBuffer;
+import java.text.ParseException;
+import java.util.NoSuchElementException;
+
+/**
+ * TupleView is a reusable, read-only view of one tuple that reads column values directly from the bytes of the page
+ * that stores it. Moving a view to another tuple allocates nothing, and so does reading an int column or comparing a
+ * string column, so operators can evaluate predicates on tuples that they never materialize. A view can also wrap an
+ * existing Tuple, for iterators whose tuples are not stored in pages.
+ * <p>
+ * A view is only valid until the iterator that returned it moves on; call {@link #toTuple} to keep a tuple.
+ * 
+ * @see ViewIterator
+ * @see Predicate#filter(TupleView)
+ */
+public class TupleView {
+
+	/**
+	 * The TupleDesc of the viewed tuples.
+	 */
+	private final TupleDesc td;
+
+	/**
+	 * The offset of each field from the start of the tuple. The offsets are computed once if every field has a fixed
+	 * length, and for each tuple if the viewed page stores strings at their actual length.
+	 */
+	private final int[] offsets;
+
+	/**
+	 * Whether offsets are those of a page that stores the codes of dictionary-encoded strings.
+	 */
+	private boolean codedOffsets;
+
+	/**
+	 * The page that stores the viewed tuple, or null if this view wraps a Tuple.
+	 */
+	private HeapPage page;
+
+	/**
+	 * The PaxPage that stores the viewed tuple, or null if this view reads a HeapPage or wraps a Tuple.
+	 */
+	private PaxPage paxPage;
+
+	/**
+	 * The fields that {@link #toTuple} decodes from a PaxPage, or null for all of them.
+	 */
+	private boolean[] paxFields;
+
+	/**
+	 * The content of the page, which the holder of this view keeps from being reused while this view is in use.
+	 */
+	private ByteBuffer content;
+
+	/**
+	 * The entry of the viewed tuple in the page.
+	 */
+	private int entry;
+
+	/**
+	 * The location of the viewed tuple in content.
+	 */
+	private int base;
+
+	/**
+	 * The viewed Tuple, or null if this view reads a page.
+	 */
+	private Tuple tuple;
+
+	/**
+	 * Creates a view for tuples of the specified TupleDesc. The view does not show any tuple until it is moved to one.
+	 * 
+	 * @param td
+	 *            the TupleDesc of the tuples to view.
+	 */
+	public TupleView(TupleDesc td) {
+		this.td = td;
+		offsets = new int[td.numFields()];
+		for (int i = 1; i < offsets.length; i++)
+			offsets[i] = offsets[i - 1] + td.getType(i - 1).getLen();
+	}
+
+	/**
+	 * Moves this view to the tuple stored at the specified location of a page.
+	 * 
+	 * @param page
+	 *            the page that stores the tuple.
+	 * @param content
+	 *            the content of the page, as returned by {@link HeapPage#pin}.
+	 * @param entry
+	 *            the entry of the tuple in the page.
+	 * @param location
+	 *            the location of the tuple in content.
+	 */
+	void set(HeapPage page, ByteBuffer content, int entry, int location) {
+		boolean coded = page.dictionary != null;
+		if (paxPage != null || coded != codedOffsets) {
+			// the offsets point into the minipages of the last PaxPage, or are those of the other fixed layout
+			offsets[0] = 0;
+			for (int i = 1; i < offsets.length; i++) {
+				Type type = td.getType(i - 1);
+				offsets[i] = offsets[i - 1] + (coded && type == Type.STRING_TYPE ? 4 : type.getLen());
+			}
+			codedOffsets = coded;
+		}
+		this.page = page;
+		this.paxPage = null;
+		this.content = content;
+		this.entry = entry;
+		this.base = location;
+		this.tuple = null;
+		if (page.variableLength)
+			for (int i = 1; i < offsets.length; i++)
+				offsets[i] = offsets[i - 1] + page.fieldLength(content, i - 1, location + offsets[i - 1]);
+	}
+
+	/**
+	 * Moves this view to the tuple stored in the specified slot of a PaxPage. The values of the tuple are read from the
+	 * minipages of their fields.
+	 * 
+	 * @param page
+	 *            the page that stores the tuple.
+	 * @param content
+	 *            the content of the page.
+	 * @param slot
+	 *            the slot of the tuple in the page.
+	 * @param fields
+	 *            the fields that {@link #toTuple} decodes, or null for all of them.
+	 */
+	void set(PaxPage page, ByteBuffer content, int slot, boolean[] fields) {
+		this.page = null;
+		this.paxPage = page;
+		this.paxFields = fields;
+		this.content = content;
+		this.entry = slot;
+		this.base = 0;
+		this.tuple = null;
+		for (int i = 0; i < offsets.length; i++)
+			offsets[i] = page.location(i, slot);
+	}
+
+	/**
+	 * Moves this view to the specified tuple.
+	 * 
+	 * @param t
+	 *            a tuple with the TupleDesc of this view.
+	 */
+	public void set(Tuple t) {
+		this.page = null;
+		this.paxPage = null;
+		this.content = null;
+		this.tuple = t;
+	}
+
+	/**
+	 * @return the TupleDesc of the viewed tuple.
+	 */
+	public TupleDesc getTupleDesc() {
+		return td;
+	}
+
+	/**
+	 * Returns the value of the specified int field.
+	 * 
+	 * @param i
+	 *            the index of a field of type INT_TYPE.
+	 */
+	public int getInt(int i) {
+		if (tuple != null)
+			return ((IntField) tuple.getField(i)).getValue();
+		return content.getInt(base + offsets[i]);
+	}
+
+	/**
+	 * Returns the dictionary whose codes the viewed page stores instead of its string fields, or null if the page
+	 * stores the strings themselves or this view does not read a HeapPage.
+	 */
+	StringDictionary getDictionary() {
+		return page != null ? page.dictionary : null;
+	}
+
+	/**
+	 * Returns the dictionary code of the specified string field. The viewed page must be dictionary-encoded.
+	 * 
+	 * @param i
+	 *            the index of a field of type STRING_TYPE.
+	 */
+	int getStringCode(int i) {
+		return content.getInt(base + offsets[i]);
+	}
+
+	/**
+	 * Compares the specified string field with a string given as bytes, in the order of String.compareTo. The bytes
+	 * must all be ASCII characters, as produced by {@link #asciiBytes}.
+	 * 
+	 * @param i
+	 *            the index of a field of type STRING_TYPE.
+	 * @param value
+	 *            the string to compare the field with.
+	 * @return a negative integer, zero, or a positive integer as the field is less than, equal to, or greater than
+	 *         value.
+	 */
+	public int compareString(int i, byte[] value) {
+		if (tuple != null)
+			return ((StringField) tuple.getField(i)).getValue().compareTo(new String(value));
+		if (getDictionary() != null)
+			return compare(((StringField) getField(i)).getValue(), value);
+		int offset = base + offsets[i];
+		int len = content.getInt(offset);
+		int n = Math.min(len, value.length);
+		for (int k = 0; k < n; k++) {
+			byte b = content.get(offset + 4 + k);
+			if (b < 0)
+				return ((StringField) getField(i)).getValue().compareTo(new String(value));
+			if (b != value[k])
+				return b - value[k];
+		}
+		for (int k = n; k < len; k++)
+			if (content.get(offset + 4 + k) < 0)
+				return ((StringField) getField(i)).getValue().compareTo(new String(value));
+		return len - value.length;
+	}
+
+	/**
+	 * Returns whether the specified string field contains a string given as bytes, as String.indexOf would. The bytes
+	 * must all be ASCII characters, as produced by {@link #asciiBytes}.
+	 * 
+	 * @param i
+	 *            the index of a field of type STRING_TYPE.
+	 * @param value
+	 *            the string to look for.
+	 */
+	public boolean containsString(int i, byte[] value) {
+		if (tuple != null || getDictionary() != null)
+			return ((StringField) getField(i)).getValue().indexOf(new String(value)) >= 0;
+		int offset = base + offsets[i] + 4;
+		int len = content.getInt(offset - 4);
+		for (int k = 0; k < len; k++)
+			if (content.get(offset + k) < 0)
+				return ((StringField) getField(i)).getValue().indexOf(new String(value)) >= 0;
+		outer: for (int start = 0; start + value.length <= len; start++) {
+			for (int k = 0; k < value.length; k++)
+				if (content.get(offset + start + k) != value[k])
+					continue outer;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Compares a string with a string given as ASCII bytes, in the order of String.compareTo.
+	 */
+	private static int compare(String s, byte[] value) {
+		int n = Math.min(s.length(), value.length);
+		for (int k = 0; k < n; k++) {
+			char c = s.charAt(k);
+			if (c != value[k])
+				return c - value[k];
+		}
+		return s.length() - value.length;
+	}
+
+	/**
+	 * Returns the specified field as a new Field object, or, for a dictionary-encoded string, as the StringField that
+	 * the dictionary shares for its code.
+	 * 
+	 * @param i
+	 *            the index of the field.
+	 */
+	public Field getField(int i) {
+		if (tuple != null)
+			return tuple.getField(i);
+		StringDictionary dictionary = getDictionary();
+		if (dictionary != null && td.getType(i) == Type.STRING_TYPE)
+			return dictionary.field(getStringCode(i));
+		try {
+			return td.getType(i).parse(content, base + offsets[i]);
+		} catch (ParseException e) {
+			// a read of a page that is detached from its frame meanwhile fails here and is retried, so the failure is
+			// only reported by callers that do not retry
+			NoSuchElementException nse = new NoSuchElementException("parsing error!");
+			nse.initCause(e);
+			throw nse;
+		}
+	}
+
+	/**
+	 * Returns the viewed tuple as a new Tuple, which stays valid after this view is moved.
+	 */
+	public Tuple toTuple() {
+		if (tuple != null)
+			return tuple;
+		if (paxPage != null)
+			return paxPage.readTuple(content, entry, paxFields);
+		return page.readTuple(content, entry);
+	}
+
+	/**
+	 * Returns the bytes of the specified string in the form that {@link #compareString} and {@link #containsString}
+	 * accept, or null if the string has characters outside ASCII and must be compared as a Field.
+	 * 
+	 * @param s
+	 *            a string.
+	 */
+	public static byte[] asciiBytes(String s) {
+		byte[] bytes = new byte[s.length()];
+		for (int i = 0; i < bytes.length; i++) {
+			char c = s.charAt(i);
+			if (c >= 128)
+				return null;
+			bytes[i] = (byte) c;
+		}
+		return bytes;
+	}
+}
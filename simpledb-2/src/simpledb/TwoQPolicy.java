@@ -0,0 +1,112 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * TwoQPolicy implements the full 2Q algorithm (Johnson and Shasha, VLDB 1994). A page requested for the first time
+ * enters the FIFO queue A1in. Pages evicted from A1in are remembered, without their contents, in the ghost queue
+ * A1out. A page that is requested again while its ID is in A1out is promoted to the LRU queue Am. Pages that are
+ * touched only once, as in a large sequential scan, therefore never displace the pages in Am.
+ */
+public class TwoQPolicy extends AbstractReplacementPolicy {
+
+	/**
+	 * The target size of A1in.
+	 */
+	private final int kin;
+
+	/**
+	 * The maximum number of page IDs remembered in A1out.
+	 */
+	private final int kout;
+
+	/**
+	 * Resident pages seen once, in FIFO order.
+	 */
+	private final LinkedHashMap<PageId, Boolean> a1in = new LinkedHashMap<PageId, Boolean>();
+
+	/**
+	 * IDs of pages recently evicted from A1in, in FIFO order.
+	 */
+	private final LinkedHashMap<PageId, Boolean> a1out = new LinkedHashMap<PageId, Boolean>();
+
+	/**
+	 * Resident pages seen more than once, ordered from least to most recently used.
+	 */
+	private final LinkedHashMap<PageId, Boolean> am = new LinkedHashMap<PageId, Boolean>(16, 0.75f, true);
+
+	/**
+	 * Pages found in A1out when they were requested, which go to Am once they are read in.
+	 */
+	private final HashSet<PageId> promoted = new HashSet<PageId>();
+
+	/**
+	 * Creates a TwoQPolicy for a buffer pool of the specified size, using the tuning recommended by the paper: A1in
+	 * holds 25% of the pool and A1out remembers as many pages as half the pool.
+	 * 
+	 * @param capacity
+	 *            the number of pages in the buffer pool
+	 */
+	public TwoQPolicy(int capacity) {
+		this(Math.max(1, capacity / 4), Math.max(1, capacity / 2));
+	}
+
+	/**
+	 * Creates a TwoQPolicy with explicit queue sizes.
+	 * 
+	 * @param kin
+	 *            the target size of A1in
+	 * @param kout
+	 *            the maximum number of page IDs remembered in A1out
+	 */
+	public TwoQPolicy(int kin, int kout) {
+		this.kin = kin;
+		this.kout = kout;
+	}
+
+	protected synchronized void hit(PageId pid) {
+		// a hit in A1in does not move the page: correlated references should not promote it
+		am.get(pid);
+	}
+
+	protected synchronized void miss(PageId pid) {
+		// check A1out now, before making room for the page can push pid out of it
+		if (a1out.remove(pid) != null)
+			promoted.add(pid);
+	}
+
+	public synchronized void pageAdded(PageId pid) {
+		if (promoted.remove(pid))
+			am.put(pid, Boolean.TRUE);
+		else if (!am.containsKey(pid))
+			a1in.put(pid, Boolean.TRUE);
+	}
+
+	public synchronized void pageRemoved(PageId pid) {
+		a1in.remove(pid);
+		am.remove(pid);
+	}
+
+	public synchronized PageId chooseVictim() {
+		if (a1in.size() > kin || (am.isEmpty() && !a1in.isEmpty())) {
+			PageId victim = removeFirst(a1in);
+			a1out.put(victim, Boolean.TRUE);
+			if (a1out.size() > kout)
+				removeFirst(a1out);
+			return victim;
+		}
+		if (am.isEmpty())
+			return null;
+		return removeFirst(am);
+	}
+
+	/**
+	 * Removes and returns the first key of the specified map.
+	 */
+	static PageId removeFirst(LinkedHashMap<PageId, Boolean> map) {
+		Iterator<PageId> i = map.keySet().iterator();
+		PageId first = i.next();
+		i.remove();
+		return first;
+	}
+}
@@ -0,0 +1,18 @@
+package simpledb;
+
+/**
+ * ViewIterator is implemented by iterators that can return their tuples as a reusable {@link TupleView} instead of a
+ * new Tuple per call. Operators that inspect a few columns of many tuples, such as Filter and Join, use it to avoid
+ * decoding the tuples that they discard.
+ */
+public interface ViewIterator {
+
+	/**
+	 * Advances to the next tuple and returns a view of it. The view, and the tuple it shows, are only valid until the
+	 * next call to a method of this iterator. Calls to this method must not be interleaved with calls to hasNext or
+	 * next, which may read a tuple ahead.
+	 * 
+	 * @return a view of the next tuple, or null if there are no more tuples.
+	 */
+	public TupleView nextView() throws DbException, TransactionAbortedException;
+}
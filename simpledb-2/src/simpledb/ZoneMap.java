@@ -0,0 +1,303 @@
+package simpledb;
+
+import java.io.*;
+import java.util.Iterator;
+
+/**
+ * ZoneMap keeps, for each page of a HeapFile, the smallest and largest value of each field of the tuples on the page,
+ * so that a scan can skip the pages that cannot hold a tuple satisfying a predicate without reading them. Int fields
+ * are summarized by their values, and string fields by the first 4 characters of their values, packed into an int in
+ * the same order as the strings; a string whose first characters are not all ASCII makes the summary of its field on
+ * that page cover every value.
+ * <p>
+ * A summary only ever widens when a tuple is added; it shrinks when the page is summarized again. A page with no
+ * tuples has an empty summary and never matches.
+ * <p>
+ * The map is saved next to the data file by {@link #save} together with the length and modification time of the
+ * data file, and {@link #load} ignores a saved map that does not match them. The saved copy is deleted as soon as the
+ * map changes, so a map that was not saved again after a change is never loaded.
+ *
+ * @see HeapFile#zoneMap
+ * @see SeqScan#pushDown
+ */
+public class ZoneMap {
+
+	/**
+	 * The types of the fields of the tuples.
+	 */
+	private final Type[] types;
+
+	/**
+	 * The smallest and largest key of each field of each page: the bounds of field i of page p are at index
+	 * {@code 2 * (p * types.length + i)} and the next one.
+	 */
+	private int[] bounds = new int[0];
+
+	private int numPages;
+
+	/**
+	 * The file that this map was last saved to or loaded from, or null if the map has changed since.
+	 */
+	private File savedTo;
+
+	/**
+	 * Creates an empty map for tuples with fields of the specified types.
+	 */
+	public ZoneMap(Type[] types) {
+		this.types = types.clone();
+	}
+
+	/**
+	 * Returns the types of the fields of the specified TupleDesc.
+	 */
+	static Type[] typesOf(TupleDesc td) {
+		Type[] types = new Type[td.numFields()];
+		for (int i = 0; i < types.length; i++)
+			types[i] = td.getType(i);
+		return types;
+	}
+
+	/**
+	 * Returns the key of a string: its first 4 characters (padded with zeroes) packed into an int, which orders
+	 * strings as String.compareTo does, or -1 if one of those characters is not ASCII.
+	 */
+	static int prefixKey(String s) {
+		int key = 0;
+		for (int j = 0; j < 4; j++) {
+			char c = j < s.length() ? s.charAt(j) : 0;
+			if (c >= 128)
+				return -1;
+			key = key << 8 | c;
+		}
+		return key;
+	}
+
+	/**
+	 * Returns the key of the specified field of a tuple.
+	 */
+	private static int key(Field f) {
+		if (f instanceof IntField)
+			return ((IntField) f).getValue();
+		return prefixKey(((StringField) f).getValue());
+	}
+
+	/**
+	 * Returns the number of pages in this map.
+	 */
+	public synchronized int numPages() {
+		return numPages;
+	}
+
+	/**
+	 * Returns the smallest key of the specified field on the specified page.
+	 */
+	public synchronized int getMin(int pageNo, int field) {
+		return bounds[2 * (pageNo * types.length + field)];
+	}
+
+	/**
+	 * Returns the largest key of the specified field on the specified page.
+	 */
+	public synchronized int getMax(int pageNo, int field) {
+		return bounds[2 * (pageNo * types.length + field) + 1];
+	}
+
+	/**
+	 * Widens the summary of the specified page to cover the specified tuple.
+	 *
+	 * @param pageNo
+	 *            the number of the page; pages between the last page in this map and this one are added as empty.
+	 * @param t
+	 *            a tuple stored on the page.
+	 */
+	public synchronized void include(int pageNo, Tuple t) {
+		int[] keys = new int[types.length];
+		for (int i = 0; i < keys.length; i++)
+			keys[i] = key(t.getField(i));
+		include(pageNo, keys);
+	}
+
+	/**
+	 * Widens the summary of the specified page to cover a tuple with the specified keys, as computed by
+	 * {@link #prefixKey} for string fields.
+	 */
+	synchronized void include(int pageNo, int[] keys) {
+		changed();
+		extend(pageNo);
+		for (int i = 0, b = 2 * pageNo * types.length; i < types.length; i++, b += 2) {
+			int min = keys[i], max = keys[i];
+			if (types[i] == Type.STRING_TYPE && keys[i] < 0) {
+				min = Integer.MIN_VALUE;
+				max = Integer.MAX_VALUE;
+			}
+			if (min < bounds[b])
+				bounds[b] = min;
+			if (max > bounds[b + 1])
+				bounds[b + 1] = max;
+		}
+	}
+
+	/**
+	 * Replaces the summary of the specified page with one of the specified tuples.
+	 *
+	 * @param pageNo
+	 *            the number of the page.
+	 * @param tuples
+	 *            all tuples stored on the page.
+	 */
+	public synchronized void summarize(int pageNo, Iterator<Tuple> tuples) {
+		changed();
+		extend(pageNo);
+		clear(pageNo);
+		while (tuples.hasNext())
+			include(pageNo, tuples.next());
+	}
+
+	/**
+	 * Makes sure that this map covers the specified page, adding empty pages as needed.
+	 */
+	private void extend(int pageNo) {
+		if (pageNo < numPages)
+			return;
+		int needed = 2 * (pageNo + 1) * types.length;
+		if (needed > bounds.length) {
+			int[] b = new int[Math.max(needed, bounds.length * 2)];
+			System.arraycopy(bounds, 0, b, 0, bounds.length);
+			bounds = b;
+		}
+		while (numPages <= pageNo)
+			clear(numPages++);
+	}
+
+	/**
+	 * Makes the summary of the specified page empty.
+	 */
+	private void clear(int pageNo) {
+		for (int i = 0, b = 2 * pageNo * types.length; i < types.length; i++, b += 2) {
+			bounds[b] = Integer.MAX_VALUE;
+			bounds[b + 1] = Integer.MIN_VALUE;
+		}
+	}
+
+	/**
+	 * Deletes the saved copy of this map, which no longer matches it.
+	 */
+	private void changed() {
+		if (savedTo != null) {
+			savedTo.delete();
+			savedTo = null;
+		}
+	}
+
+	/**
+	 * Returns whether the specified page may hold a tuple that satisfies the specified predicate. The answer is true
+	 * for pages that this map does not cover.
+	 */
+	public synchronized boolean mayMatch(int pageNo, Predicate p) {
+		if (pageNo >= numPages)
+			return true;
+		int b = 2 * (pageNo * types.length + p.field);
+		int min = bounds[b], max = bounds[b + 1];
+		if (min > max)
+			return false;
+		if (types[p.field] == Type.INT_TYPE && p.operand instanceof IntField) {
+			int v = ((IntField) p.operand).getValue();
+			switch (p.op) {
+			case EQUALS:
+			case LIKE:
+				return min <= v && v <= max;
+			case NOT_EQUALS:
+				return min != v || max != v;
+			case LESS_THAN:
+				return min < v;
+			case LESS_THAN_OR_EQ:
+				return min <= v;
+			case GREATER_THAN:
+				return max > v;
+			case GREATER_THAN_OR_EQ:
+				return max >= v;
+			}
+		} else if (types[p.field] == Type.STRING_TYPE && p.operand instanceof StringField) {
+			// prefixes only bound the values, so strict comparisons are checked as non-strict ones
+			int k = prefixKey(((StringField) p.operand).getValue());
+			if (k < 0)
+				return true;
+			switch (p.op) {
+			case EQUALS:
+				return min <= k && k <= max;
+			case LESS_THAN:
+			case LESS_THAN_OR_EQ:
+				return min <= k;
+			case GREATER_THAN:
+			case GREATER_THAN_OR_EQ:
+				return max >= k;
+			default:
+				return true;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns whether the specified page may hold a tuple that satisfies all of the specified predicates.
+	 */
+	public synchronized boolean mayMatch(int pageNo, Iterable<Predicate> predicates) {
+		for (Predicate p : predicates)
+			if (!mayMatch(pageNo, p))
+				return false;
+		return true;
+	}
+
+	/**
+	 * Writes this map to the specified file, recording the length and modification time of the specified data file.
+	 */
+	public synchronized void save(File f, File dataFile) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f)));
+		try {
+			out.writeInt(types.length);
+			out.writeInt(numPages);
+			out.writeLong(dataFile.length());
+			out.writeLong(dataFile.lastModified());
+			for (int i = 0; i < 2 * numPages * types.length; i++)
+				out.writeInt(bounds[i]);
+		} finally {
+			out.close();
+		}
+		savedTo = f;
+	}
+
+	/**
+	 * Reads a map written by {@link #save}.
+	 *
+	 * @param f
+	 *            the file that the map was saved to.
+	 * @param dataFile
+	 *            the data file that the map summarizes.
+	 * @param types
+	 *            the types of the fields of the tuples in the data file.
+	 * @return the map, or null if f does not exist or does not match the data file.
+	 */
+	public static ZoneMap load(File f, File dataFile, Type[] types) throws IOException {
+		if (!f.exists())
+			return null;
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f)));
+		try {
+			if (in.readInt() != types.length)
+				return null;
+			int pages = in.readInt();
+			if (in.readLong() != dataFile.length() || in.readLong() != dataFile.lastModified())
+				return null;
+			ZoneMap map = new ZoneMap(types);
+			map.bounds = new int[2 * pages * types.length];
+			for (int i = 0; i < map.bounds.length; i++)
+				map.bounds[i] = in.readInt();
+			map.numPages = pages;
+			map.savedTo = f;
+			return map;
+		} catch (EOFException e) {
+			return null;
+		} finally {
+			in.close();
+		}
+	}
+}
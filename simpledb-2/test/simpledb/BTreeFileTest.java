@@ -0,0 +1,256 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Random;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class BTreeFileTest extends SimpleDbTestBase {
+
+    private static final Type[] TYPES = new Type[] { Type.INT_TYPE, Type.STRING_TYPE, Type.INT_TYPE };
+
+    private static final String[] NAMES = new String[] { "id", "name", "x" };
+
+    /**
+     * Creates an empty BTreeFile keyed on the specified field and adds it to the catalog.
+     */
+    private static BTreeFile createTree(int keyField) throws Exception {
+        File f = File.createTempFile("tree", ".dat");
+        f.deleteOnExit();
+        f.delete();
+        BTreeFile tree = new BTreeFile(f, new TupleDesc(TYPES, NAMES), keyField);
+        Database.getCatalog().addTable(tree, SystemTestUtil.getUUID());
+        return tree;
+    }
+
+    private static Tuple tuple(BTreeFile tree, int id, String name) {
+        Tuple t = new Tuple(tree.getTupleDesc());
+        t.setField(0, new IntField(id));
+        t.setField(1, new StringField(name, Type.STRING_LEN));
+        t.setField(2, new IntField(id * 2));
+        return t;
+    }
+
+    private static ArrayList<Tuple> collect(DbFileIterator it) throws Exception {
+        ArrayList<Tuple> result = new ArrayList<Tuple>();
+        it.open();
+        while (it.hasNext())
+            result.add(it.next());
+        it.close();
+        return result;
+    }
+
+    private static ArrayList<Integer> ids(ArrayList<Tuple> tuples) {
+        ArrayList<Integer> ids = new ArrayList<Integer>();
+        for (Tuple t : tuples)
+            ids.add(((IntField) t.getField(0)).getValue());
+        return ids;
+    }
+
+    /**
+     * Unit test for BTreeFile.addTuple(): tuples inserted in random order, with repeated keys, are scanned in key
+     * order after the leaves and the internal pages have split, and every range iterator returns the tuples of its
+     * range.
+     */
+    @Test public void insertAndRange() throws Exception {
+        BTreeFile tree = createTree(1);
+        ArrayList<Integer> ids = new ArrayList<Integer>();
+        for (int i = 0; i < 3000; i++)
+            ids.add(i);
+        Collections.shuffle(ids, new Random(7));
+        TransactionId tid = new TransactionId();
+        for (int id : ids)
+            Database.getBufferPool().insertTuple(tid, tree.getId(), tuple(tree, id, "n" + (id % 500 + 1000)));
+        // 3000 tuples of 140 bytes take over a hundred leaves, more than one internal page can point to
+        assertTrue(tree.numPages() > BTreeInternalPage.maxKeys(Type.STRING_TYPE) + 2);
+
+        ArrayList<Tuple> all = collect(tree.iterator(tid));
+        assertEquals(3000, all.size());
+        for (int i = 1; i < all.size(); i++)
+            assertTrue(BTreePage.compare(all.get(i - 1).getField(1), all.get(i).getField(1)) <= 0);
+
+        StringField key = new StringField("n1250", Type.STRING_LEN);
+        ArrayList<Tuple> equal = collect(tree.indexIterator(tid, Predicate.Op.EQUALS, key));
+        assertEquals(6, equal.size());
+        for (Tuple t : equal)
+            assertEquals(250, ((IntField) t.getField(0)).getValue() % 500);
+        for (Predicate.Op op : new Predicate.Op[] { Predicate.Op.LESS_THAN, Predicate.Op.LESS_THAN_OR_EQ,
+                Predicate.Op.GREATER_THAN, Predicate.Op.GREATER_THAN_OR_EQ }) {
+            int expected = 0;
+            for (Tuple t : all)
+                if (t.getField(1).compare(op, key))
+                    expected++;
+            assertEquals(op.toString(), expected, collect(tree.indexIterator(tid, op, key)).size());
+        }
+    }
+
+    /**
+     * Unit test for BTreeFile.deleteTuple(): deleting most of the tuples merges and redistributes the pages, returns
+     * them to the free list, and tuples that a merge has moved since they were read are still found.
+     */
+    @Test public void deleteAndMerge() throws Exception {
+        BTreeFile tree = createTree(0);
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < 20000; i++)
+            Database.getBufferPool().insertTuple(tid, tree.getId(), tuple(tree, i, "x"));
+        int pages = tree.numPages();
+        ArrayList<Tuple> all = collect(tree.iterator(tid));
+        assertEquals(20000, all.size());
+
+        Random random = new Random(3);
+        Collections.shuffle(all, random);
+        HashMap<Integer, Boolean> kept = new HashMap<Integer, Boolean>();
+        for (int i = 0; i < all.size(); i++) {
+            if (i < 19900)
+                Database.getBufferPool().deleteTuple(tid, all.get(i));
+            else
+                kept.put(((IntField) all.get(i).getField(0)).getValue(), true);
+        }
+        ArrayList<Integer> left = ids(collect(tree.iterator(tid)));
+        assertEquals(100, left.size());
+        for (int i = 0; i < left.size(); i++) {
+            assertTrue(kept.containsKey(left.get(i)));
+            if (i > 0)
+                assertTrue(left.get(i - 1) < left.get(i));
+        }
+
+        // the freed pages are reused instead of growing the file
+        for (int i = 0; i < 10000; i++)
+            Database.getBufferPool().insertTuple(tid, tree.getId(), tuple(tree, 20000 + i, "y"));
+        assertEquals(pages, tree.numPages());
+        assertEquals(10100, collect(tree.iterator(tid)).size());
+    }
+
+    /**
+     * Unit test for BTreeFile with a BufferPool of a few pages, which evicts the root while a split or a merge takes
+     * a page off the free list or adds one to it: no freed page is handed out twice, so the leaves stay in key order.
+     */
+    @Test public void smallBufferPool() throws Exception {
+        for (int poolPages : new int[] { 4, 5, 6 }) {
+            Database.resetBufferPool(poolPages);
+            BTreeFile tree = createTree(0);
+            TransactionId tid = new TransactionId();
+            ArrayList<Integer> expected = new ArrayList<Integer>();
+            Random random = new Random(poolPages);
+            for (int round = 0; round < 3; round++) {
+                for (int i = 0; i < 3000; i++) {
+                    int id = round * 3000 + i;
+                    Database.getBufferPool().insertTuple(tid, tree.getId(), tuple(tree, id, "x"));
+                    expected.add(id);
+                }
+                ArrayList<Tuple> all = collect(tree.iterator(tid));
+                assertEquals(expected.size(), all.size());
+                Collections.shuffle(all, random);
+                for (int i = 0; i < all.size() * 2 / 3; i++) {
+                    Database.getBufferPool().deleteTuple(tid, all.get(i));
+                    expected.remove((Integer) ((IntField) all.get(i).getField(0)).getValue());
+                }
+                Collections.sort(expected);
+                assertEquals(expected, ids(collect(tree.iterator(tid))));
+            }
+        }
+    }
+
+    /**
+     * Unit test for BTreeFile.addTuple(): the pages of a split, including the root that changes type, are dirtied in
+     * the BufferPool and returned instead of being written to disk, and they reach the disk when the pool is flushed.
+     */
+    @Test public void splitPagesStayInBufferPool() throws Exception {
+        BTreeFile tree = createTree(0);
+        TransactionId tid = new TransactionId();
+        ArrayList<Page> modified = new ArrayList<Page>();
+        int n = 0;
+        while (modified.size() < 2) {
+            modified = tree.addTuple(tid, tuple(tree, n++, "x"));
+            for (Page page : modified)
+                assertEquals(tid, page.isDirty());
+        }
+        // the root leaf split into two new leaves below it
+        assertEquals(3, modified.size());
+        BTreePage root = (BTreePage) Database.getBufferPool().getPage(tid, new HeapPageId(tree.getId(), 0),
+                Permissions.READ_ONLY);
+        assertTrue(modified.contains(root));
+        assertEquals(BTreePage.INTERNAL, root.getType());
+        assertEquals(BTreePage.LEAF, ((BTreePage) tree.readPage(new HeapPageId(tree.getId(), 0))).getType());
+        assertEquals(BTreePage.FREE, ((BTreePage) tree.readPage(new HeapPageId(tree.getId(), 1))).getType());
+
+        Database.getBufferPool().flushAllPages();
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        BTreeFile reopened = new BTreeFile(tree.getFile(), tree.getTupleDesc(), 0);
+        Database.getCatalog().addTable(reopened, SystemTestUtil.getUUID());
+        ArrayList<Integer> expected = new ArrayList<Integer>();
+        for (int i = 0; i < n; i++)
+            expected.add(i);
+        assertEquals(expected, ids(collect(reopened.iterator(tid))));
+    }
+
+    /**
+     * Unit test for BTreeFile.convert() and IndexScan: a range scan of the bulk-loaded tree returns the keys of the
+     * range in order, and LogicalPlan answers two filters on the key with one IndexScan.
+     */
+    @Test public void convertAndIndexScan() throws Exception {
+        File text = File.createTempFile("table", ".txt");
+        text.deleteOnExit();
+        FileWriter out = new FileWriter(text);
+        for (int i = 0; i < 50000; i++)
+            out.write((i * 7919 % 50000) + ",name" + i + "," + i + "\n");
+        out.close();
+        File f = File.createTempFile("tree", ".dat");
+        f.deleteOnExit();
+        BTreeFile.convert(text, f, TYPES, 0);
+        // SeqScan does not prefix the field names with the alias of the table, so the plan below finds "t.id" only
+        // if the table has that name
+        BTreeFile tree = new BTreeFile(f, new TupleDesc(TYPES, new String[] { "t.id", "t.name", "t.x" }), 0);
+        Database.getCatalog().addTable(tree, SystemTestUtil.getUUID());
+
+        TransactionId tid = new TransactionId();
+        Predicate p = new Predicate(0, Predicate.Op.GREATER_THAN_OR_EQ, new IntField(49990));
+        IndexScan scan = new IndexScan(tid, tree.getId(), "t", p);
+        scan.open();
+        ArrayList<Integer> ids = new ArrayList<Integer>();
+        while (scan.hasNext())
+            ids.add(((IntField) scan.next().getField(0)).getValue());
+        scan.close();
+        assertEquals(10, ids.size());
+        for (int i = 0; i < 10; i++)
+            assertEquals(49990 + i, (int) ids.get(i));
+
+        LogicalPlan lp = new LogicalPlan();
+        lp.addScan(tree.getId(), "t");
+        lp.addFilter("t.id", Predicate.Op.LESS_THAN, "5");
+        lp.addFilter("t.id", Predicate.Op.GREATER_THAN_OR_EQ, "2");
+        lp.addProjectField("t.x", null);
+        HashMap<String, TableStats> stats = new HashMap<String, TableStats>();
+        // Catalog.getTableName is not implemented here, so the plan looks the stats up under null
+        stats.put(null, new TableStats(tree.getId(), 1));
+        Project plan = (Project) lp.physicalPlan(tid, stats, false);
+        assertTrue(plan.child instanceof IndexScan);
+        plan.open();
+        int n = 0;
+        while (plan.hasNext()) {
+            int id = ((IntField) plan.next().getField(0)).getValue() * 7919 % 50000;
+            assertTrue(id >= 2 && id < 5);
+            n++;
+        }
+        assertEquals(3, n);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(BTreeFileTest.class);
+    }
+}
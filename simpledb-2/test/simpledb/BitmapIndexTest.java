@@ -0,0 +1,332 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.Vector;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class BitmapIndexTest extends SimpleDbTestBase {
+
+    /**
+     * Creates an empty HeapFile of three int fields, with the specified field names, and bitmap indexes on its second
+     * and third fields, and adds them to the catalog.
+     */
+    private static HeapFile createIndexedTable(String[] names) throws Exception {
+        File f = File.createTempFile("table", ".dat");
+        f.deleteOnExit();
+        HeapFile table = new HeapFile(f, new TupleDesc(new Type[] { Type.INT_TYPE, Type.INT_TYPE, Type.INT_TYPE },
+                names));
+        Database.getCatalog().addTable(table, SystemTestUtil.getUUID());
+        for (int field = 1; field < 3; field++) {
+            File index = File.createTempFile("table", ".bitmap");
+            index.deleteOnExit();
+            index.delete();
+            Database.getCatalog().addBitmapIndex(new BitmapIndex(index, table, field));
+        }
+        return table;
+    }
+
+    private static TreeSet<Integer> toSet(Bitmap b) {
+        TreeSet<Integer> result = new TreeSet<Integer>();
+        Bitmap.Cursor c = b.cursor();
+        int last = -1;
+        for (int x; (x = c.next()) >= 0; last = x) {
+            assertTrue(x > last);
+            result.add(x);
+        }
+        return result;
+    }
+
+    private static Bitmap random(Random r, TreeSet<Integer> expected, int n, int range) {
+        Bitmap b = new Bitmap();
+        for (int i = 0; i < n; i++) {
+            int x = r.nextInt(range);
+            assertEquals(expected.add(x), b.add(x));
+        }
+        return b;
+    }
+
+    /**
+     * Unit test for Bitmap: adds, removes, intersections and unions of sparse and dense containers agree with sets,
+     * and survive a write and read.
+     */
+    @Test public void bitmapOperations() throws Exception {
+        Random r = new Random(42);
+        TreeSet<Integer> sa = new TreeSet<Integer>();
+        TreeSet<Integer> sb = new TreeSet<Integer>();
+        // the first 65536 values are dense in a, sparse in b; the rest are sparse in both
+        Bitmap a = random(r, sa, 30000, 65536);
+        Bitmap b = random(r, sb, 1000, 65536);
+        for (int i = 0; i < 3000; i++) {
+            int x = 65536 + r.nextInt(1 << 22);
+            assertEquals(sa.add(x), a.add(x));
+            x = 65536 + r.nextInt(1 << 22);
+            assertEquals(sb.add(x), b.add(x));
+        }
+        for (int i = 0; i < 20000; i++) {
+            int x = r.nextInt(65536);
+            assertEquals(sa.remove(x), a.remove(x));
+        }
+        assertEquals(sa.size(), a.cardinality());
+        assertEquals(sa, toSet(a));
+        for (int x = 0; x < 1000; x++)
+            assertEquals(sa.contains(x), a.contains(x));
+
+        TreeSet<Integer> and = new TreeSet<Integer>(sa);
+        and.retainAll(sb);
+        TreeSet<Integer> or = new TreeSet<Integer>(sa);
+        or.addAll(sb);
+        assertEquals(and, toSet(a.and(b)));
+        assertEquals(and, toSet(b.and(a)));
+        assertEquals(and.size(), a.andCardinality(b));
+        assertEquals(or, toSet(a.or(b)));
+        assertEquals(or.size(), b.or(a).cardinality());
+        // the operands are unchanged
+        assertEquals(sa, toSet(a));
+        assertEquals(sb, toSet(b));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        a.write(new DataOutputStream(bytes));
+        Bitmap read = Bitmap.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertEquals(sa, toSet(read));
+    }
+
+    /**
+     * Unit test for BitmapIndex: inserts and deletes through the BufferPool keep the index in step with the table,
+     * and a saved index is read back instead of rebuilt.
+     */
+    @Test public void insertSelectDelete() throws Exception {
+        HeapFile table = createIndexedTable(new String[] { "a", "b", "c" });
+        BitmapIndex index = Database.getCatalog().getBitmapIndex(table.getId(), 1);
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < 10000; i++)
+            Database.getBufferPool().insertTuple(tid, table.getId(), Utility.getHeapTuple(new int[] { i, i % 10,
+                    i % 7 }));
+        assertEquals(10, index.values().size());
+        Predicate three = new Predicate(1, Predicate.Op.EQUALS, new IntField(3));
+        assertEquals(1000, index.select(three).cardinality());
+        assertEquals(3000, index.select(new Predicate(1, Predicate.Op.LESS_THAN, new IntField(3))).cardinality());
+        assertEquals(10000, index.all().cardinality());
+
+        // delete the tuples with b = 3 and every third tuple
+        DbFileIterator it = table.iterator(tid);
+        it.open();
+        ArrayList<Tuple> all = new ArrayList<Tuple>();
+        while (it.hasNext())
+            all.add(it.next());
+        it.close();
+        int deleted = 0;
+        for (int i = 0; i < all.size(); i++) {
+            Tuple t = all.get(i);
+            if (((IntField) t.getField(1)).getValue() == 3 || i % 3 == 0) {
+                Database.getBufferPool().deleteTuple(tid, t);
+                deleted++;
+            }
+        }
+        assertEquals(9, index.values().size());
+        assertFalse(index.values().contains(new IntField(3)));
+        assertEquals(10000 - deleted, index.all().cardinality());
+        HashSet<RecordId> expected = new HashSet<RecordId>();
+        it = table.iterator(tid);
+        it.open();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            if (((IntField) t.getField(1)).getValue() == 4)
+                expected.add(t.getRecordId());
+        }
+        it.close();
+        HashSet<RecordId> selected = new HashSet<RecordId>();
+        Bitmap.Cursor c = index.select(new Predicate(1, Predicate.Op.EQUALS, new IntField(4))).cursor();
+        for (int x; (x = c.next()) >= 0;)
+            selected.add(BitmapIndex.recordId(table.getId(), x));
+        assertEquals(expected, selected);
+
+        // a saved index is read back as long as the data file is unchanged
+        Database.getBufferPool().flushAllPages();
+        index.close();
+        assertTrue(index.getFile().exists());
+        BitmapIndex reopened = new BitmapIndex(index.getFile(), table, 1);
+        reopened.load(tid);
+        assertEquals(index.values(), reopened.values());
+        assertEquals(expected.size(), reopened.count(new IntField(4), reopened.all()));
+        // a change deletes the saved copy
+        Database.getBufferPool().insertTuple(tid, table.getId(), Utility.getHeapTuple(new int[] { 0, 4, 0 }));
+        assertFalse(index.getFile().exists());
+    }
+
+    /**
+     * Unit test for Catalog.loadSchema: a "bitmap" annotation declares an index, which is built from the existing
+     * tuples of the table.
+     */
+    @Test public void loadSchemaDeclaresIndex() throws Exception {
+        File text = File.createTempFile("table", ".txt");
+        text.deleteOnExit();
+        FileWriter out = new FileWriter(text);
+        for (int i = 0; i < 1000; i++)
+            out.write(i + "," + (i % 10) + "\n");
+        out.close();
+        File data = File.createTempFile("table", ".dat");
+        data.deleteOnExit();
+        HeapFileEncoder.convert(text, data, BufferPool.PAGE_SIZE, 2);
+        String name = data.getPath().substring(0, data.getPath().length() - 4);
+        new File(name + ".b.bitmap").deleteOnExit();
+
+        File schema = File.createTempFile("catalog", ".txt");
+        schema.deleteOnExit();
+        out = new FileWriter(schema);
+        out.write(name + " (a int pk, b int bitmap)\n");
+        out.close();
+        Database.getCatalog().loadSchema(schema.getPath());
+
+        int tableId = Database.getCatalog().getTableId(name);
+        assertEquals(1, Database.getCatalog().getBitmapIndexes(tableId).size());
+        BitmapIndex index = Database.getCatalog().getBitmapIndex(tableId, 1);
+        assertEquals(100, index.select(new Predicate(1, Predicate.Op.EQUALS, new IntField(3))).cardinality());
+    }
+
+    private static ArrayList<String> run(DbIterator plan) throws Exception {
+        ArrayList<String> result = new ArrayList<String>();
+        plan.open();
+        while (plan.hasNext())
+            result.add(plan.next().toString());
+        plan.close();
+        return result;
+    }
+
+    /**
+     * Unit test for BitmapScan and BitmapCount: LogicalPlan answers conjunctions and disjunctions of filters on
+     * indexed fields with a BitmapScan, and counts with a BitmapCount, with the same results as Filters over a
+     * SeqScan.
+     */
+    @Test public void plansUseIndex() throws Exception {
+        // SeqScan does not prefix the field names with the alias of the table, so the plans below find the fields
+        // only if the table has those names
+        HeapFile table = createIndexedTable(new String[] { "t.a", "t.b", "t.c" });
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < 5000; i++)
+            Database.getBufferPool().insertTuple(tid, table.getId(), Utility.getHeapTuple(new int[] { i, i % 10,
+                    i % 7 }));
+        HashMap<String, TableStats> stats = new HashMap<String, TableStats>();
+        // Catalog.getTableName is not implemented here, so the plan looks the stats up under null
+        stats.put(null, new TableStats(table.getId(), 1));
+
+        // b = 3 AND c >= 5 AND a < 2500
+        LogicalPlan lp = new LogicalPlan();
+        lp.addScan(table.getId(), "t");
+        lp.addFilter("t.b", Predicate.Op.EQUALS, "3");
+        lp.addFilter("t.c", Predicate.Op.GREATER_THAN_OR_EQ, "5");
+        lp.addFilter("t.a", Predicate.Op.LESS_THAN, "2500");
+        lp.addProjectField("t.a", null);
+        Project plan = (Project) lp.physicalPlan(tid, stats, false);
+        assertTrue(plan.child instanceof Filter);
+        assertTrue(((Filter) plan.child).child instanceof BitmapScan);
+        ArrayList<String> expected = run(new Project(new ArrayList<Integer>(java.util.Arrays.asList(0)),
+                new ArrayList<Type>(java.util.Arrays.asList(Type.INT_TYPE)), new Filter(new Predicate(0,
+                        Predicate.Op.LESS_THAN, new IntField(2500)), new Filter(new Predicate(2,
+                        Predicate.Op.GREATER_THAN_OR_EQ, new IntField(5)), new Filter(new Predicate(1,
+                        Predicate.Op.EQUALS, new IntField(3)), new SeqScan(tid, table.getId(), "t"))))));
+        assertEquals(72, expected.size());
+        assertEquals(expected, run(plan));
+
+        // (b = 1 OR b = 2 OR c = 0) AND b < 2
+        lp = new LogicalPlan();
+        lp.addScan(table.getId(), "t");
+        lp.addDisjunction(new Vector<String>(java.util.Arrays.asList("t.b", "t.b", "t.c")),
+                new Vector<Predicate.Op>(java.util.Arrays.asList(Predicate.Op.EQUALS, Predicate.Op.EQUALS,
+                        Predicate.Op.EQUALS)), new Vector<String>(java.util.Arrays.asList("1", "2", "0")));
+        lp.addFilter("t.b", Predicate.Op.LESS_THAN, "2");
+        lp.addProjectField("t.a", null);
+        plan = (Project) lp.physicalPlan(tid, stats, false);
+        assertTrue(plan.child instanceof BitmapScan);
+        int n = 0;
+        plan.open();
+        while (plan.hasNext()) {
+            int a = ((IntField) plan.next().getField(0)).getValue();
+            assertTrue(a % 10 == 1 || (a % 10 == 0 && a % 7 == 0));
+            n++;
+        }
+        plan.close();
+        assertEquals(500 + 5000 / 70 + 1, n);
+
+        // an OR on a field without a bitmap index is refused
+        lp = new LogicalPlan();
+        lp.addScan(table.getId(), "t");
+        lp.addDisjunction(new Vector<String>(java.util.Arrays.asList("t.a", "t.b")), new Vector<Predicate.Op>(
+                java.util.Arrays.asList(Predicate.Op.EQUALS, Predicate.Op.EQUALS)), new Vector<String>(
+                java.util.Arrays.asList("1", "2")));
+        lp.addProjectField("t.a", null);
+        try {
+            lp.physicalPlan(tid, stats, false);
+            assertTrue(false);
+        } catch (ParsingException e) {
+            // expected
+        }
+
+        // SELECT COUNT(t.a) WHERE c = 2
+        lp = new LogicalPlan();
+        lp.addScan(table.getId(), "t");
+        lp.addFilter("t.c", Predicate.Op.EQUALS, "2");
+        lp.addProjectField("t.a", "COUNT");
+        lp.addAggregate("COUNT", "t.a", null);
+        plan = (Project) lp.physicalPlan(tid, stats, false);
+        assertTrue(plan.child instanceof BitmapCount);
+        plan.open();
+        assertEquals(714, ((IntField) plan.next().getField(0)).getValue());
+        assertFalse(plan.hasNext());
+        plan.close();
+
+        // SELECT t.b, COUNT(t.a) WHERE c = 2 GROUP BY t.b
+        lp = new LogicalPlan();
+        lp.addScan(table.getId(), "t");
+        lp.addFilter("t.c", Predicate.Op.EQUALS, "2");
+        lp.addProjectField("t.b", null);
+        lp.addProjectField("t.a", "COUNT");
+        lp.addAggregate("COUNT", "t.a", "t.b");
+        plan = (Project) lp.physicalPlan(tid, stats, false);
+        assertTrue(plan.child instanceof BitmapCount);
+        int total = 0;
+        int groups = 0;
+        plan.open();
+        while (plan.hasNext()) {
+            Tuple t = plan.next();
+            int b = ((IntField) t.getField(0)).getValue();
+            int count = ((IntField) t.getField(1)).getValue();
+            int exact = 0;
+            for (int i = 0; i < 5000; i++)
+                if (i % 10 == b && i % 7 == 2)
+                    exact++;
+            assertEquals(exact, count);
+            total += count;
+            groups++;
+        }
+        plan.close();
+        assertEquals(10, groups);
+        assertEquals(714, total);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(BitmapIndexTest.class);
+    }
+}
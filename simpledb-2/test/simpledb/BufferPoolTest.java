@@ -0,0 +1,222 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class BufferPoolTest extends SimpleDbTestBase {
+
+    /** Counts readPage calls, and slows them down so that concurrent misses overlap. */
+    static class SlowHeapFile extends HeapFile {
+        final AtomicInteger reads = new AtomicInteger();
+
+        public SlowHeapFile(File f, TupleDesc td) {
+            super(f, td);
+        }
+
+        public Page readPage(PageId pid) throws NoSuchElementException {
+            reads.incrementAndGet();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            return super.readPage(pid);
+        }
+    }
+
+    private SlowHeapFile table;
+
+    @Before public void createTable() throws Exception {
+        File f = SystemTestUtil.createRandomHeapFileUnopened(2, 2000, 1000, null, null);
+        table = new SlowHeapFile(f, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(table, SystemTestUtil.getUUID());
+    }
+
+    /**
+     * Unit test for BufferPool.getPage(): a page is read once, and later requests are served from the cache.
+     */
+    @Test public void getPageCaches() throws Exception {
+        HeapPageId pid = new HeapPageId(table.getId(), 1);
+        Page p1 = Database.getBufferPool().getPage(null, pid, Permissions.READ_ONLY);
+        Page p2 = Database.getBufferPool().getPage(null, new HeapPageId(table.getId(), 1), Permissions.READ_ONLY);
+        assertSame(p1, p2);
+        assertEquals(1, table.reads.get());
+    }
+
+    /**
+     * Unit test for BufferPool.getPage(): many threads missing on the same page at once cause a single read.
+     */
+    @Test public void concurrentMissReadsOnce() throws Exception {
+        final int threads = 8;
+        final HeapPageId pid = new HeapPageId(table.getId(), 2);
+        final CountDownLatch start = new CountDownLatch(1);
+        final Page[] results = new Page[threads];
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            final int n = i;
+            workers[i] = new Thread() {
+                public void run() {
+                    try {
+                        start.await();
+                        results[n] = Database.getBufferPool().getPage(null, pid, Permissions.READ_ONLY);
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            };
+            workers[i].start();
+        }
+        start.countDown();
+        for (Thread t : workers)
+            t.join();
+
+        assertEquals(1, table.reads.get());
+        for (int i = 1; i < threads; i++)
+            assertSame(results[0], results[i]);
+    }
+
+    /**
+     * Unit test for BufferPool.getPage(): a full pool evicts a page instead of failing.
+     */
+    @Test public void getPageEvicts() throws Exception {
+        BufferPool pool = Database.resetBufferPool(2);
+        for (int i = 0; i < 3; i++)
+            pool.getPage(null, new HeapPageId(table.getId(), i), Permissions.READ_ONLY);
+        assertEquals(3, table.reads.get());
+        assertEquals(3, pool.getReplacementPolicy().getMisses());
+
+        // page 0 was neither referenced again nor loaded last, so it was evicted
+        pool.getPage(null, new HeapPageId(table.getId(), 2), Permissions.READ_ONLY);
+        assertEquals(3, table.reads.get());
+        pool.getPage(null, new HeapPageId(table.getId(), 0), Permissions.READ_ONLY);
+        assertEquals(4, table.reads.get());
+    }
+
+    /**
+     * Unit test for BufferPool.scanRingFor(): a scan over a large table does not evict cached pages.
+     */
+    @Test public void largeScanUsesRing() throws Exception {
+        BufferPool pool = Database.resetBufferPool(4);
+        pool.setScanStrategy(0.5, 2);
+        HeapFile big = SystemTestUtil.createRandomHeapFile(2, 504 * 10, null, null);
+        assertNull(pool.scanRingFor(2));
+        assertNotNull(pool.scanRingFor(big.numPages()));
+
+        for (int i = 0; i < 3; i++)
+            pool.getPage(null, new HeapPageId(table.getId(), i), Permissions.READ_ONLY);
+        SeqScan scan = new SeqScan(null, big.getId(), "");
+        scan.open();
+        int count = 0;
+        while (scan.hasNext()) {
+            scan.next();
+            count++;
+        }
+        scan.close();
+        assertEquals(504 * 10, count);
+
+        for (int i = 0; i < 3; i++)
+            pool.getPage(null, new HeapPageId(table.getId(), i), Permissions.READ_ONLY);
+        assertEquals(3, table.reads.get());
+    }
+
+    /**
+     * Unit test for BufferPool.prefetchPage(): a scan with read-ahead reads every page once and uses the prefetches.
+     */
+    @Test public void scanPrefetches() throws Exception {
+        BufferPool pool = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        pool.setReadAhead(4);
+        int count = 0;
+        DbFileIterator it = table.iterator(null);
+        it.open();
+        while (it.hasNext()) {
+            it.next();
+            count++;
+        }
+        it.close();
+        assertEquals(2000, count);
+        assertEquals(table.numPages(), table.reads.get());
+        assertEquals(table.numPages() - 2, pool.getPrefetcher().getIssued());
+        assertEquals(table.numPages() - 2, pool.getPrefetcher().getHits());
+        assertEquals(0, pool.getPrefetcher().getWasted());
+    }
+
+    /**
+     * Unit test for BufferPool.enableOffHeapFrames(): pages are read into frames, and a page evicted while a caller
+     * still holds it keeps its content after its frame is reused.
+     */
+    @Test public void offHeapFrames() throws Exception {
+        BufferPool pool = Database.resetBufferPool(4);
+        pool.enableOffHeapFrames();
+        FrameArena arena = pool.getFrameArena();
+        assertEquals(4 + BufferPool.SPARE_FRAMES, arena.size());
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 2000, null, tuples);
+
+        HeapPage held = (HeapPage) pool.getPage(null, new HeapPageId(f.getId(), 0), Permissions.READ_ONLY);
+        assertNull(held.data);
+        ArrayList<ArrayList<Integer>> expected = new ArrayList<ArrayList<Integer>>();
+        Iterator<Tuple> it = held.iterator();
+        while (it.hasNext())
+            expected.add(SystemTestUtil.tupleToList(it.next()));
+
+        for (int i = 1; i < f.numPages(); i++)
+            pool.getPage(null, new HeapPageId(f.getId(), i), Permissions.READ_ONLY);
+        assertEquals(BufferPool.SPARE_FRAMES, arena.available());
+        assertNull(held.view);
+        ArrayList<ArrayList<Integer>> actual = new ArrayList<ArrayList<Integer>>();
+        it = held.iterator();
+        while (it.hasNext())
+            actual.add(SystemTestUtil.tupleToList(it.next()));
+        assertEquals(expected, actual);
+        assertEquals(tuples.subList(0, expected.size()), expected);
+
+        pool.setScanStrategy(Double.MAX_VALUE, 1);
+        SystemTestUtil.matchTuples(f, tuples);
+    }
+
+    /**
+     * Unit test for HeapPage.pin(): the frame of a page that a scan is reading is not reused until the scan moves on.
+     */
+    @Test public void pinnedFrameIsNotReused() throws Exception {
+        BufferPool pool = Database.resetBufferPool(4);
+        pool.enableOffHeapFrames();
+        pool.setScanStrategy(Double.MAX_VALUE, 1);
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 2000, null, null);
+        HeapFile.HeapFileIterator it = (HeapFile.HeapFileIterator) f.iterator(null);
+        it.open();
+        TupleView v = it.nextView();
+        Tuple first = v.toTuple();
+
+        for (int i = 1; i < f.numPages(); i++)
+            pool.getPage(null, new HeapPageId(f.getId(), i), Permissions.READ_ONLY);
+        assertEquals(BufferPool.SPARE_FRAMES - 1, pool.getFrameArena().available());
+        assertEquals(SystemTestUtil.tupleToList(first), SystemTestUtil.tupleToList(v.toTuple()));
+
+        it.close();
+        assertEquals(BufferPool.SPARE_FRAMES, pool.getFrameArena().available());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(BufferPoolTest.class);
+    }
+}
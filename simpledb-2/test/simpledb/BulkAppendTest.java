@@ -0,0 +1,172 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.HashSet;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class BulkAppendTest extends SimpleDbTestBase {
+
+    private static final TupleDesc TD = new TupleDesc(new Type[] { Type.INT_TYPE, Type.INT_TYPE }, new String[] {
+            "a", "b" });
+
+    /**
+     * Creates an empty HeapFile of two int fields with the specified name, and adds it to the catalog.
+     */
+    private static HeapFile createTable(String name) throws Exception {
+        File f = File.createTempFile("table", ".dat");
+        f.deleteOnExit();
+        new File(f.getPath() + ".fsm").deleteOnExit();
+        new File(f.getPath() + ".zm").deleteOnExit();
+        HeapFile table = new HeapFile(f, TD);
+        Database.getCatalog().addTable(table, name);
+        return table;
+    }
+
+    private static ArrayList<Tuple> tuples(int first, int n) {
+        ArrayList<Tuple> tuples = new ArrayList<Tuple>();
+        for (int i = first; i < first + n; i++)
+            tuples.add(Utility.getHeapTuple(new int[] { i, i % 1000 }));
+        return tuples;
+    }
+
+    /**
+     * Returns the first fields of the tuples returned by the specified iterator.
+     */
+    private static ArrayList<Integer> read(DbFileIterator it) throws Exception {
+        ArrayList<Integer> keys = new ArrayList<Integer>();
+        it.open();
+        while (it.hasNext())
+            keys.add(((IntField) it.next().getField(0)).getValue());
+        it.close();
+        return keys;
+    }
+
+    /**
+     * Unit test for HeapFile.appendTuples(): the tuples go to full new pages after the existing ones, with one log
+     * record per batch of pages, and the free-space map, the zone map and the hash index of the table are updated.
+     */
+    @Test public void appendsAfterExistingPages() throws Exception {
+        HeapFile table = createTable(SystemTestUtil.getUUID());
+        File indexFile = File.createTempFile("table", ".hash");
+        indexFile.deleteOnExit();
+        indexFile.delete();
+        Database.getCatalog().addIndex(new HashIndex(indexFile, table, 1));
+        TransactionId tid = new TransactionId();
+        for (Tuple t : tuples(0, 10))
+            Database.getBufferPool().insertTuple(tid, table.getId(), t);
+        Database.getBufferPool().flushAllPages();
+        assertEquals(1, table.numPages());
+
+        int perPage = (BufferPool.PAGE_SIZE - 4) / 12;
+        int rows = perPage * HeapFile.APPEND_BATCH_PAGES + perPage / 2;
+        int records = Database.getLogFile().getTotalRecords();
+        ArrayList<Tuple> appended = tuples(10, rows);
+        assertEquals(rows, table.appendTuples(tid, new TupleArrayIterator(appended)));
+        assertEquals(records + 2, Database.getLogFile().getTotalRecords());
+
+        // the tuples fill new pages, and the page that was there keeps its room
+        assertEquals(1 + HeapFile.APPEND_BATCH_PAGES + 1, table.numPages());
+        assertEquals(new HeapPageId(table.getId(), 1), appended.get(0).getRecordId().getPageId());
+        assertEquals(new HeapPageId(table.getId(), HeapFile.APPEND_BATCH_PAGES + 1), appended.get(rows - 1)
+                .getRecordId().getPageId());
+        FreeSpaceMap map = table.freeSpaceMap();
+        assertEquals(table.numPages(), map.numPages());
+        assertTrue(map.freeSpace(0) > BufferPool.PAGE_SIZE / 2);
+        assertTrue(map.freeSpace(1) < 12);
+        assertTrue(map.freeSpace(HeapFile.APPEND_BATCH_PAGES + 1) > BufferPool.PAGE_SIZE / 3);
+        ZoneMap zones = table.zoneMap();
+        assertEquals(table.numPages(), zones.numPages());
+        assertEquals(10, zones.getMin(1, 0));
+        assertEquals(10 + perPage - 1, zones.getMax(1, 0));
+
+        ArrayList<Integer> keys = read(table.iterator(tid));
+        assertEquals(10 + rows, keys.size());
+        for (int i = 0; i < keys.size(); i++)
+            assertEquals(i, (int) keys.get(i));
+        HashSet<RecordId> expected = new HashSet<RecordId>();
+        for (Tuple t : appended)
+            if (((IntField) t.getField(1)).getValue() == 7)
+                expected.add(t.getRecordId());
+        expected.add(new RecordId(new HeapPageId(table.getId(), 0), 7));
+        HashIndex index = Database.getCatalog().getIndex(table.getId(), 1);
+        assertEquals(expected, new HashSet<RecordId>(index.lookup(tid, new IntField(7))));
+    }
+
+    /**
+     * Unit test for the COPY statement of the Parser: the rows of a text file are appended to the named table, and a
+     * file with a malformed line leaves the table unchanged.
+     */
+    @Test public void copyStatement() throws Exception {
+        String name = "copy" + SystemTestUtil.getUUID().replace("-", "");
+        HeapFile table = createTable(name);
+        File data = File.createTempFile("table", ".txt");
+        data.deleteOnExit();
+        FileWriter out = new FileWriter(data);
+        for (int i = 0; i < 5000; i++)
+            out.write(i + ", " + (i % 1000) + "\n" + (i % 100 == 0 ? "\n" : ""));
+        out.close();
+
+        Transaction t = new Transaction();
+        t.start();
+        Parser.setTransaction(t);
+        Parser.processNextStatement("COPY " + name + " FROM '" + data.getPath() + "';");
+        ArrayList<Integer> keys = read(table.iterator(t.getId()));
+        assertEquals(5000, keys.size());
+        assertEquals(4999, (int) keys.get(4999));
+
+        out = new FileWriter(data);
+        out.write("1,2\n3\n");
+        out.close();
+        Parser.processNextStatement("copy " + name + " from '" + data.getPath() + "'");
+        assertEquals(5000, read(table.iterator(t.getId())).size());
+        t.transactionComplete(false);
+        Parser.setTransaction(null);
+    }
+
+    /**
+     * Unit test for ClusteredFile.appendTuples(): the tuples go to the delta, so scans stay in key order before and
+     * after the delta is merged.
+     */
+    @Test public void appendsToClusteredDelta() throws Exception {
+        File f = File.createTempFile("table", ".dat");
+        f.deleteOnExit();
+        for (String suffix : new String[] { ".delta", ".fence", ".fsm", ".zm", ".merge", ".delta.fsm", ".delta.zm" })
+            new File(f.getPath() + suffix).deleteOnExit();
+        ClusteredFile table = new ClusteredFile(f, TD, 0);
+        table.setMergePages(0);
+        Database.getCatalog().addTable(table, SystemTestUtil.getUUID());
+        TransactionId tid = new TransactionId();
+        ArrayList<Tuple> tuples = new ArrayList<Tuple>();
+        for (int i = 0; i < 3000; i++)
+            tuples.add(Utility.getHeapTuple(new int[] { i * 7919 % 3000, i }));
+        assertEquals(3000, table.appendTuples(tid, new TupleArrayIterator(tuples)));
+        assertEquals(0, table.numPages());
+        assertTrue(table.deltaPages() > 0);
+
+        ArrayList<Integer> keys = read(table.iterator(tid));
+        assertEquals(3000, keys.size());
+        for (int i = 0; i < keys.size(); i++)
+            assertEquals(i, (int) keys.get(i));
+        assertTrue(table.merge(tid));
+        assertEquals(0, table.deltaPages());
+        assertEquals(keys, read(table.iterator(tid)));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(BulkAppendTest.class);
+    }
+}
@@ -1,6 +1,7 @@
 package simpledb;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.util.NoSuchElementException;
 
@@ -68,6 +69,35 @@ public class CatalogTest extends SimpleDbTestBase {
         assertEquals(-1, f.getId());
     }
 
+    /**
+     * Unit test for Catalog.parseStorage(): the storage words of a table are combined when they apply together, and
+     * rejected when they conflict or do not apply to the kind of the table.
+     */
+    @Test public void parseStorage() {
+        Catalog.Storage storage = Catalog.parseStorage(" Mapped dictionary pagesize=16k ");
+        assertEquals(null, storage.kind);
+        assertEquals("dictionary", storage.layout);
+        assertTrue(storage.mapped);
+        assertEquals(16384, storage.pageSize);
+        storage = Catalog.parseStorage("clustered fixed pagesize=8192");
+        assertEquals("clustered", storage.kind);
+        assertEquals(8192, storage.pageSize);
+        assertEquals(LzCodec.INSTANCE, Catalog.parseStorage("variable lz").codec);
+        assertEquals(BufferPool.PAGE_SIZE, Catalog.parseStorage("").pageSize);
+
+        String[] invalid = { "lz mapped", "pax deflate", "btree dictionary", "lsm variable", "clustered lz",
+                "column mapped", "pax btree", "variable dictionary", "lz deflate", "pagesize=4k pagesize=8k",
+                "lsm pagesize=8k", "pagesize=12k", "pagesize=x", "heap" };
+        for (String words : invalid) {
+            try {
+                Catalog.parseStorage(words);
+                Assert.fail("accepted the storage " + words);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
     /**
      * JUnit suite target
      */
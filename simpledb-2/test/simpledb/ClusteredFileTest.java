@@ -0,0 +1,433 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static simpledb.systemtest.SystemTestUtil.keyRange;
+import static simpledb.systemtest.SystemTestUtil.readTuples;
+import static simpledb.systemtest.SystemTestUtil.sortTuples;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Random;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class ClusteredFileTest extends SimpleDbTestBase {
+
+    /**
+     * Creates an empty ClusteredFile of two int fields, with the specified field names, clustered on its first field,
+     * and adds it to the catalog.
+     */
+    private static ClusteredFile createTable(String[] names) throws Exception {
+        File f = File.createTempFile("table", ".dat");
+        f.deleteOnExit();
+        for (String suffix : new String[] { ".delta", ".fence", ".fsm", ".zm", ".merge", ".swap", ".delta.fsm",
+                ".delta.zm", ".delta.next" })
+            new File(f.getPath() + suffix).deleteOnExit();
+        ClusteredFile table = new ClusteredFile(f, new TupleDesc(new Type[] { Type.INT_TYPE, Type.INT_TYPE },
+                names), 0);
+        Database.getCatalog().addTable(table, SystemTestUtil.getUUID());
+        return table;
+    }
+
+    /**
+     * Unit test for ClusteredFile: scans and range scans return the tuples in key order, from the sorted pages, the
+     * delta, or both, before and after merges and deletes.
+     */
+    @Test public void scansInKeyOrder() throws Exception {
+        ClusteredFile table = createTable(new String[] { "a", "b" });
+        table.setMergePages(0);
+        TransactionId tid = new TransactionId();
+        Random r = new Random(7);
+        ArrayList<ArrayList<Integer>> expected = new ArrayList<ArrayList<Integer>>();
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 3000; i++) {
+                // few distinct keys, so that equal keys span pages
+                int key = r.nextInt(1000);
+                Database.getBufferPool().insertTuple(tid, table.getId(), Utility.getHeapTuple(new int[] { key,
+                        expected.size() }));
+                ArrayList<Integer> values = new ArrayList<Integer>();
+                values.add(key);
+                values.add(expected.size());
+                expected.add(values);
+            }
+            sortTuples(expected, 1);
+            assertTrue(table.deltaPages() > 0);
+            ArrayList<ArrayList<Integer>> scanned = readTuples(table.iterator(tid));
+            // tuples with equal keys may come in any order
+            sortTuples(scanned, 1);
+            assertEquals(expected.size(), scanned.size());
+            assertEquals(new java.util.HashSet<ArrayList<Integer>>(expected),
+                    new java.util.HashSet<ArrayList<Integer>>(scanned));
+            for (int i = 0; i < expected.size(); i++)
+                assertEquals(expected.get(i).get(0), scanned.get(i).get(0));
+            assertEquals(keyRange(scanned, 250, 260), readTuples(table.rangeIterator(tid, new IntField(250), true,
+                    new IntField(260), true)));
+            assertEquals(keyRange(scanned, 251, 259), readTuples(table.rangeIterator(tid, new IntField(250), false,
+                    new IntField(260), false)));
+            assertEquals(keyRange(scanned, 990, 2000), readTuples(table.rangeIterator(tid, new IntField(990), true,
+                    null, false)));
+
+            if (round == 1) {
+                // delete the tuples with even keys from the sorted pages and the delta
+                DbFileIterator it = table.iterator(tid);
+                ArrayList<Tuple> all = new ArrayList<Tuple>();
+                it.open();
+                while (it.hasNext())
+                    all.add(it.next());
+                it.close();
+                for (Tuple t : all)
+                    if (((IntField) t.getField(0)).getValue() % 2 == 0)
+                        Database.getBufferPool().deleteTuple(tid, t);
+                ArrayList<ArrayList<Integer>> odd = new ArrayList<ArrayList<Integer>>();
+                for (ArrayList<Integer> t : expected)
+                    if (t.get(0) % 2 != 0)
+                        odd.add(t);
+                expected = odd;
+            }
+
+            int pages = table.numPages();
+            assertTrue(table.merge(tid));
+            assertEquals(0, table.deltaPages());
+            assertTrue(table.numPages() >= pages);
+        }
+
+        // a new ClusteredFile on the same files finds the same tuples, and the pages are in key order
+        Database.getBufferPool().flushAllPages();
+        ClusteredFile reopened = new ClusteredFile(table.getFile(), table.getTupleDesc(), 0);
+        Database.getCatalog().addTable(reopened, SystemTestUtil.getUUID());
+        ArrayList<ArrayList<Integer>> scanned = readTuples(reopened.iterator(tid));
+        sortTuples(scanned, 1);
+        assertEquals(expected.size(), scanned.size());
+        assertEquals(keyRange(scanned, 501, 503), readTuples(reopened.rangeIterator(tid, new IntField(501), true,
+                new IntField(503), true)));
+        int last = Integer.MIN_VALUE;
+        for (int i = 0; i < reopened.numPages(); i++) {
+            java.util.Iterator<Tuple> it = ((HeapPage) reopened.readPage(new HeapPageId(reopened.getId(), i)))
+                    .iterator();
+            while (it.hasNext()) {
+                int key = ((IntField) it.next().getField(0)).getValue();
+                assertTrue(key >= last);
+                last = key;
+            }
+        }
+    }
+
+    /**
+     * Unit test for ClusteredFile: a delta that reaches the merge threshold is merged in the background, once no
+     * scan is open.
+     */
+    @Test public void mergesInBackground() throws Exception {
+        ClusteredFile table = createTable(new String[] { "a", "b" });
+        table.setMergePages(2);
+        TransactionId tid = new TransactionId();
+        DbFileIterator open = table.iterator(tid);
+        open.open();
+        int n = 0;
+        while (table.deltaPages() < 2)
+            Database.getBufferPool().insertTuple(tid, table.getId(), Utility.getHeapTuple(new int[] { 1000 - n++,
+                    0 }));
+        Thread.sleep(100);
+        // the open scan keeps the merge from running
+        assertEquals(0, table.numPages());
+        open.close();
+        Database.getBufferPool().insertTuple(tid, table.getId(), Utility.getHeapTuple(new int[] { 1000 - n++, 0 }));
+        for (int i = 0; i < 500 && table.deltaPages() > 0; i++)
+            Thread.sleep(10);
+        assertEquals(0, table.deltaPages());
+        assertTrue(table.numPages() > 0);
+        ArrayList<ArrayList<Integer>> scanned = readTuples(table.iterator(tid));
+        assertEquals(n, scanned.size());
+        for (int i = 0; i < n; i++)
+            assertEquals(1000 - n + 1 + i, (int) scanned.get(i).get(0));
+    }
+
+    /**
+     * Unit test for ClusteredFile.merge: tuples inserted while a merge writes the merged file go to delta pages that
+     * it does not fold in, and are kept in the delta by the swap.
+     */
+    @Test public void insertsDuringMerge() throws Exception {
+        final ClusteredFile table = createTable(new String[] { "a", "b" });
+        table.setMergePages(0);
+        final TransactionId tid = new TransactionId();
+        ArrayList<Integer> expected = new ArrayList<Integer>();
+        for (int i = 0; i < 20000; i++) {
+            Database.getBufferPool().insertTuple(tid, table.getId(), Utility.getHeapTuple(new int[] {
+                    i * 7919 % 20000, 0 }));
+            expected.add(i * 7919 % 20000);
+        }
+        assertTrue(table.merge(tid));
+        for (int i = 0; i < 3000; i++)
+            Database.getBufferPool().insertTuple(tid, table.getId(), Utility.getHeapTuple(new int[] { i * 2, 1 }));
+        final Exception[] failure = new Exception[1];
+        Thread merger = new Thread() {
+            public void run() {
+                try {
+                    assertTrue(table.merge(tid));
+                } catch (Exception e) {
+                    failure[0] = e;
+                }
+            }
+        };
+        merger.start();
+        for (int i = 0; i < 3000; i++)
+            Database.getBufferPool().insertTuple(tid, table.getId(), Utility.getHeapTuple(new int[] { i * 2 + 1,
+                    2 }));
+        merger.join();
+        if (failure[0] != null)
+            throw failure[0];
+        for (int i = 0; i < 6000; i++)
+            expected.add(i);
+        Collections.sort(expected);
+
+        ArrayList<ArrayList<Integer>> scanned = readTuples(table.iterator(tid));
+        assertEquals(expected.size(), scanned.size());
+        for (int i = 0; i < expected.size(); i++)
+            assertEquals(expected.get(i), scanned.get(i).get(0));
+        assertTrue(table.merge(tid));
+        assertEquals(0, table.deltaPages());
+        assertEquals(expected.size(), readTuples(table.iterator(tid)).size());
+    }
+
+    /**
+     * Unit test for ClusteredFile.deleteTuple(): tuples read before a merge renumbered them are deleted by their
+     * fields, not by whatever tuple took over their old slots, and a tuple that is no longer stored is refused.
+     */
+    @Test public void deleteAfterMerge() throws Exception {
+        ClusteredFile table = createTable(new String[] { "a", "b" });
+        table.setMergePages(0);
+        TransactionId tid = new TransactionId();
+        ArrayList<ArrayList<Integer>> expected = new ArrayList<ArrayList<Integer>>();
+        for (int i = 0; i < 6000; i++) {
+            Database.getBufferPool().insertTuple(tid, table.getId(), Utility.getHeapTuple(new int[] {
+                    i * 7919 % 6000, i }));
+            expected.add(new ArrayList<Integer>(java.util.Arrays.asList(i * 7919 % 6000, i)));
+        }
+        Random r = new Random(5);
+        for (int round = 0; round < 3; round++) {
+            ArrayList<Tuple> all = new ArrayList<Tuple>();
+            DbFileIterator it = table.iterator(tid);
+            it.open();
+            while (it.hasNext())
+                all.add(it.next());
+            it.close();
+            // new keys land in the delta, so the merge moves every sorted tuple
+            for (int i = 0; i < 500; i++) {
+                int key = r.nextInt(6000);
+                Database.getBufferPool().insertTuple(tid, table.getId(), Utility.getHeapTuple(new int[] { key,
+                        -1 }));
+                expected.add(new ArrayList<Integer>(java.util.Arrays.asList(key, -1)));
+            }
+            assertTrue(table.merge(tid));
+            Collections.shuffle(all, r);
+            for (int i = 0; i < all.size() / 3; i++) {
+                Tuple t = all.get(i);
+                Database.getBufferPool().deleteTuple(tid, t);
+                expected.remove(new ArrayList<Integer>(java.util.Arrays.asList(((IntField) t.getField(0))
+                        .getValue(), ((IntField) t.getField(1)).getValue())));
+            }
+            sortTuples(expected, 1);
+            ArrayList<ArrayList<Integer>> scanned = readTuples(table.iterator(tid));
+            assertEquals(new java.util.HashSet<ArrayList<Integer>>(expected),
+                    new java.util.HashSet<ArrayList<Integer>>(scanned));
+            assertEquals(expected.size(), scanned.size());
+        }
+
+        Tuple gone = Utility.getHeapTuple(new int[] { 1, 12345 });
+        gone.setRecordId(new RecordId(new HeapPageId(table.getId(), table.numPages() + 3), 0));
+        try {
+            Database.getBufferPool().deleteTuple(tid, gone);
+            fail("deleted a tuple that is not stored");
+        } catch (DbException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Copies the specified file.
+     */
+    private static void copy(File from, File to) throws Exception {
+        FileInputStream in = new FileInputStream(from);
+        FileOutputStream out = new FileOutputStream(to);
+        byte[] buffer = new byte[4096];
+        for (int n; (n = in.read(buffer)) > 0;)
+            out.write(buffer, 0, n);
+        in.close();
+        out.close();
+    }
+
+    /**
+     * Writes a swap record for the specified table.
+     */
+    private static void writeSwapRecord(File f, int folded, long mergedLength, long deltaLength) throws Exception {
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(f.getPath() + ".swap"));
+        out.writeInt(folded);
+        out.writeLong(mergedLength);
+        out.writeLong(deltaLength);
+        out.close();
+    }
+
+    /**
+     * Unit test for ClusteredFile: a swap interrupted after its swap record was written is finished when the file is
+     * opened again, one with a swap record that does not match the files is refused, and the files of a merge
+     * without a complete swap record are deleted.
+     */
+    @Test public void finishesInterruptedSwap() throws Exception {
+        ClusteredFile merged = createTable(new String[] { "a", "b" });
+        merged.setMergePages(0);
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < 2000; i++)
+            Database.getBufferPool().insertTuple(tid, merged.getId(), Utility.getHeapTuple(new int[] { 1999 - i,
+                    i }));
+        assertTrue(merged.merge(tid));
+        ArrayList<ArrayList<Integer>> expected = readTuples(merged.iterator(tid));
+
+        // the merged file is in place, but the delta was not replaced yet
+        ClusteredFile table = createTable(new String[] { "a", "b" });
+        table.setMergePages(0);
+        for (int i = 0; i < 2000; i++)
+            Database.getBufferPool().insertTuple(tid, table.getId(), Utility.getHeapTuple(new int[] { 1999 - i,
+                    i }));
+        Database.getBufferPool().flushAllPages();
+        File f = table.getFile();
+        File delta = new File(f.getPath() + ".delta");
+        int folded = table.deltaPages();
+        copy(merged.getFile(), f);
+        new FileOutputStream(f.getPath() + ".delta.next").close();
+        writeSwapRecord(f, folded, f.length(), 0);
+        table.close();
+        // the pool holds the pages of the table as they were before the swap
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        ClusteredFile reopened = new ClusteredFile(f, table.getTupleDesc(), 0);
+        Database.getCatalog().addTable(reopened, SystemTestUtil.getUUID());
+        assertFalse(new File(f.getPath() + ".swap").exists());
+        assertFalse(new File(f.getPath() + ".delta.next").exists());
+        assertEquals(0, delta.length());
+        assertEquals(expected, readTuples(reopened.iterator(tid)));
+
+        // a swap record that does not match the files
+        writeSwapRecord(f, folded, f.length() + 1, 0);
+        try {
+            new ClusteredFile(f, table.getTupleDesc(), 0);
+            fail("opened a file whose swap record does not match it");
+        } catch (RuntimeException e) {
+            // expected
+        }
+
+        // an incomplete swap record: no file was replaced, so the merge is dropped
+        new FileOutputStream(f.getPath() + ".swap").close();
+        new FileOutputStream(f.getPath() + ".merge").close();
+        reopened.close();
+        reopened = new ClusteredFile(f, table.getTupleDesc(), 0);
+        Database.getCatalog().addTable(reopened, SystemTestUtil.getUUID());
+        assertFalse(new File(f.getPath() + ".swap").exists());
+        assertFalse(new File(f.getPath() + ".merge").exists());
+        assertEquals(expected, readTuples(reopened.iterator(tid)));
+    }
+
+    /**
+     * Unit test for Catalog.loadSchema: the "clustered" storage declares a ClusteredFile sorted on the primary key,
+     * which cannot have indexes.
+     */
+    @Test public void loadSchemaDeclaresClusteredTable() throws Exception {
+        File data = File.createTempFile("table", ".dat");
+        data.deleteOnExit();
+        String name = data.getPath().substring(0, data.getPath().length() - 4);
+        new File(data.getPath() + ".delta").deleteOnExit();
+        File schema = File.createTempFile("catalog", ".txt");
+        schema.deleteOnExit();
+        FileWriter out = new FileWriter(schema);
+        out.write(name + " (a int, b int pk) clustered\n");
+        out.close();
+        Database.getCatalog().loadSchema(schema.getPath());
+
+        DbFile file = Database.getCatalog().getDbFile(Database.getCatalog().getTableId(name));
+        assertTrue(file instanceof ClusteredFile);
+        assertEquals(1, ((ClusteredFile) file).keyField());
+        try {
+            Database.getCatalog().addBitmapIndex(new BitmapIndex(new File(name + ".a.bitmap"), (HeapFile) file, 0));
+            assertTrue(false);
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Unit test for LogicalPlan: a range filter on the cluster key is answered by an IndexScan, and an ORDER BY on
+     * the key needs no OrderBy.
+     */
+    @Test public void plansUseClusterKey() throws Exception {
+        // SeqScan does not prefix the field names with the alias of the table, so the plans below find the fields
+        // only if the table has those names
+        ClusteredFile table = createTable(new String[] { "t.a", "t.b" });
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < 2000; i++)
+            Database.getBufferPool().insertTuple(tid, table.getId(), Utility.getHeapTuple(new int[] { i * 7919 % 2000,
+                    i }));
+        table.merge(tid);
+        for (int i = 0; i < 100; i++)
+            Database.getBufferPool().insertTuple(tid, table.getId(), Utility.getHeapTuple(new int[] { i * 13 % 2000,
+                    -i }));
+        HashMap<String, TableStats> stats = new HashMap<String, TableStats>();
+        // Catalog.getTableName is not implemented here, so the plan looks the stats up under null
+        stats.put(null, new TableStats(table.getId(), 1));
+
+        LogicalPlan lp = new LogicalPlan();
+        lp.addScan(table.getId(), "t");
+        lp.addFilter("t.a", Predicate.Op.GREATER_THAN_OR_EQ, "500");
+        lp.addFilter("t.a", Predicate.Op.LESS_THAN, "600");
+        lp.addFilter("t.b", Predicate.Op.NOT_EQUALS, "-1");
+        lp.addProjectField("t.a", null);
+        lp.addOrderBy("t.a", true);
+        Project plan = (Project) lp.physicalPlan(tid, stats, false);
+        assertTrue(plan.child instanceof Filter);
+        assertTrue(((Filter) plan.child).child instanceof IndexScan);
+        int n = 0;
+        int last = 499;
+        plan.open();
+        while (plan.hasNext()) {
+            int a = ((IntField) plan.next().getField(0)).getValue();
+            assertTrue(a >= last && a < 600);
+            last = a;
+            n++;
+        }
+        plan.close();
+        // 100 keys of the sorted pages, and 507, 520, ..., 598 from the delta
+        assertEquals(100 + 8, n);
+
+        // a descending order, or an order on another field, still sorts
+        lp = new LogicalPlan();
+        lp.addScan(table.getId(), "t");
+        lp.addProjectField("t.a", null);
+        lp.addOrderBy("t.a", false);
+        plan = (Project) lp.physicalPlan(tid, stats, false);
+        assertTrue(plan.child instanceof OrderBy);
+        lp = new LogicalPlan();
+        lp.addScan(table.getId(), "t");
+        lp.addProjectField("t.a", null);
+        lp.addOrderBy("t.a", true);
+        plan = (Project) lp.physicalPlan(tid, stats, false);
+        assertTrue(plan.child instanceof SeqScan);
+        assertFalse(LogicalPlan.isSortedOn(plan.child, 1));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ClusteredFileTest.class);
+    }
+}
@@ -0,0 +1,161 @@
+package simpledb;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class ColumnFileTest extends SimpleDbTestBase {
+
+    private static final int ROWS = 10000;
+
+    /** A sorted id, a name with few distinct values, a constant flag and a random int. */
+    private static final Type[] TYPES = new Type[] { Type.INT_TYPE, Type.STRING_TYPE, Type.INT_TYPE, Type.INT_TYPE };
+
+    private File text;
+    private File file;
+    private ColumnFile table;
+
+    @Before public void createTable() throws Exception {
+        text = File.createTempFile("table", ".txt");
+        text.deleteOnExit();
+        FileWriter out = new FileWriter(text);
+        Random random = new Random(42);
+        for (int i = 0; i < ROWS; i++)
+            out.write(i + ",city" + (i * 7 % 13) + ",1," + random.nextInt() + "\n");
+        out.close();
+        file = File.createTempFile("table", ".col");
+        file.deleteOnExit();
+        for (int i = 0; i < TYPES.length; i++)
+            ColumnFile.columnFile(file, i).deleteOnExit();
+        ColumnFile.convert(text, file, TYPES);
+        table = new ColumnFile(file, new TupleDesc(TYPES, new String[] { "id", "city", "flag", "r" }));
+        Database.getCatalog().addTable(table, SystemTestUtil.getUUID());
+    }
+
+    private static ArrayList<Tuple> collect(DbIterator it) throws Exception {
+        ArrayList<Tuple> result = new ArrayList<Tuple>();
+        it.open();
+        while (it.hasNext())
+            result.add(it.next());
+        it.close();
+        return result;
+    }
+
+    private static ArrayList<Field> fields(Type type, int n, int distinct, boolean sorted) {
+        ArrayList<Field> values = new ArrayList<Field>();
+        Random random = new Random(n);
+        for (int i = 0; i < n; i++) {
+            int v = sorted ? i * distinct / n : random.nextInt(distinct);
+            values.add(type == Type.INT_TYPE ? new IntField(v - 5) : new StringField("s" + v, Type.STRING_LEN));
+        }
+        return values;
+    }
+
+    /**
+     * Unit test for ColumnSegment.encode(): every encoding decodes to the encoded values, and the smallest one is
+     * chosen.
+     */
+    @Test public void encodings() throws Exception {
+        for (Type type : new Type[] { Type.INT_TYPE, Type.STRING_TYPE }) {
+            ArrayList<Field> values = fields(type, 1000, 300, false);
+            for (int encoding = ColumnSegment.PLAIN; encoding <= ColumnSegment.FRAME_OF_REFERENCE; encoding++) {
+                byte[] data = ColumnSegment.encode(type, values, encoding);
+                if (data != null)
+                    assertArrayEquals(values.toArray(), ColumnSegment.decode(type, data));
+            }
+        }
+        assertEquals(ColumnSegment.RUN_LENGTH, encoding(Type.INT_TYPE, fields(Type.INT_TYPE, 1000, 3, true)));
+        assertEquals(ColumnSegment.FRAME_OF_REFERENCE, encoding(Type.INT_TYPE, fields(Type.INT_TYPE, 1000, 1000, false)));
+        assertEquals(ColumnSegment.DICTIONARY, encoding(Type.STRING_TYPE, fields(Type.STRING_TYPE, 1000, 20, false)));
+        // values that span the whole int range cannot be packed
+        ArrayList<Field> random = new ArrayList<Field>();
+        Random r = new Random(1);
+        for (int i = 0; i < 1000; i++)
+            random.add(new IntField(i == 0 ? Integer.MIN_VALUE : i == 1 ? Integer.MAX_VALUE : r.nextInt()));
+        assertEquals(ColumnSegment.PLAIN, encoding(Type.INT_TYPE, random));
+    }
+
+    private static int encoding(Type type, ArrayList<Field> values) throws Exception {
+        byte[] data = ColumnSegment.encode(type, values);
+        return java.nio.ByteBuffer.wrap(data).getInt(0);
+    }
+
+    /**
+     * Unit test for ColumnFile.convert() and SeqScan over a ColumnFile: the tuples are those of a HeapFile made from
+     * the same input, and the file converted from that HeapFile is the same.
+     */
+    @Test public void sameAsHeapFile() throws Exception {
+        File heap = File.createTempFile("table", ".dat");
+        heap.deleteOnExit();
+        new File(heap.getPath() + ".zm").deleteOnExit();
+        HeapFileEncoder.convert(text, heap, BufferPool.PAGE_SIZE, TYPES.length, TYPES);
+        HeapFile heapFile = new HeapFile(heap, table.getTupleDesc());
+        Database.getCatalog().addTable(heapFile, SystemTestUtil.getUUID());
+
+        assertEquals(ROWS, table.numTuples());
+        assertEquals((ROWS + ColumnFile.SEGMENT_TUPLES - 1) / ColumnFile.SEGMENT_TUPLES, table.numSegments());
+        ArrayList<Tuple> expected = collect(new SeqScan(null, heapFile.getId(), ""));
+        ArrayList<Tuple> actual = collect(new SeqScan(null, table.getId(), ""));
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++)
+            for (int j = 0; j < TYPES.length; j++)
+                assertEquals(expected.get(i).getField(j), actual.get(i).getField(j));
+
+        File copy = File.createTempFile("copy", ".col");
+        copy.deleteOnExit();
+        ColumnFile.convert(heapFile, copy);
+        for (int j = 0; j < TYPES.length; j++) {
+            ColumnFile.columnFile(copy, j).deleteOnExit();
+            assertEquals(ColumnFile.columnFile(file, j).length(), ColumnFile.columnFile(copy, j).length());
+        }
+    }
+
+    /**
+     * Unit test for SeqScan.needFields() over a ColumnFile: a Project over a Filter reads only the segments of the
+     * projected and filtered fields, far fewer bytes than the HeapFile would take.
+     */
+    @Test public void readsNeededColumnsOnly() throws Exception {
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        table.resetBytesRead();
+        Filter filter = new Filter(new Predicate(0, Predicate.Op.GREATER_THAN_OR_EQ, new IntField(ROWS - 10)),
+                new SeqScan(null, table.getId(), ""));
+        ArrayList<Type> types = new ArrayList<Type>(Arrays.asList(Type.STRING_TYPE));
+        ArrayList<Tuple> cities = collect(new Project(new ArrayList<Integer>(Arrays.asList(1)), types, filter));
+        assertEquals(10, cities.size());
+        for (int k = 0; k < 10; k++) {
+            int i = ROWS - 10 + k;
+            assertEquals(new StringField("city" + (i * 7 % 13), Type.STRING_LEN), cities.get(k).getField(0));
+        }
+        long expected = ColumnFile.columnFile(file, 0).length() + ColumnFile.columnFile(file, 1).length();
+        assertEquals(expected, table.getBytesRead());
+        assertTrue(table.getBytesRead() * 20 < table.heapBytes());
+    }
+
+    /**
+     * Unit test for ColumnFile.addTuple(): column files are read-only.
+     */
+    @Test(expected = DbException.class) public void readOnly() throws Exception {
+        Database.getBufferPool().insertTuple(new TransactionId(), table.getId(), Utility.getHeapTuple(1, 4));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ColumnFileTest.class);
+    }
+}
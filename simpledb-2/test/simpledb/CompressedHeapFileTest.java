@@ -0,0 +1,184 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static simpledb.systemtest.SystemTestUtil.readTuples;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class CompressedHeapFileTest extends SimpleDbTestBase {
+
+    private static final PageCodec[] CODECS = new PageCodec[] { LzCodec.INSTANCE, DeflateCodec.INSTANCE };
+
+    private static final TupleDesc TD = new TupleDesc(new Type[] { Type.INT_TYPE, Type.INT_TYPE }, new String[] {
+            "a", "b" });
+
+    /**
+     * Returns a temporary file whose directory, free-space and zone maps are deleted on exit.
+     */
+    private static File tempFile() throws Exception {
+        File f = File.createTempFile("table", ".dat");
+        f.deleteOnExit();
+        for (String suffix : new String[] { ".dir", ".fsm", ".zm" })
+            new File(f.getPath() + suffix).deleteOnExit();
+        return f;
+    }
+
+    /**
+     * Unit test for the codecs: pages of zeros, of repeated records and of random bytes decompress to themselves,
+     * and a truncated image is rejected.
+     */
+    @Test public void codecsRoundTrip() throws Exception {
+        Random r = new Random(3);
+        byte[][] pages = new byte[3][BufferPool.PAGE_SIZE];
+        for (int i = 0; i < BufferPool.PAGE_SIZE / 8; i++) {
+            pages[1][i * 8] = (byte) i;
+            pages[1][i * 8 + 4] = (byte) (i % 7);
+        }
+        r.nextBytes(pages[2]);
+        for (PageCodec codec : CODECS) {
+            for (byte[] page : pages) {
+                byte[] image = new byte[codec.maxCompressedLength(page.length)];
+                int length = codec.compress(page, page.length, image);
+                assertTrue(length <= image.length);
+                byte[] copy = new byte[page.length];
+                codec.decompress(image, 0, length, copy, copy.length);
+                assertTrue(Arrays.equals(page, copy));
+                if (page == pages[0])
+                    assertTrue(length < page.length / 16);
+                else if (page == pages[1])
+                    assertTrue(length < page.length * 3 / 4);
+
+                try {
+                    codec.decompress(image, 0, length / 2, copy, copy.length);
+                    fail("a truncated image decompressed");
+                } catch (IOException e) {
+                    // expected
+                }
+            }
+        }
+    }
+
+    /**
+     * Unit test for CompressedHeapFile: pages written through the BufferPool and by appendTuples are read back, also
+     * after they are rewritten into bigger slots and after the file is reopened, and take less space than plain
+     * pages.
+     */
+    @Test public void writeScanAndReopen() throws Exception {
+        for (PageCodec codec : CODECS) {
+            File f = tempFile();
+            CompressedHeapFile table = new CompressedHeapFile(f, TD, codec);
+            Database.getCatalog().addTable(table, SystemTestUtil.getUUID());
+            TransactionId tid = new TransactionId();
+            ArrayList<ArrayList<Integer>> expected = new ArrayList<ArrayList<Integer>>();
+            for (int i = 0; i < 5000; i++) {
+                Database.getBufferPool().insertTuple(tid, table.getId(), Utility.getHeapTuple(new int[] { i,
+                        i % 10 }));
+                expected.add(new ArrayList<Integer>(Arrays.asList(i, i % 10)));
+            }
+            ArrayList<Tuple> appended = new ArrayList<Tuple>();
+            for (int i = 5000; i < 8000; i++) {
+                appended.add(Utility.getHeapTuple(new int[] { i, i % 10 }));
+                expected.add(new ArrayList<Integer>(Arrays.asList(i, i % 10)));
+            }
+            table.appendTuples(tid, new TupleArrayIterator(appended));
+            Database.getBufferPool().flushAllPages();
+            Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+
+            table.resetStats();
+            assertEquals(expected, readTuples(table.iterator(tid)));
+            assertEquals(table.numPages(), table.pagesDecoded());
+            // the ints are small, so most of their bytes are zeros, which deflate codes in fewer bits than lz
+            assertTrue(table.compressionRatio() > (codec == LzCodec.INSTANCE ? 1.25 : 2.5));
+            assertTrue(f.length() < (long) table.numPages() * BufferPool.PAGE_SIZE);
+
+            // replace the small values of the first page with random ones, which do not fit in its slot
+            Random r = new Random(5);
+            DbFileIterator it = table.iterator(tid);
+            it.open();
+            ArrayList<Tuple> first = new ArrayList<Tuple>();
+            while (it.hasNext()) {
+                Tuple t = it.next();
+                if (t.getRecordId().getPageId().pageno() == 0)
+                    first.add(t);
+            }
+            it.close();
+            for (Tuple t : first) {
+                Database.getBufferPool().deleteTuple(tid, t);
+                int a = ((IntField) t.getField(0)).getValue();
+                int b = r.nextInt();
+                Database.getBufferPool().insertTuple(tid, table.getId(), Utility.getHeapTuple(new int[] { a, b }));
+                expected.get(a).set(1, b);
+            }
+            Database.getBufferPool().flushAllPages();
+            table.close();
+
+            CompressedHeapFile reopened = new CompressedHeapFile(f, TD, codec);
+            Database.getCatalog().addTable(reopened, SystemTestUtil.getUUID());
+            Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+            assertEquals(table.numPages(), reopened.numPages());
+            assertEquals(expected, readTuples(reopened.iterator(tid)));
+            reopened.close();
+        }
+    }
+
+    /**
+     * Unit test for CompressedHeapFile.convert() and Catalog.loadSchema: a converted heap file is declared with the
+     * name of its codec, and returns the tuples of the heap file.
+     */
+    @Test public void convertAndLoadSchema() throws Exception {
+        File plain = tempFile();
+        HeapFile heap = new HeapFile(plain, TD);
+        Database.getCatalog().addTable(heap, SystemTestUtil.getUUID());
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < 3000; i++)
+            Database.getBufferPool().insertTuple(tid, heap.getId(), Utility.getHeapTuple(new int[] { i, -i }));
+        Database.getBufferPool().flushAllPages();
+        ArrayList<ArrayList<Integer>> expected = readTuples(heap.iterator(tid));
+
+        File converted = tempFile();
+        CompressedHeapFile.convert(plain, converted, DeflateCodec.INSTANCE);
+        assertTrue(converted.length() < plain.length() / 2);
+        String name = converted.getPath().substring(0, converted.getPath().length() - 4);
+        File schema = File.createTempFile("catalog", ".txt");
+        schema.deleteOnExit();
+        FileWriter out = new FileWriter(schema);
+        out.write(name + " (a int, b int) deflate\n");
+        out.close();
+        Database.getCatalog().loadSchema(schema.getPath());
+
+        DbFile file = Database.getCatalog().getDbFile(Database.getCatalog().getTableId(name));
+        assertTrue(file instanceof CompressedHeapFile);
+        assertEquals(heap.numPages(), ((CompressedHeapFile) file).numPages());
+        assertEquals(expected, readTuples(file.iterator(tid)));
+
+        // a file compressed with one codec cannot be read with another
+        CompressedHeapFile wrong = new CompressedHeapFile(converted, TD, LzCodec.INSTANCE);
+        try {
+            wrong.numPages();
+            fail("opened a deflate file with the lz codec");
+        } catch (RuntimeException e) {
+            // expected
+        }
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(CompressedHeapFileTest.class);
+    }
+}
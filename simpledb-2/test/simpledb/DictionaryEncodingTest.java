@@ -0,0 +1,127 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class DictionaryEncodingTest extends SimpleDbTestBase {
+
+    private static final int ROWS = 2000;
+
+    private static final Type[] TYPES = new Type[] { Type.INT_TYPE, Type.STRING_TYPE, Type.STRING_TYPE };
+
+    private static final String[] NAMES = new String[] { "id", "status", "city" };
+
+    private File text;
+    private HeapFile fixed;
+    private HeapFile coded;
+
+    @Before public void createTables() throws Exception {
+        text = File.createTempFile("table", ".txt");
+        text.deleteOnExit();
+        FileWriter out = new FileWriter(text);
+        for (int i = 0; i < ROWS; i++)
+            out.write(i + ",status" + (i % 4) + ",city" + (i * 7 % 13) + "\n");
+        out.close();
+        fixed = createTable(false);
+        coded = createTable(true);
+    }
+
+    private HeapFile createTable(boolean dictionaryEncoded) throws Exception {
+        File f = File.createTempFile("table", ".dat");
+        f.deleteOnExit();
+        new File(f.getPath() + ".zm").deleteOnExit();
+        new File(f.getPath() + ".fsm").deleteOnExit();
+        new File(f.getPath() + ".dict").deleteOnExit();
+        HeapFileEncoder.convert(text, f, BufferPool.PAGE_SIZE, TYPES.length, TYPES, false, dictionaryEncoded);
+        HeapFile table = new HeapFile(f, new TupleDesc(TYPES, NAMES), false, dictionaryEncoded);
+        Database.getCatalog().addTable(table, SystemTestUtil.getUUID());
+        return table;
+    }
+
+    private static ArrayList<Tuple> collect(DbIterator it) throws Exception {
+        ArrayList<Tuple> result = new ArrayList<Tuple>();
+        it.open();
+        while (it.hasNext())
+            result.add(it.next());
+        it.close();
+        return result;
+    }
+
+    /**
+     * Unit test for HeapFileEncoder.convert() with dictionaryEncoded set: the file is much smaller, its tuples are
+     * those of the fixed-length file, and equal strings are read as the same StringField.
+     */
+    @Test public void sameTuples() throws Exception {
+        assertEquals(17, coded.getDictionary().size());
+        assertTrue(coded.numPages() * 10 < fixed.numPages());
+        ArrayList<Tuple> expected = collect(new SeqScan(null, fixed.getId(), ""));
+        ArrayList<Tuple> actual = collect(new SeqScan(null, coded.getId(), ""));
+        assertEquals(ROWS, actual.size());
+        for (int i = 0; i < ROWS; i++)
+            for (int j = 0; j < TYPES.length; j++)
+                assertEquals(expected.get(i).getField(j), actual.get(i).getField(j));
+        assertSame(actual.get(1).getField(1), actual.get(5).getField(1));
+    }
+
+    /**
+     * Unit test for Predicate and JoinPredicate over dictionary-encoded strings: every comparison gives the result
+     * it gives on the fixed-length file, including for strings the dictionary does not have.
+     */
+    @Test public void filterAndJoin() throws Exception {
+        for (Predicate.Op op : Predicate.Op.values())
+            for (String value : new String[] { "status2", "city5", "city", "missing" })
+                for (int field = 1; field <= 2; field++) {
+                    Predicate p = new Predicate(field, op, new StringField(value, Type.STRING_LEN));
+                    int n = collect(new Filter(p, new SeqScan(null, fixed.getId(), ""))).size();
+                    p = new Predicate(field, op, new StringField(value, Type.STRING_LEN));
+                    assertEquals(op + " " + value, n, collect(new Filter(p, new SeqScan(null, coded.getId(), ""))).size());
+                }
+
+        Filter outer = new Filter(new Predicate(0, Predicate.Op.LESS_THAN, new IntField(10)),
+                new SeqScan(null, fixed.getId(), ""));
+        JoinPredicate jp = new JoinPredicate(1, Predicate.Op.EQUALS, 1);
+        assertEquals(10 * ROWS / 4, collect(new Join(jp, outer, new SeqScan(null, coded.getId(), ""))).size());
+    }
+
+    /**
+     * Unit test for inserts into a dictionary-encoded HeapFile: a new string gets the next code, which is saved to
+     * the dictionary file and read back by a new HeapFile.
+     */
+    @Test public void insertNewString() throws Exception {
+        TransactionId tid = new TransactionId();
+        Tuple t = new Tuple(coded.getTupleDesc());
+        t.setField(0, new IntField(-1));
+        t.setField(1, new StringField("status9", Type.STRING_LEN));
+        t.setField(2, new StringField("city0", Type.STRING_LEN));
+        Database.getBufferPool().insertTuple(tid, coded.getId(), t);
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(18, coded.getDictionary().size());
+
+        HeapFile reopened = new HeapFile(coded.getFile(), coded.getTupleDesc(), false, true);
+        Database.getCatalog().addTable(reopened, SystemTestUtil.getUUID());
+        Predicate p = new Predicate(1, Predicate.Op.EQUALS, new StringField("status9", Type.STRING_LEN));
+        ArrayList<Tuple> found = collect(new Filter(p, new SeqScan(null, reopened.getId(), "")));
+        assertEquals(1, found.size());
+        assertEquals(new IntField(-1), found.get(0).getField(0));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(DictionaryEncodingTest.class);
+    }
+}
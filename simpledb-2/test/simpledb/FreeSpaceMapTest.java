@@ -0,0 +1,129 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class FreeSpaceMapTest extends SimpleDbTestBase {
+
+    /** The number of two-int tuples that fit on a page. */
+    private static final int PER_PAGE = (BufferPool.PAGE_SIZE - 4) / (2 * 4 + 4);
+
+    private File file;
+    private HeapFile table;
+    private TransactionId tid;
+
+    @Before public void createTable() throws Exception {
+        file = File.createTempFile("empty", ".dat");
+        file.deleteOnExit();
+        new File(file.getPath() + ".fsm").deleteOnExit();
+        table = Utility.createEmptyHeapFile(file.getAbsolutePath(), 2);
+        tid = new TransactionId();
+    }
+
+    /**
+     * Unit test for FreeSpaceMap.findPage(): finds the fullest page with enough room, and no page once none has room.
+     */
+    @Test public void findPage() {
+        FreeSpaceMap map = new FreeSpaceMap();
+        map.update(0, 100);
+        map.update(1, 4000);
+        map.update(2, 500);
+        assertEquals(0, map.findPage(12));
+        assertEquals(2, map.findPage(101));
+        assertEquals(1, map.findPage(501));
+        assertEquals(-1, map.findPage(4001));
+
+        map.update(1, 0);
+        assertEquals(-1, map.findPage(501));
+        map.update(0, 4000);
+        assertEquals(0, map.findPage(501));
+        assertEquals(2, map.findPage(101));
+    }
+
+    /**
+     * Unit test for HeapFile.addTuple(): pages are filled before new ones are appended, and space freed by deletes is
+     * reused.
+     */
+    @Test public void insertFillsPages() throws Exception {
+        ArrayList<Tuple> inserted = new ArrayList<Tuple>();
+        for (int i = 0; i < 3 * PER_PAGE; i++) {
+            Tuple t = Utility.getHeapTuple(i, 2);
+            Database.getBufferPool().insertTuple(tid, table.getId(), t);
+            inserted.add(t);
+            assertEquals(i / PER_PAGE + 1, table.numPages());
+        }
+
+        // free some space on the first page, which the next inserts should fill
+        for (int i = 0; i < 10; i++)
+            Database.getBufferPool().deleteTuple(tid, inserted.get(i * 7));
+        for (int i = 0; i < 10; i++) {
+            Tuple t = Utility.getHeapTuple(-i, 2);
+            Database.getBufferPool().insertTuple(tid, table.getId(), t);
+            assertEquals(0, t.getRecordId().getPageId().pageno());
+        }
+        assertEquals(3, table.numPages());
+
+        Database.getBufferPool().flushAllPages();
+        int count = 0;
+        DbFileIterator it = table.iterator(tid);
+        it.open();
+        while (it.hasNext()) {
+            it.next();
+            count++;
+        }
+        it.close();
+        assertEquals(3 * PER_PAGE, count);
+    }
+
+    /**
+     * Unit test for HeapFile.close(): the free-space map is saved and used when the file is opened again.
+     */
+    @Test public void persistent() throws Exception {
+        for (int i = 0; i < PER_PAGE + 1; i++)
+            Database.getBufferPool().insertTuple(tid, table.getId(), Utility.getHeapTuple(i, 2));
+        Database.getBufferPool().flushAllPages();
+        table.close();
+        assertTrue(table.freeSpaceFile().exists());
+
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        HeapFile reopened = Utility.openHeapFile(2, file);
+        FreeSpaceMap map = FreeSpaceMap.load(reopened.freeSpaceFile(), reopened.numPages());
+        assertEquals(2, map.numPages());
+        assertTrue(map.freeSpace(0) < 12);
+        assertTrue(map.freeSpace(1) > BufferPool.PAGE_SIZE - 40);
+
+        Tuple t = Utility.getHeapTuple(0, 2);
+        Database.getBufferPool().insertTuple(tid, reopened.getId(), t);
+        assertEquals(1, t.getRecordId().getPageId().pageno());
+        assertEquals(2, reopened.numPages());
+    }
+
+    /**
+     * Unit test for FreeSpaceMap.load(): a map saved for a longer file is ignored.
+     */
+    @Test public void staleMapIgnored() throws Exception {
+        FreeSpaceMap map = new FreeSpaceMap();
+        for (int i = 0; i < 5; i++)
+            map.update(i, 1000);
+        map.save(table.freeSpaceFile());
+        assertEquals(0, FreeSpaceMap.load(table.freeSpaceFile(), 1).numPages());
+        assertEquals(5, FreeSpaceMap.load(table.freeSpaceFile(), 5).numPages());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(FreeSpaceMapTest.class);
+    }
+}
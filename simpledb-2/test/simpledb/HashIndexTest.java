@@ -0,0 +1,188 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class HashIndexTest extends SimpleDbTestBase {
+
+    /**
+     * Creates an empty HeapFile of two int fields, with the specified field names, and a hash index on its second
+     * field, and adds both to the catalog.
+     */
+    private static HeapFile createIndexedTable(String[] names) throws Exception {
+        File f = File.createTempFile("table", ".dat");
+        f.deleteOnExit();
+        HeapFile table = new HeapFile(f, new TupleDesc(new Type[] { Type.INT_TYPE, Type.INT_TYPE }, names));
+        Database.getCatalog().addTable(table, SystemTestUtil.getUUID());
+        File index = File.createTempFile("table", ".hash");
+        index.deleteOnExit();
+        index.delete();
+        Database.getCatalog().addIndex(new HashIndex(index, table, 1));
+        return table;
+    }
+
+    private static Tuple tuple(HeapFile table, int a, int b) {
+        Tuple t = new Tuple(table.getTupleDesc());
+        t.setField(0, new IntField(a));
+        t.setField(1, new IntField(b));
+        return t;
+    }
+
+    private static HashSet<RecordId> lookup(HashIndex index, TransactionId tid, int key) throws Exception {
+        return new HashSet<RecordId>(index.lookup(tid, new IntField(key)));
+    }
+
+    /**
+     * Unit test for HashIndex: inserts and deletes through the BufferPool keep the index in step with the table,
+     * after buckets have split and a key repeated more times than a bucket holds has taken overflow pages.
+     */
+    @Test public void insertLookupDelete() throws Exception {
+        HeapFile table = createIndexedTable(new String[] { "a", "b" });
+        HashIndex index = Database.getCatalog().getIndex(table.getId(), 1);
+        TransactionId tid = new TransactionId();
+        HashMap<Integer, HashSet<RecordId>> expected = new HashMap<Integer, HashSet<RecordId>>();
+        for (int i = 0; i < 20000; i++) {
+            // key 0 is on a quarter of the tuples, far more than fit on one bucket page
+            int key = i % 4 == 0 ? 0 : i % 3000;
+            Tuple t = tuple(table, i, key);
+            Database.getBufferPool().insertTuple(tid, table.getId(), t);
+            if (!expected.containsKey(key))
+                expected.put(key, new HashSet<RecordId>());
+            expected.get(key).add(t.getRecordId());
+        }
+        assertTrue(index.numPages() > 5000 / HashBucketPage.capacity(Type.INT_TYPE));
+        for (int key : new int[] { 0, 1, 7, 2999 })
+            assertEquals(expected.get(key), lookup(index, tid, key));
+        assertEquals(0, lookup(index, tid, 3000).size());
+
+        // delete every other tuple
+        DbFileIterator it = table.iterator(tid);
+        it.open();
+        ArrayList<Tuple> all = new ArrayList<Tuple>();
+        while (it.hasNext())
+            all.add(it.next());
+        it.close();
+        for (int i = 0; i < all.size(); i += 2) {
+            Tuple t = all.get(i);
+            expected.get(((IntField) t.getField(1)).getValue()).remove(t.getRecordId());
+            Database.getBufferPool().deleteTuple(tid, t);
+        }
+        for (int key : new int[] { 0, 1, 7, 2999 })
+            assertEquals(expected.get(key), lookup(index, tid, key));
+
+        // a new index on the same file rebuilds the directory from the pages
+        Database.getBufferPool().flushAllPages();
+        HashIndex reopened = new HashIndex(index.getFile(), table, 1);
+        Database.getCatalog().addIndex(reopened);
+        assertEquals(expected.get(0), lookup(reopened, tid, 0));
+        assertEquals(expected.get(1234), lookup(reopened, tid, 1234));
+    }
+
+    /**
+     * Unit test for Catalog.loadSchema: a "hash" annotation declares an index, which is built from the existing
+     * tuples of the table.
+     */
+    @Test public void loadSchemaDeclaresIndex() throws Exception {
+        File text = File.createTempFile("table", ".txt");
+        text.deleteOnExit();
+        FileWriter out = new FileWriter(text);
+        for (int i = 0; i < 1000; i++)
+            out.write(i + "," + (i % 10) + "\n");
+        out.close();
+        File data = File.createTempFile("table", ".dat");
+        data.deleteOnExit();
+        HeapFileEncoder.convert(text, data, BufferPool.PAGE_SIZE, 2);
+        String name = data.getPath().substring(0, data.getPath().length() - 4);
+        new File(name + ".b.hash").deleteOnExit();
+
+        File schema = File.createTempFile("catalog", ".txt");
+        schema.deleteOnExit();
+        out = new FileWriter(schema);
+        out.write(name + " (a int pk, b int hash)\n");
+        out.close();
+        Database.getCatalog().loadSchema(schema.getPath());
+
+        int tableId = Database.getCatalog().getTableId(name);
+        assertEquals(1, Database.getCatalog().getIndexes(tableId).size());
+        HashIndex index = Database.getCatalog().getIndex(tableId, 1);
+        assertEquals(100, index.lookup(new TransactionId(), new IntField(3)).size());
+    }
+
+    /**
+     * Unit test for HashIndexScan and IndexJoin: LogicalPlan answers an equality filter on an indexed field with a
+     * HashIndexScan, and an equi-join with the indexed table with an IndexJoin.
+     */
+    @Test public void plansUseIndex() throws Exception {
+        // SeqScan does not prefix the field names with the alias of the table, so the plans below find the fields
+        // only if the tables have those names
+        HeapFile indexed = createIndexedTable(new String[] { "t.a", "t.b" });
+        HeapFile outer = new HeapFile(File.createTempFile("table", ".dat"), new TupleDesc(new Type[] { Type.INT_TYPE,
+                Type.INT_TYPE }, new String[] { "s.a", "s.b" }));
+        outer.getFile().deleteOnExit();
+        Database.getCatalog().addTable(outer, SystemTestUtil.getUUID());
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < 5000; i++)
+            Database.getBufferPool().insertTuple(tid, indexed.getId(), tuple(indexed, i, i % 500));
+        for (int i = 0; i < 20; i++)
+            Database.getBufferPool().insertTuple(tid, outer.getId(), tuple(outer, i, i * 3));
+        HashMap<String, TableStats> stats = new HashMap<String, TableStats>();
+        // Catalog.getTableName is not implemented here, so the plan looks the stats up under null
+        stats.put(null, new TableStats(indexed.getId(), 1));
+
+        LogicalPlan lp = new LogicalPlan();
+        lp.addScan(indexed.getId(), "t");
+        lp.addFilter("t.b", Predicate.Op.EQUALS, "42");
+        lp.addProjectField("t.a", null);
+        Project plan = (Project) lp.physicalPlan(tid, stats, false);
+        assertTrue(plan.child instanceof HashIndexScan);
+        plan.open();
+        int n = 0;
+        while (plan.hasNext()) {
+            assertEquals(42, ((IntField) plan.next().getField(0)).getValue() % 500);
+            n++;
+        }
+        assertEquals(10, n);
+
+        JoinPredicate p = new JoinPredicate(1, Predicate.Op.EQUALS, 1);
+        JoinOptimizer jo = new JoinOptimizer(lp, new java.util.Vector<LogicalJoinNode>());
+        DbIterator join = jo.instantiateJoin(new LogicalJoinNode("s", "t", "s.b", "t.b", Predicate.Op.EQUALS),
+                new SeqScan(tid, outer.getId(), "s"), new SeqScan(tid, indexed.getId(), "t"), stats);
+        assertTrue(join instanceof IndexJoin);
+        Join nested = new Join(p, new SeqScan(tid, outer.getId(), "s"), new SeqScan(tid, indexed.getId(), "t"));
+        HashSet<String> expected = new HashSet<String>();
+        nested.open();
+        while (nested.hasNext())
+            expected.add(nested.next().toString());
+        nested.close();
+        assertEquals(20 * 10, expected.size());
+        join.open();
+        for (int pass = 0; pass < 2; pass++) {
+            HashSet<String> joined = new HashSet<String>();
+            while (join.hasNext())
+                joined.add(join.next().toString());
+            assertEquals(expected, joined);
+            join.rewind();
+        }
+        join.close();
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(HashIndexTest.class);
+    }
+}
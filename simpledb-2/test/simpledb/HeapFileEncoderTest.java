@@ -0,0 +1,120 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class HeapFileEncoderTest extends SimpleDbTestBase {
+
+    private static final Type[] TYPES = new Type[] { Type.INT_TYPE, Type.STRING_TYPE, Type.INT_TYPE };
+
+    private static final String[] NAMES = new String[] { "id", "name", "value" };
+
+    /**
+     * Writes a text file of the specified number of rows, larger than a chunk of the encoder when there are more than
+     * about 50000 rows, with blank lines and Windows line endings mixed in.
+     */
+    private static File createText(int rows) throws Exception {
+        File text = File.createTempFile("table", ".txt");
+        text.deleteOnExit();
+        BufferedWriter out = new BufferedWriter(new FileWriter(text));
+        for (int i = 0; i < rows; i++) {
+            out.write(i + ", name" + (i * 7 % 1000) + " ," + (-i) + (i % 5 == 0 ? "\r\n" : "\n"));
+            if (i % 1000 == 0)
+                out.write("\n");
+        }
+        out.close();
+        return text;
+    }
+
+    private static File convert(File text, boolean dictionaryEncoded, int threads) throws Exception {
+        File f = File.createTempFile("table", ".dat");
+        f.deleteOnExit();
+        new File(f.getPath() + ".zm").deleteOnExit();
+        new File(f.getPath() + ".fsm").deleteOnExit();
+        new File(f.getPath() + ".dict").deleteOnExit();
+        HeapFileEncoder.convert(text, f, BufferPool.PAGE_SIZE, TYPES.length, TYPES, false, dictionaryEncoded,
+                threads);
+        return f;
+    }
+
+    private static byte[] contents(File f) throws Exception {
+        byte[] data = new byte[(int) f.length()];
+        InputStream in = new FileInputStream(f);
+        int n = 0;
+        while (n < data.length)
+            n += in.read(data, n, data.length - n);
+        in.close();
+        return data;
+    }
+
+    /**
+     * Unit test for HeapFileEncoder.convert() on an input of many chunks: the file, its zone map and its dictionary do
+     * not depend on the number of threads, and it holds every row in input order.
+     */
+    @Test public void chunksKeepInputOrder() throws Exception {
+        int rows = 120000;
+        File text = createText(rows);
+        for (boolean dictionaryEncoded : new boolean[] { false, true }) {
+            File one = convert(text, dictionaryEncoded, 1);
+            File four = convert(text, dictionaryEncoded, 4);
+            assertTrue(Arrays.equals(contents(one), contents(four)));
+            if (dictionaryEncoded)
+                assertTrue(Arrays.equals(contents(new File(one.getPath() + ".dict")), contents(new File(
+                        four.getPath() + ".dict"))));
+
+            HeapFile table = new HeapFile(four, new TupleDesc(TYPES, NAMES), false, dictionaryEncoded);
+            Database.getCatalog().addTable(table, SystemTestUtil.getUUID());
+            assertEquals(table.numPages(), table.zoneMap().numPages());
+            if (dictionaryEncoded)
+                // codes are given in the order the strings first occur
+                assertEquals(new StringField("name7", Type.STRING_LEN), table.getDictionary().field(1));
+            DbFileIterator it = table.iterator(new TransactionId());
+            it.open();
+            int n = 0;
+            while (it.hasNext()) {
+                Tuple t = it.next();
+                assertEquals(new IntField(n), t.getField(0));
+                assertEquals(new StringField("name" + (n * 7 % 1000), Type.STRING_LEN), t.getField(1));
+                assertEquals(new IntField(-n), t.getField(2));
+                n++;
+            }
+            it.close();
+            assertEquals(rows, n);
+        }
+    }
+
+    /**
+     * Unit test for HeapFileEncoder.convert() on an empty input: the file has a single empty page.
+     */
+    @Test public void emptyInput() throws Exception {
+        File f = convert(createText(0), false, 2);
+        assertEquals(BufferPool.PAGE_SIZE, f.length());
+        HeapFile table = new HeapFile(f, new TupleDesc(TYPES, NAMES));
+        Database.getCatalog().addTable(table, SystemTestUtil.getUUID());
+        DbFileIterator it = table.iterator(new TransactionId());
+        it.open();
+        assertTrue(!it.hasNext());
+        it.close();
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(HeapFileEncoderTest.class);
+    }
+}
@@ -13,6 +13,7 @@ import org.junit.Test;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import junit.framework.JUnit4TestAdapter;
 
 public class HeapPageReadTest extends SimpleDbTestBase {
@@ -99,6 +100,39 @@ public class HeapPageReadTest extends SimpleDbTestBase {
         }
     }
 
+    /**
+     * Unit test for HeapPage.iterator(): deleted entries are skipped, and the iterator can be abandoned early.
+     */
+    @Test public void iteratorSkipsEmptySlots() throws Exception {
+        HeapPage page = new HeapPage(pid, EXAMPLE_DATA.clone());
+        for (int i = 0; i < EXAMPLE_VALUES.length; i += 2)
+            page.writeInt(page.getPageData(), 4 + 4 * i, -1);
+
+        Iterator<Tuple> it = page.iterator();
+        for (int row = 1; row < EXAMPLE_VALUES.length; row += 2) {
+            assertTrue(it.hasNext());
+            assertEquals(EXAMPLE_VALUES[row][0], ((IntField) it.next().getField(0)).getValue());
+        }
+        assertFalse(it.hasNext());
+        try {
+            it.next();
+            fail("expected NoSuchElementException");
+        } catch (NoSuchElementException e) {
+            // expected
+        }
+
+        it = page.iterator();
+        assertEquals(EXAMPLE_VALUES[1][1], ((IntField) it.next().getField(1)).getValue());
+        try {
+            it.remove();
+            fail("expected UnsupportedOperationException");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+
+        assertFalse(new HeapPage(pid, HeapPage.createEmptyPageData()).iterator().hasNext());
+    }
+
     /**
      * Unit test for HeapPage.getSlot()
      */
@@ -1,6 +1,9 @@
 package simpledb;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 
 import java.io.IOException;
 import java.util.Iterator;
@@ -122,6 +125,27 @@ public class HeapPageWriteTest extends SimpleDbTestBase {
         }
     }
 
+    /**
+     * Unit test for HeapPage.getBeforeImage(): the before image is copied on the first write only.
+     */
+    @Test public void beforeImage() throws Exception {
+        byte[] data = HeapPageReadTest.EXAMPLE_DATA.clone();
+        HeapPage page = new HeapPage(pid, data);
+        assertNull(page.oldData);
+        assertArrayEquals(data, page.getBeforeImage().getPageData());
+
+        page.writeInt(page.getPageData(), 0, 0);
+        assertEquals(0, tupleCount(page));
+        assertArrayEquals(HeapPageReadTest.EXAMPLE_DATA, page.getBeforeImage().getPageData());
+        byte[] before = page.oldData;
+        page.writeInt(page.getPageData(), 4, 0);
+        assertSame(before, page.oldData);
+
+        page.setBeforeImage();
+        assertNull(page.oldData);
+        assertEquals(0, tupleCount(page.getBeforeImage()));
+    }
+
     int tupleCount(HeapPage page) {
     	int count = 0;
     	Iterator<Tuple> i = page.iterator();
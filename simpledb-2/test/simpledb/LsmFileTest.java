@@ -0,0 +1,249 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static simpledb.systemtest.SystemTestUtil.keyRange;
+import static simpledb.systemtest.SystemTestUtil.readTuples;
+import static simpledb.systemtest.SystemTestUtil.sortTuples;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class LsmFileTest extends SimpleDbTestBase {
+
+    /**
+     * Creates an empty LsmFile of two int fields, with the specified field names, sorted on its first field, and adds
+     * it to the catalog. Its runs are deleted on exit.
+     */
+    private static LsmFile createTable(String[] names) throws Exception {
+        File f = File.createTempFile("table", ".dat");
+        f.deleteOnExit();
+        new File(f.getPath() + ".tmp").deleteOnExit();
+        for (int i = 0; i < 200; i++)
+            new File(f.getPath() + ".run" + i).deleteOnExit();
+        LsmFile table = new LsmFile(f, new TupleDesc(new Type[] { Type.INT_TYPE, Type.INT_TYPE }, names), 0);
+        Database.getCatalog().addTable(table, SystemTestUtil.getUUID());
+        return table;
+    }
+
+    private static ArrayList<Integer> values(int a, int b) {
+        ArrayList<Integer> values = new ArrayList<Integer>();
+        values.add(a);
+        values.add(b);
+        return values;
+    }
+
+    /**
+     * Checks that scans, range scans and point scans of the table return the expected tuples in key order.
+     */
+    private static void checkScans(LsmFile table, TransactionId tid, ArrayList<ArrayList<Integer>> expected)
+            throws Exception {
+        // the tests insert tuples with equal keys in the order of their second field, which is the order of their
+        // sequence numbers
+        sortTuples(expected, 2);
+        assertEquals(expected, readTuples(table.iterator(tid)));
+        assertEquals(keyRange(expected, 250, 260), readTuples(table.rangeIterator(tid, new IntField(250), true,
+                new IntField(260), true)));
+        assertEquals(keyRange(expected, 251, 259), readTuples(table.rangeIterator(tid, new IntField(250), false,
+                new IntField(260), false)));
+        assertEquals(keyRange(expected, 990, 2000), readTuples(table.rangeIterator(tid, new IntField(990), true, null,
+                false)));
+        for (int key = 0; key < 1000; key += 97)
+            assertEquals(keyRange(expected, key, key), readTuples(table.rangeIterator(tid, new IntField(key), true,
+                    new IntField(key), true)));
+    }
+
+    /**
+     * Unit test for LsmFile: scans merge the memtable with the runs of every level and drop deleted tuples, before
+     * and after compactions, and after the file is reopened.
+     */
+    @Test public void scansMergeMemtableAndRuns() throws Exception {
+        LsmFile table = createTable(new String[] { "a", "b" });
+        table.setBackgroundCompaction(false);
+        table.setMemtableTuples(700);
+        TransactionId tid = new TransactionId();
+        Random r = new Random(11);
+        ArrayList<ArrayList<Integer>> expected = new ArrayList<ArrayList<Integer>>();
+        int n = 0;
+        for (int round = 0; round < 4; round++) {
+            for (int i = 0; i < 3000; i++) {
+                // few distinct keys, so that equal keys span pages and runs
+                int key = r.nextInt(1000);
+                Database.getBufferPool().insertTuple(tid, table.getId(), Utility.getHeapTuple(new int[] { key,
+                        n }));
+                expected.add(values(key, n++));
+            }
+            assertTrue(table.numRuns(0) > 0);
+            checkScans(table, tid, expected);
+
+            // delete a third of the keys, some of whose tuples are in the memtable and some in runs
+            ArrayList<Tuple> all = new ArrayList<Tuple>();
+            DbFileIterator it = table.iterator(tid);
+            it.open();
+            while (it.hasNext())
+                all.add(it.next());
+            it.close();
+            for (Tuple t : all)
+                if (((IntField) t.getField(0)).getValue() % 3 == round % 3)
+                    Database.getBufferPool().deleteTuple(tid, t);
+            ArrayList<ArrayList<Integer>> kept = new ArrayList<ArrayList<Integer>>();
+            for (ArrayList<Integer> t : expected)
+                if (t.get(0) % 3 != round % 3)
+                    kept.add(t);
+            expected = kept;
+            checkScans(table, tid, expected);
+
+            table.compact();
+            assertTrue(table.numRuns(0) < LsmFile.L0_RUNS);
+            checkScans(table, tid, expected);
+        }
+        assertTrue(table.numRuns(1) > 0);
+
+        // a new LsmFile with the same manifest finds the same tuples, and continues the sequence numbers
+        table.close();
+        LsmFile reopened = new LsmFile(table.getFile(), table.getTupleDesc(), 0);
+        Database.getCatalog().addTable(reopened, SystemTestUtil.getUUID());
+        checkScans(reopened, tid, expected);
+        Database.getBufferPool().insertTuple(tid, reopened.getId(), Utility.getHeapTuple(new int[] { 500, n }));
+        expected.add(values(500, n));
+        checkScans(reopened, tid, expected);
+
+        // deleting every tuple and compacting into the bottom level leaves no runs
+        reopened.setBackgroundCompaction(false);
+        reopened.setMemtableTuples(expected.size() / (LsmFile.L0_RUNS + 1));
+        DbFileIterator it = reopened.iterator(tid);
+        ArrayList<Tuple> all = new ArrayList<Tuple>();
+        it.open();
+        while (it.hasNext())
+            all.add(it.next());
+        it.close();
+        for (Tuple t : all)
+            Database.getBufferPool().deleteTuple(tid, t);
+        reopened.flush();
+        assertTrue(reopened.numRuns(0) >= LsmFile.L0_RUNS);
+        reopened.compact();
+        assertEquals(0, reopened.numPages());
+        assertEquals(0, readTuples(reopened.iterator(tid)).size());
+    }
+
+    /**
+     * Unit test for LsmFile: a full level 0 is compacted in the background, and the runs it replaces are kept until
+     * the scans that read them are closed.
+     */
+    @Test public void compactsInBackground() throws Exception {
+        LsmFile table = createTable(new String[] { "a", "b" });
+        table.setMemtableTuples(300);
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < 300 * (LsmFile.L0_RUNS - 1); i++)
+            Database.getBufferPool().insertTuple(tid, table.getId(), Utility.getHeapTuple(new int[] {
+                    i * 7919 % 1000, i }));
+        assertEquals(LsmFile.L0_RUNS - 1, table.numRuns(0));
+        File firstRun = new File(table.getFile().getPath() + ".run0");
+        assertTrue(firstRun.exists());
+
+        // a scan opened before the compaction reads the replaced runs
+        DbFileIterator open = table.iterator(tid);
+        open.open();
+        assertTrue(open.hasNext());
+        for (int i = 0; i < 300; i++)
+            Database.getBufferPool().insertTuple(tid, table.getId(), Utility.getHeapTuple(new int[] { 1000 + i,
+                    i }));
+        for (int i = 0; i < 500 && table.numRuns(0) > 0; i++)
+            Thread.sleep(10);
+        assertEquals(0, table.numRuns(0));
+        assertTrue(table.numRuns(1) > 0);
+        assertTrue(firstRun.exists());
+        int n = 0;
+        int last = -1;
+        while (open.hasNext()) {
+            int key = ((IntField) open.next().getField(0)).getValue();
+            assertTrue(key >= last);
+            last = key;
+            n++;
+        }
+        open.close();
+        assertFalse(firstRun.exists());
+        // the scan returns the tuples of the runs it opened on, not those written after it was opened
+        assertEquals(300 * (LsmFile.L0_RUNS - 1), n);
+        assertEquals(300 * LsmFile.L0_RUNS, readTuples(table.iterator(tid)).size());
+    }
+
+    /**
+     * Unit test for Catalog.loadSchema: the "lsm" storage declares an LsmFile sorted on the primary key, which
+     * cannot have indexes.
+     */
+    @Test public void loadSchemaDeclaresLsmTable() throws Exception {
+        File data = File.createTempFile("table", ".dat");
+        data.deleteOnExit();
+        String name = data.getPath().substring(0, data.getPath().length() - 4);
+        File schema = File.createTempFile("catalog", ".txt");
+        schema.deleteOnExit();
+        FileWriter out = new FileWriter(schema);
+        out.write(name + " (a int, b int pk) lsm\n");
+        out.close();
+        Database.getCatalog().loadSchema(schema.getPath());
+
+        DbFile file = Database.getCatalog().getDbFile(Database.getCatalog().getTableId(name));
+        assertTrue(file instanceof LsmFile);
+        assertEquals(1, ((LsmFile) file).keyField());
+        assertFalse(file instanceof HeapFile);
+    }
+
+    /**
+     * Unit test for LogicalPlan: a range filter on the key of an LsmFile is answered by an IndexScan, and an ORDER BY
+     * on the key needs no OrderBy.
+     */
+    @Test public void plansUseKey() throws Exception {
+        // SeqScan does not prefix the field names with the alias of the table, so the plans below find the fields
+        // only if the table has those names
+        LsmFile table = createTable(new String[] { "t.a", "t.b" });
+        table.setMemtableTuples(500);
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < 2000; i++)
+            Database.getBufferPool().insertTuple(tid, table.getId(), Utility.getHeapTuple(new int[] { i * 7919 % 2000,
+                    i }));
+        HashMap<String, TableStats> stats = new HashMap<String, TableStats>();
+        // Catalog.getTableName is not implemented here, so the plan looks the stats up under null
+        stats.put(null, new TableStats(table.getId(), 1));
+
+        LogicalPlan lp = new LogicalPlan();
+        lp.addScan(table.getId(), "t");
+        lp.addFilter("t.a", Predicate.Op.GREATER_THAN_OR_EQ, "500");
+        lp.addFilter("t.a", Predicate.Op.LESS_THAN, "600");
+        lp.addProjectField("t.a", null);
+        lp.addOrderBy("t.a", true);
+        Project plan = (Project) lp.physicalPlan(tid, stats, false);
+        assertTrue(plan.child instanceof IndexScan);
+        int n = 0;
+        plan.open();
+        while (plan.hasNext())
+            assertEquals(500 + n++, ((IntField) plan.next().getField(0)).getValue());
+        plan.close();
+        assertEquals(100, n);
+
+        lp = new LogicalPlan();
+        lp.addScan(table.getId(), "t");
+        lp.addProjectField("t.a", null);
+        lp.addOrderBy("t.a", true);
+        plan = (Project) lp.physicalPlan(tid, stats, false);
+        assertTrue(plan.child instanceof SeqScan);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(LsmFileTest.class);
+    }
+}
@@ -0,0 +1,102 @@
+package simpledb;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class MappedHeapFileTest extends SimpleDbTestBase {
+
+    private ArrayList<ArrayList<Integer>> tuples;
+    private File file;
+    private MappedHeapFile table;
+
+    @Before public void createTable() throws Exception {
+        tuples = new ArrayList<ArrayList<Integer>>();
+        file = SystemTestUtil.createRandomHeapFileUnopened(2, 2000, 1000, null, tuples);
+        table = new MappedHeapFile(file, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(table, SystemTestUtil.getUUID());
+    }
+
+    @After public void closeTable() throws Exception {
+        table.close();
+    }
+
+    /**
+     * Unit test for MappedHeapFile.readPage(): mapped pages hold the same data as pages read by HeapFile.
+     */
+    @Test public void readPage() throws Exception {
+        HeapFile plain = new HeapFile(file, table.getTupleDesc());
+        for (int i = 0; i < table.numPages(); i++) {
+            HeapPageId pid = new HeapPageId(table.getId(), i);
+            HeapPage mapped = (HeapPage) table.readPage(pid);
+            HeapPage copied = (HeapPage) plain.readPage(pid);
+            Iterator<Tuple> expected = copied.iterator();
+            Iterator<Tuple> actual = mapped.iterator();
+            while (expected.hasNext())
+                assertEquals(SystemTestUtil.tupleToList(expected.next()), SystemTestUtil.tupleToList(actual.next()));
+            assertFalse(actual.hasNext());
+            assertArrayEquals(copied.getPageData(), mapped.getPageData());
+        }
+        plain.close();
+        SystemTestUtil.matchTuples(table, tuples);
+    }
+
+    /**
+     * Unit test for MappedHeapFile.readPage(): pages past the end of the file are rejected.
+     */
+    @Test(expected = IllegalArgumentException.class) public void readPastEnd() throws Exception {
+        table.readPage(new HeapPageId(table.getId(), table.numPages()));
+    }
+
+    /**
+     * Unit test for MappedHeapFile: modifying a mapped page does not modify the file until the page is written, and
+     * the before image is the page as it is on disk.
+     */
+    @Test public void modifyAndWrite() throws Exception {
+        HeapPageId pid = new HeapPageId(table.getId(), 0);
+        HeapPage page = (HeapPage) table.readPage(pid);
+        byte[] original = page.getPageData().clone();
+        page.writeInt(page.getPageData(), 0, 0);
+
+        assertArrayEquals(original, ((HeapPage) table.readPage(pid)).getPageData());
+        assertArrayEquals(original, page.getBeforeImage().getPageData());
+        assertFalse(page.iterator().hasNext());
+
+        table.writePage(page);
+        assertFalse(((HeapPage) table.readPage(pid)).iterator().hasNext());
+    }
+
+    /**
+     * Unit test for MappedHeapFile: pages appended to the file after it was mapped can be read.
+     */
+    @Test public void grow() throws Exception {
+        int numPages = table.numPages();
+        table.readPage(new HeapPageId(table.getId(), numPages - 1));
+
+        byte[] data = ((HeapPage) table.readPage(new HeapPageId(table.getId(), 0))).getPageData();
+        HeapPageId pid = new HeapPageId(table.getId(), numPages);
+        table.writePage(new HeapPage(pid, data));
+        assertEquals(numPages + 1, table.numPages());
+        assertArrayEquals(data, ((HeapPage) table.readPage(pid)).getPageData());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(MappedHeapFileTest.class);
+    }
+}
@@ -0,0 +1,203 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class PageSizeTest extends SimpleDbTestBase {
+
+    private static final TupleDesc TD = new TupleDesc(new Type[] { Type.INT_TYPE, Type.INT_TYPE }, new String[] {
+            "a", "b" });
+
+    /**
+     * Returns a temporary file whose free-space and zone maps are deleted on exit.
+     */
+    private static File tempFile() throws Exception {
+        File f = File.createTempFile("table", ".dat");
+        f.deleteOnExit();
+        for (String suffix : new String[] { ".fsm", ".zm" })
+            new File(f.getPath() + suffix).deleteOnExit();
+        return f;
+    }
+
+    /**
+     * Returns the tuples (i, i % 10) for i from 0 to n - 1.
+     */
+    private static ArrayList<ArrayList<Integer>> tuples(int n) {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        for (int i = 0; i < n; i++)
+            tuples.add(new ArrayList<Integer>(Arrays.asList(i, i % 10)));
+        return tuples;
+    }
+
+    /**
+     * Unit test for HeapFile with 64 KB pages: inserted tuples fill whole large pages, are read back through a buffer
+     * pool that has room for only a few of them, and are read again after the file is reopened, when the free-space
+     * map is rebuilt with large pages.
+     */
+    @Test public void insertScanAndReopen() throws Exception {
+        File f = tempFile();
+        HeapFile table = new HeapFile(f, TD, false, false, BufferPool.MAX_PAGE_SIZE);
+        assertEquals(BufferPool.MAX_PAGE_SIZE, table.getPageSize());
+        Database.getCatalog().addTable(table, SystemTestUtil.getUUID());
+        TransactionId tid = new TransactionId();
+        ArrayList<ArrayList<Integer>> expected = tuples(20000);
+        for (ArrayList<Integer> t : expected)
+            Database.getBufferPool().insertTuple(tid, table.getId(), Utility.getHeapTuple(new int[] { t.get(0),
+                    t.get(1) }));
+        Database.getBufferPool().flushAllPages();
+
+        assertEquals((long) table.numPages() * BufferPool.MAX_PAGE_SIZE, f.length());
+        HeapPage first = (HeapPage) table.readPage(new HeapPageId(table.getId(), 0));
+        int count = 0;
+        for (Iterator<Tuple> tuples = first.iterator(); tuples.hasNext(); tuples.next())
+            count++;
+        assertTrue(count > BufferPool.PAGE_SIZE / 8);
+        assertTrue(first.availableSpace() < 16);
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        SystemTestUtil.matchTuples(table, expected);
+        table.close();
+
+        new File(f.getPath() + ".fsm").delete();
+        HeapFile reopened = new HeapFile(f, TD, false, false, BufferPool.MAX_PAGE_SIZE);
+        Database.getCatalog().addTable(reopened, SystemTestUtil.getUUID());
+        FreeSpaceMap map = reopened.freeSpaceMap();
+        assertEquals(reopened.numPages(), map.numPages());
+        int last = reopened.numPages() - 1;
+        assertTrue(map.freeSpace(last) > BufferPool.PAGE_SIZE);
+        assertEquals(last, map.findPage(BufferPool.PAGE_SIZE));
+        SystemTestUtil.matchTuples(reopened, expected);
+
+        try {
+            new HeapFile(f, TD, false, false, 3 * BufferPool.PAGE_SIZE);
+            fail("accepted a page size that is not a power of two");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Unit test for HeapFileEncoder and Catalog.loadSchema with a page size: a file encoded with 16 KB pages is
+     * declared with "pagesize=16k" and read as a plain and as a mapped heap file.
+     */
+    @Test public void encodeAndLoadSchema() throws Exception {
+        ArrayList<ArrayList<Integer>> expected = tuples(10000);
+        File f = tempFile();
+        HeapFileEncoder.convert(expected, f, 16384, 2);
+        String name = f.getPath().substring(0, f.getPath().length() - 4);
+        for (String storage : new String[] { "pagesize=16k", "pagesize=16384 mapped" }) {
+            File schema = File.createTempFile("catalog", ".txt");
+            schema.deleteOnExit();
+            FileWriter out = new FileWriter(schema);
+            out.write(name + " (a int, b int) " + storage + "\n");
+            out.close();
+            Database.getCatalog().loadSchema(schema.getPath());
+
+            HeapFile file = (HeapFile) Database.getCatalog().getDbFile(Database.getCatalog().getTableId(name));
+            assertEquals(storage.endsWith("mapped"), file instanceof MappedHeapFile);
+            assertEquals(16384, file.getPageSize());
+            assertEquals(f.length() / 16384, file.numPages());
+            SystemTestUtil.matchTuples(file, expected);
+        }
+    }
+
+    /**
+     * Unit test for BufferPool with pages of several sizes: a page of 16 KB takes the room of four pages of 4 KB, and
+     * off-heap pages are read into an arena of frames of their own size.
+     */
+    @Test public void bufferPoolCountsLargePages() throws Exception {
+        ArrayList<ArrayList<Integer>> expected = tuples(20000);
+        File f = tempFile();
+        HeapFileEncoder.convert(expected, f, 16384, 2);
+        BufferPool pool = Database.resetBufferPool(32);
+        pool.enableOffHeapFrames();
+        pool.setScanStrategy(Double.MAX_VALUE, 1);
+        HeapFile large = new HeapFile(f, TD, false, false, 16384);
+        Database.getCatalog().addTable(large, SystemTestUtil.getUUID());
+        HeapFile small = SystemTestUtil.createRandomHeapFile(2, 40000, null, null);
+
+        FrameArena arena = pool.getFrameArena(16384);
+        assertEquals(16384, arena.frameSize());
+        assertEquals(32 / 4 + BufferPool.SPARE_FRAMES, arena.size());
+        assertTrue(large.numPages() > 8);
+        for (int i = 0; i < large.numPages(); i++)
+            pool.getPage(null, new HeapPageId(large.getId(), i), Permissions.READ_ONLY);
+        // the pool has room for 8 pages of 16 KB, so the others were evicted and their frames returned
+        assertEquals(BufferPool.SPARE_FRAMES, arena.available());
+
+        // pages of 4 KB evict the large pages until the pool is full of small ones
+        for (int i = 0; i < small.numPages(); i++)
+            pool.getPage(null, new HeapPageId(small.getId(), i), Permissions.READ_ONLY);
+        assertTrue(small.numPages() > 32);
+        assertEquals(arena.size(), arena.available());
+        assertEquals(BufferPool.SPARE_FRAMES, pool.getFrameArena().available());
+
+        SystemTestUtil.matchTuples(large, expected);
+    }
+
+    /**
+     * Unit test for BitmapIndex on a table of 64 KB pages, whose pages hold more tuples than the ordinals of a table
+     * of 4 KB pages leave room for.
+     */
+    @Test public void bitmapIndexOnLargePages() throws Exception {
+        ArrayList<ArrayList<Integer>> expected = tuples(30000);
+        File f = tempFile();
+        HeapFileEncoder.convert(expected, f, BufferPool.MAX_PAGE_SIZE, 2);
+        HeapFile table = new HeapFile(f, TD, false, false, BufferPool.MAX_PAGE_SIZE);
+        Database.getCatalog().addTable(table, SystemTestUtil.getUUID());
+        File indexFile = File.createTempFile("table", ".bitmap");
+        indexFile.deleteOnExit();
+        indexFile.delete();
+        BitmapIndex index = new BitmapIndex(indexFile, table, 1);
+        Database.getCatalog().addBitmapIndex(index);
+
+        TransactionId tid = new TransactionId();
+        HashSet<RecordId> matching = new HashSet<RecordId>();
+        DbFileIterator it = table.iterator(tid);
+        it.open();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            if (((IntField) t.getField(1)).getValue() == 7)
+                matching.add(t.getRecordId());
+        }
+        it.close();
+        assertEquals(3000, matching.size());
+
+        Predicate p = new Predicate(1, Predicate.Op.EQUALS, new IntField(7));
+        HashSet<RecordId> selected = new HashSet<RecordId>();
+        Bitmap.Cursor c = index.select(p).cursor();
+        for (int x; (x = c.next()) >= 0;) {
+            RecordId rid = BitmapIndex.recordId(table.getId(), x);
+            assertEquals(x, BitmapIndex.ordinal(rid));
+            selected.add(rid);
+        }
+        assertEquals(matching, selected);
+
+        ArrayList<ArrayList<Integer>> sevens = new ArrayList<ArrayList<Integer>>();
+        for (ArrayList<Integer> t : expected)
+            if (t.get(1) == 7)
+                sevens.add(t);
+        SystemTestUtil.matchTuples(new BitmapScan(tid, table.getId(), "", p), sevens);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(PageSizeTest.class);
+    }
+}
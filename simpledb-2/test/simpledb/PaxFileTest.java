@@ -0,0 +1,138 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class PaxFileTest extends SimpleDbTestBase {
+
+    private static final int ROWS = 1000;
+
+    private static final Type[] TYPES = new Type[] { Type.INT_TYPE, Type.STRING_TYPE, Type.INT_TYPE };
+
+    private File file;
+    private PaxFile table;
+
+    @Before public void createTable() throws Exception {
+        File text = File.createTempFile("table", ".txt");
+        text.deleteOnExit();
+        FileWriter out = new FileWriter(text);
+        for (int i = 0; i < ROWS; i++)
+            out.write(i + ",name" + i + "," + (i * 3) + "\n");
+        out.close();
+        file = File.createTempFile("table", ".dat");
+        file.deleteOnExit();
+        new File(file.getPath() + ".fsm").deleteOnExit();
+        PaxFile.convert(text, file, TYPES);
+        table = new PaxFile(file, new TupleDesc(TYPES, new String[] { "id", "name", "x" }));
+        Database.getCatalog().addTable(table, SystemTestUtil.getUUID());
+    }
+
+    /**
+     * Returns the tuples of the specified iterator.
+     */
+    private static ArrayList<Tuple> collect(DbIterator it) throws Exception {
+        ArrayList<Tuple> result = new ArrayList<Tuple>();
+        it.open();
+        while (it.hasNext())
+            result.add(it.next());
+        it.close();
+        return result;
+    }
+
+    /**
+     * Unit test for PaxFile.convert() and SeqScan over a PaxFile: every tuple is read back with all of its fields.
+     */
+    @Test public void scan() throws Exception {
+        int perPage = PaxPage.capacity(TYPES);
+        assertEquals((ROWS + perPage - 1) / perPage, table.numPages());
+        ArrayList<Tuple> tuples = collect(new SeqScan(null, table.getId(), ""));
+        assertEquals(ROWS, tuples.size());
+        for (int i = 0; i < ROWS; i++) {
+            Tuple t = tuples.get(i);
+            assertEquals(new IntField(i), t.getField(0));
+            assertEquals(new StringField("name" + i, Type.STRING_LEN), t.getField(1));
+            assertEquals(new IntField(i * 3), t.getField(2));
+            assertEquals(i / perPage, t.getRecordId().getPageId().pageno());
+        }
+    }
+
+    /**
+     * Unit test for SeqScan.needFields(): Project and Filter only decode the fields they need, and return the same
+     * values.
+     */
+    @Test public void needFields() throws Exception {
+        SeqScan scan = new SeqScan(null, table.getId(), "");
+        scan.needFields(Arrays.asList(2));
+        Tuple t = collect(scan).get(7);
+        assertNull(t.getField(0));
+        assertNull(t.getField(1));
+        assertEquals(new IntField(21), t.getField(2));
+
+        Filter filter = new Filter(new Predicate(0, Predicate.Op.LESS_THAN, new IntField(10)),
+                new SeqScan(null, table.getId(), ""));
+        ArrayList<Type> types = new ArrayList<Type>();
+        types.add(Type.STRING_TYPE);
+        ArrayList<Tuple> names = collect(new Project(new ArrayList<Integer>(Arrays.asList(1)), types, filter));
+        assertEquals(10, names.size());
+        for (int i = 0; i < 10; i++)
+            assertEquals(new StringField("name" + i, Type.STRING_LEN), names.get(i).getField(0));
+    }
+
+    /**
+     * Unit test for PaxFile.addTuple() and deleteTuple(): deleted slots are reused, and new pages are appended once
+     * every page is full.
+     */
+    @Test public void insertAndDelete() throws Exception {
+        TransactionId tid = new TransactionId();
+        ArrayList<Tuple> tuples = collect(new SeqScan(tid, table.getId(), ""));
+        Tuple victim = tuples.get(5);
+        RecordId rid = victim.getRecordId();
+        Database.getBufferPool().deleteTuple(tid, victim);
+        assertEquals(ROWS - 1, collect(new SeqScan(tid, table.getId(), "")).size());
+
+        int pages = table.numPages();
+        Tuple t = new Tuple(table.getTupleDesc());
+        t.setField(0, new IntField(-1));
+        t.setField(1, new StringField("new", Type.STRING_LEN));
+        t.setField(2, new IntField(-3));
+        Database.getBufferPool().insertTuple(tid, table.getId(), t);
+        assertEquals(rid, t.getRecordId());
+
+        int free = PaxPage.capacity(TYPES) * pages - ROWS;
+        for (int i = 0; i < free + 1; i++)
+            Database.getBufferPool().insertTuple(tid, table.getId(), tuple(i));
+        assertEquals(pages + 1, table.numPages());
+        Database.getBufferPool().flushAllPages();
+        ArrayList<Tuple> all = collect(new SeqScan(tid, table.getId(), ""));
+        assertEquals(ROWS + free + 1, all.size());
+        assertEquals(new StringField("new", Type.STRING_LEN), all.get(5).getField(1));
+    }
+
+    private Tuple tuple(int i) {
+        Tuple t = new Tuple(table.getTupleDesc());
+        t.setField(0, new IntField(i));
+        t.setField(1, new StringField("added" + i, Type.STRING_LEN));
+        t.setField(2, new IntField(i));
+        return t;
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(PaxFileTest.class);
+    }
+}
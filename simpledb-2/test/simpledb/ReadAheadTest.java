@@ -0,0 +1,60 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+public class ReadAheadTest {
+
+    /**
+     * Unit test for ReadAhead.pageRequested(): sequential requests open a window that grows as prefetches are used.
+     */
+    @Test public void windowGrows() {
+        ReadAhead ra = new ReadAhead(8);
+        assertRange(0, 0, ra.pageRequested(0, 100)); // first request: not yet sequential
+        assertRange(2, 4, ra.pageRequested(1, 100)); // sequential: prefetch the initial window
+        assertRange(4, 7, ra.pageRequested(2, 100)); // page 2 was prefetched, the window doubles to 4
+        assertEquals(4, ra.getWindow());
+        assertRange(7, 12, ra.pageRequested(3, 100));
+        assertEquals(8, ra.getWindow());
+        assertRange(12, 13, ra.pageRequested(4, 100)); // the window is capped at 8
+        assertEquals(8, ra.getWindow());
+    }
+
+    /**
+     * Unit test for ReadAhead: wasted prefetches shrink the window and random access resets it.
+     */
+    @Test public void windowShrinks() {
+        ReadAhead ra = new ReadAhead(16);
+        for (int i = 0; i < 5; i++)
+            ra.pageRequested(i, 100);
+        assertEquals(16, ra.getWindow());
+        ra.prefetchWasted();
+        assertEquals(8, ra.getWindow());
+        assertRange(50, 50, ra.pageRequested(50, 100));
+        assertEquals(ReadAhead.MIN_WINDOW, ra.getWindow());
+    }
+
+    /**
+     * Unit test for ReadAhead: prefetching stops at the end of the file.
+     */
+    @Test public void endOfFile() {
+        ReadAhead ra = new ReadAhead(8);
+        ra.pageRequested(0, 3);
+        assertRange(2, 3, ra.pageRequested(1, 3));
+        assertRange(3, 3, ra.pageRequested(2, 3));
+    }
+
+    private static void assertRange(int from, int to, int[] range) {
+        assertEquals(from, range[0]);
+        assertEquals(to, range[1]);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ReadAheadTest.class);
+    }
+}
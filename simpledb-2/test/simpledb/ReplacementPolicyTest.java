@@ -0,0 +1,107 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+public class ReplacementPolicyTest {
+
+    private static PageId pid(int n) {
+        return new HeapPageId(1, n);
+    }
+
+    /** Simulates a buffer pool of the specified capacity over a reference string; returns the policy. */
+    private static ReplacementPolicy run(ReplacementPolicy policy, int capacity, int[] refs) {
+        java.util.HashSet<PageId> resident = new java.util.HashSet<PageId>();
+        for (int r : refs) {
+            PageId pid = pid(r);
+            if (resident.contains(pid)) {
+                policy.recordHit(pid);
+                continue;
+            }
+            policy.recordMiss(pid);
+            if (resident.size() >= capacity)
+                assertTrue(resident.remove(policy.chooseVictim()));
+            resident.add(pid);
+            policy.pageAdded(pid);
+        }
+        return policy;
+    }
+
+    /**
+     * Unit test for LruPolicy: the least recently used page is evicted.
+     */
+    @Test public void lru() {
+        ReplacementPolicy lru = run(new LruPolicy(), 3, new int[] { 1, 2, 3, 1 });
+        assertEquals(pid(2), lru.chooseVictim());
+        assertEquals(pid(3), lru.chooseVictim());
+        assertEquals(pid(1), lru.chooseVictim());
+        assertNull(lru.chooseVictim());
+    }
+
+    /**
+     * Unit test for ClockPolicy: a referenced page gets a second chance.
+     */
+    @Test public void clock() {
+        ReplacementPolicy clock = run(new ClockPolicy(), 3, new int[] { 1, 2, 3, 1 });
+        assertEquals(pid(2), clock.chooseVictim());
+        clock.pageRemoved(pid(3));
+        assertEquals(pid(1), clock.chooseVictim());
+        assertNull(clock.chooseVictim());
+    }
+
+    /**
+     * A reference string that starts with prefix and then makes page 0 hot while every other reference is to a page
+     * that is read only once. Between two references to page 0 there are three other pages, so an LRU pool of three
+     * pages never keeps it.
+     */
+    private static int[] hotPageWithScan(int[] prefix) {
+        int[] refs = new int[prefix.length + 100];
+        System.arraycopy(prefix, 0, refs, 0, prefix.length);
+        for (int i = 0; i < 100; i++)
+            refs[prefix.length + i] = (i % 4 == 3) ? 0 : 1000 + i;
+        return refs;
+    }
+
+    /**
+     * Unit test for TwoQPolicy: a page that comes back while it is in A1out survives a scan that flushes it from LRU.
+     */
+    @Test public void twoQScanResistance() {
+        int[] prefix = new int[] { 0, 1, 2, 3, 0 };
+        assertEquals(0, run(new LruPolicy(), 3, hotPageWithScan(prefix)).getHits());
+        assertEquals(25, run(new TwoQPolicy(3), 3, hotPageWithScan(prefix)).getHits());
+    }
+
+    /**
+     * Unit test for ArcPolicy: a page requested twice moves to T2 and survives a scan that flushes it from LRU.
+     */
+    @Test public void arcScanResistance() {
+        int[] prefix = new int[] { 0, 0 };
+        assertEquals(1, run(new LruPolicy(), 3, hotPageWithScan(prefix)).getHits());
+        assertEquals(26, run(new ArcPolicy(3), 3, hotPageWithScan(prefix)).getHits());
+    }
+
+    /**
+     * Unit test for the hit and miss counters.
+     */
+    @Test public void hitRatio() {
+        ReplacementPolicy[] policies = new ReplacementPolicy[] { new LruPolicy(), new ClockPolicy(),
+                new TwoQPolicy(4), new ArcPolicy(4) };
+        for (ReplacementPolicy policy : policies) {
+            run(policy, 4, new int[] { 1, 2, 1, 2 });
+            assertEquals(2, policy.getHits());
+            assertEquals(2, policy.getMisses());
+            assertEquals(0.5, policy.getHitRatio(), 1e-9);
+        }
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ReplacementPolicyTest.class);
+    }
+}
@@ -0,0 +1,136 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class TupleViewTest extends SimpleDbTestBase {
+
+    private static final String[] WORDS = { "", "a", "app", "apple", "apples", "banana", "band", "b", "zebra" };
+
+    private HeapFile table;
+
+    /**
+     * Creates a table of (int, string, int) tuples that covers every word with several int values.
+     */
+    @Before public void createTable() throws Exception {
+        File text = File.createTempFile("table", ".txt");
+        text.deleteOnExit();
+        FileWriter out = new FileWriter(text);
+        for (int i = 0; i < 500; i++)
+            out.write((i % 7 - 3) + "," + WORDS[i % WORDS.length] + "," + i + "\n");
+        out.close();
+        File f = File.createTempFile("table", ".dat");
+        f.deleteOnExit();
+        Type[] types = new Type[] { Type.INT_TYPE, Type.STRING_TYPE, Type.INT_TYPE };
+        HeapFileEncoder.convert(text, f, BufferPool.PAGE_SIZE, 3, types);
+        table = new HeapFile(f, new TupleDesc(types, new String[] { "a", "s", "b" }));
+        Database.getCatalog().addTable(table, SystemTestUtil.getUUID());
+    }
+
+    /**
+     * Unit test for TupleView: the fields of a view match the decoded tuple.
+     */
+    @Test public void fields() throws Exception {
+        SeqScan scan = new SeqScan(null, table.getId(), "");
+        scan.open();
+        int count = 0;
+        TupleView v;
+        while ((v = scan.nextView()) != null) {
+            Tuple t = v.toTuple();
+            assertEquals(((IntField) t.getField(0)).getValue(), v.getInt(0));
+            assertEquals(t.getField(1), v.getField(1));
+            assertEquals(count, v.getInt(2));
+            assertEquals(WORDS[count % WORDS.length], ((StringField) t.getField(1)).getValue());
+            count++;
+        }
+        scan.close();
+        assertEquals(500, count);
+    }
+
+    /**
+     * Unit test for Predicate.filter(TupleView): agrees with Predicate.filter(Tuple) for every operator.
+     */
+    @Test public void predicates() throws Exception {
+        ArrayList<Predicate> predicates = new ArrayList<Predicate>();
+        for (Predicate.Op op : Predicate.Op.values()) {
+            for (int value = -4; value <= 4; value++)
+                predicates.add(new Predicate(0, op, new IntField(value)));
+            for (String word : new String[] { "", "app", "apple", "ban", "c", "pl" })
+                predicates.add(new Predicate(1, op, new StringField(word, Type.STRING_LEN)));
+        }
+        SeqScan scan = new SeqScan(null, table.getId(), "");
+        scan.open();
+        TupleView v;
+        while ((v = scan.nextView()) != null) {
+            Tuple t = v.toTuple();
+            for (Predicate p : predicates)
+                assertEquals(p.toString() + " on " + t, p.filter(t), p.filter(v));
+        }
+        scan.close();
+    }
+
+    /**
+     * Unit test for JoinPredicate.filter(Tuple, TupleView): agrees with JoinPredicate.filter(Tuple, Tuple).
+     */
+    @Test public void joinPredicates() throws Exception {
+        ArrayList<Tuple> outer = new ArrayList<Tuple>();
+        DbFileIterator it = table.iterator(null);
+        it.open();
+        for (int i = 0; i < 20; i++)
+            outer.add(it.next());
+        it.close();
+        SeqScan scan = new SeqScan(null, table.getId(), "");
+        scan.open();
+        TupleView v;
+        while ((v = scan.nextView()) != null) {
+            Tuple t2 = v.toTuple();
+            for (Predicate.Op op : Predicate.Op.values()) {
+                for (Tuple t1 : outer) {
+                    JoinPredicate ints = new JoinPredicate(0, op, 0);
+                    JoinPredicate strings = new JoinPredicate(1, op, 1);
+                    assertEquals(ints.filter(t1, t2), ints.filter(t1, v));
+                    assertEquals(strings.filter(t1, t2), strings.filter(t1, v));
+                }
+            }
+        }
+        scan.close();
+    }
+
+    /**
+     * Unit test for Filter.nextView(): returns exactly the tuples that Filter.next() returns.
+     */
+    @Test public void filter() throws Exception {
+        Predicate p = new Predicate(1, Predicate.Op.LIKE, new StringField("pl", Type.STRING_LEN));
+        Filter f = new Filter(p, new SeqScan(null, table.getId(), ""));
+        f.open();
+        int count = 0;
+        TupleView v;
+        while ((v = f.nextView()) != null) {
+            assertTrue(((StringField) v.getField(1)).getValue().indexOf("pl") >= 0);
+            count++;
+        }
+        assertNull(f.nextView());
+        f.close();
+        assertEquals(2 * 500 / WORDS.length + 1, count);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(TupleViewTest.class);
+    }
+}
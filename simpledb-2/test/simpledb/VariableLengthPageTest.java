@@ -0,0 +1,143 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class VariableLengthPageTest extends SimpleDbTestBase {
+
+    private static final Type[] TYPES = new Type[] { Type.INT_TYPE, Type.STRING_TYPE, Type.INT_TYPE };
+
+    private static final int ROWS = 2000;
+
+    private HeapFile fixed;
+    private HeapFile variable;
+
+    /**
+     * Encodes the same table of (int, short string, int) tuples in both layouts.
+     */
+    @Before public void createTables() throws Exception {
+        File text = File.createTempFile("table", ".txt");
+        text.deleteOnExit();
+        FileWriter out = new FileWriter(text);
+        for (int i = 0; i < ROWS; i++)
+            out.write(i + "," + word(i) + "," + (ROWS - i) + "\n");
+        out.close();
+        TupleDesc td = new TupleDesc(TYPES, new String[] { "a", "s", "b" });
+        fixed = new HeapFile(encode(text, false), td);
+        variable = new HeapFile(encode(text, true), td, true);
+        Database.getCatalog().addTable(fixed, SystemTestUtil.getUUID());
+        Database.getCatalog().addTable(variable, SystemTestUtil.getUUID());
+    }
+
+    private static String word(int i) {
+        StringBuilder sb = new StringBuilder();
+        for (int k = 0; k < i % 13; k++)
+            sb.append((char) ('a' + (i + k) % 26));
+        return sb.toString();
+    }
+
+    private static File encode(File text, boolean variableLength) throws Exception {
+        File f = File.createTempFile("table", ".dat");
+        f.deleteOnExit();
+        HeapFileEncoder.convert(text, f, BufferPool.PAGE_SIZE, TYPES.length, TYPES, variableLength);
+        return f;
+    }
+
+    /**
+     * Unit test for HeapFileEncoder.convert(): short strings take less space in the variable-length layout, and both
+     * layouts hold the same tuples.
+     */
+    @Test public void sameTuplesFewerPages() throws Exception {
+        assertTrue(variable.numPages() * 4 < fixed.numPages());
+        ArrayList<ArrayList<Object>> expected = scan(fixed);
+        assertEquals(ROWS, expected.size());
+        assertEquals(expected, scan(variable));
+    }
+
+    /**
+     * Unit test for TupleView on a variable-length page: fields after a string are found at their actual offsets.
+     */
+    @Test public void views() throws Exception {
+        SeqScan scan = new SeqScan(null, variable.getId(), "");
+        scan.open();
+        int count = 0;
+        TupleView v;
+        while ((v = scan.nextView()) != null) {
+            assertEquals(count, v.getInt(0));
+            assertEquals(0, v.compareString(1, TupleView.asciiBytes(word(count))));
+            assertEquals(ROWS - count, v.getInt(2));
+            count++;
+        }
+        scan.close();
+        assertEquals(ROWS, count);
+    }
+
+    /**
+     * Unit test for HeapPage.compact(): the space of deleted tuples is reclaimed, and the remaining tuples keep their
+     * entries.
+     */
+    @Test public void compact() throws Exception {
+        HeapPage page = (HeapPage) variable.readPage(new HeapPageId(variable.getId(), 0));
+        int entries = page.entryCount();
+        int free = page.sizeOfFreeSpace();
+        int freed = 0;
+        for (int i = 0; i < entries; i += 2) {
+            freed += page.recordLength(ByteBuffer.wrap(page.getPageData()), page.tupleLocation(i));
+            page.saveTupleLocation(i, -1);
+        }
+        ArrayList<Tuple> before = new ArrayList<Tuple>();
+        Iterator<Tuple> it = page.iterator();
+        while (it.hasNext())
+            before.add(it.next());
+
+        page.compact();
+        assertEquals(free + freed, page.sizeOfFreeSpace());
+        assertEquals(entries, page.entryCount());
+        for (int i = 0; i < entries; i += 2)
+            assertNull(page.getTuple(i));
+        for (Tuple t : before) {
+            Tuple moved = page.getTuple(t.getRecordId().tupleno());
+            assertEquals(t.getRecordId().tupleno(), moved.getRecordId().tupleno());
+            assertEquals(row(t), row(moved));
+        }
+    }
+
+    private static ArrayList<ArrayList<Object>> scan(HeapFile f) throws Exception {
+        ArrayList<ArrayList<Object>> tuples = new ArrayList<ArrayList<Object>>();
+        DbFileIterator it = f.iterator(null);
+        it.open();
+        while (it.hasNext())
+            tuples.add(row(it.next()));
+        it.close();
+        return tuples;
+    }
+
+    private static ArrayList<Object> row(Tuple t) {
+        ArrayList<Object> row = new ArrayList<Object>();
+        for (int i = 0; i < TYPES.length; i++)
+            row.add(t.getField(i));
+        return row;
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(VariableLengthPageTest.class);
+    }
+}
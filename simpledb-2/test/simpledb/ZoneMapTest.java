@@ -0,0 +1,186 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.NoSuchElementException;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class ZoneMapTest extends SimpleDbTestBase {
+
+    /** Counts the pages read from disk. */
+    static class CountingHeapFile extends HeapFile {
+        int reads;
+
+        public CountingHeapFile(File f, TupleDesc td) {
+            super(f, td);
+        }
+
+        public Page readPage(PageId pid) throws NoSuchElementException {
+            reads++;
+            return super.readPage(pid);
+        }
+    }
+
+    private static final int ROWS = 5000;
+
+    private static final Type[] TYPES = new Type[] { Type.INT_TYPE, Type.STRING_TYPE };
+
+    private File file;
+    private CountingHeapFile table;
+
+    /**
+     * Creates a time-ordered table: the first field grows with the position of the tuple, and the second is a name
+     * that grows with it too.
+     */
+    @Before public void createTable() throws Exception {
+        File text = File.createTempFile("table", ".txt");
+        text.deleteOnExit();
+        FileWriter out = new FileWriter(text);
+        for (int i = 0; i < ROWS; i++)
+            out.write((1000 + i) + "," + name(i) + "\n");
+        out.close();
+        file = File.createTempFile("table", ".dat");
+        file.deleteOnExit();
+        new File(file.getPath() + ".zm").deleteOnExit();
+        new File(file.getPath() + ".fsm").deleteOnExit();
+        HeapFileEncoder.convert(text, file, BufferPool.PAGE_SIZE, TYPES.length, TYPES);
+        table = new CountingHeapFile(file, new TupleDesc(TYPES, new String[] { "t", "name" }));
+        Database.getCatalog().addTable(table, SystemTestUtil.getUUID());
+    }
+
+    private static String name(int i) {
+        return String.valueOf((char) ('a' + i * 26 / ROWS)) + i;
+    }
+
+    /**
+     * Returns the values of the first field of the tuples that pass a Filter over a SeqScan of the table.
+     */
+    private ArrayList<Integer> filter(Predicate p) throws Exception {
+        ArrayList<Integer> result = new ArrayList<Integer>();
+        Filter f = new Filter(p, new SeqScan(null, table.getId(), ""));
+        f.open();
+        while (f.hasNext())
+            result.add(((IntField) f.next().getField(0)).getValue());
+        f.close();
+        return result;
+    }
+
+    /**
+     * Returns the values that pass p without skipping any page.
+     */
+    private ArrayList<Integer> expected(Predicate p) throws Exception {
+        ArrayList<Integer> result = new ArrayList<Integer>();
+        DbFileIterator it = table.iterator(null);
+        it.open();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            if (p.filter(t))
+                result.add(((IntField) t.getField(0)).getValue());
+        }
+        it.close();
+        return result;
+    }
+
+    /**
+     * Unit test for HeapFileEncoder.convert(): the zone map is written with the file and matches its pages.
+     */
+    @Test public void encoderWritesZoneMap() throws Exception {
+        ZoneMap map = ZoneMap.load(table.zoneMapFile(), file, ZoneMap.typesOf(table.getTupleDesc()));
+        assertNotNull(map);
+        assertEquals(table.numPages(), map.numPages());
+        assertEquals(1000, map.getMin(0, 0));
+        assertEquals(1000 + ROWS - 1, map.getMax(table.numPages() - 1, 0));
+        for (int p = 1; p < map.numPages(); p++)
+            assertEquals(map.getMax(p - 1, 0) + 1, map.getMin(p, 0));
+
+        assertTrue(file.setLastModified(file.lastModified() - 10000));
+        assertNull(ZoneMap.load(table.zoneMapFile(), file, ZoneMap.typesOf(table.getTupleDesc())));
+    }
+
+    /**
+     * Unit test for SeqScan.pushDown(): a range predicate on a time-ordered field reads only the pages in the range,
+     * and every operator returns the same tuples as without skipping.
+     */
+    @Test public void skipsPages() throws Exception {
+        Predicate range = new Predicate(0, Predicate.Op.GREATER_THAN_OR_EQ, new IntField(1000 + ROWS - 100));
+        assertEquals(expected(range), filter(range));
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        table.reads = 0;
+        assertEquals(100, filter(range).size());
+        // 29 tuples fit on a page, so the last 100 tuples are on the last 4 or 5 pages
+        assertTrue(table.reads <= 5);
+
+        for (Predicate.Op op : Predicate.Op.values()) {
+            for (int v : new int[] { 0, 1000, 2500, 1000 + ROWS - 1, 99999 }) {
+                Predicate p = new Predicate(0, op, new IntField(v));
+                assertEquals(p.toString(), expected(p), filter(p));
+            }
+            for (String s : new String[] { "", "a", "b1", "c", "m2600", "zz", "\u00e9" }) {
+                Predicate p = new Predicate(1, op, new StringField(s, Type.STRING_LEN));
+                assertEquals(p.toString(), expected(p), filter(p));
+            }
+        }
+    }
+
+    /**
+     * Unit test for HeapFile.addTuple() and deleteTuple(): the zone map covers inserted tuples at once, and stops
+     * matching a page whose tuples were all deleted.
+     */
+    @Test public void maintainedByUpdates() throws Exception {
+        TransactionId tid = new TransactionId();
+        Predicate low = new Predicate(0, Predicate.Op.LESS_THAN, new IntField(0));
+        assertEquals(0, filter(low).size());
+        Tuple t = new Tuple(table.getTupleDesc());
+        t.setField(0, new IntField(-5));
+        t.setField(1, new StringField("zzz", Type.STRING_LEN));
+        Database.getBufferPool().insertTuple(tid, table.getId(), t);
+        assertEquals(1, filter(low).size());
+        assertEquals(1, filter(new Predicate(1, Predicate.Op.GREATER_THAN, new StringField("zz", Type.STRING_LEN))).size());
+
+        // delete every tuple of the first page
+        Predicate first = new Predicate(0, Predicate.Op.EQUALS, new IntField(1000));
+        assertEquals(1, filter(first).size());
+        ArrayList<Tuple> page0 = new ArrayList<Tuple>();
+        DbFileIterator it = table.iterator(tid);
+        it.open();
+        while (it.hasNext()) {
+            Tuple u = it.next();
+            if (u.getRecordId().getPageId().pageno() == 0)
+                page0.add(u);
+        }
+        it.close();
+        for (Tuple u : page0)
+            Database.getBufferPool().deleteTuple(tid, u);
+        assertFalse(table.zoneMap().mayMatch(0, new Predicate(0, Predicate.Op.NOT_EQUALS, new IntField(0))));
+        assertEquals(0, filter(first).size());
+
+        // the saved map is dropped when the map changes, and saved again on close
+        assertFalse(table.zoneMapFile().exists());
+        Database.getBufferPool().flushAllPages();
+        table.close();
+        ZoneMap saved = ZoneMap.load(table.zoneMapFile(), file, ZoneMap.typesOf(table.getTupleDesc()));
+        assertNotNull(saved);
+        assertEquals(-5, saved.getMin(table.numPages() - 1, 0));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ZoneMapTest.class);
+    }
+}
@@ -0,0 +1,103 @@
+package simpledb.bench;
+
+import java.io.File;
+import java.io.FileWriter;
+
+import simpledb.*;
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Compares a HeapFile scanned through a Filter with a BTreeFile keyed on the filtered field and read through an
+ * IndexScan: the throughput of point lookups and of range queries that select 1% of the table, and the time to insert
+ * tuples in random key order into the tree.
+ */
+public class BTreeBenchmark {
+
+    private static final int ROWS = 200000;
+
+    private static long sink;
+
+    public static void main(String[] args) throws Exception {
+        Type[] types = new Type[] { Type.INT_TYPE, Type.INT_TYPE, Type.INT_TYPE };
+        String[] names = new String[] { "id", "a", "b" };
+        File text = File.createTempFile("table", ".txt");
+        text.deleteOnExit();
+        FileWriter out = new FileWriter(text);
+        for (int i = 0; i < ROWS; i++)
+            out.write((i * 7919 % ROWS) + "," + i + "," + (i % 100) + "\n");
+        out.close();
+
+        File heap = File.createTempFile("table", ".dat");
+        heap.deleteOnExit();
+        new File(heap.getPath() + ".zm").deleteOnExit();
+        HeapFileEncoder.convert(text, heap, BufferPool.PAGE_SIZE, types.length, types);
+        final HeapFile heapFile = new HeapFile(heap, new TupleDesc(types, names));
+        Database.getCatalog().addTable(heapFile, SystemTestUtil.getUUID());
+
+        File tree = File.createTempFile("tree", ".dat");
+        tree.deleteOnExit();
+        BTreeFile.convert(text, tree, types, 0);
+        final BTreeFile treeFile = new BTreeFile(tree, new TupleDesc(types, names), 0);
+        Database.getCatalog().addTable(treeFile, SystemTestUtil.getUUID());
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+
+        for (final int width : new int[] { 1, ROWS / 100 }) {
+            String query = width == 1 ? "point lookup" : "1% range";
+            double filtered = BenchUtil.throughput(1, new BenchUtil.Op() {
+                public void run(int thread, long i) throws Exception {
+                    int low = (int) (i * 7919 % (ROWS - width));
+                    DbIterator it = new Filter(upper(low, width), new Filter(lower(low, width), new SeqScan(null,
+                            heapFile.getId(), "")));
+                    drain(it);
+                }
+            }, 500, 3000);
+            BenchUtil.report("heap filter " + query, filtered, "queries/s");
+
+            double indexed = BenchUtil.throughput(1, new BenchUtil.Op() {
+                public void run(int thread, long i) throws Exception {
+                    int low = (int) (i * 7919 % (ROWS - width));
+                    IndexScan it = new IndexScan(null, treeFile.getId(), "", lower(low, width));
+                    it.restrict(upper(low, width));
+                    drain(it);
+                }
+            }, 500, 3000);
+            BenchUtil.report("btree index scan " + query, indexed, "queries/s");
+        }
+
+        File empty = File.createTempFile("tree", ".dat");
+        empty.deleteOnExit();
+        empty.delete();
+        final BTreeFile inserted = new BTreeFile(empty, new TupleDesc(types, names), 0);
+        Database.getCatalog().addTable(inserted, SystemTestUtil.getUUID());
+        final TransactionId tid = new TransactionId();
+        long nanos = BenchUtil.time(ROWS, new BenchUtil.Op() {
+            public void run(int thread, long i) throws Exception {
+                int n = (int) i;
+                Database.getBufferPool().insertTuple(tid, inserted.getId(), Utility.getHeapTuple(new int[] {
+                        n * 7919 % ROWS, n, n % 100 }));
+            }
+        });
+        BenchUtil.report("btree random inserts", ROWS * 1e9 / nanos, "tuples/s");
+    }
+
+    /**
+     * Returns the predicate on the key of the lower end of a range of width keys from low: EQUALS for a single key.
+     */
+    private static Predicate lower(int low, int width) {
+        return new Predicate(0, width == 1 ? Predicate.Op.EQUALS : Predicate.Op.GREATER_THAN_OR_EQ, new IntField(low));
+    }
+
+    /**
+     * Returns the predicate on the key of the upper end of a range of width keys from low.
+     */
+    private static Predicate upper(int low, int width) {
+        return new Predicate(0, Predicate.Op.LESS_THAN, new IntField(low + width));
+    }
+
+    private static void drain(DbIterator it) throws Exception {
+        it.open();
+        while (it.hasNext())
+            sink += it.next().getRecordId().tupleno();
+        it.close();
+    }
+}
@@ -0,0 +1,90 @@
+package simpledb.bench;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Minimal timing harness shared by the benchmarks in this package. Each benchmark is a plain program with a main
+ * method; run one with <code>ant runbench -Dbench=Name</code>.
+ */
+public class BenchUtil {
+
+    /** The number of two-int tuples that HeapFileEncoder puts on a page. */
+    public static final int TWO_INT_TUPLES_PER_PAGE = (simpledb.BufferPool.PAGE_SIZE - 4) / (2 * 4 + 4);
+
+    /** A single benchmarked operation. */
+    public interface Op {
+        /**
+         * Runs one operation.
+         *
+         * @param thread the index of the calling thread
+         * @param i the number of operations this thread has already run
+         */
+        void run(int thread, long i) throws Exception;
+    }
+
+    /**
+     * Runs op on the specified number of threads, first for warmupMillis and then for measureMillis, and returns the
+     * aggregate throughput of the measured interval.
+     *
+     * @return operations per second over all threads
+     */
+    public static double throughput(final int threads, final Op op, long warmupMillis, long measureMillis)
+            throws Exception {
+        run(threads, op, warmupMillis);
+        return run(threads, op, measureMillis) * 1000.0 / measureMillis;
+    }
+
+    /**
+     * Runs op once per element, on the calling thread, and returns the elapsed time in nanoseconds.
+     */
+    public static long time(int count, Op op) throws Exception {
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++)
+            op.run(0, i);
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Prints a result line in a fixed format so that runs can be compared with diff.
+     */
+    public static void report(String name, double value, String unit) {
+        System.out.println(String.format("%-40s %14.1f %s", name, value, unit));
+    }
+
+    private static long run(final int threads, final Op op, long millis) throws Exception {
+        final AtomicBoolean stop = new AtomicBoolean(false);
+        final CountDownLatch start = new CountDownLatch(1);
+        final long[] counts = new long[threads];
+        final Exception[] errors = new Exception[threads];
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            workers[t] = new Thread() {
+                public void run() {
+                    long i = 0;
+                    try {
+                        start.await();
+                        while (!stop.get())
+                            op.run(thread, i++);
+                    } catch (Exception e) {
+                        errors[thread] = e;
+                    }
+                    counts[thread] = i;
+                }
+            };
+            workers[t].start();
+        }
+        start.countDown();
+        Thread.sleep(millis);
+        stop.set(true);
+        long total = 0;
+        for (int t = 0; t < threads; t++) {
+            workers[t].join();
+            if (errors[t] != null)
+                throw errors[t];
+            total += counts[t];
+        }
+        return total;
+    }
+}
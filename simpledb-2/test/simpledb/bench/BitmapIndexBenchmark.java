@@ -0,0 +1,120 @@
+package simpledb.bench;
+
+import java.io.File;
+import java.io.FileWriter;
+
+import simpledb.*;
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Compares Filters over a SeqScan with a BitmapScan over bitmap indexes on two fields of few distinct values: the
+ * throughput of a conjunction and of a disjunction of equality predicates, and of counting the tuples that satisfy
+ * a predicate by draining a Filter and with a BitmapCount.
+ */
+public class BitmapIndexBenchmark {
+
+    private static final int ROWS = 200000;
+
+    private static long sink;
+
+    public static void main(String[] args) throws Exception {
+        Type[] types = new Type[] { Type.INT_TYPE, Type.INT_TYPE, Type.INT_TYPE };
+        String[] names = new String[] { "id", "a", "b" };
+        File text = File.createTempFile("table", ".txt");
+        text.deleteOnExit();
+        FileWriter out = new FileWriter(text);
+        for (int i = 0; i < ROWS; i++)
+            out.write(i + "," + (i * 7919 % 50) + "," + (i * 104729 % 20) + "\n");
+        out.close();
+
+        File heap = File.createTempFile("table", ".dat");
+        heap.deleteOnExit();
+        new File(heap.getPath() + ".zm").deleteOnExit();
+        HeapFileEncoder.convert(text, heap, BufferPool.PAGE_SIZE, types.length, types);
+        final HeapFile heapFile = new HeapFile(heap, new TupleDesc(types, names));
+        Database.getCatalog().addTable(heapFile, SystemTestUtil.getUUID());
+        final int table = heapFile.getId();
+        long nanos = BenchUtil.time(1, new BenchUtil.Op() {
+            public void run(int thread, long i) throws Exception {
+                for (int field = 1; field < 3; field++) {
+                    File index = new File(heapFile.getFile().getPath() + "." + field + ".bitmap");
+                    index.deleteOnExit();
+                    Database.getCatalog().addBitmapIndex(new BitmapIndex(index, heapFile, field));
+                }
+            }
+        });
+        BenchUtil.report("bitmap index build (2 fields)", nanos / 1e6, "ms");
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+
+        double filtered = BenchUtil.throughput(1, new BenchUtil.Op() {
+            public void run(int thread, long i) throws Exception {
+                drain(new Filter(eq(2, i), new Filter(eq(1, i), new SeqScan(null, table, ""))));
+            }
+        }, 500, 3000);
+        BenchUtil.report("heap filter a = x AND b = y", filtered, "queries/s");
+        double bitmap = BenchUtil.throughput(1, new BenchUtil.Op() {
+            public void run(int thread, long i) throws Exception {
+                BitmapScan scan = new BitmapScan(null, table, "", eq(1, i));
+                scan.and(eq(2, i));
+                drain(scan);
+            }
+        }, 500, 3000);
+        BenchUtil.report("bitmap scan a = x AND b = y", bitmap, "queries/s");
+
+        filtered = BenchUtil.throughput(1, new BenchUtil.Op() {
+            public void run(int thread, long i) throws Exception {
+                Predicate p1 = eq(1, i);
+                Predicate p2 = eq(2, i);
+                // Filter takes a single predicate, so the disjunction is applied while draining the scan
+                SeqScan scan = new SeqScan(null, table, "");
+                scan.open();
+                while (scan.hasNext()) {
+                    Tuple t = scan.next();
+                    if (p1.filter(t) || p2.filter(t))
+                        sink += t.getField(0).hashCode();
+                }
+                scan.close();
+            }
+        }, 500, 3000);
+        BenchUtil.report("heap filter a = x OR b = y", filtered, "queries/s");
+        bitmap = BenchUtil.throughput(1, new BenchUtil.Op() {
+            public void run(int thread, long i) throws Exception {
+                BitmapScan scan = new BitmapScan(null, table, "", eq(1, i));
+                scan.or(eq(2, i));
+                drain(scan);
+            }
+        }, 500, 3000);
+        BenchUtil.report("bitmap scan a = x OR b = y", bitmap, "queries/s");
+
+        // Aggregate is not implemented in this tree, so the heap count is a drain of the filter
+        filtered = BenchUtil.throughput(1, new BenchUtil.Op() {
+            public void run(int thread, long i) throws Exception {
+                drain(new Filter(eq(1, i), new SeqScan(null, table, "")));
+            }
+        }, 500, 3000);
+        BenchUtil.report("heap count where a = x", filtered, "queries/s");
+        bitmap = BenchUtil.throughput(1, new BenchUtil.Op() {
+            public void run(int thread, long i) throws Exception {
+                drain(new BitmapCount(new BitmapScan(null, table, "", eq(1, i)), 0, Aggregator.NO_GROUPING));
+            }
+        }, 500, 3000);
+        BenchUtil.report("bitmap count where a = x", bitmap, "queries/s");
+        bitmap = BenchUtil.throughput(1, new BenchUtil.Op() {
+            public void run(int thread, long i) throws Exception {
+                drain(new BitmapCount(new BitmapScan(null, table, "", eq(1, i)), 0, 2));
+            }
+        }, 500, 3000);
+        BenchUtil.report("bitmap count where a = x group by b", bitmap, "queries/s");
+    }
+
+    private static Predicate eq(int field, long i) {
+        return new Predicate(field, Predicate.Op.EQUALS, new IntField((int) (i % (field == 1 ? 50 : 20))));
+    }
+
+    private static void drain(DbIterator it) throws Exception {
+        it.open();
+        while (it.hasNext())
+            sink += it.next().getField(0).hashCode();
+        it.close();
+    }
+}
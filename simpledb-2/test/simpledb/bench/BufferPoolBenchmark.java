@@ -0,0 +1,46 @@
+package simpledb.bench;
+
+import java.util.Random;
+
+import simpledb.*;
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Measures BufferPool.getPage throughput on cache hits as the number of concurrent threads grows. All pages of the
+ * table fit in the pool, so after the first pass every call is a hit.
+ */
+public class BufferPoolBenchmark {
+
+    private static final int TABLE_PAGES = 64;
+
+    public static void main(String[] args) throws Exception {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0])
+                : Runtime.getRuntime().availableProcessors();
+
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, BenchUtil.TWO_INT_TUPLES_PER_PAGE * TABLE_PAGES, null, null);
+        final int tableId = f.getId();
+        final int numPages = f.numPages();
+        final BufferPool pool = Database.resetBufferPool(numPages);
+        final TransactionId tid = new TransactionId();
+        for (int i = 0; i < numPages; i++)
+            pool.getPage(tid, new HeapPageId(tableId, i), Permissions.READ_ONLY);
+
+        final Random[] rand = new Random[maxThreads];
+        for (int i = 0; i < maxThreads; i++)
+            rand[i] = new Random(i);
+        BenchUtil.Op hit = new BenchUtil.Op() {
+            public void run(int thread, long i) throws Exception {
+                pool.getPage(tid, new HeapPageId(tableId, rand[thread].nextInt(numPages)), Permissions.READ_ONLY);
+            }
+        };
+
+        double single = 0;
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            double opsPerSec = BenchUtil.throughput(threads, hit, 1000, 3000);
+            if (threads == 1)
+                single = opsPerSec;
+            BenchUtil.report("getPage hits, " + threads + " thread(s)", opsPerSec, "ops/s");
+            BenchUtil.report("  speedup over 1 thread", opsPerSec / single, "x");
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package simpledb.bench;
+
+import java.io.File;
+import java.util.NoSuchElementException;
+
+import simpledb.*;
+
+/**
+ * Measures bulk inserts through BufferPool.insertTuple, which finds a page with room through the free-space map of
+ * the HeapFile, and compares them on a smaller table with a naive insert that reads pages from the start of the file
+ * until one has room, as HeapFile.addTuple would without the map. The same rows are then loaded with
+ * HeapFile.appendTuples, which writes full pages to the end of the file in batches with one log record each.
+ */
+public class BulkInsertBenchmark {
+
+    private static final int ROWS = 1000000;
+    private static final int NAIVE_ROWS = 20000;
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : ROWS;
+
+        final HeapFile table = emptyTable();
+        final TransactionId tid = new TransactionId();
+        long nanos = BenchUtil.time(rows, new BenchUtil.Op() {
+            public void run(int thread, long i) throws Exception {
+                Database.getBufferPool().insertTuple(tid, table.getId(), Utility.getHeapTuple((int) i, 2));
+            }
+        });
+        Database.getBufferPool().flushAllPages();
+        BenchUtil.report("free-space map, " + rows + " rows", rows * 1e9 / nanos, "inserts/s");
+        BenchUtil.report("  pages", table.numPages(), "pages");
+        int records = Database.getLogFile().getTotalRecords();
+        table.close();
+        table.freeSpaceFile().delete();
+
+        final HeapFile appended = emptyTable();
+        final int n = rows;
+        nanos = BenchUtil.time(1, new BenchUtil.Op() {
+            public void run(int thread, long i) throws Exception {
+                appended.appendTuples(tid, rows(n));
+            }
+        });
+        BenchUtil.report("appendTuples, " + rows + " rows", rows * 1e9 / nanos, "inserts/s");
+        BenchUtil.report("  pages", appended.numPages(), "pages");
+        BenchUtil.report("  log records", Database.getLogFile().getTotalRecords() - records, "records");
+        appended.close();
+        appended.freeSpaceFile().delete();
+
+        final HeapFile naive = emptyTable();
+        nanos = BenchUtil.time(NAIVE_ROWS, new BenchUtil.Op() {
+            public void run(int thread, long i) throws Exception {
+                Tuple t = Utility.getHeapTuple((int) i, 2);
+                for (int p = 0; p < naive.numPages(); p++) {
+                    HeapPage page = (HeapPage) Database.getBufferPool().getPage(tid,
+                            new HeapPageId(naive.getId(), p), Permissions.READ_WRITE);
+                    if (page.availableSpace() >= 12) {
+                        page.addTuple(t);
+                        page.markDirty(true, tid);
+                        return;
+                    }
+                }
+                HeapPage page = new HeapPage(new HeapPageId(naive.getId(), naive.numPages()),
+                        HeapPage.createEmptyPageData());
+                page.addTuple(t);
+                naive.writePage(page);
+            }
+        });
+        BenchUtil.report("naive first fit, " + NAIVE_ROWS + " rows", NAIVE_ROWS * 1e9 / nanos, "inserts/s");
+        naive.close();
+    }
+
+    /**
+     * Returns an iterator over the specified number of the two-field tuples that the inserts above use.
+     */
+    private static DbIterator rows(final int n) {
+        return new DbIterator() {
+            private int i;
+
+            public void open() {
+                i = 0;
+            }
+
+            public boolean hasNext() {
+                return i < n;
+            }
+
+            public Tuple next() {
+                if (i >= n)
+                    throw new NoSuchElementException();
+                return Utility.getHeapTuple(i++, 2);
+            }
+
+            public void rewind() {
+                i = 0;
+            }
+
+            public TupleDesc getTupleDesc() {
+                return Utility.getTupleDesc(2);
+            }
+
+            public void close() {
+            }
+        };
+    }
+
+    private static HeapFile emptyTable() throws Exception {
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        File f = File.createTempFile("table", ".dat");
+        f.deleteOnExit();
+        return Utility.createEmptyHeapFile(f.getAbsolutePath(), 2);
+    }
+}
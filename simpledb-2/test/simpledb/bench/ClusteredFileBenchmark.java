@@ -0,0 +1,106 @@
+package simpledb.bench;
+
+import java.io.File;
+import java.io.FileWriter;
+
+import simpledb.*;
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Compares a HeapFile with a ClusteredFile sorted on a timestamp field, for the reporting queries that filter on a
+ * range of timestamps and sort on the timestamp: the throughput of a 1% range sorted by OrderBy over Filters on a
+ * SeqScan and read in order by an IndexScan, the time of a full sorted scan, and the throughput of inserts into the
+ * clustered file, including the background merges of its delta.
+ */
+public class ClusteredFileBenchmark {
+
+    private static final int ROWS = 200000;
+
+    private static long sink;
+
+    public static void main(String[] args) throws Exception {
+        Type[] types = new Type[] { Type.INT_TYPE, Type.INT_TYPE, Type.INT_TYPE };
+        String[] names = new String[] { "ts", "a", "b" };
+        File text = File.createTempFile("table", ".txt");
+        text.deleteOnExit();
+        FileWriter out = new FileWriter(text);
+        for (int i = 0; i < ROWS; i++)
+            out.write((i * 7919 % ROWS) + "," + i + "," + (i % 100) + "\n");
+        out.close();
+
+        File heap = File.createTempFile("table", ".dat");
+        heap.deleteOnExit();
+        new File(heap.getPath() + ".zm").deleteOnExit();
+        HeapFileEncoder.convert(text, heap, BufferPool.PAGE_SIZE, types.length, types);
+        final HeapFile heapFile = new HeapFile(heap, new TupleDesc(types, names));
+        Database.getCatalog().addTable(heapFile, SystemTestUtil.getUUID());
+
+        File sorted = File.createTempFile("clustered", ".dat");
+        sorted.deleteOnExit();
+        for (String suffix : new String[] { ".delta", ".fence", ".fsm", ".zm", ".merge", ".swap", ".delta.fsm",
+                ".delta.zm", ".delta.next" })
+            new File(sorted.getPath() + suffix).deleteOnExit();
+        final ClusteredFile clustered = new ClusteredFile(sorted, new TupleDesc(types, names), 0);
+        Database.getCatalog().addTable(clustered, SystemTestUtil.getUUID());
+        final TransactionId tid = new TransactionId();
+        long nanos = BenchUtil.time(ROWS, new BenchUtil.Op() {
+            public void run(int thread, long i) throws Exception {
+                int n = (int) i;
+                Database.getBufferPool().insertTuple(tid, clustered.getId(), Utility.getHeapTuple(new int[] {
+                        n * 7919 % ROWS, n, n % 100 }));
+            }
+        });
+        BenchUtil.report("clustered inserts with background merges", ROWS * 1e9 / nanos, "tuples/s");
+        while (!clustered.merge(tid))
+            Thread.sleep(10);
+        Database.getBufferPool().flushAllPages();
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+
+        final int width = ROWS / 100;
+        double filtered = BenchUtil.throughput(1, new BenchUtil.Op() {
+            public void run(int thread, long i) throws Exception {
+                int low = (int) (i * 7919 % (ROWS - width));
+                drain(new OrderBy(0, true, new Filter(upper(low, width), new Filter(lower(low), new SeqScan(null,
+                        heapFile.getId(), "")))));
+            }
+        }, 500, 3000);
+        BenchUtil.report("heap filter and sort 1% range", filtered, "queries/s");
+        double indexed = BenchUtil.throughput(1, new BenchUtil.Op() {
+            public void run(int thread, long i) throws Exception {
+                int low = (int) (i * 7919 % (ROWS - width));
+                IndexScan it = new IndexScan(null, clustered.getId(), "", lower(low));
+                it.restrict(upper(low, width));
+                drain(it);
+            }
+        }, 500, 3000);
+        BenchUtil.report("clustered index scan 1% range", indexed, "queries/s");
+
+        nanos = BenchUtil.time(3, new BenchUtil.Op() {
+            public void run(int thread, long i) throws Exception {
+                drain(new OrderBy(0, true, new SeqScan(null, heapFile.getId(), "")));
+            }
+        });
+        BenchUtil.report("heap full scan sorted by OrderBy", nanos / 3 / 1e6, "ms");
+        nanos = BenchUtil.time(3, new BenchUtil.Op() {
+            public void run(int thread, long i) throws Exception {
+                drain(new SeqScan(null, clustered.getId(), ""));
+            }
+        });
+        BenchUtil.report("clustered full scan in key order", nanos / 3 / 1e6, "ms");
+    }
+
+    private static Predicate lower(int low) {
+        return new Predicate(0, Predicate.Op.GREATER_THAN_OR_EQ, new IntField(low));
+    }
+
+    private static Predicate upper(int low, int width) {
+        return new Predicate(0, Predicate.Op.LESS_THAN, new IntField(low + width));
+    }
+
+    private static void drain(DbIterator it) throws Exception {
+        it.open();
+        while (it.hasNext())
+            sink += it.next().getField(0).hashCode();
+        it.close();
+    }
+}
@@ -0,0 +1,88 @@
+package simpledb.bench;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.Random;
+
+import simpledb.*;
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Compares a HeapFile and a ColumnFile holding the same analytic table (a sorted id, a category with few values, a
+ * small amount and a string note): the bytes on disk, and the throughput and bytes read of a Project of the amount
+ * over a SeqScan, with a BufferPool too small to hold either table.
+ */
+public class ColumnFileBenchmark {
+
+    private static final int ROWS = 500000;
+
+    private static final Type[] TYPES = new Type[] { Type.INT_TYPE, Type.STRING_TYPE, Type.INT_TYPE,
+            Type.STRING_TYPE };
+
+    private static long sink;
+
+    public static void main(String[] args) throws Exception {
+        File text = File.createTempFile("table", ".txt");
+        text.deleteOnExit();
+        FileWriter out = new FileWriter(text);
+        Random random = new Random(1);
+        for (int i = 0; i < ROWS; i++)
+            out.write(i + ",category" + random.nextInt(20) + "," + random.nextInt(10000) + ",note " + i + "\n");
+        out.close();
+        TupleDesc td = new TupleDesc(TYPES, new String[] { "id", "category", "amount", "note" });
+
+        File heap = File.createTempFile("table", ".dat");
+        heap.deleteOnExit();
+        new File(heap.getPath() + ".zm").deleteOnExit();
+        HeapFileEncoder.convert(text, heap, BufferPool.PAGE_SIZE, TYPES.length, TYPES);
+        HeapFile heapFile = new HeapFile(heap, td);
+        Database.getCatalog().addTable(heapFile, SystemTestUtil.getUUID());
+
+        File col = File.createTempFile("table", ".col");
+        col.deleteOnExit();
+        long columnBytes = 0;
+        ColumnFile.convert(text, col, TYPES);
+        for (int j = 0; j < TYPES.length; j++) {
+            ColumnFile.columnFile(col, j).deleteOnExit();
+            columnBytes += ColumnFile.columnFile(col, j).length();
+        }
+        ColumnFile columnFile = new ColumnFile(col, td);
+        Database.getCatalog().addTable(columnFile, SystemTestUtil.getUUID());
+
+        BenchUtil.report("heap file size", heap.length(), "bytes");
+        BenchUtil.report("column files size", columnBytes, "bytes");
+        Database.resetBufferPool(64);
+        BenchUtil.report("heap project amount", scan(heapFile.getId()) * ROWS, "tuples/s");
+        BenchUtil.report("  bytes read per scan", heap.length(), "bytes");
+        Database.resetBufferPool(64);
+        BenchUtil.report("column project amount", scan(columnFile.getId()) * ROWS, "tuples/s");
+        columnFile.resetBytesRead();
+        project(columnFile.getId()).run(0, 0);
+        BenchUtil.report("  bytes read per scan", columnFile.getBytesRead(), "bytes");
+        BenchUtil.report("  heap equivalent", columnFile.heapBytes(), "bytes");
+    }
+
+    private static double scan(int tableId) throws Exception {
+        return BenchUtil.throughput(1, project(tableId), 1000, 5000);
+    }
+
+    /**
+     * Returns an operation that projects the amount out of a scan of the specified table.
+     */
+    private static BenchUtil.Op project(final int tableId) {
+        final ArrayList<Integer> amount = new ArrayList<Integer>();
+        amount.add(2);
+        final ArrayList<Type> types = new ArrayList<Type>();
+        types.add(Type.INT_TYPE);
+        return new BenchUtil.Op() {
+            public void run(int thread, long i) throws Exception {
+                Project p = new Project(amount, types, new SeqScan(null, tableId, ""));
+                p.open();
+                while (p.hasNext())
+                    sink += ((IntField) p.next().getField(0)).getValue();
+                p.close();
+            }
+        };
+    }
+}
@@ -0,0 +1,77 @@
+package simpledb.bench;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+
+import simpledb.*;
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Compares full scans of a table stored as a plain HeapFile and as CompressedHeapFiles with each codec: the size of
+ * the file, the compression ratio, the time to decompress a page and the throughput of scans that miss the
+ * BufferPool on every page. The files stay in the OS page cache, so the scans measure the CPU cost of decoding, not
+ * the disk time that compression saves. The number of rows is the first argument, 2 million by default.
+ */
+public class CompressedHeapFileBenchmark {
+
+    private static long sink;
+
+    public static void main(String[] args) throws Exception {
+        final int rows = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+        final Type[] types = new Type[] { Type.INT_TYPE, Type.INT_TYPE, Type.STRING_TYPE, Type.INT_TYPE };
+        String[] names = new String[] { "id", "amount", "customer", "region" };
+        File text = File.createTempFile("table", ".txt");
+        text.deleteOnExit();
+        BufferedWriter out = new BufferedWriter(new FileWriter(text), 1 << 20);
+        for (int i = 0; i < rows; i++)
+            out.write(i + "," + (i * 7919 % 100003) + ",customer" + (i % 5000) + "," + (i % 100) + "\n");
+        out.close();
+
+        File plain = File.createTempFile("table", ".dat");
+        plain.deleteOnExit();
+        for (String suffix : new String[] { ".zm", ".fsm" })
+            new File(plain.getPath() + suffix).deleteOnExit();
+        HeapFileEncoder.convert(text, plain, BufferPool.PAGE_SIZE, types.length, types, false, false, 1);
+        HeapFile heap = new HeapFile(plain, new TupleDesc(types, names));
+        Database.getCatalog().addTable(heap, SystemTestUtil.getUUID());
+        scan("plain", heap, rows);
+
+        for (PageCodec codec : new PageCodec[] { LzCodec.INSTANCE, DeflateCodec.INSTANCE }) {
+            File f = File.createTempFile("table", ".dat");
+            f.deleteOnExit();
+            for (String suffix : new String[] { ".dir", ".zm", ".fsm" })
+                new File(f.getPath() + suffix).deleteOnExit();
+            long start = System.nanoTime();
+            CompressedHeapFile.convert(plain, f, codec);
+            BenchUtil.report(codec.name() + " convert", heap.numPages() * 1e9 / (System.nanoTime() - start),
+                    "pages/s");
+            CompressedHeapFile table = new CompressedHeapFile(f, new TupleDesc(types, names), codec);
+            Database.getCatalog().addTable(table, SystemTestUtil.getUUID());
+            table.resetStats();
+            scan(codec.name(), table, rows);
+            BenchUtil.report("  compression ratio", table.compressionRatio(), "x");
+            BenchUtil.report("  decode", table.decodeNanosPerPage() / 1000, "us/page");
+        }
+    }
+
+    /**
+     * Scans the table several times from an empty BufferPool and reports its size and the scan throughput.
+     */
+    private static void scan(String name, final HeapFile file, int rows) throws Exception {
+        BenchUtil.report(name + " file", file.getFile().length() / (double) (1 << 20), "MB");
+        final TransactionId tid = new TransactionId();
+        final int scans = 5;
+        long nanos = BenchUtil.time(scans, new BenchUtil.Op() {
+            public void run(int thread, long i) throws Exception {
+                Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+                DbFileIterator it = file.iterator(tid);
+                it.open();
+                while (it.hasNext())
+                    sink += it.next().getField(3).hashCode();
+                it.close();
+            }
+        });
+        BenchUtil.report(name + " scan", (double) rows * scans * 1e9 / nanos, "tuples/s");
+    }
+}
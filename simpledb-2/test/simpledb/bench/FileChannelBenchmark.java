@@ -0,0 +1,54 @@
+package simpledb.bench;
+
+import java.io.RandomAccessFile;
+import java.util.Random;
+
+import simpledb.*;
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Compares the page read rate of HeapFile.readPage, which uses one long-lived FileChannel with positional reads,
+ * against the previous implementation, which opened a RandomAccessFile, seeked, read and closed it for every page.
+ * Pages are read in random order; the file is small enough to stay in the OS page cache, so this measures the
+ * per-read overhead rather than the disk.
+ */
+public class FileChannelBenchmark {
+
+    private static final int TABLE_PAGES = 256;
+
+    public static void main(String[] args) throws Exception {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0])
+                : Runtime.getRuntime().availableProcessors();
+        final HeapFile f = SystemTestUtil.createRandomHeapFile(2, BenchUtil.TWO_INT_TUPLES_PER_PAGE * TABLE_PAGES,
+                null, null);
+        final int numPages = f.numPages();
+        final Random[] rand = new Random[maxThreads];
+        for (int i = 0; i < maxThreads; i++)
+            rand[i] = new Random(i);
+
+        BenchUtil.Op legacy = new BenchUtil.Op() {
+            public void run(int thread, long i) throws Exception {
+                HeapPageId pid = new HeapPageId(f.getId(), rand[thread].nextInt(numPages));
+                byte[] data = new byte[BufferPool.PAGE_SIZE];
+                RandomAccessFile raf = new RandomAccessFile(f.getFile(), "rw");
+                raf.seek((long) pid.pageno() * BufferPool.PAGE_SIZE);
+                raf.readFully(data);
+                raf.close();
+                new HeapPage(pid, data);
+            }
+        };
+        BenchUtil.Op channel = new BenchUtil.Op() {
+            public void run(int thread, long i) throws Exception {
+                f.readPage(new HeapPageId(f.getId(), rand[thread].nextInt(numPages)));
+            }
+        };
+
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            double before = BenchUtil.throughput(threads, legacy, 1000, 3000);
+            double after = BenchUtil.throughput(threads, channel, 1000, 3000);
+            BenchUtil.report("open/seek/read/close, " + threads + " thread(s)", before, "pages/s");
+            BenchUtil.report("positional FileChannel, " + threads + " thread(s)", after, "pages/s");
+            BenchUtil.report("  speedup", after / before, "x");
+        }
+    }
+}
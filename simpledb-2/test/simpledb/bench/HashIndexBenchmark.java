@@ -0,0 +1,117 @@
+package simpledb.bench;
+
+import java.io.File;
+import java.io.FileWriter;
+
+import simpledb.*;
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Compares a HeapFile with and without a HashIndex on one field: the throughput of point lookups through a Filter
+ * over a SeqScan and through a HashIndexScan, the time of an equi-join of a small table with the indexed one through
+ * the nested loops of Join and through an IndexJoin, and the cost of keeping the index up to date on inserts.
+ */
+public class HashIndexBenchmark {
+
+    private static final int ROWS = 200000;
+
+    private static final int OUTER_ROWS = 200;
+
+    private static long sink;
+
+    public static void main(String[] args) throws Exception {
+        Type[] types = new Type[] { Type.INT_TYPE, Type.INT_TYPE, Type.INT_TYPE };
+        String[] names = new String[] { "id", "a", "b" };
+        File text = File.createTempFile("table", ".txt");
+        text.deleteOnExit();
+        FileWriter out = new FileWriter(text);
+        for (int i = 0; i < ROWS; i++)
+            out.write((i * 7919 % ROWS) + "," + i + "," + (i % 100) + "\n");
+        out.close();
+
+        File heap = File.createTempFile("table", ".dat");
+        heap.deleteOnExit();
+        new File(heap.getPath() + ".zm").deleteOnExit();
+        HeapFileEncoder.convert(text, heap, BufferPool.PAGE_SIZE, types.length, types);
+        final HeapFile heapFile = new HeapFile(heap, new TupleDesc(types, names));
+        Database.getCatalog().addTable(heapFile, SystemTestUtil.getUUID());
+        final File index = new File(heap.getPath() + ".id.hash");
+        index.deleteOnExit();
+        long nanos = BenchUtil.time(1, new BenchUtil.Op() {
+            public void run(int thread, long i) throws Exception {
+                Database.getCatalog().addIndex(new HashIndex(index, heapFile, 0));
+            }
+        });
+        BenchUtil.report("hash index build", nanos / 1e6, "ms");
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+
+        double filtered = BenchUtil.throughput(1, new BenchUtil.Op() {
+            public void run(int thread, long i) throws Exception {
+                drain(new Filter(key(i), new SeqScan(null, heapFile.getId(), "")));
+            }
+        }, 500, 3000);
+        BenchUtil.report("heap filter point lookup", filtered, "queries/s");
+        double indexed = BenchUtil.throughput(1, new BenchUtil.Op() {
+            public void run(int thread, long i) throws Exception {
+                drain(new HashIndexScan(null, heapFile.getId(), "", key(i)));
+            }
+        }, 500, 3000);
+        BenchUtil.report("hash index point lookup", indexed, "queries/s");
+
+        final HeapFile outer = new HeapFile(File.createTempFile("outer", ".dat"), new TupleDesc(types, names));
+        outer.getFile().deleteOnExit();
+        Database.getCatalog().addTable(outer, SystemTestUtil.getUUID());
+        final TransactionId tid = new TransactionId();
+        for (int i = 0; i < OUTER_ROWS; i++)
+            Database.getBufferPool().insertTuple(tid, outer.getId(), Utility.getHeapTuple(new int[] { i * 997 % ROWS,
+                    i, 0 }));
+        final JoinPredicate p = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+        nanos = BenchUtil.time(1, new BenchUtil.Op() {
+            public void run(int thread, long i) throws Exception {
+                drain(new Join(p, new SeqScan(tid, outer.getId(), ""), new SeqScan(tid, heapFile.getId(), "")));
+            }
+        });
+        BenchUtil.report("nested loops join of " + OUTER_ROWS + " tuples", nanos / 1e6, "ms");
+        nanos = BenchUtil.time(10, new BenchUtil.Op() {
+            public void run(int thread, long i) throws Exception {
+                drain(new IndexJoin(p, new SeqScan(tid, outer.getId(), ""), new HashIndexScan(tid, heapFile.getId(),
+                        "", 0)));
+            }
+        });
+        BenchUtil.report("index join of " + OUTER_ROWS + " tuples", nanos / 10 / 1e6, "ms");
+
+        for (final boolean withIndex : new boolean[] { false, true }) {
+            File empty = File.createTempFile("table", ".dat");
+            empty.deleteOnExit();
+            final HeapFile inserted = new HeapFile(empty, new TupleDesc(types, names));
+            new File(empty.getPath() + ".zm").deleteOnExit();
+            new File(empty.getPath() + ".fsm").deleteOnExit();
+            Database.getCatalog().addTable(inserted, SystemTestUtil.getUUID());
+            if (withIndex) {
+                File emptyIndex = new File(empty.getPath() + ".id.hash");
+                emptyIndex.deleteOnExit();
+                Database.getCatalog().addIndex(new HashIndex(emptyIndex, inserted, 0));
+            }
+            nanos = BenchUtil.time(ROWS, new BenchUtil.Op() {
+                public void run(int thread, long i) throws Exception {
+                    int n = (int) i;
+                    Database.getBufferPool().insertTuple(tid, inserted.getId(), Utility.getHeapTuple(new int[] {
+                            n * 7919 % ROWS, n, n % 100 }));
+                }
+            });
+            BenchUtil.report("heap inserts " + (withIndex ? "with" : "without") + " hash index", ROWS * 1e9 / nanos,
+                    "tuples/s");
+        }
+    }
+
+    private static Predicate key(long i) {
+        return new Predicate(0, Predicate.Op.EQUALS, new IntField((int) (i * 7919 % ROWS)));
+    }
+
+    private static void drain(DbIterator it) throws Exception {
+        it.open();
+        while (it.hasNext())
+            sink += it.next().getField(1).hashCode();
+        it.close();
+    }
+}
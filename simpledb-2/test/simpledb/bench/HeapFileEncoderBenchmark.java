@@ -0,0 +1,45 @@
+package simpledb.bench;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+
+import simpledb.*;
+
+/**
+ * Measures bulk loading with HeapFileEncoder: the rows per second of converting a text file of int and string fields
+ * into a heap file, with the fixed-length and the dictionary-encoded layouts, on one thread and on every core. The
+ * number of rows is the first argument, 10 million by default (about 290 MB of text); pass a larger number for a
+ * multi-GB input.
+ */
+public class HeapFileEncoderBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        final long rows = args.length > 0 ? Long.parseLong(args[0]) : 10000000L;
+        final Type[] types = new Type[] { Type.INT_TYPE, Type.INT_TYPE, Type.STRING_TYPE, Type.INT_TYPE };
+        final File text = File.createTempFile("table", ".txt");
+        text.deleteOnExit();
+        BufferedWriter out = new BufferedWriter(new FileWriter(text), 1 << 20);
+        for (long i = 0; i < rows; i++)
+            out.write(i + "," + (i * 7919 % 1000003) + ",customer" + (i % 5000) + "," + (i % 100) + "\n");
+        out.close();
+        System.out.println("input: " + rows + " rows, " + text.length() / (1 << 20) + " MB");
+
+        final File heap = File.createTempFile("table", ".dat");
+        heap.deleteOnExit();
+        for (String suffix : new String[] { ".zm", ".fsm", ".dict" })
+            new File(heap.getPath() + suffix).deleteOnExit();
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (final boolean dictionary : new boolean[] { false, true })
+            for (final int threads : cores > 1 ? new int[] { 1, cores } : new int[] { 1 }) {
+                long nanos = BenchUtil.time(1, new BenchUtil.Op() {
+                    public void run(int thread, long i) throws Exception {
+                        HeapFileEncoder.convert(text, heap, BufferPool.PAGE_SIZE, types.length, types, false,
+                                dictionary, threads);
+                    }
+                });
+                BenchUtil.report("convert " + (dictionary ? "dictionary-encoded" : "fixed-length") + ", " + threads
+                        + " threads", rows * 1e9 / nanos, "rows/s");
+            }
+    }
+}
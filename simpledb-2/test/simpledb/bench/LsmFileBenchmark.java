@@ -0,0 +1,89 @@
+package simpledb.bench;
+
+import java.io.File;
+
+import simpledb.*;
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Compares ingest into an empty HeapFile, BTreeFile and LsmFile: the throughput of inserts in random key order through
+ * the BufferPool, including the background compactions of the LsmFile, and then the throughput of point lookups and
+ * 1% range queries on the key through an IndexScan of the BTreeFile and of the LsmFile.
+ */
+public class LsmFileBenchmark {
+
+    private static final int ROWS = 200000;
+
+    private static long sink;
+
+    public static void main(String[] args) throws Exception {
+        Type[] types = new Type[] { Type.INT_TYPE, Type.INT_TYPE, Type.INT_TYPE };
+        String[] names = new String[] { "id", "a", "b" };
+        final TransactionId tid = new TransactionId();
+
+        File heap = File.createTempFile("table", ".dat");
+        heap.deleteOnExit();
+        for (String suffix : new String[] { ".fsm", ".zm" })
+            new File(heap.getPath() + suffix).deleteOnExit();
+        HeapFile heapFile = new HeapFile(heap, new TupleDesc(types, names));
+        Database.getCatalog().addTable(heapFile, SystemTestUtil.getUUID());
+        insert("heap", heapFile, tid);
+
+        File tree = File.createTempFile("tree", ".dat");
+        tree.deleteOnExit();
+        tree.delete();
+        final BTreeFile treeFile = new BTreeFile(tree, new TupleDesc(types, names), 0);
+        Database.getCatalog().addTable(treeFile, SystemTestUtil.getUUID());
+        insert("btree", treeFile, tid);
+
+        File manifest = File.createTempFile("lsm", ".dat");
+        manifest.deleteOnExit();
+        new File(manifest.getPath() + ".tmp").deleteOnExit();
+        for (int i = 0; i < 1000; i++)
+            new File(manifest.getPath() + ".run" + i).deleteOnExit();
+        final LsmFile lsmFile = new LsmFile(manifest, new TupleDesc(types, names), 0);
+        Database.getCatalog().addTable(lsmFile, SystemTestUtil.getUUID());
+        insert("lsm", lsmFile, tid);
+        lsmFile.flush();
+        lsmFile.compact();
+        Database.getBufferPool().flushAllPages();
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+
+        for (final int width : new int[] { 1, ROWS / 100 }) {
+            String query = width == 1 ? "point lookup" : "1% range";
+            for (final DbFile file : new DbFile[] { treeFile, lsmFile }) {
+                double indexed = BenchUtil.throughput(1, new BenchUtil.Op() {
+                    public void run(int thread, long i) throws Exception {
+                        int low = (int) (i * 7919 % (ROWS - width));
+                        IndexScan it = new IndexScan(null, file.getId(), "", new Predicate(0,
+                                Predicate.Op.GREATER_THAN_OR_EQ, new IntField(low)));
+                        it.restrict(new Predicate(0, Predicate.Op.LESS_THAN, new IntField(low + width)));
+                        drain(it);
+                    }
+                }, 500, 3000);
+                BenchUtil.report((file == lsmFile ? "lsm" : "btree") + " index scan " + query, indexed, "queries/s");
+            }
+        }
+    }
+
+    /**
+     * Inserts the rows into the specified empty table, in random key order, and reports the throughput.
+     */
+    private static void insert(String name, final DbFile file, final TransactionId tid) throws Exception {
+        long nanos = BenchUtil.time(ROWS, new BenchUtil.Op() {
+            public void run(int thread, long i) throws Exception {
+                int n = (int) i;
+                Database.getBufferPool().insertTuple(tid, file.getId(), Utility.getHeapTuple(new int[] {
+                        n * 7919 % ROWS, n, n % 100 }));
+            }
+        });
+        BenchUtil.report(name + " random inserts", ROWS * 1e9 / nanos, "tuples/s");
+    }
+
+    private static void drain(DbIterator it) throws Exception {
+        it.open();
+        while (it.hasNext())
+            sink += it.next().getField(0).hashCode();
+        it.close();
+    }
+}
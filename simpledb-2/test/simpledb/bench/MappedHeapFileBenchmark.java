@@ -0,0 +1,57 @@
+package simpledb.bench;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.Random;
+
+import simpledb.*;
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Compares HeapFile and MappedHeapFile on random page reads and on reading every tuple of every page, bypassing the
+ * BufferPool. The file is small enough to stay in the OS page cache, so this measures the cost of the read system
+ * call and the page copy that MappedHeapFile avoids.
+ */
+public class MappedHeapFileBenchmark {
+
+    private static final int TABLE_PAGES = 1024;
+
+    private static long sink;
+
+    public static void main(String[] args) throws Exception {
+        File f = SystemTestUtil.createRandomHeapFileUnopened(2, BenchUtil.TWO_INT_TUPLES_PER_PAGE * TABLE_PAGES,
+                Integer.MAX_VALUE, null, null);
+        HeapFile plain = new HeapFile(f, Utility.getTupleDesc(2));
+        MappedHeapFile mapped = new MappedHeapFile(f, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(mapped, SystemTestUtil.getUUID());
+
+        BenchUtil.report("HeapFile random readPage", reads(plain), "pages/s");
+        BenchUtil.report("MappedHeapFile random readPage", reads(mapped), "pages/s");
+        BenchUtil.report("HeapFile page scan", scans(plain), "pages/s");
+        BenchUtil.report("MappedHeapFile page scan", scans(mapped), "pages/s");
+        plain.close();
+        mapped.close();
+    }
+
+    private static double reads(final HeapFile f) throws Exception {
+        final Random rand = new Random(0);
+        final int numPages = f.numPages();
+        return BenchUtil.throughput(1, new BenchUtil.Op() {
+            public void run(int thread, long i) throws Exception {
+                f.readPage(new HeapPageId(f.getId(), rand.nextInt(numPages)));
+            }
+        }, 1000, 3000);
+    }
+
+    private static double scans(final HeapFile f) throws Exception {
+        final int numPages = f.numPages();
+        return BenchUtil.throughput(1, new BenchUtil.Op() {
+            public void run(int thread, long i) throws Exception {
+                HeapPage page = (HeapPage) f.readPage(new HeapPageId(f.getId(), (int) (i % numPages)));
+                Iterator<Tuple> it = page.iterator();
+                while (it.hasNext())
+                    sink += ((IntField) it.next().getField(0)).getValue();
+            }
+        }, 1000, 3000);
+    }
+}
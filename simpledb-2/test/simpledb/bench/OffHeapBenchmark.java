@@ -0,0 +1,79 @@
+package simpledb.bench;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import simpledb.*;
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Compares a heap buffer pool with an off-heap one on a random page workload over a table twice the size of the pool:
+ * the heap retained by the full pool, the getPage throughput, and the time spent in garbage collection. Run with a
+ * larger pool, e.g. <code>-Dargs=200000</code> and enough -Xmx and -XX:MaxDirectMemorySize, to see the effect on GC
+ * pauses for a multi-GB pool.
+ */
+public class OffHeapBenchmark {
+
+    private static final long MEASURE_MILLIS = 5000;
+
+    public static void main(String[] args) throws Exception {
+        int poolPages = args.length > 0 ? Integer.parseInt(args[0]) : 8192;
+        final HeapFile f = createTable(2 * poolPages);
+
+        run("heap frames", f, poolPages, false);
+        run("off-heap frames", f, poolPages, true);
+    }
+
+    private static void run(String name, final HeapFile f, int poolPages, boolean offHeap) throws Exception {
+        final BufferPool pool = Database.resetBufferPool(poolPages);
+        if (offHeap)
+            pool.enableOffHeapFrames();
+        final int tableId = f.getId();
+        long baseline = SystemTestUtil.getMemoryFootprint();
+        for (int i = 0; i < poolPages; i++)
+            pool.getPage(null, new HeapPageId(tableId, i), Permissions.READ_ONLY);
+        long retained = SystemTestUtil.getMemoryFootprint() - baseline;
+
+        final Random rand = new Random(0);
+        final int numPages = f.numPages();
+        long gcBefore = gcMillis();
+        double opsPerSec = BenchUtil.throughput(1, new BenchUtil.Op() {
+            public void run(int thread, long i) throws Exception {
+                pool.getPage(null, new HeapPageId(tableId, rand.nextInt(numPages)), Permissions.READ_ONLY);
+            }
+        }, 1000, MEASURE_MILLIS);
+        long gc = gcMillis() - gcBefore;
+
+        BenchUtil.report(name + ": heap retained by pool", retained / (1024.0 * 1024.0), "MB");
+        BenchUtil.report(name + ": getPage", opsPerSec, "ops/s");
+        BenchUtil.report(name + ": GC time", gc, "ms");
+    }
+
+    /**
+     * Writes a table of the specified number of identical pages, which is much faster than encoding random tuples.
+     */
+    private static HeapFile createTable(int numPages) throws Exception {
+        File one = SystemTestUtil.createRandomHeapFileUnopened(2, BenchUtil.TWO_INT_TUPLES_PER_PAGE,
+                Integer.MAX_VALUE, null, null);
+        byte[] page = simpledb.TestUtil.readFileBytes(one.getAbsolutePath());
+        File f = File.createTempFile("table", ".dat");
+        f.deleteOnExit();
+        FileOutputStream out = new FileOutputStream(f);
+        for (int i = 0; i < numPages; i++)
+            out.write(page);
+        out.close();
+        HeapFile hf = new HeapFile(f, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        return hf;
+    }
+
+    private static long gcMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+            total += gc.getCollectionTime();
+        return total;
+    }
+}
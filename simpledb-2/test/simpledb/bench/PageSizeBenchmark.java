@@ -0,0 +1,77 @@
+package simpledb.bench;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.util.Random;
+
+import simpledb.*;
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Compares tables stored with pages of 4, 16 and 64 KB: the throughput of full scans that miss the BufferPool on every
+ * page, where large pages need fewer reads and fewer page switches, and of random lookups of single tuples through a
+ * pool that has room for a tenth of the table, where large pages read more bytes per tuple. The files stay in the OS
+ * page cache, so both measure CPU and copying, not disk time. The number of rows is the first argument, 2 million by
+ * default.
+ */
+public class PageSizeBenchmark {
+
+    private static long sink;
+
+    public static void main(String[] args) throws Exception {
+        final int rows = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+        final Type[] types = new Type[] { Type.INT_TYPE, Type.INT_TYPE, Type.INT_TYPE, Type.INT_TYPE };
+        String[] names = new String[] { "id", "amount", "customer", "region" };
+        File text = File.createTempFile("table", ".txt");
+        text.deleteOnExit();
+        BufferedWriter out = new BufferedWriter(new FileWriter(text), 1 << 20);
+        for (int i = 0; i < rows; i++)
+            out.write(i + "," + (i * 7919 % 100003) + "," + (i % 5000) + "," + (i % 100) + "\n");
+        out.close();
+
+        for (int pageSize : new int[] { 4096, 16384, 65536 }) {
+            File f = File.createTempFile("table", ".dat");
+            f.deleteOnExit();
+            for (String suffix : new String[] { ".zm", ".fsm" })
+                new File(f.getPath() + suffix).deleteOnExit();
+            HeapFileEncoder.convert(text, f, pageSize, types.length, types, false, false, 1);
+            final HeapFile table = new HeapFile(f, new TupleDesc(types, names), false, false, pageSize);
+            Database.getCatalog().addTable(table, SystemTestUtil.getUUID());
+            String name = (pageSize / 1024) + " KB";
+            final TransactionId tid = new TransactionId();
+
+            final int scans = 5;
+            long nanos = BenchUtil.time(scans, new BenchUtil.Op() {
+                public void run(int thread, long i) throws Exception {
+                    Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+                    DbFileIterator it = table.iterator(tid);
+                    it.open();
+                    while (it.hasNext())
+                        sink += it.next().getField(3).hashCode();
+                    it.close();
+                }
+            });
+            BenchUtil.report(name + " scan", (double) rows * scans * 1e9 / nanos, "tuples/s");
+
+            // the pool holds a tenth of the table, in PAGE_SIZE units, whatever the page size
+            final int poolPages = (int) (table.getFile().length() / BufferPool.PAGE_SIZE / 10);
+            Database.resetBufferPool(poolPages);
+            final int perPage = (rows + table.numPages() - 1) / table.numPages();
+            final Random r = new Random(7);
+            final int lookups = 200000;
+            nanos = BenchUtil.time(lookups, new BenchUtil.Op() {
+                public void run(int thread, long i) throws Exception {
+                    int row = r.nextInt(rows);
+                    HeapPage page = (HeapPage) Database.getBufferPool().getPage(tid,
+                            new HeapPageId(table.getId(), row / perPage), Permissions.READ_ONLY);
+                    sink += page.availableSpace();
+                }
+            });
+            BenchUtil.report(name + " lookup", lookups * 1e9 / nanos, "lookups/s");
+            BenchUtil.report(name + " lookup hit rate", Database.getBufferPool().getReplacementPolicy()
+                    .getHitRatio() * 100, "%");
+            table.close();
+        }
+    }
+}
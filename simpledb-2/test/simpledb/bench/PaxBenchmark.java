@@ -0,0 +1,82 @@
+package simpledb.bench;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+
+import simpledb.*;
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Compares a HeapFile and a PaxFile holding the same wide table of int columns: the throughput of a Project of one
+ * column over a SeqScan, which decodes only that column from a PaxFile, and of a full SeqScan.
+ */
+public class PaxBenchmark {
+
+    private static final int ROWS = 200000;
+    private static final int COLUMNS = 16;
+
+    private static long sink;
+
+    public static void main(String[] args) throws Exception {
+        Type[] types = new Type[COLUMNS];
+        String[] names = new String[COLUMNS];
+        for (int j = 0; j < COLUMNS; j++) {
+            types[j] = Type.INT_TYPE;
+            names[j] = "c" + j;
+        }
+        File text = File.createTempFile("table", ".txt");
+        text.deleteOnExit();
+        FileWriter out = new FileWriter(text);
+        for (int i = 0; i < ROWS; i++) {
+            for (int j = 0; j < COLUMNS; j++)
+                out.write((j == 0 ? "" : ",") + (i + j));
+            out.write("\n");
+        }
+        out.close();
+
+        for (boolean pax : new boolean[] { false, true }) {
+            File f = File.createTempFile("table", ".dat");
+            f.deleteOnExit();
+            new File(f.getPath() + ".zm").deleteOnExit();
+            TupleDesc td = new TupleDesc(types, names);
+            final DbFile table;
+            if (pax) {
+                PaxFile.convert(text, f, types);
+                table = new PaxFile(f, td);
+            } else {
+                HeapFileEncoder.convert(text, f, BufferPool.PAGE_SIZE, COLUMNS, types);
+                table = new HeapFile(f, td);
+            }
+            Database.getCatalog().addTable(table, SystemTestUtil.getUUID());
+            Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+            String layout = pax ? "pax" : "heap";
+
+            final ArrayList<Integer> column = new ArrayList<Integer>();
+            column.add(COLUMNS / 2);
+            final ArrayList<Type> columnType = new ArrayList<Type>();
+            columnType.add(Type.INT_TYPE);
+            double projected = BenchUtil.throughput(1, new BenchUtil.Op() {
+                public void run(int thread, long i) throws Exception {
+                    Project p = new Project(column, columnType, new SeqScan(null, table.getId(), ""));
+                    p.open();
+                    while (p.hasNext())
+                        sink += ((IntField) p.next().getField(0)).getValue();
+                    p.close();
+                }
+            }, 1000, 5000);
+            BenchUtil.report(layout + " project 1 of " + COLUMNS, projected * ROWS, "tuples/s");
+
+            double full = BenchUtil.throughput(1, new BenchUtil.Op() {
+                public void run(int thread, long i) throws Exception {
+                    SeqScan scan = new SeqScan(null, table.getId(), "");
+                    scan.open();
+                    while (scan.hasNext())
+                        sink += ((IntField) scan.next().getField(COLUMNS / 2)).getValue();
+                    scan.close();
+                }
+            }, 1000, 5000);
+            BenchUtil.report(layout + " full scan", full * ROWS, "tuples/s");
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package simpledb.bench;
+
+import java.io.File;
+import java.util.NoSuchElementException;
+
+import simpledb.*;
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Compares sequential scan time with and without read-ahead. The table file is small enough to sit in the OS page
+ * cache, so each page read is given an artificial latency to stand in for a disk; the scan does a little work per
+ * tuple so that prefetch reads can overlap with it.
+ */
+public class ReadAheadBenchmark {
+
+    private static final int TABLE_PAGES = 400;
+    private static final long READ_LATENCY_MICROS = 500;
+
+    /** Keeps the per-tuple work from being optimized away. */
+    static long sink;
+
+    /** Adds a fixed latency to every page read. */
+    static class SlowDiskHeapFile extends HeapFile {
+        public SlowDiskHeapFile(File f, TupleDesc td) {
+            super(f, td);
+        }
+
+        public Page readPage(PageId pid) throws NoSuchElementException {
+            long until = System.nanoTime() + READ_LATENCY_MICROS * 1000;
+            while (System.nanoTime() < until) {
+                Thread.yield();
+            }
+            return super.readPage(pid);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        File f = SystemTestUtil.createRandomHeapFileUnopened(2, BenchUtil.TWO_INT_TUPLES_PER_PAGE * TABLE_PAGES, 1000, null, null);
+        HeapFile table = new SlowDiskHeapFile(f, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(table, SystemTestUtil.getUUID());
+
+        for (int round = 0; round < 2; round++) {
+            boolean report = round == 1; // the first round warms up the JIT
+            scan(table, "shared pool", TABLE_PAGES * 2, Double.MAX_VALUE, 0, report);
+            scan(table, "shared pool", TABLE_PAGES * 2, Double.MAX_VALUE, 32, report);
+            scan(table, "scan ring", 64, 0.25, 0, report);
+            scan(table, "scan ring", 64, 0.25, 32, report);
+        }
+    }
+
+    private static void scan(HeapFile table, String mode, int poolPages, double ringThreshold, int readAhead,
+            boolean report) throws Exception {
+        BufferPool pool = Database.resetBufferPool(poolPages);
+        pool.setScanStrategy(ringThreshold, 32);
+        pool.setReadAhead(readAhead);
+        long sum = 0;
+        long start = System.nanoTime();
+        DbFileIterator it = table.iterator(new TransactionId());
+        it.open();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            for (int i = 0; i < 20; i++)
+                sum += ((IntField) t.getField(i & 1)).getValue() * i;
+        }
+        it.close();
+        sink += sum;
+        double seconds = (System.nanoTime() - start) / 1e9;
+        if (!report)
+            return;
+        String name = mode + (readAhead > 0 ? ", read-ahead " + readAhead : ", no read-ahead");
+        BenchUtil.report(name, table.numPages() / seconds, "pages/s");
+        if (readAhead > 0)
+            System.out.println("    " + pool.getPrefetcher());
+    }
+}
@@ -0,0 +1,36 @@
+package simpledb.bench;
+
+import java.lang.management.ManagementFactory;
+
+import simpledb.*;
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Measures the bytes allocated per page by a read-only sequential scan through a small buffer pool, as reported by
+ * the HotSpot thread allocation counter. Every page of the table is read from disk, as in EvictionTest.
+ */
+public class ScanAllocationBenchmark {
+
+    private static final int TABLE_PAGES = 1500;
+
+    private static final int BUFFER_PAGES = 16;
+
+    public static void main(String[] args) throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, BenchUtil.TWO_INT_TUPLES_PER_PAGE * TABLE_PAGES, null,
+                null);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+                .getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        for (int run = 0; run < 3; run++) {
+            Database.resetBufferPool(BUFFER_PAGES);
+            long before = threads.getThreadAllocatedBytes(thread);
+            SeqScan scan = new SeqScan(null, f.getId(), "");
+            scan.open();
+            while (scan.hasNext())
+                scan.next();
+            scan.close();
+            long allocated = threads.getThreadAllocatedBytes(thread) - before;
+            BenchUtil.report("scan, run " + run, allocated / (double) f.numPages(), "bytes/page");
+        }
+    }
+}
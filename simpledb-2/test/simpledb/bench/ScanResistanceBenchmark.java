@@ -0,0 +1,89 @@
+package simpledb.bench;
+
+import java.io.File;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import simpledb.*;
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Runs a hot OLTP-style workload of random point lookups next to a full scan of a large table, and reports how much
+ * the hit rate of the point lookups drops because of the scan, with and without scan rings.
+ */
+public class ScanResistanceBenchmark {
+
+    private static final int POOL_PAGES = 100;
+    private static final int HOT_PAGES = 80;
+    private static final int BIG_PAGES = 2000;
+    private static final int LOOKUPS_PER_SCANNED_PAGE = 2;
+
+    /** Counts page reads, i.e. misses of the lookups on the hot table. */
+    static class CountingHeapFile extends HeapFile {
+        long reads = 0;
+
+        public CountingHeapFile(File f, TupleDesc td) {
+            super(f, td);
+        }
+
+        public Page readPage(PageId pid) throws NoSuchElementException {
+            reads++;
+            return super.readPage(pid);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        File hotFile = SystemTestUtil.createRandomHeapFileUnopened(2, BenchUtil.TWO_INT_TUPLES_PER_PAGE * HOT_PAGES, 1000, null, null);
+        CountingHeapFile hot = new CountingHeapFile(hotFile, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(hot, SystemTestUtil.getUUID());
+        HeapFile big = SystemTestUtil.createRandomHeapFile(2, BenchUtil.TWO_INT_TUPLES_PER_PAGE * BIG_PAGES, null, null);
+
+        ReplacementPolicy[] policies = new ReplacementPolicy[] { new LruPolicy(), new ClockPolicy() };
+        String[] names = new String[] { "LRU", "CLOCK" };
+        for (int i = 0; i < policies.length; i++) {
+            double alone = run(hot, null, policies[i], false);
+            double noRing = run(hot, big, newPolicy(i), false);
+            double ring = run(hot, big, newPolicy(i), true);
+            BenchUtil.report(names[i] + " lookup hit rate, no scan", 100 * alone, "%");
+            BenchUtil.report(names[i] + " lookup hit rate, scan in shared pool", 100 * noRing, "%");
+            BenchUtil.report(names[i] + " lookup hit rate, scan through ring", 100 * ring, "%");
+            BenchUtil.report(names[i] + " hit rate drop, shared pool", 100 * (alone - noRing), "points");
+            BenchUtil.report(names[i] + " hit rate drop, ring", 100 * (alone - ring), "points");
+        }
+    }
+
+    private static ReplacementPolicy newPolicy(int i) {
+        return i == 0 ? new LruPolicy() : new ClockPolicy();
+    }
+
+    /**
+     * Warms the pool with the hot table, then runs point lookups on it, interleaved with a scan of big if it is not
+     * null, and returns the hit rate of the lookups.
+     */
+    private static double run(CountingHeapFile hot, HeapFile big, ReplacementPolicy policy, boolean useRing)
+            throws Exception {
+        BufferPool pool = Database.resetBufferPool(POOL_PAGES, policy);
+        pool.setScanStrategy(useRing ? 0.25 : Double.MAX_VALUE, BufferPool.DEFAULT_RING_PAGES);
+        TransactionId tid = new TransactionId();
+        Random rand = new Random(0);
+        for (int i = 0; i < HOT_PAGES; i++)
+            pool.getPage(tid, new HeapPageId(hot.getId(), i), Permissions.READ_ONLY);
+
+        hot.reads = 0;
+        long lookups = 0;
+        SeqScan scan = big == null ? null : new SeqScan(tid, big.getId(), "");
+        if (scan != null)
+            scan.open();
+        for (int step = 0; step < BIG_PAGES; step++) {
+            for (int i = 0; scan != null && i < BenchUtil.TWO_INT_TUPLES_PER_PAGE && scan.hasNext(); i++)
+                scan.next();
+            for (int i = 0; i < LOOKUPS_PER_SCANNED_PAGE; i++) {
+                pool.getPage(tid, new HeapPageId(hot.getId(), rand.nextInt(HOT_PAGES)), Permissions.READ_ONLY);
+                lookups++;
+            }
+        }
+        if (scan != null)
+            scan.close();
+        return 1.0 - (double) hot.reads / lookups;
+    }
+}
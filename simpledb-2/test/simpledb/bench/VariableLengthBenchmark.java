@@ -0,0 +1,54 @@
+package simpledb.bench;
+
+import java.io.File;
+import java.io.FileWriter;
+
+import simpledb.*;
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Compares the fixed and variable-length page layouts on a table of (int, short string) tuples: the size of the file,
+ * and the throughput of a full SeqScan through a BufferPool too small to hold the table, so that every page is read.
+ */
+public class VariableLengthBenchmark {
+
+    private static final int ROWS = 200000;
+
+    private static final Type[] TYPES = new Type[] { Type.INT_TYPE, Type.STRING_TYPE };
+
+    private static long sink;
+
+    public static void main(String[] args) throws Exception {
+        File text = File.createTempFile("table", ".txt");
+        text.deleteOnExit();
+        FileWriter out = new FileWriter(text);
+        for (int i = 0; i < ROWS; i++)
+            out.write(i + ",name" + (i % 1000) + "\n");
+        out.close();
+
+        for (boolean variableLength : new boolean[] { false, true }) {
+            File f = File.createTempFile("table", ".dat");
+            f.deleteOnExit();
+            HeapFileEncoder.convert(text, f, BufferPool.PAGE_SIZE, TYPES.length, TYPES, variableLength);
+            final HeapFile table = new HeapFile(f, new TupleDesc(TYPES, new String[] { "id", "name" }),
+                    variableLength);
+            Database.getCatalog().addTable(table, SystemTestUtil.getUUID());
+            Database.resetBufferPool(64);
+
+            String layout = variableLength ? "variable" : "fixed";
+            BenchUtil.report(layout + " pages", table.numPages(), "pages");
+            double scans = BenchUtil.throughput(1, new BenchUtil.Op() {
+                public void run(int thread, long i) throws Exception {
+                    SeqScan scan = new SeqScan(null, table.getId(), "");
+                    scan.open();
+                    TupleView v;
+                    while ((v = scan.nextView()) != null)
+                        sink += v.getInt(0);
+                    scan.close();
+                }
+            }, 1000, 5000);
+            BenchUtil.report(layout + " scan", scans * ROWS, "tuples/s");
+            table.close();
+        }
+    }
+}
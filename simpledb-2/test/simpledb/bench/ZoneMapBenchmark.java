@@ -0,0 +1,64 @@
+package simpledb.bench;
+
+import java.io.File;
+import java.io.FileWriter;
+
+import simpledb.*;
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Measures a range query over the last 1% of a time-ordered table through a BufferPool too small to hold the table:
+ * a Filter over a SeqScan, which skips the pages outside the range using the zone map of the HeapFile, against the
+ * same predicate checked on every tuple of a plain SeqScan.
+ */
+public class ZoneMapBenchmark {
+
+    private static final int ROWS = 1000000;
+
+    private static final Type[] TYPES = new Type[] { Type.INT_TYPE, Type.INT_TYPE };
+
+    private static long sink;
+
+    public static void main(String[] args) throws Exception {
+        File text = File.createTempFile("table", ".txt");
+        text.deleteOnExit();
+        FileWriter out = new FileWriter(text);
+        for (int i = 0; i < ROWS; i++)
+            out.write(i + "," + (i % 1000) + "\n");
+        out.close();
+        File f = File.createTempFile("table", ".dat");
+        f.deleteOnExit();
+        new File(f.getPath() + ".zm").deleteOnExit();
+        HeapFileEncoder.convert(text, f, BufferPool.PAGE_SIZE, TYPES.length, TYPES);
+        final HeapFile table = new HeapFile(f, new TupleDesc(TYPES, new String[] { "t", "v" }));
+        Database.getCatalog().addTable(table, SystemTestUtil.getUUID());
+        Database.resetBufferPool(64);
+        final Predicate range = new Predicate(0, Predicate.Op.GREATER_THAN_OR_EQ, new IntField(ROWS - ROWS / 100));
+
+        double skipping = BenchUtil.throughput(1, new BenchUtil.Op() {
+            public void run(int thread, long i) throws Exception {
+                Filter filter = new Filter(range, new SeqScan(null, table.getId(), ""));
+                filter.open();
+                while (filter.hasNext())
+                    sink += ((IntField) filter.next().getField(1)).getValue();
+                filter.close();
+            }
+        }, 1000, 5000);
+        BenchUtil.report("zone map range scan", skipping, "queries/s");
+
+        double full = BenchUtil.throughput(1, new BenchUtil.Op() {
+            public void run(int thread, long i) throws Exception {
+                SeqScan scan = new SeqScan(null, table.getId(), "");
+                scan.open();
+                while (scan.hasNext()) {
+                    Tuple t = scan.next();
+                    if (range.filter(t))
+                        sink += ((IntField) t.getField(1)).getValue();
+                }
+                scan.close();
+            }
+        }, 1000, 5000);
+        BenchUtil.report("full range scan", full, "queries/s");
+        table.close();
+    }
+}
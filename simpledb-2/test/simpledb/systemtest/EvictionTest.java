@@ -21,18 +21,47 @@ public class EvictionTest extends SimpleDbTestBase {
     private static final int BUFFER_PAGES = 16;
 
     @Test public void testHeapFileScanWithManyPages() throws IOException, DbException, TransactionAbortedException {
+        scanWithPolicy(null);
+    }
+
+    @Test public void testScanWithLruPolicy() throws IOException, DbException, TransactionAbortedException {
+        scanWithPolicy(new LruPolicy());
+    }
+
+    @Test public void testScanWithClockPolicy() throws IOException, DbException, TransactionAbortedException {
+        scanWithPolicy(new ClockPolicy());
+    }
+
+    @Test public void testScanWithTwoQPolicy() throws IOException, DbException, TransactionAbortedException {
+        scanWithPolicy(new TwoQPolicy(BUFFER_PAGES));
+    }
+
+    @Test public void testScanWithArcPolicy() throws IOException, DbException, TransactionAbortedException {
+        scanWithPolicy(new ArcPolicy(BUFFER_PAGES));
+    }
+
+    /** Scans a large table through a small buffer pool; a null policy uses the BufferPool default. */
+    private void scanWithPolicy(ReplacementPolicy policy) throws IOException, DbException, TransactionAbortedException {
         System.out.println("EvictionTest creating large table");
         HeapFile f = SystemTestUtil.createRandomHeapFile(2, 1024*500, null, null);
         System.out.println("EvictionTest scanning large table");
-        Database.resetBufferPool(BUFFER_PAGES);
+        BufferPool pool;
+        if (policy == null)
+            pool = Database.resetBufferPool(BUFFER_PAGES);
+        else
+            pool = Database.resetBufferPool(BUFFER_PAGES, policy);
+        // the table is larger than the pool, so turn off the scan ring to make every page go through the policy
+        pool.setScanThreshold(Double.MAX_VALUE);
         long beginMem = SystemTestUtil.getMemoryFootprint();
         SeqScan scan = new SeqScan(null, f.getId(), "");
         scan.open();
         while (scan.hasNext()) {
             scan.next();
         }
+        assertEquals(f.numPages(), pool.getReplacementPolicy().getMisses());
         System.out.println("EvictionTest scan complete, testing memory usage of scan");
         long endMem = SystemTestUtil.getMemoryFootprint();
+        System.out.println("EvictionTest scan retained " + (endMem - beginMem) / 1024 + " KB");
         long memDiff = (endMem - beginMem) / (1<<20);
         if (memDiff > MEMORY_LIMIT_IN_MB) {
             Assert.fail("Did not evict enough pages.  Scan took " + memDiff + " MB of RAM, when limit was " + MEMORY_LIMIT_IN_MB);
@@ -3,6 +3,8 @@ package simpledb.systemtest;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
@@ -81,6 +83,7 @@ public class SystemTestUtil {
         // Convert the tuples list to a heap file and open it
         File temp = File.createTempFile("table", ".dat");
         temp.deleteOnExit();
+        new File(temp.getPath() + ".zm").deleteOnExit();
         HeapFileEncoder.convert(tuples, temp, BufferPool.PAGE_SIZE, columns);
         return temp;
     }
@@ -94,6 +97,48 @@ public class SystemTestUtil {
         return list;
     }
 
+    /**
+     * Returns the values of the int fields of the tuples returned by the specified iterator, in order.
+     */
+    public static ArrayList<ArrayList<Integer>> readTuples(DbFileIterator it)
+            throws DbException, TransactionAbortedException {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        it.open();
+        while (it.hasNext())
+            tuples.add(tupleToList(it.next()));
+        it.close();
+        return tuples;
+    }
+
+    /**
+     * Returns the tuples of the specified list whose first field is in the specified range, in order.
+     */
+    public static ArrayList<ArrayList<Integer>> keyRange(List<ArrayList<Integer>> tuples, int low, int high) {
+        ArrayList<ArrayList<Integer>> result = new ArrayList<ArrayList<Integer>>();
+        for (ArrayList<Integer> t : tuples)
+            if (t.get(0) >= low && t.get(0) <= high)
+                result.add(t);
+        return result;
+    }
+
+    /**
+     * Sorts tuples on their first fields; tuples that are equal on those fields keep their order.
+     *
+     * @param fields the number of fields to sort on
+     */
+    public static void sortTuples(List<ArrayList<Integer>> tuples, final int fields) {
+        Collections.sort(tuples, new Comparator<ArrayList<Integer>>() {
+            public int compare(ArrayList<Integer> a, ArrayList<Integer> b) {
+                for (int i = 0; i < fields; i++) {
+                    int cmp = a.get(i).compareTo(b.get(i));
+                    if (cmp != 0)
+                        return cmp;
+                }
+                return 0;
+            }
+        });
+    }
+
     public static void matchTuples(DbFile f, List<ArrayList<Integer>> tuples)
             throws DbException, TransactionAbortedException, IOException {
         TransactionId tid = new TransactionId();